@@ -0,0 +1,75 @@
+/*
+ * Copyright 2019-2029 geekidea(https://github.com/geekidea)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.geekidea.springbootplus.framework.cache;
+
+import lombok.Data;
+import lombok.experimental.Accessors;
+
+import java.io.Serializable;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * 二级缓存值
+ * 保存缓存值、加载耗时和逻辑过期时间，Redis有效时间包含陈旧值时间，
+ * 逻辑过期后到Redis过期前为陈旧值，用于后台刷新期间返回旧值和概率提前刷新
+ *
+ * @author geekidea
+ * @date 2020-03-30
+ * @since 1.5.0.RELEASE
+ **/
+@Data
+@Accessors(chain = true)
+public class CacheEntry implements Serializable {
+
+    private static final long serialVersionUID = 4273021917368870915L;
+
+    /**
+     * 缓存值，null值保存为null
+     */
+    private Object value;
+
+    /**
+     * 加载耗时，单位：毫秒
+     */
+    private long loadMillis;
+
+    /**
+     * 逻辑过期时间戳，0表示不过期
+     */
+    private long expireTime;
+
+    public boolean isExpired(long now) {
+        return expireTime > 0 && now >= expireTime;
+    }
+
+    /**
+     * 概率提前过期(XFetch)，剩余有效时间越短、加载耗时越长，提前刷新的概率越大
+     * now - loadMillis * beta * ln(random) >= expireTime
+     *
+     * @param now
+     * @param beta
+     * @return
+     */
+    public boolean isEarlyExpired(long now, double beta) {
+        if (expireTime <= 0 || beta <= 0 || loadMillis <= 0) {
+            return false;
+        }
+        double random = 1 - ThreadLocalRandom.current().nextDouble();
+        return now - loadMillis * beta * Math.log(random) >= expireTime;
+    }
+
+}
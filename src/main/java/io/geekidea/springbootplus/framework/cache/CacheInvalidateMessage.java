@@ -0,0 +1,52 @@
+/*
+ * Copyright 2019-2029 geekidea(https://github.com/geekidea)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.geekidea.springbootplus.framework.cache;
+
+import lombok.Data;
+import lombok.experimental.Accessors;
+
+import java.io.Serializable;
+
+/**
+ * 二级缓存本地缓存失效通知
+ *
+ * @author geekidea
+ * @date 2020-03-30
+ * @since 1.5.0.RELEASE
+ **/
+@Data
+@Accessors(chain = true)
+public class CacheInvalidateMessage implements Serializable {
+
+    private static final long serialVersionUID = -2165328416021377466L;
+
+    /**
+     * 发送通知的节点id，节点忽略自己发送的通知
+     */
+    private String nodeId;
+
+    /**
+     * 缓存名称
+     */
+    private String cacheName;
+
+    /**
+     * 缓存key，为空时清空该缓存
+     */
+    private Object key;
+
+}
@@ -0,0 +1,313 @@
+/*
+ * Copyright 2019-2029 geekidea(https://github.com/geekidea)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.geekidea.springbootplus.framework.cache;
+
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hashing;
+import org.springframework.aop.framework.AopProxyUtils;
+import org.springframework.beans.BeanUtils;
+import org.springframework.cache.interceptor.KeyGenerator;
+import org.springframework.core.MethodClassKey;
+import org.springframework.util.ClassUtils;
+import org.springframework.util.ReflectionUtils;
+
+import java.lang.reflect.Array;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * 预编译的缓存key生成器
+ * 每个方法第一次调用时生成key前缀和各参数的编码器，之后只拼接参数值
+ * <p>
+ * key格式：{类名}.{方法名}({参数类型,...}):{参数1},{参数2}...
+ * 1. 类名为目标类的全限定类名，CGLIB代理类使用原始类，不同包下的同名类不会冲突
+ * 2. 方法名后始终追加参数类型的全限定类名，之后新增重载方法不影响已有方法的key
+ * 3. 无参数时只有前缀，没有冒号
+ * 4. 参数编码：null为~，字符串中的 \ , ~ ( ) [ ] { } = 前加 \ 转义，数字、布尔值为字面值，枚举为name，日期为毫秒数，
+ *    数组和集合为[元素,...]，Map为{key=value,...}，其他对象为(字段值,...)，
+ *    字段为包括父类的非static、非transient字段，按字段名排序，嵌套超过MAX_DEPTH层时抛出异常，不使用toString
+ * 5. 配置了hashThreshold并且key长度超过该值时，参数部分替换为#{murmur3_128十六进制}
+ * 例如：io.geekidea.springbootplus.system.service.impl.SysUserServiceImpl.getSysUserById(java.io.Serializable):1
+ * key只依赖类名、方法签名和参数值，重启后保持不变，修改参数对象的字段后key随之改变
+ * </p>
+ *
+ * @author geekidea
+ * @date 2020-03-30
+ * @since 1.5.0.RELEASE
+ **/
+public class CompiledKeyGenerator implements KeyGenerator {
+
+    private static final HashFunction HASH_FUNCTION = Hashing.murmur3_128();
+
+    private static final String NULL_VALUE = "~";
+
+    /**
+     * 参数对象字段的最大嵌套层数，超过时抛出异常，通常是参数对象存在循环引用
+     */
+    private static final int MAX_DEPTH = 4;
+
+    /**
+     * key长度超过该值时哈希参数部分，小于等于0不哈希
+     */
+    private final int hashThreshold;
+
+    private final ConcurrentMap<MethodClassKey, MethodKeyTemplate> templateMap = new ConcurrentHashMap<>();
+
+    /**
+     * 运行时类型的编码器
+     */
+    private final ConcurrentMap<Class<?>, ArgumentEncoder> encoderMap = new ConcurrentHashMap<>();
+
+    private final ArgumentEncoder runtimeEncoder = (builder, value, depth) -> {
+        if (value == null) {
+            builder.append(NULL_VALUE);
+        } else {
+            getEncoder(value.getClass()).encode(builder, value, depth);
+        }
+    };
+
+    public CompiledKeyGenerator(int hashThreshold) {
+        this.hashThreshold = hashThreshold;
+    }
+
+    @Override
+    public Object generate(Object target, Method method, Object... params) {
+        Class<?> targetClass = ClassUtils.getUserClass(AopProxyUtils.ultimateTargetClass(target));
+        MethodClassKey methodClassKey = new MethodClassKey(method, targetClass);
+        MethodKeyTemplate template = templateMap.get(methodClassKey);
+        if (template == null) {
+            template = templateMap.computeIfAbsent(methodClassKey, key -> compile(method, targetClass));
+        }
+        if (params.length == 0) {
+            return template.prefix;
+        }
+        StringBuilder builder = new StringBuilder(template.prefix.length() + 16 * params.length);
+        builder.append(template.prefix).append(':');
+        int prefixLength = builder.length();
+        for (int i = 0; i < params.length; i++) {
+            if (i > 0) {
+                builder.append(',');
+            }
+            ArgumentEncoder encoder = i < template.encoders.length ? template.encoders[i] : runtimeEncoder;
+            encoder.encode(builder, params[i], 0);
+        }
+        if (hashThreshold > 0 && builder.length() > hashThreshold) {
+            String hash = HASH_FUNCTION.hashString(builder.subSequence(prefixLength, builder.length()), StandardCharsets.UTF_8).toString();
+            builder.setLength(prefixLength);
+            builder.append('#').append(hash);
+        }
+        return builder.toString();
+    }
+
+    private MethodKeyTemplate compile(Method method, Class<?> targetClass) {
+        Class<?>[] parameterTypes = method.getParameterTypes();
+        StringBuilder prefix = new StringBuilder(targetClass.getName()).append('.').append(method.getName()).append('(');
+        for (int i = 0; i < parameterTypes.length; i++) {
+            if (i > 0) {
+                prefix.append(',');
+            }
+            prefix.append(parameterTypes[i].getTypeName());
+        }
+        prefix.append(')');
+        ArgumentEncoder[] encoders = new ArgumentEncoder[parameterTypes.length];
+        for (int i = 0; i < parameterTypes.length; i++) {
+            encoders[i] = getDeclaredEncoder(parameterTypes[i]);
+        }
+        return new MethodKeyTemplate(prefix.toString().intern(), encoders);
+    }
+
+    /**
+     * 参数声明类型为字符串、基本类型及其包装类型、枚举时直接使用对应编码器，否则按运行时类型编码
+     *
+     * @param type
+     * @return
+     */
+    private ArgumentEncoder getDeclaredEncoder(Class<?> type) {
+        Class<?> wrapperType = ClassUtils.resolvePrimitiveIfNecessary(type);
+        if (wrapperType == String.class || ClassUtils.isPrimitiveWrapper(wrapperType) || wrapperType.isEnum()) {
+            return nullSafe(getEncoder(wrapperType));
+        }
+        return runtimeEncoder;
+    }
+
+    private ArgumentEncoder getEncoder(Class<?> type) {
+        ArgumentEncoder encoder = encoderMap.get(type);
+        if (encoder == null) {
+            encoder = encoderMap.computeIfAbsent(type, this::createEncoder);
+        }
+        return encoder;
+    }
+
+    private ArgumentEncoder createEncoder(Class<?> type) {
+        if (type == String.class || type == Character.class) {
+            return (builder, value, depth) -> appendEscaped(builder, value.toString());
+        }
+        if (ClassUtils.isPrimitiveWrapper(type) || Number.class.isAssignableFrom(type)) {
+            return (builder, value, depth) -> builder.append(value);
+        }
+        if (type.isEnum() || (type.getSuperclass() != null && type.getSuperclass().isEnum())) {
+            return (builder, value, depth) -> builder.append(((Enum<?>) value).name());
+        }
+        if (Date.class.isAssignableFrom(type)) {
+            return (builder, value, depth) -> builder.append(((Date) value).getTime());
+        }
+        if (type == Class.class) {
+            return (builder, value, depth) -> builder.append(((Class<?>) value).getName());
+        }
+        if (type.isArray()) {
+            return (builder, value, depth) -> {
+                builder.append('[');
+                int length = Array.getLength(value);
+                for (int i = 0; i < length; i++) {
+                    if (i > 0) {
+                        builder.append(',');
+                    }
+                    runtimeEncoder.encode(builder, Array.get(value, i), depth + 1);
+                }
+                builder.append(']');
+            };
+        }
+        if (Collection.class.isAssignableFrom(type)) {
+            return (builder, value, depth) -> {
+                builder.append('[');
+                boolean first = true;
+                for (Object element : (Collection<?>) value) {
+                    if (!first) {
+                        builder.append(',');
+                    }
+                    first = false;
+                    runtimeEncoder.encode(builder, element, depth + 1);
+                }
+                builder.append(']');
+            };
+        }
+        if (Map.class.isAssignableFrom(type)) {
+            return (builder, value, depth) -> {
+                builder.append('{');
+                boolean first = true;
+                for (Map.Entry<?, ?> entry : ((Map<?, ?>) value).entrySet()) {
+                    if (!first) {
+                        builder.append(',');
+                    }
+                    first = false;
+                    runtimeEncoder.encode(builder, entry.getKey(), depth + 1);
+                    builder.append('=');
+                    runtimeEncoder.encode(builder, entry.getValue(), depth + 1);
+                }
+                builder.append('}');
+            };
+        }
+        if (BeanUtils.isSimpleValueType(type)) {
+            return (builder, value, depth) -> appendEscaped(builder, value.toString());
+        }
+        return createFieldEncoder(type);
+    }
+
+    /**
+     * 参数对象按字段名排序后依次编码字段值
+     *
+     * @param type
+     * @return
+     */
+    private ArgumentEncoder createFieldEncoder(Class<?> type) {
+        List<Field> fieldList = new ArrayList<>();
+        ReflectionUtils.doWithFields(type, field -> {
+            ReflectionUtils.makeAccessible(field);
+            fieldList.add(field);
+        }, field -> !Modifier.isStatic(field.getModifiers()) && !Modifier.isTransient(field.getModifiers()));
+        fieldList.sort(Comparator.comparing(Field::getName).thenComparing(field -> field.getDeclaringClass().getName()));
+        Field[] fields = fieldList.toArray(new Field[0]);
+        return (builder, value, depth) -> {
+            if (depth >= MAX_DEPTH) {
+                throw new IllegalArgumentException("缓存key参数对象嵌套超过" + MAX_DEPTH + "层：" + type.getName()
+                        + "，请在@Cacheable中使用key指定缓存key");
+            }
+            builder.append('(');
+            for (int i = 0; i < fields.length; i++) {
+                if (i > 0) {
+                    builder.append(',');
+                }
+                runtimeEncoder.encode(builder, ReflectionUtils.getField(fields[i], value), depth + 1);
+            }
+            builder.append(')');
+        };
+    }
+
+    private static ArgumentEncoder nullSafe(ArgumentEncoder encoder) {
+        return (builder, value, depth) -> {
+            if (value == null) {
+                builder.append(NULL_VALUE);
+            } else {
+                encoder.encode(builder, value, depth);
+            }
+        };
+    }
+
+    private static void appendEscaped(StringBuilder builder, String value) {
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '\\':
+                case ',':
+                case '~':
+                case '(':
+                case ')':
+                case '[':
+                case ']':
+                case '{':
+                case '}':
+                case '=':
+                    builder.append('\\');
+                    break;
+                default:
+                    break;
+            }
+            builder.append(c);
+        }
+    }
+
+    @FunctionalInterface
+    private interface ArgumentEncoder {
+
+        void encode(StringBuilder builder, Object value, int depth);
+
+    }
+
+    private static class MethodKeyTemplate {
+
+        private final String prefix;
+
+        private final ArgumentEncoder[] encoders;
+
+        private MethodKeyTemplate(String prefix, ArgumentEncoder[] encoders) {
+            this.prefix = prefix;
+            this.encoders = encoders;
+        }
+
+    }
+
+}
@@ -0,0 +1,429 @@
+/*
+ * Copyright 2019-2029 geekidea(https://github.com/geekidea)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.geekidea.springbootplus.framework.cache;
+
+import com.google.common.cache.Cache;
+import io.geekidea.springbootplus.framework.constant.CommonRedisKey;
+import io.geekidea.springbootplus.framework.core.properties.SpringBootPlusCacheProperties;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.cache.support.AbstractValueAdaptingCache;
+import org.springframework.cache.support.NullValue;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 二级缓存
+ * 一级缓存为本地缓存，二级缓存为Redis，
+ * 读取时先读本地缓存，未命中时读取Redis并写入本地缓存，
+ * 写入和删除时同时操作两级缓存，并通知其他节点删除本地缓存
+ * <p>
+ * 使用加载器读取时(@Cacheable(sync = true))防止缓存击穿：
+ * 同一节点同一key只有一个线程加载，其他线程等待加载结果；
+ * 多个节点之间通过Redis加载锁只有一个节点加载，其他节点等待Redis中的加载结果；
+ * 逻辑过期后在陈旧值时间内返回旧值并在后台刷新；
+ * 过期前按加载耗时概率提前在后台刷新，避免同时过期。
+ * 后台刷新在刷新线程中调用加载器，加载器不能依赖请求线程上下文
+ * </p>
+ *
+ * @author geekidea
+ * @date 2020-03-30
+ * @since 1.5.0.RELEASE
+ **/
+@Slf4j
+public class TwoLevelCache extends AbstractValueAdaptingCache {
+
+    /**
+     * 等待其他节点加载时读取Redis的间隔，单位：毫秒
+     */
+    private static final long LEASE_POLL_MILLIS = 20;
+
+    private final String name;
+
+    /**
+     * 本地缓存，未启用本地缓存时为null
+     */
+    private final Cache<Object, CacheEntry> localCache;
+
+    private final org.springframework.cache.Cache redisCache;
+
+    private final TwoLevelCacheManager cacheManager;
+
+    private final SpringBootPlusCacheProperties.CacheConfig cacheConfig;
+
+    /**
+     * 正在加载的key，key --> 加载结果
+     */
+    private final ConcurrentMap<Object, CompletableFuture<CacheEntry>> loadingMap = new ConcurrentHashMap<>();
+
+    private final LongAdder loadCount = new LongAdder();
+
+    private final LongAdder coalescedCount = new LongAdder();
+
+    private final LongAdder leaseWaitCount = new LongAdder();
+
+    private final LongAdder staleCount = new LongAdder();
+
+    private final LongAdder earlyRefreshCount = new LongAdder();
+
+    public TwoLevelCache(String name, Cache<Object, CacheEntry> localCache, org.springframework.cache.Cache redisCache,
+                         TwoLevelCacheManager cacheManager, SpringBootPlusCacheProperties.CacheConfig cacheConfig,
+                         boolean allowNullValues) {
+        super(allowNullValues);
+        this.name = name;
+        this.localCache = localCache;
+        this.redisCache = redisCache;
+        this.cacheManager = cacheManager;
+        this.cacheConfig = cacheConfig;
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public Object getNativeCache() {
+        return this;
+    }
+
+    @Override
+    protected Object lookup(Object key) {
+        CacheEntry entry = getEntry(key);
+        // 不使用加载器读取时，逻辑过期视为未命中，由调用方重新加载
+        if (entry == null || entry.isExpired(System.currentTimeMillis())) {
+            return null;
+        }
+        return toStoreValue(entry);
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> T get(Object key, Callable<T> valueLoader) {
+        CacheEntry entry = getEntry(key);
+        if (entry != null) {
+            long now = System.currentTimeMillis();
+            if (!entry.isExpired(now)) {
+                if (entry.isEarlyExpired(now, cacheConfig.getEarlyRefreshBeta())) {
+                    earlyRefreshCount.increment();
+                    refreshAsync(key, valueLoader, entry);
+                }
+                return (T) entry.getValue();
+            }
+            // 陈旧值时间内返回旧值，后台刷新
+            if (cacheConfig.getStaleSecond() > 0) {
+                staleCount.increment();
+                refreshAsync(key, valueLoader, entry);
+                return (T) entry.getValue();
+            }
+        }
+        return (T) load(key, valueLoader).getValue();
+    }
+
+    @Override
+    public void put(Object key, Object value) {
+        putEntry(key, newEntry(value, 0, System.currentTimeMillis()));
+    }
+
+    @Override
+    public ValueWrapper putIfAbsent(Object key, Object value) {
+        CacheEntry entry = newEntry(value, 0, System.currentTimeMillis());
+        ValueWrapper existingValue = redisCache.putIfAbsent(key, entry);
+        if (existingValue == null) {
+            putLocal(key, entry);
+            cacheManager.publishEvict(name, key);
+            return null;
+        }
+        CacheEntry existingEntry = toEntry(existingValue.get());
+        putLocal(key, existingEntry);
+        return toValueWrapper(toStoreValue(existingEntry));
+    }
+
+    @Override
+    public void evict(Object key) {
+        redisCache.evict(key);
+        evictLocal(key);
+        cacheManager.publishEvict(name, key);
+    }
+
+    @Override
+    public void clear() {
+        redisCache.clear();
+        clearLocal();
+        cacheManager.publishEvict(name, null);
+    }
+
+    /**
+     * 删除本节点本地缓存
+     *
+     * @param key
+     */
+    public void evictLocal(Object key) {
+        if (localCache != null) {
+            localCache.invalidate(key);
+        }
+    }
+
+    /**
+     * 清空本节点本地缓存
+     */
+    public void clearLocal() {
+        if (localCache != null) {
+            localCache.invalidateAll();
+        }
+    }
+
+    public long localSize() {
+        return localCache == null ? 0 : localCache.size();
+    }
+
+    public long getLoadCount() {
+        return loadCount.sum();
+    }
+
+    public long getCoalescedCount() {
+        return coalescedCount.sum();
+    }
+
+    public long getLeaseWaitCount() {
+        return leaseWaitCount.sum();
+    }
+
+    public long getStaleCount() {
+        return staleCount.sum();
+    }
+
+    public long getEarlyRefreshCount() {
+        return earlyRefreshCount.sum();
+    }
+
+    public void bindTo(MeterRegistry registry) {
+        FunctionCounter.builder("cache.load", loadCount, LongAdder::sum).tag("cache", name).register(registry);
+        FunctionCounter.builder("cache.load.coalesced", coalescedCount, LongAdder::sum).tag("cache", name).register(registry);
+        FunctionCounter.builder("cache.load.lease.wait", leaseWaitCount, LongAdder::sum).tag("cache", name).register(registry);
+        FunctionCounter.builder("cache.refresh", staleCount, LongAdder::sum).tag("cache", name).tag("type", "stale").register(registry);
+        FunctionCounter.builder("cache.refresh", earlyRefreshCount, LongAdder::sum).tag("cache", name).tag("type", "early").register(registry);
+    }
+
+    private Object toStoreValue(CacheEntry entry) {
+        Object value = entry.getValue();
+        return value == null && isAllowNullValues() ? NullValue.INSTANCE : value;
+    }
+
+    private CacheEntry getEntry(Object key) {
+        if (localCache != null) {
+            CacheEntry entry = localCache.getIfPresent(key);
+            if (entry != null) {
+                return entry;
+            }
+        }
+        CacheEntry entry = getRedisEntry(key);
+        putLocal(key, entry);
+        return entry;
+    }
+
+    private CacheEntry getRedisEntry(Object key) {
+        ValueWrapper valueWrapper = redisCache.get(key);
+        return valueWrapper == null ? null : toEntry(valueWrapper.get());
+    }
+
+    /**
+     * 兼容未使用CacheEntry保存的缓存值，视为不过期
+     *
+     * @param value
+     * @return
+     */
+    private CacheEntry toEntry(Object value) {
+        if (value instanceof CacheEntry) {
+            return (CacheEntry) value;
+        }
+        return new CacheEntry().setValue(value);
+    }
+
+    private CacheEntry newEntry(Object value, long loadMillis, long now) {
+        // 校验是否允许null值
+        toStoreValue(value);
+        long expireSecond = cacheConfig.getExpireSecond();
+        return new CacheEntry()
+                .setValue(value)
+                .setLoadMillis(loadMillis)
+                .setExpireTime(expireSecond > 0 ? now + TimeUnit.SECONDS.toMillis(expireSecond) : 0);
+    }
+
+    private void putEntry(Object key, CacheEntry entry) {
+        redisCache.put(key, entry);
+        putLocal(key, entry);
+        cacheManager.publishEvict(name, key);
+    }
+
+    private void putLocal(Object key, CacheEntry entry) {
+        if (localCache != null && entry != null) {
+            localCache.put(key, entry);
+        }
+    }
+
+    /**
+     * 同步加载，同一key正在加载时等待加载结果
+     *
+     * @param key
+     * @param valueLoader
+     * @return
+     */
+    private CacheEntry load(Object key, Callable<?> valueLoader) {
+        CompletableFuture<CacheEntry> future = new CompletableFuture<>();
+        CompletableFuture<CacheEntry> loadingFuture = loadingMap.putIfAbsent(key, future);
+        if (loadingFuture != null) {
+            coalescedCount.increment();
+            return await(key, valueLoader, loadingFuture);
+        }
+        try {
+            CacheEntry entry = loadWithLease(key, valueLoader);
+            future.complete(entry);
+            return entry;
+        } catch (RuntimeException e) {
+            future.completeExceptionally(e);
+            throw e;
+        } finally {
+            loadingMap.remove(key, future);
+        }
+    }
+
+    private CacheEntry await(Object key, Callable<?> valueLoader, CompletableFuture<CacheEntry> loadingFuture) {
+        try {
+            return loadingFuture.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ValueRetrievalException(key, valueLoader, e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new ValueRetrievalException(key, valueLoader, e.getCause());
+        }
+    }
+
+    /**
+     * 获取加载锁后加载，其他节点正在加载时等待Redis中的加载结果，超过加载锁有效时间后自行加载
+     *
+     * @param key
+     * @param valueLoader
+     * @return
+     */
+    private CacheEntry loadWithLease(Object key, Callable<?> valueLoader) {
+        long leaseMillis = cacheConfig.getLeaseMillis();
+        if (leaseMillis <= 0) {
+            return loadAndPut(key, valueLoader);
+        }
+        String leaseKey = String.format(CommonRedisKey.CACHE_LEASE, name, key);
+        if (cacheManager.tryLease(leaseKey, leaseMillis)) {
+            try {
+                return loadAndPut(key, valueLoader);
+            } finally {
+                cacheManager.releaseLease(leaseKey);
+            }
+        }
+        leaseWaitCount.increment();
+        long deadline = System.currentTimeMillis() + leaseMillis;
+        while (System.currentTimeMillis() < deadline) {
+            try {
+                Thread.sleep(LEASE_POLL_MILLIS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new ValueRetrievalException(key, valueLoader, e);
+            }
+            CacheEntry entry = getRedisEntry(key);
+            if (entry != null && !entry.isExpired(System.currentTimeMillis())) {
+                putLocal(key, entry);
+                return entry;
+            }
+        }
+        log.debug("等待缓存加载锁超时,cacheName:{},key:{}", name, key);
+        return loadAndPut(key, valueLoader);
+    }
+
+    /**
+     * 后台刷新，同一key正在加载时忽略，其他节点持有加载锁时不刷新
+     *
+     * @param key
+     * @param valueLoader
+     * @param currentEntry
+     */
+    private void refreshAsync(Object key, Callable<?> valueLoader, CacheEntry currentEntry) {
+        if (loadingMap.containsKey(key)) {
+            return;
+        }
+        CompletableFuture<CacheEntry> future = new CompletableFuture<>();
+        if (loadingMap.putIfAbsent(key, future) != null) {
+            return;
+        }
+        try {
+            cacheManager.getRefreshExecutor().execute(() -> {
+                try {
+                    future.complete(refresh(key, valueLoader, currentEntry));
+                } catch (Throwable e) {
+                    log.error("后台刷新缓存异常,cacheName:{},key:{}", name, key, e);
+                    future.completeExceptionally(e);
+                } finally {
+                    loadingMap.remove(key, future);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            loadingMap.remove(key, future);
+            future.complete(currentEntry);
+        }
+    }
+
+    private CacheEntry refresh(Object key, Callable<?> valueLoader, CacheEntry currentEntry) {
+        long leaseMillis = cacheConfig.getLeaseMillis();
+        if (leaseMillis <= 0) {
+            return loadAndPut(key, valueLoader);
+        }
+        String leaseKey = String.format(CommonRedisKey.CACHE_LEASE, name, key);
+        if (!cacheManager.tryLease(leaseKey, leaseMillis)) {
+            return currentEntry;
+        }
+        try {
+            return loadAndPut(key, valueLoader);
+        } finally {
+            cacheManager.releaseLease(leaseKey);
+        }
+    }
+
+    private CacheEntry loadAndPut(Object key, Callable<?> valueLoader) {
+        loadCount.increment();
+        long startTime = System.currentTimeMillis();
+        Object value;
+        try {
+            value = valueLoader.call();
+        } catch (Throwable e) {
+            throw new ValueRetrievalException(key, valueLoader, e);
+        }
+        long now = System.currentTimeMillis();
+        CacheEntry entry = newEntry(value, now - startTime, now);
+        putEntry(key, entry);
+        return entry;
+    }
+
+}
@@ -0,0 +1,234 @@
+/*
+ * Copyright 2019-2029 geekidea(https://github.com/geekidea)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.geekidea.springbootplus.framework.cache;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import io.geekidea.springbootplus.framework.constant.CommonRedisKey;
+import io.geekidea.springbootplus.framework.core.properties.SpringBootPlusCacheProperties;
+import io.geekidea.springbootplus.framework.util.UUIDUtil;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.cache.CacheManager;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 二级缓存管理器
+ * 二级缓存由Redis缓存管理器创建，每个缓存的本地缓存数量和有效时间、Redis缓存有效时间见SpringBootPlusCacheProperties，
+ * 写入和删除缓存时通过Redis发布订阅通知其他节点删除本地缓存，
+ * 缓存加载锁和后台刷新线程由所有缓存共用
+ *
+ * @author geekidea
+ * @date 2020-03-30
+ * @since 1.5.0.RELEASE
+ **/
+@Slf4j
+public class TwoLevelCacheManager implements CacheManager, MessageListener, DisposableBean {
+
+    /**
+     * 后台刷新队列大小，队列已满时不刷新，继续使用当前值
+     */
+    private static final int REFRESH_QUEUE_SIZE = 1000;
+
+    /**
+     * 释放加载锁：只删除当前节点持有的加载锁，避免删除超时后其他节点获取的加载锁
+     * KEYS[1]: 加载锁key，ARGV[1]: 节点id
+     */
+    private static final RedisScript<Long> RELEASE_LEASE_SCRIPT = new DefaultRedisScript<>(
+            "if redis.call('GET', KEYS[1]) == ARGV[1] then " +
+                    "return redis.call('DEL', KEYS[1]) " +
+                    "end " +
+                    "return 0", Long.class);
+
+    /**
+     * 当前节点id
+     */
+    private final String nodeId = UUIDUtil.getUuid();
+
+    private final CacheManager redisCacheManager;
+
+    private final RedisTemplate redisTemplate;
+
+    private final SpringBootPlusCacheProperties cacheProperties;
+
+    private final ConcurrentMap<String, TwoLevelCache> cacheMap = new ConcurrentHashMap<>();
+
+    private final ThreadPoolExecutor refreshExecutor;
+
+    private volatile MeterRegistry meterRegistry;
+
+    public TwoLevelCacheManager(CacheManager redisCacheManager,
+                                RedisTemplate redisTemplate,
+                                RedisMessageListenerContainer redisMessageListenerContainer,
+                                SpringBootPlusCacheProperties cacheProperties) {
+        this.redisCacheManager = redisCacheManager;
+        this.redisTemplate = redisTemplate;
+        this.cacheProperties = cacheProperties;
+        int refreshThreads = Math.max(cacheProperties.getRefreshThreads(), 1);
+        this.refreshExecutor = new ThreadPoolExecutor(refreshThreads, refreshThreads, 60, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(REFRESH_QUEUE_SIZE),
+                new ThreadFactoryBuilder().setNameFormat("two-level-cache-refresh-%d").setDaemon(true).build());
+        this.refreshExecutor.allowCoreThreadTimeOut(true);
+        for (String cacheName : cacheProperties.getCaches().keySet()) {
+            getCache(cacheName);
+        }
+        redisMessageListenerContainer.addMessageListener(this, new ChannelTopic(CommonRedisKey.CACHE_INVALIDATE_CHANNEL));
+    }
+
+    @Override
+    public TwoLevelCache getCache(String name) {
+        TwoLevelCache cache = cacheMap.get(name);
+        if (cache != null) {
+            return cache;
+        }
+        SpringBootPlusCacheProperties.CacheConfig cacheConfig = cacheProperties.getCacheConfig(name);
+        if (cacheConfig == null) {
+            return null;
+        }
+        return cacheMap.computeIfAbsent(name, key -> {
+            TwoLevelCache twoLevelCache = createCache(key, cacheConfig);
+            MeterRegistry registry = this.meterRegistry;
+            if (registry != null) {
+                twoLevelCache.bindTo(registry);
+            }
+            return twoLevelCache;
+        });
+    }
+
+    @Override
+    public Collection<String> getCacheNames() {
+        return Collections.unmodifiableSet(cacheMap.keySet());
+    }
+
+    /**
+     * 通知其他节点删除本地缓存
+     *
+     * @param cacheName
+     * @param key       为空时清空该缓存
+     */
+    public void publishEvict(String cacheName, Object key) {
+        CacheInvalidateMessage message = new CacheInvalidateMessage()
+                .setNodeId(nodeId)
+                .setCacheName(cacheName)
+                .setKey(key);
+        try {
+            redisTemplate.convertAndSend(CommonRedisKey.CACHE_INVALIDATE_CHANNEL, message);
+        } catch (Exception e) {
+            log.error("发送缓存失效通知异常,cacheName:{},key:{}", cacheName, key, e);
+        }
+    }
+
+    /**
+     * 获取缓存加载锁，Redis异常时视为获取成功，由本节点加载
+     *
+     * @param leaseKey
+     * @param leaseMillis
+     * @return
+     */
+    public boolean tryLease(String leaseKey, long leaseMillis) {
+        try {
+            Boolean result = redisTemplate.opsForValue().setIfAbsent(leaseKey, nodeId, leaseMillis, TimeUnit.MILLISECONDS);
+            return Boolean.TRUE.equals(result);
+        } catch (Exception e) {
+            log.error("获取缓存加载锁异常,leaseKey:{}", leaseKey, e);
+            return true;
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    public void releaseLease(String leaseKey) {
+        try {
+            redisTemplate.execute(RELEASE_LEASE_SCRIPT, Collections.singletonList(leaseKey), nodeId);
+        } catch (Exception e) {
+            log.error("释放缓存加载锁异常,leaseKey:{}", leaseKey, e);
+        }
+    }
+
+    public Executor getRefreshExecutor() {
+        return refreshExecutor;
+    }
+
+    /**
+     * 注册所有缓存的加载指标，之后创建的缓存在创建时注册
+     *
+     * @param registry
+     */
+    public void bindTo(MeterRegistry registry) {
+        this.meterRegistry = registry;
+        for (TwoLevelCache cache : cacheMap.values()) {
+            cache.bindTo(registry);
+        }
+    }
+
+    @Override
+    public void destroy() {
+        refreshExecutor.shutdownNow();
+    }
+
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        Object body = redisTemplate.getValueSerializer().deserialize(message.getBody());
+        if (!(body instanceof CacheInvalidateMessage)) {
+            return;
+        }
+        CacheInvalidateMessage invalidateMessage = (CacheInvalidateMessage) body;
+        if (nodeId.equals(invalidateMessage.getNodeId())) {
+            return;
+        }
+        TwoLevelCache cache = cacheMap.get(invalidateMessage.getCacheName());
+        if (cache == null) {
+            return;
+        }
+        log.debug("收到缓存失效通知,cacheName:{},key:{}", invalidateMessage.getCacheName(), invalidateMessage.getKey());
+        if (invalidateMessage.getKey() == null) {
+            cache.clearLocal();
+        } else {
+            cache.evictLocal(invalidateMessage.getKey());
+        }
+    }
+
+    private TwoLevelCache createCache(String name, SpringBootPlusCacheProperties.CacheConfig cacheConfig) {
+        Cache<Object, CacheEntry> localCache = null;
+        if (Boolean.TRUE.equals(cacheConfig.getLocalEnable())) {
+            localCache = CacheBuilder.newBuilder()
+                    .maximumSize(cacheConfig.getLocalMaximumSize())
+                    .expireAfterWrite(cacheConfig.getLocalExpireSecond(), TimeUnit.SECONDS)
+                    .build();
+        }
+        log.debug("创建二级缓存,name:{},config:{}", name, cacheConfig);
+        return new TwoLevelCache(name, localCache, redisCacheManager.getCache(name), this, cacheConfig,
+                cacheProperties.isAllowNullValues());
+    }
+
+}
@@ -0,0 +1,49 @@
+/*
+ * Copyright 2019-2029 geekidea(https://github.com/geekidea)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.geekidea.springbootplus.framework.cache;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.springframework.cache.CacheManager;
+import org.springframework.stereotype.Component;
+
+/**
+ * 二级缓存加载指标
+ * cache.load：实际加载次数，cache.load.coalesced：等待同节点加载结果的次数，
+ * cache.load.lease.wait：等待其他节点加载结果的次数，cache.refresh：后台刷新次数，type为stale或early
+ *
+ * @author geekidea
+ * @date 2020-03-30
+ * @since 1.5.0.RELEASE
+ **/
+@Component
+public class TwoLevelCacheMetrics implements MeterBinder {
+
+    private final CacheManager cacheManager;
+
+    public TwoLevelCacheMetrics(CacheManager cacheManager) {
+        this.cacheManager = cacheManager;
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        if (cacheManager instanceof TwoLevelCacheManager) {
+            ((TwoLevelCacheManager) cacheManager).bindTo(registry);
+        }
+    }
+
+}
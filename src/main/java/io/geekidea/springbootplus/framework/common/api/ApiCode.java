@@ -60,6 +60,8 @@ public enum ApiCode {
     UNAUTHENTICATED_EXCEPTION(5105, "没有访问权限"),
     /** 没有访问权限 **/
     UNAUTHORIZED_EXCEPTION(5106, "没有访问权限"),
+    /** 登陆尝试过于频繁 **/
+    LOGIN_THROTTLE_EXCEPTION(5107, "登陆尝试过于频繁"),
 
     ;
 
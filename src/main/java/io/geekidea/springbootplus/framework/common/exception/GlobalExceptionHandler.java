@@ -19,6 +19,7 @@ package io.geekidea.springbootplus.framework.common.exception;
 import com.alibaba.fastjson.JSON;
 import io.geekidea.springbootplus.framework.common.api.ApiCode;
 import io.geekidea.springbootplus.framework.common.api.ApiResult;
+import io.geekidea.springbootplus.framework.shiro.exception.LoginThrottleException;
 import io.geekidea.springbootplus.system.exception.VerificationCodeException;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.shiro.authc.AuthenticationException;
@@ -82,6 +83,21 @@ public class GlobalExceptionHandler {
     }
 
 
+    /**
+     * 登陆尝试过于频繁异常处理
+     *
+     * @param exception
+     * @return
+     */
+    @ExceptionHandler(value = LoginThrottleException.class)
+    @ResponseStatus(HttpStatus.OK)
+    public ApiResult loginThrottleExceptionHandler(LoginThrottleException exception) {
+        log.warn("登陆尝试过于频繁:" + exception.getMessage());
+        return new ApiResult()
+                .setCode(ApiCode.LOGIN_THROTTLE_EXCEPTION.getCode())
+                .setMessage(exception.getMessage());
+    }
+
     /**
      * HTTP解析请求参数异常
      *
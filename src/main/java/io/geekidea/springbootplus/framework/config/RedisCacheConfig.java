@@ -16,6 +16,11 @@
 
 package io.geekidea.springbootplus.framework.config;
 
+import io.geekidea.springbootplus.framework.cache.CompiledKeyGenerator;
+import io.geekidea.springbootplus.framework.cache.TwoLevelCacheManager;
+import io.geekidea.springbootplus.framework.core.properties.SpringBootPlusCacheProperties;
+import io.geekidea.springbootplus.framework.redis.codec.CodecRedisSerializer;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.cache.CacheManager;
 import org.springframework.cache.annotation.CachingConfigurerSupport;
 import org.springframework.cache.annotation.EnableCaching;
@@ -25,6 +30,9 @@ import org.springframework.context.annotation.Configuration;
 import org.springframework.data.redis.cache.RedisCacheConfiguration;
 import org.springframework.data.redis.cache.RedisCacheManager;
 import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.data.redis.serializer.RedisSerializationContext;
 
 import java.time.Duration;
 import java.util.*;
@@ -32,6 +40,7 @@ import java.util.*;
 /**
  * <p>
  *     Redis Cache配置
+ *     默认使用二级缓存，一级缓存为本地缓存，二级缓存为Redis，缓存名称和有效时间见spring-boot-plus.cache
  * </p>
  * @author geekidea
  * @date 2018-11-08
@@ -40,47 +49,67 @@ import java.util.*;
 @EnableCaching
 public class RedisCacheConfig extends CachingConfigurerSupport {
 
+    @Autowired
+    private SpringBootPlusCacheProperties cacheProperties;
+
+    /**
+     * 缓存key生成器，每个方法的key前缀和参数编码器只生成一次，key格式见CompiledKeyGenerator
+     */
     @Bean
     @Override
     public KeyGenerator keyGenerator() {
-        return (target, method, params) -> {
-            StringBuffer redisKey = new StringBuffer();
-            redisKey.append(target.getClass().getName()).append("-");
-            redisKey.append(method.getName());
-            if (params.length > 0) {
-                redisKey.append("-").append(Arrays.deepToString(params));
-            }
-            return redisKey.toString();
-        };
+        return new CompiledKeyGenerator(cacheProperties.getKeyHashThreshold());
     }
 
 
     @Bean
-    public CacheManager cacheManager(RedisConnectionFactory factory) {
-        // 生成一个默认配置，通过config对象即可对缓存进行自定义配置
-        RedisCacheConfiguration config = RedisCacheConfiguration.defaultCacheConfig();
-        // 设置缓存的默认过期时间，也是使用Duration设置
-        // 过期时间5分钟
-        config = config.entryTtl(Duration.ofMinutes(5));
-
-        // 设置一个初始化的缓存空间set集合
-        Set<String> cacheNames =  new HashSet<>();
-        cacheNames.add("my-redis-cache1");
-        cacheNames.add("my-redis-cache2");
+    public CacheManager cacheManager(RedisConnectionFactory factory,
+                                     RedisTemplate redisTemplate,
+                                     RedisMessageListenerContainer redisMessageListenerContainer,
+                                     SpringBootPlusCacheProperties cacheProperties,
+                                     CodecRedisSerializer redisValueSerializer) {
+        // 默认配置，未配置的缓存使用默认配置
+        RedisCacheConfiguration defaultConfig = redisCacheConfiguration(cacheProperties.getDefaultConfig(), cacheProperties, redisValueSerializer);
 
         // 对每个缓存空间应用不同的配置
-        Map<String, RedisCacheConfiguration> configMap = new HashMap<>(10);
-        configMap.put("my-redis-cache1", config);
-        configMap.put("my-redis-cache2", config.entryTtl(Duration.ofSeconds(120)));
+        Map<String, RedisCacheConfiguration> configMap = new HashMap<>(16);
+        for (String cacheName : cacheProperties.getCaches().keySet()) {
+            configMap.put(cacheName, redisCacheConfiguration(cacheProperties.getCacheConfig(cacheName), cacheProperties, redisValueSerializer));
+        }
 
-        // 使用自定义的缓存配置初始化一个cacheManager
-        RedisCacheManager cacheManager = RedisCacheManager.builder(factory)
-                // 注意这两句的调用顺序，一定要先调用该方法设置初始化的缓存名，再初始化相关的配置
-                .initialCacheNames(cacheNames)
-                .withInitialCacheConfigurations(configMap)
-                .build();
+        RedisCacheManager.RedisCacheManagerBuilder builder = RedisCacheManager.builder(factory)
+                .cacheDefaults(defaultConfig)
+                .withInitialCacheConfigurations(configMap);
+        if (!cacheProperties.isDynamic()) {
+            builder.disableCreateOnMissingCache();
+        }
+        RedisCacheManager redisCacheManager = builder.build();
+        // 不作为Bean注册，手动初始化缓存配置
+        redisCacheManager.afterPropertiesSet();
+
+        // 不启用本地缓存时只使用Redis缓存
+        if (!cacheProperties.isEnable()) {
+            return redisCacheManager;
+        }
+        return new TwoLevelCacheManager(redisCacheManager, redisTemplate, redisMessageListenerContainer, cacheProperties);
+    }
 
-        return cacheManager;
+    private RedisCacheConfiguration redisCacheConfiguration(SpringBootPlusCacheProperties.CacheConfig cacheConfig,
+                                                            SpringBootPlusCacheProperties cacheProperties,
+                                                            CodecRedisSerializer redisValueSerializer) {
+        // Redis有效时间包含陈旧值时间，逻辑过期时间保存在CacheEntry中
+        long ttlSecond = cacheConfig.getExpireSecond();
+        if (ttlSecond > 0 && cacheProperties.isEnable()) {
+            ttlSecond += cacheConfig.getStaleSecond();
+        }
+        // 缓存值与RedisTemplate使用相同的序列化器，兼容读取原JDK序列化的缓存
+        RedisCacheConfiguration config = RedisCacheConfiguration.defaultCacheConfig()
+                .entryTtl(Duration.ofSeconds(ttlSecond))
+                .serializeValuesWith(RedisSerializationContext.SerializationPair.fromSerializer(redisValueSerializer));
+        if (!cacheProperties.isAllowNullValues()) {
+            config = config.disableCachingNullValues();
+        }
+        return config;
     }
 
 }
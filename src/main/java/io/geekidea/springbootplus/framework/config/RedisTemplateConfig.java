@@ -16,12 +16,26 @@
 
 package io.geekidea.springbootplus.framework.config;
 
+import io.geekidea.springbootplus.framework.core.properties.SpringBootPlusHotKeyProperties;
+import io.geekidea.springbootplus.framework.core.properties.SpringBootPlusRedisCodecProperties;
+import io.geekidea.springbootplus.framework.redis.codec.CodecRedisSerializer;
+import io.geekidea.springbootplus.framework.redis.codec.RedisClassRegistry;
+import io.geekidea.springbootplus.framework.redis.codec.RedisValueCodec;
+import io.geekidea.springbootplus.framework.redis.codec.SmileRedisValueCodec;
+import io.geekidea.springbootplus.framework.redis.hotkey.HotKeyDetector;
+import io.geekidea.springbootplus.framework.redis.hotkey.HotKeyRedisTemplate;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.data.redis.connection.RedisConnectionFactory;
 import org.springframework.data.redis.core.RedisTemplate;
-import org.springframework.data.redis.serializer.GenericJackson2JsonRedisSerializer;
 import org.springframework.data.redis.serializer.StringRedisSerializer;
+import org.springframework.util.ClassUtils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
 
 /**
  * <p>
@@ -33,30 +47,58 @@ import org.springframework.data.redis.serializer.StringRedisSerializer;
 @Configuration
 public class RedisTemplateConfig {
 
+    /**
+     * 框架保留的类型id上限
+     */
+    private static final int RESERVED_CLASS_ID = 99;
+
     @Bean
-    public RedisTemplate<Object, Object> redisTemplate(RedisConnectionFactory redisConnectionFactory) {
-        RedisTemplate<Object, Object> redisTemplate = new RedisTemplate<>();
+    public RedisTemplate<Object, Object> redisTemplate(RedisConnectionFactory redisConnectionFactory,
+                                                       CodecRedisSerializer redisValueSerializer,
+                                                       SpringBootPlusHotKeyProperties hotKeyProperties,
+                                                       HotKeyDetector hotKeyDetector) {
+        // 启用热点key检测时，热点key的值读取优先使用本地副本
+        RedisTemplate<Object, Object> redisTemplate = hotKeyProperties.isEnable()
+                ? new HotKeyRedisTemplate(hotKeyDetector) : new RedisTemplate<>();
         redisTemplate.setConnectionFactory(redisConnectionFactory);
 
         // 自定义的string序列化器和fastjson序列化器
         StringRedisSerializer stringRedisSerializer = new StringRedisSerializer();
 
-        // jackson 序列化器
-        GenericJackson2JsonRedisSerializer jsonRedisSerializer = new GenericJackson2JsonRedisSerializer();
-
         // fastjson 序列化器
 //        GenericFastJsonRedisSerializer jsonRedisSerializer = new GenericFastJsonRedisSerializer();
 
-        // kv 序列化
+        // kv 序列化，值默认使用JSON编码，可通过redis-codec.codec切换为Smile二进制编码，兼容读取原jackson序列化器写入的JSON
         redisTemplate.setKeySerializer(stringRedisSerializer);
-        redisTemplate.setValueSerializer(jsonRedisSerializer);
+        redisTemplate.setValueSerializer(redisValueSerializer);
 
         // hash 序列化
         redisTemplate.setHashKeySerializer(stringRedisSerializer);
-        redisTemplate.setHashValueSerializer(jsonRedisSerializer);
+        redisTemplate.setHashValueSerializer(redisValueSerializer);
 
         redisTemplate.afterPropertiesSet();
 
         return redisTemplate;
     }
+
+    /**
+     * Redis值序列化器，RedisTemplate和Redis缓存共用
+     * 内置Smile编码器，注册为Bean的RedisValueCodec同样可用
+     */
+    @Bean
+    public CodecRedisSerializer redisValueSerializer(SpringBootPlusRedisCodecProperties redisCodecProperties,
+                                                     ObjectProvider<RedisValueCodec> redisValueCodecProvider) throws ClassNotFoundException {
+        RedisClassRegistry redisClassRegistry = RedisClassRegistry.defaults();
+        for (Map.Entry<Integer, String> entry : redisCodecProperties.getClassIds().entrySet()) {
+            if (entry.getKey() <= RESERVED_CLASS_ID) {
+                throw new IllegalArgumentException("自定义类型id需大于" + RESERVED_CLASS_ID + ",id:" + entry.getKey());
+            }
+            redisClassRegistry.register(entry.getKey(), ClassUtils.forName(entry.getValue(), ClassUtils.getDefaultClassLoader()));
+        }
+        List<RedisValueCodec> codecs = new ArrayList<>();
+        codecs.add(new SmileRedisValueCodec(redisClassRegistry));
+        codecs.addAll(redisValueCodecProvider.orderedStream().collect(Collectors.toList()));
+        return new CodecRedisSerializer(codecs, redisCodecProperties.getCodec(), redisCodecProperties.getCompressThreshold());
+    }
+
 }
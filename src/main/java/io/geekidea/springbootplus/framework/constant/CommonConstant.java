@@ -48,6 +48,21 @@ public interface CommonConstant {
      */
     String JWT_USERNAME = "username";
 
+    /**
+     * JWT角色id，无状态授权模式使用
+     */
+    String JWT_ROLE_ID = "rid";
+
+    /**
+     * JWT角色版本号，无状态授权模式使用
+     */
+    String JWT_ROLE_VERSION = "rv";
+
+    /**
+     * JWT权限id位图，无状态授权模式使用
+     */
+    String JWT_PERMISSIONS = "pms";
+
     /**
      * JWT刷新新token响应状态码
      */
@@ -26,27 +26,147 @@ package io.geekidea.springbootplus.framework.constant;
 public interface CommonRedisKey {
 
     /**
-     * 登陆用户token信息key
+     * 登陆会话hash key，包含token信息和登陆用户信息
+     */
+    String LOGIN_SESSION = "login:session:%s";
+
+    /**
+     * 登陆用户token信息key，旧版本key，仅用于迁移
      */
     String LOGIN_TOKEN = "login:token:%s";
 
     /**
-     * 登陆用户信息key
+     * 登陆用户信息key，旧版本key，仅用于迁移
      */
     String LOGIN_USER = "login:user:%s";
 
     /**
-     * 登陆用户盐值信息key
+     * 登陆用户盐值信息key，旧版本key，仅用于迁移
      */
     String LOGIN_SALT= "login:salt:%s";
 
     /**
-     * 登陆用户username token
+     * 登陆用户username token，旧版本key，仅用于迁移
      */
     String LOGIN_USER_TOKEN = "login:user:token:%s:%s";
 
+    /**
+     * 登陆用户会话索引zset key，member为tokenMd5，score为会话过期时间戳
+     */
+    String LOGIN_USER_SESSIONS = "login:user:sessions:%s";
+
+    /**
+     * 角色会话索引zset key，member为tokenMd5，score为会话过期时间戳，用于批量删除或刷新角色所有会话
+     */
+    String LOGIN_ROLE_SESSIONS = "login:role:sessions:%s";
+
+    /**
+     * 部门会话索引zset key，member为tokenMd5，score为会话过期时间戳，用于批量删除或刷新部门所有会话
+     */
+    String LOGIN_DEPARTMENT_SESSIONS = "login:department:sessions:%s";
+
+    /**
+     * 角色权限key，每个角色一份RolePermissionRedisVo，登陆会话中只保存角色id和权限版本号
+     */
+    String LOGIN_ROLE_PERMISSIONS = "login:role:permissions:%s";
+
+    /**
+     * 角色权限已写入的修订号key，与角色权限key一起通过脚本写入，修订号不大于已写入的修订号时不再写入
+     */
+    String LOGIN_ROLE_PERMISSIONS_WRITTEN = "login:role:permissions:written:%s";
+
+    /**
+     * 角色权限修订号key，角色权限变更时递增
+     */
+    String LOGIN_ROLE_PERMISSIONS_REVISION = "login:role:permissions:revision:%s";
+
+    /**
+     * 刷新token记录key，旧tokenMd5 --> 新token，过期时间为刷新宽限时间
+     */
+    String LOGIN_REFRESH = "login:refresh:%s";
+
+    /**
+     * 已注销token jti zset key，score为token过期时间戳
+     */
+    String LOGIN_REVOKED = "login:revoked";
+
+    /**
+     * 已注销token jti zset key，score为注销时间戳，各节点按注销时间增量加载
+     */
+    String LOGIN_REVOKED_TIME = "login:revoked:time";
+
+    /**
+     * 已注销token通知频道
+     */
+    String LOGIN_REVOKED_CHANNEL = "login:revoked:notify";
+
+    /**
+     * 用户角色或状态变更时间zset key，member为username，score为变更时间戳
+     */
+    String LOGIN_USER_CHANGED = "login:user:changed";
+
+    /**
+     * 在线用户zset key，member为username，score为最后访问时间戳
+     */
+    String LOGIN_ONLINE = "login:online";
+
+    /**
+     * 去重访问用户HyperLogLog key，m:yyyyMMddHHmm/h:yyyyMMddHH/d:yyyyMMdd
+     */
+    String LOGIN_ONLINE_UNIQUE = "login:online:uv:%s";
+
+    /**
+     * 登陆限流令牌桶hash key，u:username/i:ip
+     */
+    String LOGIN_THROTTLE_BUCKET = "login:throttle:bucket:%s";
+
+    /**
+     * 登陆失败次数key，u:username@ip，过期时间为失败次数统计时间
+     */
+    String LOGIN_THROTTLE_FAILURE = "login:throttle:failure:%s";
+
+    /**
+     * 用户名锁定key，u:username@ip，过期时间为锁定时间
+     */
+    String LOGIN_THROTTLE_LOCK = "login:throttle:lock:%s";
+
+    /**
+     * 用户名锁定次数key，u:username@ip，用于锁定时间指数退避
+     */
+    String LOGIN_THROTTLE_LOCK_COUNT = "login:throttle:lock:count:%s";
+
+    /**
+     * 登陆会话本地缓存失效通知频道
+     */
+    String LOGIN_SESSION_CHANNEL = "login:session:invalidate";
+
+    /**
+     * 授权信息失效通知频道
+     */
+    String SHIRO_AUTHORIZATION_CHANNEL = "shiro:authorization:invalidate";
+
+    /**
+     * 二级缓存本地缓存失效通知频道
+     */
+    String CACHE_INVALIDATE_CHANNEL = "cache:invalidate";
+
+    /**
+     * 二级缓存加载锁，cacheName，key
+     */
+    String CACHE_LEASE = "cache:lease:%s:%s";
+
+    /**
+     * 部门角色目录变更通知频道
+     */
+    String SYS_DIRECTORY_CHANNEL = "sys:directory:changed";
+
     /**
      * 验证码
      */
     String VERIFY_CODE = "verify.code:%s";
+
+    /**
+     * 已使用的无状态验证码token，防重放，过期时间为token剩余有效时间
+     */
+    String VERIFY_CODE_USED = "verify.code.used:%s";
 }
@@ -35,7 +35,10 @@ import org.springframework.context.annotation.Configuration;
         SpringBootPlusCorsProperties.class,
         SpringBootPlusFilterProperties.class,
         SpringBootPlusInterceptorProperties.class,
-        SpringBootPlusAopProperties.class
+        SpringBootPlusAopProperties.class,
+        SpringBootPlusCacheProperties.class,
+        SpringBootPlusRedisCodecProperties.class,
+        SpringBootPlusHotKeyProperties.class
 })
 public class SpringBootPlusConfig {
 
@@ -0,0 +1,149 @@
+/*
+ * Copyright 2019-2029 geekidea(https://github.com/geekidea)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.geekidea.springbootplus.framework.core.properties;
+
+import lombok.Data;
+import lombok.experimental.Accessors;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.NestedConfigurationProperty;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * 二级缓存配置属性
+ * 一级缓存为本地缓存，二级缓存为Redis，每个缓存可单独配置，未配置的属性使用默认配置
+ *
+ * @author geekidea
+ * @date 2020-03-30
+ * @since 1.5.0.RELEASE
+ **/
+@Data
+@ConfigurationProperties(prefix = "spring-boot-plus.cache")
+public class SpringBootPlusCacheProperties {
+
+    /**
+     * 是否启用本地一级缓存，默认启用，不启用时只使用Redis缓存
+     */
+    private boolean enable = true;
+
+    /**
+     * 是否缓存null值，默认缓存，避免缓存穿透
+     */
+    private boolean allowNullValues = true;
+
+    /**
+     * 是否允许使用未配置的缓存名称，使用默认配置创建缓存
+     */
+    private boolean dynamic = true;
+
+    /**
+     * 后台刷新缓存的线程数，用于陈旧值刷新和提前刷新
+     */
+    private int refreshThreads = 4;
+
+    /**
+     * 缓存key长度超过该值时，参数部分使用哈希值，小于等于0不哈希，key格式见CompiledKeyGenerator
+     */
+    private int keyHashThreshold = 0;
+
+    /**
+     * 默认配置
+     */
+    @NestedConfigurationProperty
+    private CacheConfig defaultConfig = new CacheConfig()
+            .setLocalEnable(true)
+            .setLocalMaximumSize(10000L)
+            .setLocalExpireSecond(60L)
+            .setExpireSecond(300L)
+            .setStaleSecond(0L)
+            .setEarlyRefreshBeta(1.0)
+            .setLeaseMillis(3000L);
+
+    /**
+     * 各缓存配置，cacheName --> 配置
+     */
+    private Map<String, CacheConfig> caches = new LinkedHashMap<>();
+
+    /**
+     * 获取缓存配置，未配置的属性使用默认配置
+     *
+     * @param cacheName
+     * @return 未配置该缓存并且不允许动态创建时返回null
+     */
+    public CacheConfig getCacheConfig(String cacheName) {
+        CacheConfig cacheConfig = caches.get(cacheName);
+        if (cacheConfig == null) {
+            return dynamic ? defaultConfig : null;
+        }
+        return new CacheConfig()
+                .setLocalEnable(cacheConfig.getLocalEnable() != null ? cacheConfig.getLocalEnable() : defaultConfig.getLocalEnable())
+                .setLocalMaximumSize(cacheConfig.getLocalMaximumSize() != null ? cacheConfig.getLocalMaximumSize() : defaultConfig.getLocalMaximumSize())
+                .setLocalExpireSecond(cacheConfig.getLocalExpireSecond() != null ? cacheConfig.getLocalExpireSecond() : defaultConfig.getLocalExpireSecond())
+                .setExpireSecond(cacheConfig.getExpireSecond() != null ? cacheConfig.getExpireSecond() : defaultConfig.getExpireSecond())
+                .setStaleSecond(cacheConfig.getStaleSecond() != null ? cacheConfig.getStaleSecond() : defaultConfig.getStaleSecond())
+                .setEarlyRefreshBeta(cacheConfig.getEarlyRefreshBeta() != null ? cacheConfig.getEarlyRefreshBeta() : defaultConfig.getEarlyRefreshBeta())
+                .setLeaseMillis(cacheConfig.getLeaseMillis() != null ? cacheConfig.getLeaseMillis() : defaultConfig.getLeaseMillis());
+    }
+
+    @Data
+    @Accessors(chain = true)
+    public static class CacheConfig {
+
+        /**
+         * 是否启用本地一级缓存
+         */
+        private Boolean localEnable;
+
+        /**
+         * 本地缓存最大数量
+         */
+        private Long localMaximumSize;
+
+        /**
+         * 本地缓存有效时间，单位：秒，应小于Redis缓存有效时间
+         * 发布订阅消息丢失时，为缓存变更的最大感知延迟
+         */
+        private Long localExpireSecond;
+
+        /**
+         * Redis缓存有效时间，单位：秒，0表示不过期
+         */
+        private Long expireSecond;
+
+        /**
+         * 过期后仍可使用陈旧值的时间，单位：秒，0表示不使用陈旧值
+         * Redis缓存实际有效时间为expireSecond + staleSecond，该时间内读取时返回陈旧值并在后台刷新
+         * 只对@Cacheable(sync = true)生效
+         */
+        private Long staleSecond;
+
+        /**
+         * 概率提前刷新(XFetch)系数，越大越早刷新，0表示不提前刷新
+         * 过期前按加载耗时 * 系数 * -ln(random)的概率在后台提前刷新，只对@Cacheable(sync = true)生效
+         */
+        private Double earlyRefreshBeta;
+
+        /**
+         * 加载锁有效时间，单位：毫秒，多个节点同时未命中时只有获取到锁的节点加载，
+         * 其他节点等待加载结果，超过该时间后自行加载，0表示不使用加载锁
+         */
+        private Long leaseMillis;
+
+    }
+
+}
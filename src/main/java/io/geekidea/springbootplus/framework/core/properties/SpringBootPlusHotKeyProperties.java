@@ -0,0 +1,80 @@
+/*
+ * Copyright 2019-2029 geekidea(https://github.com/geekidea)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.geekidea.springbootplus.framework.core.properties;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Redis热点key配置属性
+ * 统计RedisTemplate值读取的访问次数，访问次数达到阈值的key复制到本地短时缓存
+ * 本地副本在其他节点写入后最多读取到replicaExpireMillis的旧值，默认关闭，
+ * 启用后只有keyPrefixes中配置的key参与统计和复制
+ *
+ * @author geekidea
+ * @date 2020-03-30
+ * @since 1.5.0.RELEASE
+ **/
+@Data
+@ConfigurationProperties(prefix = "spring-boot-plus.hot-key")
+public class SpringBootPlusHotKeyProperties {
+
+    /**
+     * 是否启用
+     */
+    private boolean enable = false;
+
+    /**
+     * 允许复制到本地的key前缀，为空时不复制任何key
+     * 只配置可以接受短时读取旧值的key，刷新token、角色权限版本号、验证码等key不能配置
+     */
+    private List<String> keyPrefixes = new ArrayList<>();
+
+    /**
+     * 统计窗口时间，每个窗口结束时重新计算热点key，单位：毫秒
+     */
+    private long windowMillis = 1000;
+
+    /**
+     * 热点阈值，单个节点一个统计窗口内的读取次数不小于该值时为热点key
+     */
+    private long threshold = 200;
+
+    /**
+     * 最大热点key数量，超过时保留读取次数最多的key
+     */
+    private int topK = 32;
+
+    /**
+     * 热点key本地副本有效时间，为其他节点写入后本节点的最大感知延迟，单位：毫秒
+     */
+    private long replicaExpireMillis = 1000;
+
+    /**
+     * Count-Min Sketch每行计数器数量，向上取整为2的幂
+     */
+    private int sketchWidth = 4096;
+
+    /**
+     * Count-Min Sketch行数
+     */
+    private int sketchDepth = 4;
+
+}
@@ -47,6 +47,12 @@ public class SpringBootPlusProperties {
      */
     private boolean enableVerifyCode;
 
+    /**
+     * 验证码配置
+     */
+    @NestedConfigurationProperty
+    private SpringBootPlusVerifyCodeProperties verifyCode = new SpringBootPlusVerifyCodeProperties();
+
     /**
      * 实现BaseEnum接口的枚举包
      */
@@ -0,0 +1,53 @@
+/*
+ * Copyright 2019-2029 geekidea(https://github.com/geekidea)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.geekidea.springbootplus.framework.core.properties;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Redis值编码配置属性
+ *
+ * @author geekidea
+ * @date 2020-03-30
+ * @since 1.5.0.RELEASE
+ **/
+@Data
+@ConfigurationProperties(prefix = "spring-boot-plus.redis-codec")
+public class SpringBootPlusRedisCodecProperties {
+
+    /**
+     * 写入使用的编码器名称，默认json
+     * json：原GenericJackson2JsonRedisSerializer格式，滚动升级时保持json，所有节点升级后再切换为smile
+     * 读取时始终兼容原JSON格式和所有已注册的编码器
+     */
+    private String codec = "json";
+
+    /**
+     * 压缩阈值，编码后的字节数不小于该值时压缩，小于等于0不压缩，默认1024
+     */
+    private int compressThreshold = 1024;
+
+    /**
+     * 自定义注册类型，类型id --> 全限定类名，类型id需大于99，已使用的id不能修改或复用
+     */
+    private Map<Integer, String> classIds = new LinkedHashMap<>();
+
+}
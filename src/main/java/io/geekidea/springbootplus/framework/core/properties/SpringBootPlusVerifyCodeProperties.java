@@ -0,0 +1,60 @@
+/*
+ * Copyright 2019-2029 geekidea(https://github.com/geekidea)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.geekidea.springbootplus.framework.core.properties;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+/**
+ * 验证码配置属性
+ *
+ * @author geekidea
+ * @date 2020-03-30
+ * @since 1.5.0.RELEASE
+ **/
+@Data
+@ConfigurationProperties(prefix = "spring-boot-plus.verify-code")
+public class SpringBootPlusVerifyCodeProperties {
+
+    /**
+     * 验证码存储方式
+     * redis：验证码缓存到Redis，默认
+     * stateless：验证码token为带过期时间的签名，获取验证码不访问Redis
+     */
+    private String store = "redis";
+
+    /**
+     * 验证码有效时间，单位：秒，默认5分钟
+     */
+    private long expireSecond = 300;
+
+    /**
+     * stateless模式签名密钥，为空时使用随机密钥，多节点部署时必须配置相同的密钥
+     */
+    private String secret;
+
+    /**
+     * stateless模式本地防重放缓存最大数量
+     */
+    private long replayCacheSize = 100000;
+
+    /**
+     * stateless模式是否使用Redis防重放，本地防重放缓存只在当前节点有效，多节点部署时开启
+     */
+    private boolean replayRedis = true;
+
+}
@@ -0,0 +1,224 @@
+/*
+ * Copyright 2019-2029 geekidea(https://github.com/geekidea)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.geekidea.springbootplus.framework.redis.codec;
+
+import org.springframework.cache.support.NullValue;
+import org.springframework.data.redis.serializer.GenericJackson2JsonRedisSerializer;
+import org.springframework.data.redis.serializer.JdkSerializationRedisSerializer;
+import org.springframework.data.redis.serializer.RedisSerializer;
+import org.springframework.data.redis.serializer.SerializationException;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Redis值序列化器
+ * 格式：0xFE + 编码器id + 标记 [+ 压缩前长度] + 编码后的值，超过压缩阈值并且压缩后更小时使用Deflater压缩
+ * 字符串、数字、布尔值仍然使用JSON，保证Lua脚本参数、zset成员、计数器与原格式一致
+ * 读取时兼容原GenericJackson2JsonRedisSerializer写入的JSON和JdkSerializationRedisSerializer写入的缓存
+ *
+ * @author geekidea
+ * @date 2020-03-30
+ * @since 1.5.0.RELEASE
+ **/
+public class CodecRedisSerializer implements RedisSerializer<Object> {
+
+    /**
+     * 原JSON格式的编码器名称
+     */
+    public static final String JSON_CODEC_NAME = "json";
+
+    private static final byte MAGIC = (byte) 0xFE;
+
+    private static final int HEADER_LENGTH = 3;
+
+    private static final int LENGTH_BYTES = 4;
+
+    private static final byte FLAG_DEFLATE = 1;
+
+    private static final byte FLAG_NULL_VALUE = 2;
+
+    private static final byte[] EMPTY_ARRAY = new byte[0];
+
+    private static final ThreadLocal<Deflater> DEFLATER = ThreadLocal.withInitial(() -> new Deflater(Deflater.BEST_SPEED));
+
+    private static final ThreadLocal<Inflater> INFLATER = ThreadLocal.withInitial(Inflater::new);
+
+    private final GenericJackson2JsonRedisSerializer jsonSerializer = new GenericJackson2JsonRedisSerializer();
+
+    private final JdkSerializationRedisSerializer jdkSerializer = new JdkSerializationRedisSerializer();
+
+    /**
+     * 写入使用的编码器，为null时写入原JSON格式
+     */
+    private final RedisValueCodec codec;
+
+    /**
+     * 读取使用的编码器，id --> 编码器
+     */
+    private final Map<Byte, RedisValueCodec> codecMap = new HashMap<>();
+
+    /**
+     * 压缩阈值，编码后的字节数不小于该值时压缩，小于等于0不压缩
+     */
+    private final int compressThreshold;
+
+    public CodecRedisSerializer(Collection<RedisValueCodec> codecs, String codecName, int compressThreshold) {
+        RedisValueCodec writeCodec = null;
+        for (RedisValueCodec redisValueCodec : codecs) {
+            RedisValueCodec registeredCodec = codecMap.putIfAbsent(redisValueCodec.getId(), redisValueCodec);
+            if (registeredCodec != null) {
+                throw new IllegalArgumentException("Redis值编码器id重复,id:" + redisValueCodec.getId()
+                        + "," + registeredCodec.getName() + "," + redisValueCodec.getName());
+            }
+            if (redisValueCodec.getName().equals(codecName)) {
+                writeCodec = redisValueCodec;
+            }
+        }
+        if (writeCodec == null && !JSON_CODEC_NAME.equals(codecName)) {
+            throw new IllegalArgumentException("Redis值编码器不存在:" + codecName);
+        }
+        this.codec = writeCodec;
+        this.compressThreshold = compressThreshold;
+    }
+
+    @Override
+    public byte[] serialize(Object value) throws SerializationException {
+        if (value == null) {
+            return EMPTY_ARRAY;
+        }
+        if (codec == null || isScalar(value)) {
+            return jsonSerializer.serialize(value);
+        }
+        if (value instanceof NullValue) {
+            return new byte[]{MAGIC, codec.getId(), FLAG_NULL_VALUE};
+        }
+        byte[] encoded;
+        try {
+            encoded = codec.encode(value);
+        } catch (Exception e) {
+            throw new SerializationException("Redis值编码失败:" + e.getMessage(), e);
+        }
+        if (compressThreshold > 0 && encoded.length >= compressThreshold) {
+            byte[] compressed = deflate(encoded);
+            if (compressed != null) {
+                return compressed;
+            }
+        }
+        byte[] bytes = new byte[HEADER_LENGTH + encoded.length];
+        bytes[0] = MAGIC;
+        bytes[1] = codec.getId();
+        System.arraycopy(encoded, 0, bytes, HEADER_LENGTH, encoded.length);
+        return bytes;
+    }
+
+    @Override
+    public Object deserialize(byte[] bytes) throws SerializationException {
+        if (bytes == null || bytes.length == 0) {
+            return null;
+        }
+        if (bytes[0] != MAGIC) {
+            // 原格式：JDK序列化以0xACED开头，否则为JSON
+            if (bytes.length > 1 && bytes[0] == (byte) 0xAC && bytes[1] == (byte) 0xED) {
+                return jdkSerializer.deserialize(bytes);
+            }
+            return jsonSerializer.deserialize(bytes);
+        }
+        if (bytes.length < HEADER_LENGTH) {
+            throw new SerializationException("Redis值格式错误");
+        }
+        RedisValueCodec redisValueCodec = codecMap.get(bytes[1]);
+        if (redisValueCodec == null) {
+            throw new SerializationException("未知的Redis值编码器,id:" + bytes[1]);
+        }
+        byte flags = bytes[2];
+        if ((flags & FLAG_NULL_VALUE) != 0) {
+            return NullValue.INSTANCE;
+        }
+        try {
+            if ((flags & FLAG_DEFLATE) != 0) {
+                byte[] inflated = inflate(bytes);
+                return redisValueCodec.decode(inflated, 0, inflated.length);
+            }
+            return redisValueCodec.decode(bytes, HEADER_LENGTH, bytes.length - HEADER_LENGTH);
+        } catch (Exception e) {
+            throw new SerializationException("Redis值解码失败:" + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * 压缩，压缩后不小于原长度时返回null
+     *
+     * @param encoded
+     * @return
+     */
+    private byte[] deflate(byte[] encoded) {
+        int prefixLength = HEADER_LENGTH + LENGTH_BYTES;
+        byte[] buffer = new byte[prefixLength + encoded.length];
+        Deflater deflater = DEFLATER.get();
+        int compressedLength;
+        try {
+            deflater.setInput(encoded);
+            deflater.finish();
+            compressedLength = deflater.deflate(buffer, prefixLength, encoded.length - LENGTH_BYTES);
+            if (!deflater.finished()) {
+                return null;
+            }
+        } finally {
+            deflater.reset();
+        }
+        buffer[0] = MAGIC;
+        buffer[1] = codec.getId();
+        buffer[2] = FLAG_DEFLATE;
+        buffer[3] = (byte) (encoded.length >>> 24);
+        buffer[4] = (byte) (encoded.length >>> 16);
+        buffer[5] = (byte) (encoded.length >>> 8);
+        buffer[6] = (byte) encoded.length;
+        byte[] bytes = new byte[prefixLength + compressedLength];
+        System.arraycopy(buffer, 0, bytes, 0, bytes.length);
+        return bytes;
+    }
+
+    private byte[] inflate(byte[] bytes) throws DataFormatException {
+        int prefixLength = HEADER_LENGTH + LENGTH_BYTES;
+        int length = ((bytes[3] & 0xFF) << 24) | ((bytes[4] & 0xFF) << 16) | ((bytes[5] & 0xFF) << 8) | (bytes[6] & 0xFF);
+        byte[] inflated = new byte[length];
+        Inflater inflater = INFLATER.get();
+        try {
+            inflater.setInput(bytes, prefixLength, bytes.length - prefixLength);
+            int inflatedLength = inflater.inflate(inflated);
+            if (inflatedLength != length || !inflater.finished()) {
+                throw new DataFormatException("解压后长度不一致");
+            }
+        } finally {
+            inflater.reset();
+        }
+        return inflated;
+    }
+
+    private static boolean isScalar(Object value) {
+        return value instanceof CharSequence
+                || value instanceof Number
+                || value instanceof Boolean
+                || value instanceof Character;
+    }
+
+}
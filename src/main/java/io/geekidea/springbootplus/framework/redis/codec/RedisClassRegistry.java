@@ -0,0 +1,107 @@
+/*
+ * Copyright 2019-2029 geekidea(https://github.com/geekidea)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.geekidea.springbootplus.framework.redis.codec;
+
+import io.geekidea.springbootplus.framework.cache.CacheEntry;
+import io.geekidea.springbootplus.framework.cache.CacheInvalidateMessage;
+import io.geekidea.springbootplus.framework.pagination.Paging;
+import io.geekidea.springbootplus.framework.shiro.vo.ClientInfo;
+import io.geekidea.springbootplus.framework.shiro.vo.JwtTokenRedisVo;
+import io.geekidea.springbootplus.framework.shiro.vo.LoginSysUserRedisVo;
+import io.geekidea.springbootplus.framework.shiro.vo.LoginSysUserVo;
+import io.geekidea.springbootplus.framework.shiro.vo.RolePermissionRedisVo;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Redis值类型注册表
+ * 已注册的类型使用数字id代替全限定类名写入Redis，未注册的类型仍然写入全限定类名
+ * 类型id写入了Redis中的数据，已使用的id不能修改或复用，1~99为框架保留
+ *
+ * @author geekidea
+ * @date 2020-03-30
+ * @since 1.5.0.RELEASE
+ **/
+public class RedisClassRegistry {
+
+    private final Map<Class<?>, Integer> idMap = new ConcurrentHashMap<>();
+
+    private final Map<Integer, Class<?>> classMap = new ConcurrentHashMap<>();
+
+    /**
+     * 框架默认注册的类型
+     *
+     * @return
+     */
+    public static RedisClassRegistry defaults() {
+        return new RedisClassRegistry()
+                .register(1, ArrayList.class)
+                .register(2, HashSet.class)
+                .register(3, LinkedHashSet.class)
+                .register(4, TreeSet.class)
+                .register(5, HashMap.class)
+                .register(6, LinkedHashMap.class)
+                .register(7, Date.class)
+                .register(20, JwtTokenRedisVo.class)
+                .register(21, LoginSysUserVo.class)
+                .register(22, LoginSysUserRedisVo.class)
+                .register(23, ClientInfo.class)
+                .register(24, RolePermissionRedisVo.class)
+                .register(25, CacheInvalidateMessage.class)
+                .register(26, Paging.class)
+                .register(27, CacheEntry.class);
+    }
+
+    /**
+     * 注册类型
+     *
+     * @param id
+     * @param clazz
+     * @return
+     */
+    public RedisClassRegistry register(int id, Class<?> clazz) {
+        if (id <= 0) {
+            throw new IllegalArgumentException("类型id必须大于0");
+        }
+        Class<?> registeredClass = classMap.putIfAbsent(id, clazz);
+        if (registeredClass != null && registeredClass != clazz) {
+            throw new IllegalArgumentException("类型id已被注册,id:" + id + ",class:" + registeredClass.getName());
+        }
+        Integer registeredId = idMap.putIfAbsent(clazz, id);
+        if (registeredId != null && registeredId != id) {
+            throw new IllegalArgumentException("类型已被注册,class:" + clazz.getName() + ",id:" + registeredId);
+        }
+        return this;
+    }
+
+    public Integer getId(Class<?> clazz) {
+        return idMap.get(clazz);
+    }
+
+    public Class<?> getClass(int id) {
+        return classMap.get(id);
+    }
+
+}
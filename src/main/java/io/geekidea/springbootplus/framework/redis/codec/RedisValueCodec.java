@@ -0,0 +1,65 @@
+/*
+ * Copyright 2019-2029 geekidea(https://github.com/geekidea)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.geekidea.springbootplus.framework.redis.codec;
+
+/**
+ * Redis值编码器
+ * 编码后的值以编码器id作为头部写入Redis，读取时根据编码器id选择编码器，
+ * 编码器id写入了Redis中的数据，已使用的id不能修改或复用
+ * 自定义编码器注册为Bean即可，通过spring-boot-plus.redis-codec.codec选择写入使用的编码器
+ *
+ * @author geekidea
+ * @date 2020-03-30
+ * @since 1.5.0.RELEASE
+ **/
+public interface RedisValueCodec {
+
+    /**
+     * 编码器id，1~127
+     *
+     * @return
+     */
+    byte getId();
+
+    /**
+     * 编码器名称
+     *
+     * @return
+     */
+    String getName();
+
+    /**
+     * 编码
+     *
+     * @param value 不为null
+     * @return
+     * @throws Exception
+     */
+    byte[] encode(Object value) throws Exception;
+
+    /**
+     * 解码
+     *
+     * @param bytes
+     * @param offset
+     * @param length
+     * @return
+     * @throws Exception
+     */
+    Object decode(byte[] bytes, int offset, int length) throws Exception;
+
+}
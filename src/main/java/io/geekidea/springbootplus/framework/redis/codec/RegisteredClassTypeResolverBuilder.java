@@ -0,0 +1,102 @@
+/*
+ * Copyright 2019-2029 geekidea(https://github.com/geekidea)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.geekidea.springbootplus.framework.redis.codec;
+
+import com.fasterxml.jackson.annotation.JsonTypeInfo;
+import com.fasterxml.jackson.databind.DatabindContext;
+import com.fasterxml.jackson.databind.JavaType;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.cfg.MapperConfig;
+import com.fasterxml.jackson.databind.jsontype.NamedType;
+import com.fasterxml.jackson.databind.jsontype.PolymorphicTypeValidator;
+import com.fasterxml.jackson.databind.jsontype.TypeIdResolver;
+import com.fasterxml.jackson.databind.jsontype.impl.ClassNameIdResolver;
+import com.fasterxml.jackson.databind.jsontype.impl.LaissezFaireSubTypeValidator;
+import com.fasterxml.jackson.databind.type.TypeFactory;
+
+import java.io.IOException;
+import java.util.Collection;
+
+/**
+ * 默认类型信息构建器，与GenericJackson2JsonRedisSerializer一致为非final类型写入@class，
+ * 已注册的类型写入#id，未注册的类型写入全限定类名
+ *
+ * @author geekidea
+ * @date 2020-03-30
+ * @since 1.5.0.RELEASE
+ **/
+public class RegisteredClassTypeResolverBuilder extends ObjectMapper.DefaultTypeResolverBuilder {
+
+    private static final long serialVersionUID = 2967412367012394839L;
+
+    private static final String ID_PREFIX = "#";
+
+    private final transient RedisClassRegistry redisClassRegistry;
+
+    public RegisteredClassTypeResolverBuilder(RedisClassRegistry redisClassRegistry) {
+        super(ObjectMapper.DefaultTyping.NON_FINAL, LaissezFaireSubTypeValidator.instance);
+        this.redisClassRegistry = redisClassRegistry;
+        init(JsonTypeInfo.Id.CLASS, null);
+        inclusion(JsonTypeInfo.As.PROPERTY);
+        typeProperty("@class");
+    }
+
+    @Override
+    protected TypeIdResolver idResolver(MapperConfig<?> config, JavaType baseType, PolymorphicTypeValidator subtypeValidator,
+                                        Collection<NamedType> subtypes, boolean forSer, boolean forDeser) {
+        return new RegisteredClassIdResolver(baseType, config.getTypeFactory(), subtypeValidator, redisClassRegistry);
+    }
+
+    private static class RegisteredClassIdResolver extends ClassNameIdResolver {
+
+        private final RedisClassRegistry redisClassRegistry;
+
+        RegisteredClassIdResolver(JavaType baseType, TypeFactory typeFactory, PolymorphicTypeValidator polymorphicTypeValidator,
+                                  RedisClassRegistry redisClassRegistry) {
+            super(baseType, typeFactory, polymorphicTypeValidator);
+            this.redisClassRegistry = redisClassRegistry;
+        }
+
+        @Override
+        public String idFromValue(Object value) {
+            return idFromValueAndType(value, value.getClass());
+        }
+
+        @Override
+        public String idFromValueAndType(Object value, Class<?> type) {
+            Integer id = redisClassRegistry.getId(type);
+            if (id != null) {
+                return ID_PREFIX + id;
+            }
+            return super.idFromValueAndType(value, type);
+        }
+
+        @Override
+        public JavaType typeFromId(DatabindContext context, String id) throws IOException {
+            if (id.startsWith(ID_PREFIX)) {
+                Class<?> clazz = redisClassRegistry.getClass(Integer.parseInt(id.substring(ID_PREFIX.length())));
+                if (clazz == null) {
+                    throw new IllegalArgumentException("未注册的类型id:" + id);
+                }
+                return context.getTypeFactory().constructSpecializedType(_baseType, clazz);
+            }
+            return super.typeFromId(context, id);
+        }
+
+    }
+
+}
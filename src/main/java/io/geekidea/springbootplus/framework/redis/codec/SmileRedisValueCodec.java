@@ -0,0 +1,70 @@
+/*
+ * Copyright 2019-2029 geekidea(https://github.com/geekidea)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.geekidea.springbootplus.framework.redis.codec;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+
+/**
+ * Smile二进制编码器
+ * Smile为Jackson的二进制JSON格式，重复的属性名只写入一次，
+ * 类型信息使用RedisClassRegistry中注册的id，不写入null属性
+ *
+ * @author geekidea
+ * @date 2020-03-30
+ * @since 1.5.0.RELEASE
+ **/
+public class SmileRedisValueCodec implements RedisValueCodec {
+
+    public static final byte ID = 2;
+
+    public static final String NAME = "smile";
+
+    private final ObjectMapper objectMapper;
+
+    public SmileRedisValueCodec(RedisClassRegistry redisClassRegistry) {
+        this.objectMapper = new ObjectMapper(new SmileFactory());
+        this.objectMapper.configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+        this.objectMapper.configure(SerializationFeature.FAIL_ON_EMPTY_BEANS, false);
+        this.objectMapper.setSerializationInclusion(JsonInclude.Include.NON_NULL);
+        this.objectMapper.setDefaultTyping(new RegisteredClassTypeResolverBuilder(redisClassRegistry));
+    }
+
+    @Override
+    public byte getId() {
+        return ID;
+    }
+
+    @Override
+    public String getName() {
+        return NAME;
+    }
+
+    @Override
+    public byte[] encode(Object value) throws Exception {
+        return objectMapper.writeValueAsBytes(value);
+    }
+
+    @Override
+    public Object decode(byte[] bytes, int offset, int length) throws Exception {
+        return objectMapper.readValue(bytes, offset, length, Object.class);
+    }
+
+}
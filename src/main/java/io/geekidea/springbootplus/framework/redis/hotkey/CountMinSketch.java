@@ -0,0 +1,96 @@
+/*
+ * Copyright 2019-2029 geekidea(https://github.com/geekidea)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.geekidea.springbootplus.framework.redis.hotkey;
+
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hashing;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Count-Min Sketch
+ * 固定内存的频率估计，depth行width列计数器，每个key在每行映射一个计数器，
+ * 估计值取各行计数器的最小值，只会高估不会低估
+ *
+ * @author geekidea
+ * @date 2020-03-30
+ * @since 1.5.0.RELEASE
+ **/
+public class CountMinSketch {
+
+    private static final HashFunction HASH_FUNCTION = Hashing.murmur3_128();
+
+    private final int depth;
+
+    private final int width;
+
+    private final int mask;
+
+    private final AtomicLongArray table;
+
+    public CountMinSketch(int depth, int width) {
+        this.depth = Math.max(depth, 1);
+        this.width = Integer.highestOneBit(Math.max(width, 2) - 1) << 1;
+        this.mask = this.width - 1;
+        this.table = new AtomicLongArray(this.depth * this.width);
+    }
+
+    /**
+     * 增加一次访问
+     *
+     * @param key
+     * @return 增加后的估计次数
+     */
+    public long add(String key) {
+        long hash = HASH_FUNCTION.hashString(key, StandardCharsets.UTF_8).asLong();
+        int hash1 = (int) hash;
+        int hash2 = (int) (hash >>> 32);
+        long min = Long.MAX_VALUE;
+        for (int i = 0; i < depth; i++) {
+            min = Math.min(min, table.incrementAndGet(i * width + ((hash1 + i * hash2) & mask)));
+        }
+        return min;
+    }
+
+    /**
+     * 估计访问次数
+     *
+     * @param key
+     * @return
+     */
+    public long estimate(String key) {
+        long hash = HASH_FUNCTION.hashString(key, StandardCharsets.UTF_8).asLong();
+        int hash1 = (int) hash;
+        int hash2 = (int) (hash >>> 32);
+        long min = Long.MAX_VALUE;
+        for (int i = 0; i < depth; i++) {
+            min = Math.min(min, table.get(i * width + ((hash1 + i * hash2) & mask)));
+        }
+        return min;
+    }
+
+    /**
+     * 清空计数，清空期间的访问可能部分丢失
+     */
+    public void reset() {
+        for (int i = 0; i < table.length(); i++) {
+            table.set(i, 0);
+        }
+    }
+
+}
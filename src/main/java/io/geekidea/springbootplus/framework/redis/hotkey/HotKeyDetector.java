@@ -0,0 +1,296 @@
+/*
+ * Copyright 2019-2029 geekidea(https://github.com/geekidea)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.geekidea.springbootplus.framework.redis.hotkey;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import io.geekidea.springbootplus.framework.core.properties.SpringBootPlusHotKeyProperties;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+
+/**
+ * Redis热点key检测
+ * 使用Count-Min Sketch统计每个统计窗口内的key读取次数，达到阈值的key晋升为热点key，
+ * 热点key的读取结果复制到本地短时缓存，窗口结束时读取次数最多的topK个key保持为热点key，其余降级并删除本地副本。
+ * 本节点写入或删除时立即删除本地副本，其他节点写入时本地副本在有效时间后过期，
+ * 只统计和复制配置的key前缀，其他key直接读取Redis
+ *
+ * @author geekidea
+ * @date 2020-03-30
+ * @since 1.5.0.RELEASE
+ **/
+@Slf4j
+@Component
+public class HotKeyDetector implements MeterBinder {
+
+    /**
+     * 候选key数量为topK的倍数
+     */
+    private static final int CANDIDATE_FACTOR = 4;
+
+    private final SpringBootPlusHotKeyProperties hotKeyProperties;
+
+    private final CountMinSketch sketch;
+
+    /**
+     * 允许复制的key前缀
+     */
+    private final String[] keyPrefixes;
+
+    /**
+     * 当前窗口内读取次数达到阈值的key，key --> 估计读取次数
+     */
+    private final ConcurrentMap<String, Long> candidateMap = new ConcurrentHashMap<>();
+
+    /**
+     * 热点key，key --> 热点信息
+     */
+    private final ConcurrentMap<String, HotKey> hotKeyMap = new ConcurrentHashMap<>();
+
+    /**
+     * 热点key本地副本，null值不复制
+     */
+    private final Cache<String, Object> replicaCache;
+
+    private final LongAdder replicaHitCount = new LongAdder();
+
+    private final LongAdder promoteCount = new LongAdder();
+
+    private final LongAdder demoteCount = new LongAdder();
+
+    public HotKeyDetector(SpringBootPlusHotKeyProperties hotKeyProperties) {
+        this.hotKeyProperties = hotKeyProperties;
+        this.sketch = new CountMinSketch(hotKeyProperties.getSketchDepth(), hotKeyProperties.getSketchWidth());
+        this.keyPrefixes = hotKeyProperties.getKeyPrefixes() == null
+                ? new String[0] : hotKeyProperties.getKeyPrefixes().toArray(new String[0]);
+        this.replicaCache = CacheBuilder.newBuilder()
+                .maximumSize(Math.max(hotKeyProperties.getTopK(), 1))
+                .expireAfterWrite(hotKeyProperties.getReplicaExpireMillis(), TimeUnit.MILLISECONDS)
+                .build();
+    }
+
+    /**
+     * 读取key，热点key优先读取本地副本
+     *
+     * @param key
+     * @param loader 从Redis读取
+     * @return
+     */
+    public Object get(Object key, Supplier<Object> loader) {
+        if (key == null) {
+            return loader.get();
+        }
+        String hotKeyName = key.toString();
+        record(hotKeyName);
+        HotKey hotKey = hotKeyMap.get(hotKeyName);
+        if (hotKey == null) {
+            return loader.get();
+        }
+        Object value = replicaCache.getIfPresent(hotKeyName);
+        if (value != null) {
+            replicaHitCount.increment();
+            hotKey.replicaHitCount.increment();
+            return value;
+        }
+        // 读取期间本节点写入或删除时不复制，避免复制旧值
+        long version = hotKey.version.get();
+        value = loader.get();
+        if (value != null && version == hotKey.version.get() && hotKeyMap.get(hotKeyName) == hotKey) {
+            replicaCache.put(hotKeyName, value);
+        }
+        return value;
+    }
+
+    /**
+     * 记录一次读取，不在key前缀中的key不记录
+     *
+     * @param key
+     */
+    public void record(String key) {
+        if (!isReplicable(key)) {
+            return;
+        }
+        long count = sketch.add(key);
+        if (count < hotKeyProperties.getThreshold()) {
+            return;
+        }
+        if (candidateMap.containsKey(key) || candidateMap.size() < hotKeyProperties.getTopK() * CANDIDATE_FACTOR) {
+            candidateMap.put(key, count);
+        }
+        // 窗口内达到阈值立即晋升，热点key数量已满时等待窗口结束
+        if (!hotKeyMap.containsKey(key) && hotKeyMap.size() < hotKeyProperties.getTopK()) {
+            promote(key, count);
+        }
+    }
+
+    /**
+     * 本节点写入或删除key时删除本地副本
+     *
+     * @param key
+     */
+    public void invalidate(Object key) {
+        if (key == null) {
+            return;
+        }
+        String hotKeyName = key.toString();
+        HotKey hotKey = hotKeyMap.get(hotKeyName);
+        if (hotKey != null) {
+            hotKey.version.incrementAndGet();
+            replicaCache.invalidate(hotKeyName);
+        }
+    }
+
+    /**
+     * 结束当前统计窗口，保留读取次数最多的topK个key为热点key，其余降级
+     */
+    public void rotate() {
+        List<Map.Entry<String, Long>> topKeys = candidateMap.entrySet().stream()
+                .sorted(Map.Entry.<String, Long>comparingByValue().reversed())
+                .limit(hotKeyProperties.getTopK())
+                .collect(Collectors.toList());
+        candidateMap.clear();
+        sketch.reset();
+
+        Set<String> hotKeyNames = new HashSet<>();
+        for (Map.Entry<String, Long> entry : topKeys) {
+            hotKeyNames.add(entry.getKey());
+        }
+        for (String hotKeyName : new ArrayList<>(hotKeyMap.keySet())) {
+            if (!hotKeyNames.contains(hotKeyName)) {
+                demote(hotKeyName);
+            }
+        }
+        for (Map.Entry<String, Long> entry : topKeys) {
+            HotKey hotKey = hotKeyMap.get(entry.getKey());
+            if (hotKey == null) {
+                promote(entry.getKey(), entry.getValue());
+            } else {
+                hotKey.count = entry.getValue();
+            }
+        }
+    }
+
+    /**
+     * 当前热点key，按上一窗口读取次数倒序
+     *
+     * @return
+     */
+    public List<HotKey> getHotKeys() {
+        return hotKeyMap.values().stream()
+                .sorted(Comparator.comparingLong(HotKey::getCount).reversed())
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * key是否匹配允许复制的key前缀
+     *
+     * @param key
+     * @return
+     */
+    public boolean isReplicable(String key) {
+        for (String keyPrefix : keyPrefixes) {
+            if (key.startsWith(keyPrefix)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public long getReplicaHitCount() {
+        return replicaHitCount.sum();
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        FunctionCounter.builder("redis.hot.key.replica.hits", replicaHitCount, LongAdder::sum).register(registry);
+        FunctionCounter.builder("redis.hot.key.changes", promoteCount, LongAdder::sum).tag("type", "promote").register(registry);
+        FunctionCounter.builder("redis.hot.key.changes", demoteCount, LongAdder::sum).tag("type", "demote").register(registry);
+        Gauge.builder("redis.hot.key.size", hotKeyMap, Map::size).register(registry);
+    }
+
+    private void promote(String key, long count) {
+        if (hotKeyMap.putIfAbsent(key, new HotKey(key, count)) == null) {
+            promoteCount.increment();
+            log.debug("Redis热点key晋升,key:{},count:{}", key, count);
+        }
+    }
+
+    private void demote(String key) {
+        HotKey hotKey = hotKeyMap.remove(key);
+        if (hotKey != null) {
+            hotKey.version.incrementAndGet();
+            replicaCache.invalidate(key);
+            demoteCount.increment();
+            log.debug("Redis热点key降级,key:{}", key);
+        }
+    }
+
+    public static class HotKey {
+
+        @Getter
+        private final String key;
+
+        /**
+         * 晋升时间
+         */
+        @Getter
+        private final long promoteTime = System.currentTimeMillis();
+
+        /**
+         * 晋升时或上一窗口的估计读取次数
+         */
+        @Getter
+        private volatile long count;
+
+        private final LongAdder replicaHitCount = new LongAdder();
+
+        /**
+         * 本地副本版本号，写入、删除、降级时递增
+         */
+        private final AtomicLong version = new AtomicLong();
+
+        public HotKey(String key, long count) {
+            this.key = key;
+            this.count = count;
+        }
+
+        public long getReplicaHits() {
+            return replicaHitCount.sum();
+        }
+
+    }
+
+}
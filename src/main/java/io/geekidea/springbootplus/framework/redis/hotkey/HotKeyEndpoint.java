@@ -0,0 +1,70 @@
+/*
+ * Copyright 2019-2029 geekidea(https://github.com/geekidea)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.geekidea.springbootplus.framework.redis.hotkey;
+
+import io.geekidea.springbootplus.framework.core.properties.SpringBootPlusHotKeyProperties;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Redis热点key诊断端点，/actuator/hotkeys
+ *
+ * @author geekidea
+ * @date 2020-03-30
+ * @since 1.5.0.RELEASE
+ **/
+@Component
+@Endpoint(id = "hotkeys")
+public class HotKeyEndpoint {
+
+    private final HotKeyDetector hotKeyDetector;
+
+    private final SpringBootPlusHotKeyProperties hotKeyProperties;
+
+    public HotKeyEndpoint(HotKeyDetector hotKeyDetector, SpringBootPlusHotKeyProperties hotKeyProperties) {
+        this.hotKeyDetector = hotKeyDetector;
+        this.hotKeyProperties = hotKeyProperties;
+    }
+
+    @ReadOperation
+    public Map<String, Object> hotKeys() {
+        List<Map<String, Object>> hotKeys = new ArrayList<>();
+        for (HotKeyDetector.HotKey hotKey : hotKeyDetector.getHotKeys()) {
+            Map<String, Object> item = new LinkedHashMap<>();
+            item.put("key", hotKey.getKey());
+            item.put("count", hotKey.getCount());
+            item.put("replicaHits", hotKey.getReplicaHits());
+            item.put("promoteTime", new Date(hotKey.getPromoteTime()));
+            hotKeys.add(item);
+        }
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("enable", hotKeyProperties.isEnable());
+        result.put("windowMillis", hotKeyProperties.getWindowMillis());
+        result.put("threshold", hotKeyProperties.getThreshold());
+        result.put("replicaHits", hotKeyDetector.getReplicaHitCount());
+        result.put("hotKeys", hotKeys);
+        return result;
+    }
+
+}
@@ -0,0 +1,115 @@
+/*
+ * Copyright 2019-2029 geekidea(https://github.com/geekidea)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.geekidea.springbootplus.framework.redis.hotkey;
+
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.ValueOperations;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * 统计热点key的RedisTemplate
+ * opsForValue().get(key)经过热点key检测，热点key优先读取本地副本，
+ * opsForValue()的写入方法和delete、unlink删除本地副本，
+ * Lua脚本、管道、事务中的写入不删除本地副本，由副本有效时间保证最终一致
+ *
+ * @author geekidea
+ * @date 2020-03-30
+ * @since 1.5.0.RELEASE
+ **/
+public class HotKeyRedisTemplate extends RedisTemplate<Object, Object> {
+
+    /**
+     * 不修改值的方法
+     */
+    private static final Set<String> READ_METHOD_NAMES = new HashSet<>(Arrays.asList("get", "multiGet", "size", "getBit", "getOperations"));
+
+    private final HotKeyDetector hotKeyDetector;
+
+    private final ValueOperations<Object, Object> hotKeyValueOps;
+
+    @SuppressWarnings("unchecked")
+    public HotKeyRedisTemplate(HotKeyDetector hotKeyDetector) {
+        this.hotKeyDetector = hotKeyDetector;
+        ValueOperations<Object, Object> valueOps = super.opsForValue();
+        this.hotKeyValueOps = (ValueOperations<Object, Object>) Proxy.newProxyInstance(ValueOperations.class.getClassLoader(),
+                new Class[]{ValueOperations.class}, (proxy, method, args) -> invokeValueOperation(valueOps, method, args));
+    }
+
+    @Override
+    public ValueOperations<Object, Object> opsForValue() {
+        return hotKeyValueOps;
+    }
+
+    @Override
+    public Boolean delete(Object key) {
+        hotKeyDetector.invalidate(key);
+        return super.delete(key);
+    }
+
+    @Override
+    public Long delete(Collection<Object> keys) {
+        keys.forEach(hotKeyDetector::invalidate);
+        return super.delete(keys);
+    }
+
+    @Override
+    public Boolean unlink(Object key) {
+        hotKeyDetector.invalidate(key);
+        return super.unlink(key);
+    }
+
+    @Override
+    public Long unlink(Collection<Object> keys) {
+        keys.forEach(hotKeyDetector::invalidate);
+        return super.unlink(keys);
+    }
+
+    private Object invokeValueOperation(ValueOperations<Object, Object> valueOps, Method method, Object[] args) throws Throwable {
+        if (method.getDeclaringClass() != Object.class && args != null && args.length > 0) {
+            String methodName = method.getName();
+            if ("get".equals(methodName) && args.length == 1) {
+                return hotKeyDetector.get(args[0], () -> valueOps.get(args[0]));
+            }
+            if ("multiGet".equals(methodName)) {
+                for (Object key : (Collection<?>) args[0]) {
+                    if (key != null) {
+                        hotKeyDetector.record(key.toString());
+                    }
+                }
+            } else if (args[0] instanceof Map) {
+                // multiSet、multiSetIfAbsent
+                ((Map<?, ?>) args[0]).keySet().forEach(hotKeyDetector::invalidate);
+            } else if (!READ_METHOD_NAMES.contains(methodName)) {
+                hotKeyDetector.invalidate(args[0]);
+            }
+        }
+        try {
+            return method.invoke(valueOps, args);
+        } catch (InvocationTargetException e) {
+            throw e.getTargetException();
+        }
+    }
+
+}
@@ -0,0 +1,275 @@
+/*
+ * Copyright 2019-2029 geekidea(https://github.com/geekidea)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.geekidea.springbootplus.framework.shiro.cache;
+
+import com.baomidou.mybatisplus.core.conditions.query.QueryWrapper;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import io.geekidea.springbootplus.framework.constant.CommonRedisKey;
+import io.geekidea.springbootplus.framework.core.properties.SpringBootPlusProperties;
+import io.geekidea.springbootplus.framework.shiro.config.ShiroProperties;
+import io.geekidea.springbootplus.framework.shiro.jwt.JwtToken;
+import io.geekidea.springbootplus.framework.shiro.permission.BitSetAuthorizationInfo;
+import io.geekidea.springbootplus.framework.shiro.permission.PermissionRegistry;
+import io.geekidea.springbootplus.framework.shiro.permission.TokenAuthorization;
+import io.geekidea.springbootplus.system.cache.SysDirectory;
+import io.geekidea.springbootplus.system.entity.SysRole;
+import io.geekidea.springbootplus.system.entity.SysUser;
+import io.geekidea.springbootplus.system.enums.StateEnum;
+import io.geekidea.springbootplus.system.service.SysUserService;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.shiro.authz.AuthorizationInfo;
+import org.apache.shiro.authz.SimpleAuthorizationInfo;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.stereotype.Component;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 本地授权信息缓存
+ * 以用户名为key，缓存用户当前角色的AuthorizationInfo，并记录缓存时的角色版本号，
+ * 角色变更时角色版本号递增，缓存的角色版本号与当前版本号不一致时重新加载，
+ * 用户变更时直接删除该用户的缓存，权限校验命中缓存时只访问内存，
+ * 未命中时只查询用户，角色和权限编码从SysDirectory中读取，
+ * 同时记录目录中的角色版本号，目录重新加载后角色版本号改变时同样重新加载
+ *
+ * @author geekidea
+ * @date 2020-03-26
+ * @since 1.5.0.RELEASE
+ **/
+@Slf4j
+@Component
+public class AuthorizationInfoCache implements MessageListener {
+
+    @Lazy
+    @Autowired
+    private SysUserService sysUserService;
+
+    @Lazy
+    @Autowired
+    private SysDirectory sysDirectory;
+
+    private final RedisTemplate redisTemplate;
+
+    private final PermissionRegistry permissionRegistry;
+
+    private final TokenAuthorization tokenAuthorization;
+
+    private final ShiroProperties.AuthorizationCacheConfig authorizationCacheConfig;
+
+    private final Cache<String, CachedAuthorizationInfo> cache;
+
+    /**
+     * 本地角色版本号，roleId --> version
+     */
+    private final ConcurrentMap<Long, AtomicLong> roleVersionMap = new ConcurrentHashMap<>();
+
+    /**
+     * 失效序号，未命中加载期间发生失效时不写入本地缓存
+     */
+    private final AtomicLong invalidateSequence = new AtomicLong();
+
+    private final LongAdder hitCount = new LongAdder();
+
+    private final LongAdder missCount = new LongAdder();
+
+    public AuthorizationInfoCache(SpringBootPlusProperties springBootPlusProperties,
+                                  RedisTemplate redisTemplate,
+                                  PermissionRegistry permissionRegistry,
+                                  TokenAuthorization tokenAuthorization,
+                                  RedisMessageListenerContainer redisMessageListenerContainer) {
+        this.redisTemplate = redisTemplate;
+        this.permissionRegistry = permissionRegistry;
+        this.tokenAuthorization = tokenAuthorization;
+        this.authorizationCacheConfig = springBootPlusProperties.getShiro().getAuthorizationCache();
+        this.cache = CacheBuilder.newBuilder()
+                .maximumSize(authorizationCacheConfig.getMaximumSize())
+                .expireAfterWrite(authorizationCacheConfig.getExpireSecond(), TimeUnit.SECONDS)
+                .build();
+        redisMessageListenerContainer.addMessageListener(this, new ChannelTopic(CommonRedisKey.SHIRO_AUTHORIZATION_CHANNEL));
+    }
+
+    /**
+     * 获取token对应的授权信息，无状态授权模式下优先使用token中的权限
+     *
+     * @param jwtToken
+     * @return
+     * @throws Exception
+     */
+    public AuthorizationInfo get(JwtToken jwtToken) throws Exception {
+        AuthorizationInfo authorizationInfo = tokenAuthorization.resolve(jwtToken);
+        if (authorizationInfo != null) {
+            return authorizationInfo;
+        }
+        return get(jwtToken.getUsername());
+    }
+
+    /**
+     * 获取用户授权信息，缓存不存在或角色版本已变更时从数据库加载
+     *
+     * @param username
+     * @return
+     * @throws Exception
+     */
+    public AuthorizationInfo get(String username) throws Exception {
+        if (!authorizationCacheConfig.isEnable()) {
+            return load(username).getAuthorizationInfo();
+        }
+        CachedAuthorizationInfo cachedAuthorizationInfo = cache.getIfPresent(username);
+        if (cachedAuthorizationInfo != null
+                && cachedAuthorizationInfo.getRoleVersion() == getRoleVersion(cachedAuthorizationInfo.getRoleId())
+                && Objects.equals(cachedAuthorizationInfo.getDirectoryRoleVersion(), sysDirectory.getRoleVersion(cachedAuthorizationInfo.getRoleId()))) {
+            hitCount.increment();
+            return cachedAuthorizationInfo.getAuthorizationInfo();
+        }
+        missCount.increment();
+        long sequence = invalidateSequence.get();
+        cachedAuthorizationInfo = load(username);
+        if (sequence == invalidateSequence.get()) {
+            cache.put(username, cachedAuthorizationInfo);
+        }
+        return cachedAuthorizationInfo.getAuthorizationInfo();
+    }
+
+    /**
+     * 删除本节点角色相关的授权缓存
+     *
+     * @param roleId
+     */
+    public void invalidateRole(Long roleId) {
+        invalidateSequence.incrementAndGet();
+        roleVersionMap.computeIfAbsent(roleId, key -> new AtomicLong()).incrementAndGet();
+    }
+
+    /**
+     * 删除本节点用户的授权缓存
+     *
+     * @param username
+     */
+    public void invalidateUser(String username) {
+        invalidateSequence.incrementAndGet();
+        cache.invalidate(username);
+        tokenAuthorization.userChanged(username);
+    }
+
+    public void invalidateAll() {
+        invalidateSequence.incrementAndGet();
+        cache.invalidateAll();
+    }
+
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        Object body = redisTemplate.getValueSerializer().deserialize(message.getBody());
+        if (body == null) {
+            return;
+        }
+        String content = body.toString();
+        log.debug("收到授权信息失效通知:{}", content);
+        if (content.startsWith(AuthorizationInvalidatePublisher.ROLE_MESSAGE_PREFIX)) {
+            String roleId = content.substring(AuthorizationInvalidatePublisher.ROLE_MESSAGE_PREFIX.length());
+            if (StringUtils.isNumeric(roleId)) {
+                invalidateRole(Long.valueOf(roleId));
+            }
+        } else if (content.startsWith(AuthorizationInvalidatePublisher.USER_MESSAGE_PREFIX)) {
+            invalidateUser(content.substring(AuthorizationInvalidatePublisher.USER_MESSAGE_PREFIX.length()));
+        }
+    }
+
+    public long getHitCount() {
+        return hitCount.sum();
+    }
+
+    public long getMissCount() {
+        return missCount.sum();
+    }
+
+    public long size() {
+        return cache.size();
+    }
+
+    private long getRoleVersion(Long roleId) {
+        if (roleId == null) {
+            return 0;
+        }
+        AtomicLong version = roleVersionMap.get(roleId);
+        return version == null ? 0 : version.get();
+    }
+
+    /**
+     * 从数据库加载用户，从SysDirectory读取角色和权限，先读取角色版本号，加载期间角色变更则下次重新加载
+     *
+     * @param username
+     * @return
+     * @throws Exception
+     */
+    private CachedAuthorizationInfo load(String username) throws Exception {
+        SimpleAuthorizationInfo authorizationInfo = new SimpleAuthorizationInfo();
+        SysUser sysUser = sysUserService.getOne(new QueryWrapper<>(new SysUser().setUsername(username)));
+        if (sysUser == null || StateEnum.DISABLE.getCode().equals(sysUser.getState())) {
+            return new CachedAuthorizationInfo(null, 0, null, authorizationInfo);
+        }
+        Long roleId = sysUser.getRoleId();
+        long roleVersion = getRoleVersion(roleId);
+        Long directoryRoleVersion = sysDirectory.getRoleVersion(roleId);
+        SysRole sysRole = sysDirectory.getRole(roleId);
+        if (sysRole == null || StateEnum.DISABLE.getCode().equals(sysRole.getState())) {
+            return new CachedAuthorizationInfo(roleId, roleVersion, directoryRoleVersion, authorizationInfo);
+        }
+        // 设置角色和权限，权限同时转换成位图
+        Set<String> permissionCodes = sysDirectory.getPermissionCodes(roleId);
+        BitSetAuthorizationInfo bitSetAuthorizationInfo = new BitSetAuthorizationInfo(
+                Collections.singleton(sysRole.getCode()),
+                permissionCodes == null ? new HashSet<>() : permissionCodes,
+                permissionRegistry);
+        return new CachedAuthorizationInfo(roleId, roleVersion, directoryRoleVersion, bitSetAuthorizationInfo);
+    }
+
+    @Getter
+    @AllArgsConstructor
+    private static class CachedAuthorizationInfo {
+
+        private final Long roleId;
+
+        private final long roleVersion;
+
+        /**
+         * SysDirectory中的角色版本号，目录中不存在时为null
+         */
+        private final Long directoryRoleVersion;
+
+        private final AuthorizationInfo authorizationInfo;
+
+    }
+
+}
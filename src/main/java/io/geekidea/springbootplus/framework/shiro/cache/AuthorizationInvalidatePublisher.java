@@ -0,0 +1,118 @@
+/*
+ * Copyright 2019-2029 geekidea(https://github.com/geekidea)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.geekidea.springbootplus.framework.shiro.cache;
+
+import io.geekidea.springbootplus.framework.constant.CommonRedisKey;
+import io.geekidea.springbootplus.framework.shiro.permission.TokenAuthorization;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * 授权信息失效通知发布
+ * 角色权限、角色状态、用户角色变更后，通过Redis发布订阅通知所有节点删除本地授权缓存
+ * 存在事务时在事务提交后发布，避免其他节点读取到未提交的数据
+ * 用户变更时间同时记录到Redis，通知丢失时由各节点定时加载
+ *
+ * @author geekidea
+ * @date 2020-03-26
+ * @since 1.5.0.RELEASE
+ **/
+@Slf4j
+@Component
+public class AuthorizationInvalidatePublisher {
+
+    /**
+     * 角色变更消息前缀
+     */
+    public static final String ROLE_MESSAGE_PREFIX = "role:";
+
+    /**
+     * 用户变更消息前缀
+     */
+    public static final String USER_MESSAGE_PREFIX = "user:";
+
+    private final RedisTemplate redisTemplate;
+
+    private final TokenAuthorization tokenAuthorization;
+
+    public AuthorizationInvalidatePublisher(RedisTemplate redisTemplate, TokenAuthorization tokenAuthorization) {
+        this.redisTemplate = redisTemplate;
+        this.tokenAuthorization = tokenAuthorization;
+    }
+
+    /**
+     * 角色权限或状态已变更
+     *
+     * @param roleId
+     */
+    public void publishRoleChanged(Long roleId) {
+        if (roleId == null) {
+            return;
+        }
+        String message = ROLE_MESSAGE_PREFIX + roleId;
+        afterCommit(() -> send(message));
+    }
+
+    /**
+     * 用户角色或状态已变更
+     *
+     * @param username
+     */
+    public void publishUserChanged(String username) {
+        if (username == null) {
+            return;
+        }
+        afterCommit(() -> {
+            saveUserChanged(username);
+            send(USER_MESSAGE_PREFIX + username);
+        });
+    }
+
+    private void afterCommit(Runnable runnable) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+                @Override
+                public void afterCommit() {
+                    runnable.run();
+                }
+            });
+            return;
+        }
+        runnable.run();
+    }
+
+    private void saveUserChanged(String username) {
+        try {
+            tokenAuthorization.saveUserChanged(username);
+        } catch (Exception e) {
+            log.error("记录用户变更时间异常,username:" + username, e);
+        }
+    }
+
+    private void send(String message) {
+        try {
+            redisTemplate.convertAndSend(CommonRedisKey.SHIRO_AUTHORIZATION_CHANNEL, message);
+            log.debug("发布授权信息失效通知:{}", message);
+        } catch (Exception e) {
+            log.error("发布授权信息失效通知异常,message:" + message, e);
+        }
+    }
+
+}
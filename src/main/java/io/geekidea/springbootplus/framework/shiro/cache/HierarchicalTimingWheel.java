@@ -0,0 +1,196 @@
+/*
+ * Copyright 2019-2029 geekidea(https://github.com/geekidea)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.geekidea.springbootplus.framework.shiro.cache;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.BiConsumer;
+
+/**
+ * 分层时间轮
+ * 第0层每格tickMillis，第n层每格为第n-1层一圈的时长，超出当前层范围的任务放入上一层，
+ * 上层格子到期时将任务重新分配到下层，添加和到期都是O(1)，不为每个key创建定时器
+ * 任务在到期时间之后的一个tick内触发，由调用方周期性调用advance推进时间
+ *
+ * @author geekidea
+ * @date 2020-03-29
+ * @since 1.5.0.RELEASE
+ **/
+public class HierarchicalTimingWheel<K> {
+
+    private final long tickMillis;
+
+    private final int wheelSize;
+
+    private final BiConsumer<K, Long> expireHandler;
+
+    /**
+     * 各层时间轮，按需创建
+     */
+    private final List<List<Task<K>>[]> levels = new ArrayList<>();
+
+    /**
+     * 已推进到的时间，tickMillis的整数倍，小于该时间的第0层格子已处理
+     */
+    private long currentTime;
+
+    private long size;
+
+    /**
+     * @param tickMillis    第0层每格时长，单位：毫秒
+     * @param wheelSize     每层格子数
+     * @param startTime     开始时间
+     * @param expireHandler 到期回调，参数为key和添加时的到期时间
+     */
+    public HierarchicalTimingWheel(long tickMillis, int wheelSize, long startTime, BiConsumer<K, Long> expireHandler) {
+        if (tickMillis <= 0) {
+            throw new IllegalArgumentException("tickMillis必须大于0");
+        }
+        if (wheelSize < 2) {
+            throw new IllegalArgumentException("wheelSize必须大于1");
+        }
+        this.tickMillis = tickMillis;
+        this.wheelSize = wheelSize;
+        this.expireHandler = expireHandler;
+        this.currentTime = startTime - startTime % tickMillis;
+        this.levels.add(newLevel());
+    }
+
+    /**
+     * 添加到期任务，同一个key可以添加多次，由回调根据到期时间判断是否仍然有效
+     *
+     * @param key
+     * @param expireTime
+     */
+    public void add(K key, long expireTime) {
+        boolean expired;
+        synchronized (this) {
+            expired = !place(new Task<>(key, expireTime));
+        }
+        if (expired) {
+            expireHandler.accept(key, expireTime);
+        }
+    }
+
+    /**
+     * 推进时间到now，触发所有已到期的任务，回调在锁外执行
+     *
+     * @param now
+     */
+    public void advance(long now) {
+        List<Task<K>> expiredTasks = new ArrayList<>();
+        synchronized (this) {
+            while (currentTime + tickMillis <= now) {
+                currentTime += tickMillis;
+                // 1. 第0层格子结束时，格子内的任务全部到期
+                List<Task<K>>[] buckets = levels.get(0);
+                int index = (int) ((currentTime / tickMillis - 1) % wheelSize);
+                List<Task<K>> bucket = buckets[index];
+                if (bucket != null) {
+                    buckets[index] = null;
+                    size -= bucket.size();
+                    expiredTasks.addAll(bucket);
+                }
+                // 2. 上层格子开始时，将任务重新分配到下层，先处理第0层，避免分配到刚结束的格子
+                long levelTick = tickMillis;
+                for (int level = 1; level < levels.size(); level++) {
+                    levelTick *= wheelSize;
+                    if (currentTime % levelTick != 0) {
+                        break;
+                    }
+                    cascade(level, levelTick);
+                }
+            }
+        }
+        for (Task<K> task : expiredTasks) {
+            expireHandler.accept(task.key, task.expireTime);
+        }
+    }
+
+    public synchronized long size() {
+        return size;
+    }
+
+    public long getTickMillis() {
+        return tickMillis;
+    }
+
+    /**
+     * 放入能容纳到期时间的最低层，已到期返回false
+     *
+     * @param task
+     * @return
+     */
+    private boolean place(Task<K> task) {
+        long expireTime = task.expireTime;
+        if (expireTime < currentTime) {
+            return false;
+        }
+        long levelTick = tickMillis;
+        for (int level = 0; ; level++) {
+            if (level == levels.size()) {
+                levels.add(newLevel());
+            }
+            long levelStart = currentTime - currentTime % levelTick;
+            if (expireTime < levelStart + levelTick * wheelSize) {
+                int index = (int) ((expireTime / levelTick) % wheelSize);
+                List<Task<K>>[] buckets = levels.get(level);
+                if (buckets[index] == null) {
+                    buckets[index] = new ArrayList<>();
+                }
+                buckets[index].add(task);
+                size++;
+                return true;
+            }
+            levelTick *= wheelSize;
+        }
+    }
+
+    private void cascade(int level, long levelTick) {
+        List<Task<K>>[] buckets = levels.get(level);
+        int index = (int) ((currentTime / levelTick) % wheelSize);
+        List<Task<K>> bucket = buckets[index];
+        if (bucket == null) {
+            return;
+        }
+        buckets[index] = null;
+        size -= bucket.size();
+        for (Task<K> task : bucket) {
+            // 上层格子开始时任务不会到期，一定能放入下层
+            place(task);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private List<Task<K>>[] newLevel() {
+        return new List[wheelSize];
+    }
+
+    private static class Task<K> {
+
+        private final K key;
+
+        private final long expireTime;
+
+        private Task(K key, long expireTime) {
+            this.key = key;
+            this.expireTime = expireTime;
+        }
+
+    }
+
+}
@@ -19,6 +19,9 @@ package io.geekidea.springbootplus.framework.shiro.cache;
 import io.geekidea.springbootplus.framework.shiro.jwt.JwtToken;
 import io.geekidea.springbootplus.framework.shiro.vo.LoginSysUserRedisVo;
 import io.geekidea.springbootplus.framework.shiro.vo.LoginSysUserVo;
+import io.geekidea.springbootplus.framework.shiro.vo.SessionBatchResult;
+
+import java.util.Set;
 
 /**
  * 登陆信息Redis缓存操作服务
@@ -48,28 +51,48 @@ public interface LoginRedisService {
     void refreshLoginInfo(String oldToken, String username, JwtToken newJwtToken);
 
     /**
-     * 通过用户名，从缓存中获取登陆用户LoginSysUserRedisVo
+     * 记录旧token刷新后的新token，多个节点同时刷新同一个token时只有一个成功
      *
-     * @param username
+     * @param oldToken
+     * @param newToken
+     * @return 记录成功返回null，由调用方刷新登陆信息；已被刷新则返回已生成的新token
+     */
+    String putRefreshTokenIfAbsent(String oldToken, String newToken);
+
+    /**
+     * 滑动续期登陆会话，延长会话有效时间，不生成新token
+     * 会话不存在或已被刷新进入宽限时间时不续期
+     *
+     * @param token
+     * @param loginSysUserVo 本次请求已读取的登陆用户，用于同时续期用户、角色和部门会话索引
+     * @return 是否已续期
+     */
+    boolean renewLoginInfo(String token, LoginSysUserVo loginSysUserVo);
+
+    /**
+     * 通过token，从缓存中获取登陆用户LoginSysUserRedisVo
+     * 一次Redis读取获取完整登陆会话，不存在返回null
+     *
+     * @param token
      * @return
      */
-    LoginSysUserRedisVo getLoginSysUserRedisVo(String username);
+    LoginSysUserRedisVo getLoginSysUserRedisVo(String token);
 
     /**
-     * 获取登陆用户对象
+     * 通过token获取登陆用户对象
      *
-     * @param username
+     * @param token
      * @return
      */
-    LoginSysUserVo getLoginSysUserVo(String username);
+    LoginSysUserVo getLoginSysUserVo(String token);
 
     /**
-     * 通过用户名称获取盐值
+     * 通过token获取盐值
      *
-     * @param username
+     * @param token
      * @return
      */
-    String getSalt(String username);
+    String getSalt(String token);
 
     /**
      * 删除对应用户的Redis缓存
@@ -94,4 +117,48 @@ public interface LoginRedisService {
      */
     void deleteUserAllCache(String username);
 
+    /**
+     * 用户是否还有未过期的登陆会话
+     *
+     * @param username
+     * @return
+     */
+    boolean hasLoginSession(String username);
+
+    /**
+     * 删除角色所有登陆会话，角色禁用时调用
+     *
+     * @param roleId
+     * @return
+     */
+    SessionBatchResult deleteRoleAllCache(Long roleId);
+
+    /**
+     * 删除部门所有登陆会话，部门禁用时调用
+     *
+     * @param departmentId
+     * @return
+     */
+    SessionBatchResult deleteDepartmentAllCache(Long departmentId);
+
+    /**
+     * 刷新角色所有登陆会话中的角色信息和权限编码
+     *
+     * @param roleId
+     * @param roleName
+     * @param roleCode
+     * @param permissionCodes
+     * @return
+     */
+    SessionBatchResult refreshRoleLoginInfo(Long roleId, String roleName, String roleCode, Set<String> permissionCodes);
+
+    /**
+     * 刷新部门所有登陆会话中的部门名称
+     *
+     * @param departmentId
+     * @param departmentName
+     * @return
+     */
+    SessionBatchResult refreshDepartmentLoginInfo(Long departmentId, String departmentName);
+
 }
@@ -0,0 +1,136 @@
+/*
+ * Copyright 2019-2029 geekidea(https://github.com/geekidea)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.geekidea.springbootplus.framework.shiro.cache;
+
+import io.geekidea.springbootplus.framework.shiro.jwt.JwtProperties;
+import io.geekidea.springbootplus.framework.shiro.vo.SessionBatchResult;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.Set;
+import java.util.function.Supplier;
+
+/**
+ * 角色、部门登陆会话批量处理
+ * 角色、部门禁用时批量删除其所有登陆会话，角色权限或名称变更时批量刷新会话中的登陆用户信息，
+ * 通过角色、部门会话索引定位会话，不扫描keyspace
+ * 存在事务时在事务提交后执行，处理失败只记录日志，不影响已提交的事务
+ *
+ * @author geekidea
+ * @date 2020-03-30
+ * @since 1.5.0.RELEASE
+ **/
+@Slf4j
+@Component
+public class LoginSessionFanout {
+
+    private final JwtProperties jwtProperties;
+
+    private final LoginRedisService loginRedisService;
+
+    public LoginSessionFanout(JwtProperties jwtProperties, @Lazy LoginRedisService loginRedisService) {
+        this.jwtProperties = jwtProperties;
+        this.loginRedisService = loginRedisService;
+    }
+
+    /**
+     * 删除角色所有登陆会话
+     *
+     * @param roleId
+     */
+    public void deleteRoleSessions(Long roleId) {
+        if (roleId == null) {
+            return;
+        }
+        execute("删除角色登陆会话", () -> loginRedisService.deleteRoleAllCache(roleId));
+    }
+
+    /**
+     * 删除部门所有登陆会话
+     *
+     * @param departmentId
+     */
+    public void deleteDepartmentSessions(Long departmentId) {
+        if (departmentId == null) {
+            return;
+        }
+        execute("删除部门登陆会话", () -> loginRedisService.deleteDepartmentAllCache(departmentId));
+    }
+
+    /**
+     * 刷新角色所有登陆会话中的角色信息和权限编码
+     *
+     * @param roleId
+     * @param roleName
+     * @param roleCode
+     * @param permissionCodes
+     */
+    public void refreshRoleSessions(Long roleId, String roleName, String roleCode, Set<String> permissionCodes) {
+        if (roleId == null) {
+            return;
+        }
+        // 未启用会话索引时仍然执行，角色权限变更需要覆盖写入Redis中的角色权限
+        afterCommit("刷新角色登陆会话", () -> loginRedisService.refreshRoleLoginInfo(roleId, roleName, roleCode, permissionCodes));
+    }
+
+    /**
+     * 刷新部门所有登陆会话中的部门名称
+     *
+     * @param departmentId
+     * @param departmentName
+     */
+    public void refreshDepartmentSessions(Long departmentId, String departmentName) {
+        if (departmentId == null) {
+            return;
+        }
+        execute("刷新部门登陆会话", () -> loginRedisService.refreshDepartmentLoginInfo(departmentId, departmentName));
+    }
+
+    private void execute(String name, Supplier<SessionBatchResult> task) {
+        if (!jwtProperties.getSessionIndex().isEnable()) {
+            return;
+        }
+        afterCommit(name, task);
+    }
+
+    private void afterCommit(String name, Supplier<SessionBatchResult> task) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+                @Override
+                public void afterCommit() {
+                    run(name, task);
+                }
+            });
+            return;
+        }
+        run(name, task);
+    }
+
+    private void run(String name, Supplier<SessionBatchResult> task) {
+        try {
+            SessionBatchResult result = task.get();
+            log.info("{}完成,index:{},total:{},affected:{},batches:{},elapsedMillis:{}", name,
+                    result.getIndex(), result.getTotal(), result.getAffected(), result.getBatches(), result.getElapsedMillis());
+        } catch (Exception e) {
+            log.error(name + "异常", e);
+        }
+    }
+
+}
@@ -0,0 +1,350 @@
+/*
+ * Copyright 2019-2029 geekidea(https://github.com/geekidea)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.geekidea.springbootplus.framework.shiro.cache;
+
+import com.google.common.base.Splitter;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.hash.BloomFilter;
+import com.google.common.hash.Funnels;
+import io.geekidea.springbootplus.framework.constant.CommonRedisKey;
+import io.geekidea.springbootplus.framework.shiro.jwt.JwtProperties;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.codec.digest.DigestUtils;
+import org.apache.commons.collections4.CollectionUtils;
+import org.apache.commons.lang3.StringUtils;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 已注销token过滤器
+ * 登出时将token的jti写入Redis zset login:revoked（score为token过期时间），并通过Redis发布订阅通知所有节点，
+ * 各节点将jti放入按时间分段轮换的本地布隆过滤器，分段总时长覆盖token有效时间，
+ * 请求时布隆过滤器未命中直接通过，命中时才访问Redis确认，未开启redis-check时也能保证登出生效
+ * 启动时全量加载，之后按login:revoked:time中的注销时间只加载上次校验之后注销的jti，防止通知丢失
+ *
+ * @author geekidea
+ * @date 2020-03-30
+ * @since 1.5.0.RELEASE
+ **/
+@Slf4j
+@Component
+public class RevokedTokenFilter implements MessageListener {
+
+    /**
+     * 通知消息分隔符：jti,tokenMd5
+     */
+    private static final char MESSAGE_SEPARATOR = ',';
+
+    /**
+     * 增量加载时向前重叠的时间，覆盖节点之间的时钟误差，单位：毫秒
+     */
+    private static final long RECONCILE_OVERLAP_MILLIS = 10000;
+
+    private final JwtProperties jwtProperties;
+
+    private final JwtProperties.RevocationConfig revocationConfig;
+
+    private final RedisTemplate redisTemplate;
+
+    private final VerifiedTokenCache verifiedTokenCache;
+
+    /**
+     * 每段时长，单位：毫秒
+     */
+    private final long bucketMillis;
+
+    /**
+     * 布隆过滤器分段，按开始时间升序，整体替换
+     */
+    private volatile List<Bucket> buckets;
+
+    /**
+     * 布隆过滤器命中后的确认结果，jti --> 是否已注销，避免误判的jti重复访问Redis
+     */
+    private final Cache<String, Boolean> confirmedCache;
+
+    /**
+     * 上次成功校验的时间，0表示尚未全量加载
+     */
+    private volatile long lastReconcileTime;
+
+    private final LongAdder bloomNegativeCount = new LongAdder();
+
+    private final LongAdder bloomPositiveCount = new LongAdder();
+
+    private final LongAdder falsePositiveCount = new LongAdder();
+
+    public RevokedTokenFilter(JwtProperties jwtProperties,
+                              RedisTemplate redisTemplate,
+                              VerifiedTokenCache verifiedTokenCache,
+                              RedisMessageListenerContainer redisMessageListenerContainer) {
+        this.jwtProperties = jwtProperties;
+        this.revocationConfig = jwtProperties.getRevocation();
+        this.redisTemplate = redisTemplate;
+        this.verifiedTokenCache = verifiedTokenCache;
+        int bucketCount = Math.max(revocationConfig.getBucketCount(), 1);
+        this.bucketMillis = Math.max(TimeUnit.SECONDS.toMillis(jwtProperties.tokenExpireSecond()) / bucketCount, 1000);
+        this.buckets = Collections.singletonList(newBucket(System.currentTimeMillis()));
+        this.confirmedCache = CacheBuilder.newBuilder()
+                .maximumSize(revocationConfig.getConfirmedCacheSize())
+                .expireAfterWrite(revocationConfig.getConfirmedCacheSecond(), TimeUnit.SECONDS)
+                .build();
+        redisMessageListenerContainer.addMessageListener(this, new ChannelTopic(CommonRedisKey.LOGIN_REVOKED_CHANNEL));
+    }
+
+    /**
+     * 启动时从Redis加载未过期的已注销jti
+     */
+    @PostConstruct
+    public void init() {
+        if (!revocationConfig.isEnable()) {
+            return;
+        }
+        try {
+            reconcile();
+        } catch (Exception e) {
+            log.error("加载已注销token异常，将在下次校验时重新加载", e);
+        }
+    }
+
+    /**
+     * 注销token，写入Redis并通知所有节点
+     *
+     * @param jti
+     * @param token
+     * @param expireDate token过期时间
+     */
+    public void revoke(String jti, String token, Date expireDate) {
+        if (!revocationConfig.isEnable() || StringUtils.isBlank(jti) || expireDate == null) {
+            return;
+        }
+        long expireTime = expireDate.getTime();
+        if (expireTime <= System.currentTimeMillis()) {
+            return;
+        }
+        putLocal(jti);
+        redisTemplate.opsForZSet().add(CommonRedisKey.LOGIN_REVOKED, jti, expireTime);
+        redisTemplate.opsForZSet().add(CommonRedisKey.LOGIN_REVOKED_TIME, jti, System.currentTimeMillis());
+        String tokenMd5 = token == null ? StringUtils.EMPTY : DigestUtils.md5Hex(token);
+        try {
+            redisTemplate.convertAndSend(CommonRedisKey.LOGIN_REVOKED_CHANNEL, jti + MESSAGE_SEPARATOR + tokenMd5);
+        } catch (Exception e) {
+            log.error("发布token注销通知异常,jti:" + jti, e);
+        }
+    }
+
+    /**
+     * 判断token是否已注销，布隆过滤器命中时访问Redis确认，Redis异常时按已注销处理
+     *
+     * @param jti
+     * @return
+     */
+    public boolean isRevoked(String jti) {
+        if (!revocationConfig.isEnable() || StringUtils.isBlank(jti)) {
+            return false;
+        }
+        if (!mightContain(jti)) {
+            bloomNegativeCount.increment();
+            return false;
+        }
+        bloomPositiveCount.increment();
+        Boolean revoked = confirmedCache.getIfPresent(jti);
+        if (revoked != null) {
+            return revoked;
+        }
+        try {
+            revoked = redisTemplate.opsForZSet().score(CommonRedisKey.LOGIN_REVOKED, jti) != null;
+        } catch (Exception e) {
+            log.error("确认token是否已注销异常,jti:" + jti, e);
+            return true;
+        }
+        if (!revoked) {
+            falsePositiveCount.increment();
+        }
+        confirmedCache.put(jti, revoked);
+        return revoked;
+    }
+
+    /**
+     * 轮换布隆过滤器分段，删除过期的注销记录，并从Redis加载遗漏的注销记录，防止通知丢失
+     */
+    public void reconcile() {
+        reconcile(System.currentTimeMillis());
+    }
+
+    /**
+     * 按指定时间轮换布隆过滤器分段，首次全量加载，之后只加载上次校验之后注销的jti
+     *
+     * @param now
+     */
+    public void reconcile(long now) {
+        if (!revocationConfig.isEnable()) {
+            return;
+        }
+        rotate(now);
+        long lifetimeMillis = TimeUnit.SECONDS.toMillis(jwtProperties.tokenExpireSecond());
+        redisTemplate.opsForZSet().removeRangeByScore(CommonRedisKey.LOGIN_REVOKED, 0, now);
+        redisTemplate.opsForZSet().removeRangeByScore(CommonRedisKey.LOGIN_REVOKED_TIME, 0, now - lifetimeMillis);
+        if (lastReconcileTime == 0) {
+            Set<Object> jtiSet = redisTemplate.opsForZSet().rangeByScore(CommonRedisKey.LOGIN_REVOKED, now, Double.MAX_VALUE);
+            if (CollectionUtils.isNotEmpty(jtiSet)) {
+                putLoaded(jtiSet);
+            }
+            lastReconcileTime = now;
+            log.debug("已注销token全量加载完成,size:{}", jtiSet == null ? 0 : jtiSet.size());
+            return;
+        }
+        Set<Object> jtiSet = redisTemplate.opsForZSet().rangeByScore(CommonRedisKey.LOGIN_REVOKED_TIME,
+                lastReconcileTime - RECONCILE_OVERLAP_MILLIS, Double.MAX_VALUE);
+        if (CollectionUtils.isNotEmpty(jtiSet)) {
+            for (Object jti : jtiSet) {
+                putLocal(jti.toString());
+            }
+        }
+        lastReconcileTime = now;
+        log.debug("已注销token校验完成,size:{}", jtiSet == null ? 0 : jtiSet.size());
+    }
+
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        Object body = redisTemplate.getValueSerializer().deserialize(message.getBody());
+        if (body == null) {
+            return;
+        }
+        List<String> parts = Splitter.on(MESSAGE_SEPARATOR).splitToList(body.toString());
+        String jti = parts.get(0);
+        putLocal(jti);
+        confirmedCache.put(jti, true);
+        if (parts.size() > 1 && StringUtils.isNotBlank(parts.get(1))) {
+            verifiedTokenCache.invalidateTokenMd5(parts.get(1));
+        }
+        log.debug("收到token注销通知,jti:{}", jti);
+    }
+
+    public long getBloomNegativeCount() {
+        return bloomNegativeCount.sum();
+    }
+
+    public long getBloomPositiveCount() {
+        return bloomPositiveCount.sum();
+    }
+
+    public long getFalsePositiveCount() {
+        return falsePositiveCount.sum();
+    }
+
+    private boolean mightContain(String jti) {
+        for (Bucket bucket : buckets) {
+            if (bucket.bloomFilter.mightContain(jti)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void putLocal(String jti) {
+        List<Bucket> current = buckets;
+        long now = System.currentTimeMillis();
+        if (now >= current.get(current.size() - 1).startTime + bucketMillis) {
+            current = rotate(now);
+        }
+        current.get(current.size() - 1).bloomFilter.put(jti);
+    }
+
+    /**
+     * 全量加载的jti放入按加载数量创建的分段，与当前分段同时轮换出，不占用按时间分段的容量
+     *
+     * @param jtiSet
+     */
+    private synchronized void putLoaded(Set<Object> jtiSet) {
+        List<Bucket> current = buckets;
+        Bucket last = current.get(current.size() - 1);
+        Bucket loaded = new Bucket(last.startTime, BloomFilter.create(Funnels.stringFunnel(StandardCharsets.UTF_8),
+                Math.max(jtiSet.size(), getBucketExpectedInsertions()), revocationConfig.getFpp()));
+        for (Object jti : jtiSet) {
+            loaded.bloomFilter.put(jti.toString());
+        }
+        List<Bucket> updated = new ArrayList<>(current.size() + 1);
+        updated.addAll(current.subList(0, current.size() - 1));
+        updated.add(loaded);
+        updated.add(last);
+        buckets = Collections.unmodifiableList(updated);
+    }
+
+    /**
+     * 当前分段已结束时创建新分段，分段结束时间早于now减去token有效时间时，其中的token都已过期，直接丢弃
+     *
+     * @param now
+     * @return
+     */
+    private synchronized List<Bucket> rotate(long now) {
+        List<Bucket> current = buckets;
+        Bucket last = current.get(current.size() - 1);
+        if (now < last.startTime + bucketMillis) {
+            return current;
+        }
+        long lifetimeMillis = TimeUnit.SECONDS.toMillis(jwtProperties.tokenExpireSecond());
+        List<Bucket> rotated = new ArrayList<>(current.size() + 1);
+        for (Bucket bucket : current) {
+            if (bucket.startTime + bucketMillis + lifetimeMillis > now) {
+                rotated.add(bucket);
+            }
+        }
+        rotated.add(newBucket(now - (now - last.startTime) % bucketMillis));
+        buckets = Collections.unmodifiableList(rotated);
+        return buckets;
+    }
+
+    private Bucket newBucket(long startTime) {
+        return new Bucket(startTime, BloomFilter.create(Funnels.stringFunnel(StandardCharsets.UTF_8),
+                getBucketExpectedInsertions(), revocationConfig.getFpp()));
+    }
+
+    private long getBucketExpectedInsertions() {
+        int bucketCount = Math.max(revocationConfig.getBucketCount(), 1);
+        return Math.max(revocationConfig.getExpectedInsertions() / bucketCount, 1000);
+    }
+
+    private static class Bucket {
+
+        private final long startTime;
+
+        private final BloomFilter<CharSequence> bloomFilter;
+
+        private Bucket(long startTime, BloomFilter<CharSequence> bloomFilter) {
+            this.startTime = startTime;
+            this.bloomFilter = bloomFilter;
+        }
+
+    }
+
+}
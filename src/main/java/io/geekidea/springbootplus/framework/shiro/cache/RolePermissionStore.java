@@ -0,0 +1,286 @@
+/*
+ * Copyright 2019-2029 geekidea(https://github.com/geekidea)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.geekidea.springbootplus.framework.shiro.cache;
+
+import com.google.common.hash.Hashing;
+import io.geekidea.springbootplus.framework.constant.CommonRedisKey;
+import io.geekidea.springbootplus.framework.shiro.vo.LoginSysUserRedisVo;
+import io.geekidea.springbootplus.framework.shiro.vo.LoginSysUserVo;
+import io.geekidea.springbootplus.framework.shiro.vo.RolePermissionRedisVo;
+import io.geekidea.springbootplus.system.cache.SysDirectory;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.StringUtils;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.connection.ReturnType;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.data.redis.serializer.RedisSerializer;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * 角色权限存储
+ * 权限编码列表按角色在Redis中保存一份，登陆会话中只保存角色id和权限版本号，
+ * 本节点按角色缓存权限编码列表，版本号一致时只访问内存，
+ * Redis中的角色权限带有单调递增的修订号，角色变更时递增修订号并覆盖写入，
+ * 登陆时只在角色权限不存在或修订号落后时写入，数据过期的节点不会覆盖较新的权限，
+ * 角色变更时通过授权信息失效通知删除本节点缓存
+ *
+ * @author geekidea
+ * @date 2020-03-30
+ * @since 1.5.0.RELEASE
+ **/
+@Slf4j
+@Component
+public class RolePermissionStore implements MessageListener {
+
+    /**
+     * 本节点缓存与会话版本号不一致时，重新读取Redis的最小间隔毫秒数
+     * 角色变更后会话版本号分批更新，避免更新期间每次读取都访问Redis
+     */
+    private static final long RELOAD_INTERVAL_MILLIS = 1000;
+
+    /**
+     * 保存角色权限：角色权限不存在或写入的修订号大于已写入的修订号时写入，否则不写入
+     * ARGV[1]为1时先递增修订号，角色变更时使用；否则使用当前修订号，只补写缺失或落后的角色权限
+     * KEYS[1]: 角色权限key，KEYS[2]: 已写入的修订号key，KEYS[3]: 角色权限修订号key
+     * ARGV[1]: 是否递增修订号，ARGV[2]: RolePermissionRedisVo
+     * 返回1：已写入，0：未写入
+     */
+    private static final byte[] PUT_SCRIPT = (
+            "local revision " +
+                    "if ARGV[1] == '1' then revision = redis.call('INCR', KEYS[3]) " +
+                    "else revision = tonumber(redis.call('GET', KEYS[3])) or 0 end " +
+                    "local written = tonumber(redis.call('GET', KEYS[2])) or -1 " +
+                    "if revision <= written and redis.call('EXISTS', KEYS[1]) == 1 then return 0 end " +
+                    "redis.call('SET', KEYS[1], ARGV[2]) " +
+                    "if revision > written then redis.call('SET', KEYS[2], revision) end " +
+                    "return 1").getBytes(StandardCharsets.UTF_8);
+
+    @Lazy
+    @Autowired
+    private SysDirectory sysDirectory;
+
+    private final RedisTemplate redisTemplate;
+
+    /**
+     * 本节点角色权限缓存，roleId --> 权限编码列表
+     */
+    private final ConcurrentMap<Long, CachedRolePermission> cache = new ConcurrentHashMap<>();
+
+    public RolePermissionStore(RedisTemplate redisTemplate, RedisMessageListenerContainer redisMessageListenerContainer) {
+        this.redisTemplate = redisTemplate;
+        redisMessageListenerContainer.addMessageListener(this, new ChannelTopic(CommonRedisKey.SHIRO_AUTHORIZATION_CHANNEL));
+    }
+
+    /**
+     * 登陆时保存角色权限，只在Redis中角色权限不存在或修订号落后时写入，不覆盖角色变更写入的权限
+     * 本节点缓存版本号一致并且在重新读取间隔内确认过时不访问Redis
+     *
+     * @param roleId
+     * @param permissionCodes
+     * @return 权限版本号
+     */
+    public long put(Long roleId, Set<String> permissionCodes) {
+        if (roleId == null) {
+            throw new IllegalArgumentException("roleId不能为空");
+        }
+        Set<String> codes = permissionCodes == null ? Collections.emptySet() : permissionCodes;
+        long version = version(codes);
+        long now = System.currentTimeMillis();
+        CachedRolePermission cached = cache.get(roleId);
+        if (cached != null && cached.getVersion() == version && now - cached.getLoadTime() < RELOAD_INTERVAL_MILLIS) {
+            return version;
+        }
+        if (write(roleId, codes, version, false)) {
+            cache.put(roleId, new CachedRolePermission(version, codes, now));
+        } else {
+            // Redis中已有修订号更新的角色权限，本节点缓存以Redis为准
+            cache.remove(roleId);
+        }
+        return version;
+    }
+
+    /**
+     * 角色权限变更后保存角色权限，递增修订号并覆盖写入
+     *
+     * @param roleId
+     * @param permissionCodes 事务提交后读取的角色权限编码
+     * @return 权限版本号
+     */
+    public long replace(Long roleId, Set<String> permissionCodes) {
+        if (roleId == null) {
+            throw new IllegalArgumentException("roleId不能为空");
+        }
+        Set<String> codes = permissionCodes == null ? Collections.emptySet() : permissionCodes;
+        long version = version(codes);
+        write(roleId, codes, version, true);
+        cache.put(roleId, new CachedRolePermission(version, codes, System.currentTimeMillis()));
+        return version;
+    }
+
+    /**
+     * 通过脚本写入角色权限
+     *
+     * @param roleId
+     * @param codes
+     * @param version
+     * @param increment 是否递增修订号
+     * @return 是否已写入
+     */
+    private boolean write(Long roleId, Set<String> codes, long version, boolean increment) {
+        RolePermissionRedisVo rolePermissionRedisVo = new RolePermissionRedisVo()
+                .setRoleId(roleId)
+                .setVersion(version)
+                .setPermissionCodes(codes);
+        RedisSerializer<String> keySerializer = redisTemplate.getKeySerializer();
+        byte[] rawKey = keySerializer.serialize(String.format(CommonRedisKey.LOGIN_ROLE_PERMISSIONS, roleId));
+        byte[] rawWrittenKey = keySerializer.serialize(String.format(CommonRedisKey.LOGIN_ROLE_PERMISSIONS_WRITTEN, roleId));
+        byte[] rawRevisionKey = keySerializer.serialize(String.format(CommonRedisKey.LOGIN_ROLE_PERMISSIONS_REVISION, roleId));
+        byte[] rawIncrement = (increment ? "1" : "0").getBytes(StandardCharsets.UTF_8);
+        byte[] rawValue = redisTemplate.getValueSerializer().serialize(rolePermissionRedisVo);
+        Long result = (Long) redisTemplate.execute((RedisCallback<Object>) connection ->
+                connection.eval(PUT_SCRIPT, ReturnType.INTEGER, 3, rawKey, rawWrittenKey, rawRevisionKey, rawIncrement, rawValue));
+        return result != null && result == 1;
+    }
+
+    /**
+     * 获取登陆用户的权限编码列表
+     * 会话中已保存权限编码列表时直接返回，兼容旧版本会话和进程内会话存储
+     *
+     * @param loginSysUserVo
+     * @return
+     * @throws Exception
+     */
+    public Set<String> getPermissionCodes(LoginSysUserVo loginSysUserVo) throws Exception {
+        if (loginSysUserVo == null) {
+            return null;
+        }
+        if (loginSysUserVo.getPermissionCodes() != null || loginSysUserVo.getRoleId() == null) {
+            return loginSysUserVo.getPermissionCodes();
+        }
+        Long version = null;
+        if (loginSysUserVo instanceof LoginSysUserRedisVo) {
+            version = ((LoginSysUserRedisVo) loginSysUserVo).getPermissionVersion();
+        }
+        return get(loginSysUserVo.getRoleId(), version);
+    }
+
+    /**
+     * 获取角色权限编码列表
+     * 1. 本节点缓存版本号与会话版本号一致，直接返回
+     * 2. 读取Redis中的角色权限，会话版本号落后时返回Redis中的当前权限
+     * 3. Redis中不存在时从部门角色目录加载并写回Redis
+     *
+     * @param roleId
+     * @param version 会话中的权限版本号，为空时使用当前版本
+     * @return
+     * @throws Exception
+     */
+    public Set<String> get(Long roleId, Long version) throws Exception {
+        if (roleId == null) {
+            return null;
+        }
+        CachedRolePermission cached = cache.get(roleId);
+        if (cached != null && (version == null || cached.getVersion() == version
+                || System.currentTimeMillis() - cached.getLoadTime() < RELOAD_INTERVAL_MILLIS)) {
+            return cached.getPermissionCodes();
+        }
+        RolePermissionRedisVo rolePermissionRedisVo = (RolePermissionRedisVo) redisTemplate.opsForValue()
+                .get(String.format(CommonRedisKey.LOGIN_ROLE_PERMISSIONS, roleId));
+        if (rolePermissionRedisVo == null) {
+            Set<String> permissionCodes = sysDirectory.getPermissionCodes(roleId);
+            put(roleId, permissionCodes);
+            return permissionCodes;
+        }
+        Set<String> permissionCodes = rolePermissionRedisVo.getPermissionCodes() == null
+                ? Collections.emptySet() : rolePermissionRedisVo.getPermissionCodes();
+        cache.put(roleId, new CachedRolePermission(rolePermissionRedisVo.getVersion(), permissionCodes, System.currentTimeMillis()));
+        return permissionCodes;
+    }
+
+    /**
+     * 删除本节点角色权限缓存
+     *
+     * @param roleId
+     */
+    public void invalidateRole(Long roleId) {
+        cache.remove(roleId);
+    }
+
+    public long size() {
+        return cache.size();
+    }
+
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        Object body = redisTemplate.getValueSerializer().deserialize(message.getBody());
+        if (body == null) {
+            return;
+        }
+        String content = body.toString();
+        if (content.startsWith(AuthorizationInvalidatePublisher.ROLE_MESSAGE_PREFIX)) {
+            String roleId = content.substring(AuthorizationInvalidatePublisher.ROLE_MESSAGE_PREFIX.length());
+            if (StringUtils.isNumeric(roleId)) {
+                log.debug("删除本节点角色权限缓存,roleId:{}", roleId);
+                invalidateRole(Long.valueOf(roleId));
+            }
+        }
+    }
+
+    /**
+     * 计算权限版本号：排序后的权限编码的摘要
+     *
+     * @param permissionCodes
+     * @return
+     */
+    public static long version(Set<String> permissionCodes) {
+        StringBuilder content = new StringBuilder();
+        if (permissionCodes != null) {
+            for (String code : new TreeSet<>(permissionCodes)) {
+                content.append(code).append(',');
+            }
+        }
+        return Hashing.murmur3_128().hashString(content, StandardCharsets.UTF_8).asLong();
+    }
+
+    @Getter
+    @AllArgsConstructor
+    private static class CachedRolePermission {
+
+        private final long version;
+
+        private final Set<String> permissionCodes;
+
+        private final long loadTime;
+
+    }
+
+}
@@ -0,0 +1,267 @@
+/*
+ * Copyright 2019-2029 geekidea(https://github.com/geekidea)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.geekidea.springbootplus.framework.shiro.cache;
+
+import com.auth0.jwt.exceptions.JWTDecodeException;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import io.geekidea.springbootplus.framework.shiro.jwt.JwtContext;
+import io.geekidea.springbootplus.framework.shiro.jwt.JwtProperties;
+import io.geekidea.springbootplus.framework.shiro.jwt.JwtToken;
+import io.geekidea.springbootplus.framework.shiro.util.JwtUtil;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.codec.digest.DigestUtils;
+import org.apache.commons.lang3.StringUtils;
+import org.springframework.stereotype.Component;
+
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 本地已校验JWT Token缓存
+ * 以token摘要为key，缓存校验通过的用户名、盐值和过期时间，
+ * 同一token的重复请求不再访问Redis，也不再进行HMAC校验
+ *
+ * @author geekidea
+ * @date 2020-03-28
+ * @since 1.5.0.RELEASE
+ **/
+@Slf4j
+@Component
+public class VerifiedTokenCache {
+
+    private final JwtProperties jwtProperties;
+
+    private final Cache<String, VerifiedToken> cache;
+
+    private final LongAdder hitCount = new LongAdder();
+
+    private final LongAdder missCount = new LongAdder();
+
+    public VerifiedTokenCache(JwtProperties jwtProperties) {
+        this.jwtProperties = jwtProperties;
+        JwtProperties.LocalCacheConfig localCacheConfig = jwtProperties.getLocalCache();
+        this.cache = CacheBuilder.newBuilder()
+                .maximumSize(localCacheConfig.getMaximumSize())
+                .expireAfterWrite(localCacheConfig.getExpireSecond(), TimeUnit.SECONDS)
+                .build();
+    }
+
+    /**
+     * 获取已校验的token信息，没有或已失效返回null
+     *
+     * @param token
+     * @return
+     */
+    public VerifiedToken get(String token) {
+        if (!isEnable() || StringUtils.isBlank(token)) {
+            return null;
+        }
+        String tokenMd5 = DigestUtils.md5Hex(token);
+        VerifiedToken verifiedToken = cache.getIfPresent(tokenMd5);
+        if (verifiedToken == null) {
+            missCount.increment();
+            return null;
+        }
+        // token已过期或已进入刷新倒计时，走完整校验流程
+        if (System.currentTimeMillis() >= verifiedToken.getValidUntil()) {
+            cache.invalidate(tokenMd5);
+            missCount.increment();
+            return null;
+        }
+        hitCount.increment();
+        return verifiedToken;
+    }
+
+    /**
+     * 判断token和盐值是否已校验通过
+     *
+     * @param token
+     * @param salt
+     * @return
+     */
+    public boolean isVerified(String token, String salt) {
+        VerifiedToken verifiedToken = get(token);
+        return verifiedToken != null && verifiedToken.getSalt().equals(salt);
+    }
+
+    /**
+     * 缓存校验通过的token
+     *
+     * @param jwtToken
+     */
+    public void put(JwtToken jwtToken) {
+        if (!isEnable() || jwtToken == null) {
+            return;
+        }
+        String token = jwtToken.getToken();
+        String username = jwtToken.getUsername();
+        String salt = jwtToken.getSalt();
+        Date expireDate = jwtToken.getExpireDate();
+        if (StringUtils.isBlank(token) || StringUtils.isBlank(username) || StringUtils.isBlank(salt) || expireDate == null) {
+            return;
+        }
+        long validUntil = expireDate.getTime();
+        // 刷新倒计时内的token需要走刷新流程，不缓存倒计时部分
+        Integer countdown = jwtProperties.getRefreshTokenCountdown();
+        if (jwtProperties.isRefreshToken() && countdown != null) {
+            validUntil -= TimeUnit.SECONDS.toMillis(countdown);
+        }
+        if (validUntil <= System.currentTimeMillis()) {
+            return;
+        }
+        String jti;
+        try {
+            jti = getJti(token);
+        } catch (JWTDecodeException e) {
+            return;
+        }
+        VerifiedToken verifiedToken = new VerifiedToken(jti, username, salt, jwtToken.getCreateDate(), expireDate, validUntil);
+        cache.put(DigestUtils.md5Hex(token), verifiedToken);
+    }
+
+    /**
+     * 删除token缓存，登出或刷新token时调用
+     *
+     * @param token
+     */
+    public void invalidate(String token) {
+        if (StringUtils.isBlank(token)) {
+            return;
+        }
+        cache.invalidate(DigestUtils.md5Hex(token));
+    }
+
+    /**
+     * 按token摘要删除缓存，其他节点通知登出时调用
+     *
+     * @param tokenMd5
+     */
+    public void invalidateTokenMd5(String tokenMd5) {
+        if (StringUtils.isBlank(tokenMd5)) {
+            return;
+        }
+        cache.invalidate(tokenMd5);
+    }
+
+    /**
+     * 删除用户所有token缓存
+     *
+     * @param username
+     */
+    public void invalidateUser(String username) {
+        if (StringUtils.isBlank(username)) {
+            return;
+        }
+        cache.asMap().values().removeIf(verifiedToken -> username.equals(verifiedToken.getUsername()));
+    }
+
+    /**
+     * 清空缓存
+     */
+    public void invalidateAll() {
+        cache.invalidateAll();
+    }
+
+    /**
+     * 命中次数
+     *
+     * @return
+     */
+    public long getHitCount() {
+        return hitCount.sum();
+    }
+
+    /**
+     * 未命中次数
+     *
+     * @return
+     */
+    public long getMissCount() {
+        return missCount.sum();
+    }
+
+    /**
+     * 当前缓存数量
+     *
+     * @return
+     */
+    public long size() {
+        return cache.size();
+    }
+
+    private boolean isEnable() {
+        return jwtProperties.getLocalCache().isEnable();
+    }
+
+    /**
+     * 获取token的jti，优先使用本次请求已解析的JWT
+     *
+     * @param token
+     * @return
+     */
+    private static String getJti(String token) {
+        JwtContext jwtContext = JwtContext.get(token);
+        if (jwtContext != null) {
+            return jwtContext.getDecodedJwt().getId();
+        }
+        return JwtUtil.getJwtInfo(token).getId();
+    }
+
+    /**
+     * 已校验的token信息
+     */
+    @Getter
+    @AllArgsConstructor
+    public static class VerifiedToken {
+
+        /**
+         * token的jti，命中缓存时用于检查是否已注销
+         */
+        private final String jti;
+
+        /**
+         * 登陆用户名称
+         */
+        private final String username;
+
+        /**
+         * 校验通过的盐值
+         */
+        private final String salt;
+
+        /**
+         * 创建时间
+         */
+        private final Date createDate;
+
+        /**
+         * 过期日期
+         */
+        private final Date expireDate;
+
+        /**
+         * 本地缓存有效截止时间，token过期时间减去刷新倒计时
+         */
+        private final long validUntil;
+
+    }
+
+}
@@ -0,0 +1,546 @@
+/*
+ * Copyright 2019-2029 geekidea(https://github.com/geekidea)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.geekidea.springbootplus.framework.shiro.cache.impl;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import io.geekidea.springbootplus.framework.shiro.cache.HierarchicalTimingWheel;
+import io.geekidea.springbootplus.framework.shiro.cache.LoginRedisService;
+import io.geekidea.springbootplus.framework.shiro.cache.VerifiedTokenCache;
+import io.geekidea.springbootplus.framework.shiro.convert.ShiroMapstructConvert;
+import io.geekidea.springbootplus.framework.shiro.jwt.JwtProperties;
+import io.geekidea.springbootplus.framework.shiro.jwt.JwtToken;
+import io.geekidea.springbootplus.framework.shiro.util.JwtUtil;
+import io.geekidea.springbootplus.framework.shiro.vo.ClientInfo;
+import io.geekidea.springbootplus.framework.shiro.vo.JwtTokenRedisVo;
+import io.geekidea.springbootplus.framework.shiro.vo.LoginSysUserRedisVo;
+import io.geekidea.springbootplus.framework.shiro.vo.LoginSysUserVo;
+import io.geekidea.springbootplus.framework.shiro.vo.SessionBatchResult;
+import io.geekidea.springbootplus.framework.util.ClientInfoUtil;
+import io.geekidea.springbootplus.framework.util.HttpServletRequestUtil;
+import io.geekidea.springbootplus.system.convert.SysUserConvert;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.codec.digest.DigestUtils;
+import org.apache.commons.lang3.StringUtils;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+
+/**
+ * 进程内登陆信息缓存服务
+ * 登陆会话保存在本地并发Map中，不依赖Redis，适用于单节点部署和认证链路压测
+ * 会话过期由分层时间轮统一处理，读取时同时校验过期时间，
+ * 配置快照文件后，停止时和定时将会话写入磁盘，启动时恢复未过期的会话
+ * spring-boot-plus.jwt.session-store=embedded时启用
+ *
+ * @author geekidea
+ * @date 2020-03-29
+ * @since 1.5.0.RELEASE
+ **/
+@Slf4j
+@Service
+@ConditionalOnProperty(prefix = "spring-boot-plus.jwt", name = "session-store", havingValue = "embedded")
+public class EmbeddedLoginRedisServiceImpl implements LoginRedisService {
+
+    /**
+     * 时间轮key前缀：登陆会话
+     */
+    private static final String SESSION_KEY_PREFIX = "s:";
+
+    /**
+     * 时间轮key前缀：刷新token记录
+     */
+    private static final String REFRESH_KEY_PREFIX = "r:";
+
+    private final JwtProperties jwtProperties;
+
+    private final JwtProperties.EmbeddedStoreConfig embeddedStoreConfig;
+
+    private final VerifiedTokenCache verifiedTokenCache;
+
+    /**
+     * 登陆会话，tokenMd5 --> session
+     */
+    private final ConcurrentMap<String, Session> sessionMap = new ConcurrentHashMap<>();
+
+    /**
+     * 用户会话索引，username --> tokenMd5集合
+     */
+    private final ConcurrentMap<String, Set<String>> userSessionMap = new ConcurrentHashMap<>();
+
+    /**
+     * 刷新token记录，旧tokenMd5 --> 新token
+     */
+    private final ConcurrentMap<String, RefreshRecord> refreshMap = new ConcurrentHashMap<>();
+
+    private final HierarchicalTimingWheel<String> timingWheel;
+
+    private final ScheduledExecutorService scheduledExecutor;
+
+    public EmbeddedLoginRedisServiceImpl(JwtProperties jwtProperties, VerifiedTokenCache verifiedTokenCache) {
+        this.jwtProperties = jwtProperties;
+        this.embeddedStoreConfig = jwtProperties.getEmbeddedStore();
+        this.verifiedTokenCache = verifiedTokenCache;
+        this.timingWheel = new HierarchicalTimingWheel<>(embeddedStoreConfig.getTickMillis(), embeddedStoreConfig.getWheelSize(),
+                System.currentTimeMillis(), this::expire);
+        this.scheduledExecutor = Executors.newSingleThreadScheduledExecutor(
+                new ThreadFactoryBuilder().setNameFormat("embedded-login-session-%d").setDaemon(true).build());
+    }
+
+    @PostConstruct
+    public void init() {
+        restoreSnapshot();
+        long tickMillis = timingWheel.getTickMillis();
+        scheduledExecutor.scheduleAtFixedRate(() -> {
+            try {
+                timingWheel.advance(System.currentTimeMillis());
+            } catch (Exception e) {
+                log.error("登陆会话时间轮推进异常", e);
+            }
+        }, tickMillis, tickMillis, TimeUnit.MILLISECONDS);
+        long snapshotIntervalSecond = embeddedStoreConfig.getSnapshotIntervalSecond();
+        if (StringUtils.isNotBlank(embeddedStoreConfig.getSnapshotFile()) && snapshotIntervalSecond > 0) {
+            scheduledExecutor.scheduleWithFixedDelay(this::saveSnapshot, snapshotIntervalSecond, snapshotIntervalSecond, TimeUnit.SECONDS);
+        }
+        log.info("使用进程内登陆会话存储,恢复会话数量:{}", sessionMap.size());
+    }
+
+    @PreDestroy
+    public void destroy() {
+        scheduledExecutor.shutdownNow();
+        saveSnapshot();
+    }
+
+    @Override
+    public void cacheLoginInfo(JwtToken jwtToken, LoginSysUserVo loginSysUserVo) {
+        if (jwtToken == null) {
+            throw new IllegalArgumentException("jwtToken不能为空");
+        }
+        if (loginSysUserVo == null) {
+            throw new IllegalArgumentException("loginSysUserVo不能为空");
+        }
+        // 判断是否启用单个用户登陆，如果是，这每个用户只有一个有效token
+        if (jwtProperties.isSingleLogin()) {
+            deleteUserAllCache(loginSysUserVo.getUsername());
+        }
+        writeLoginSession(jwtToken, loginSysUserVo);
+    }
+
+    @Override
+    public void refreshLoginInfo(String oldToken, String username, JwtToken newJwtToken) {
+        LoginSysUserRedisVo loginSysUserRedisVo = getLoginSysUserRedisVo(oldToken);
+        if (loginSysUserRedisVo == null) {
+            log.warn("刷新token时登陆会话不存在,username:{}", username);
+            return;
+        }
+        // 删除本地已校验token缓存
+        verifiedTokenCache.invalidate(oldToken);
+        writeLoginSession(newJwtToken, loginSysUserRedisVo);
+        // 旧会话在宽限时间内继续有效
+        String oldTokenMd5 = DigestUtils.md5Hex(oldToken);
+        long graceSecond = jwtProperties.getRefreshGraceSecond();
+        if (graceSecond <= 0) {
+            removeSession(oldTokenMd5);
+            return;
+        }
+        long graceExpireTime = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(graceSecond);
+        Session oldSession = sessionMap.computeIfPresent(oldTokenMd5, (key, session) -> new Session(session.getJwtTokenRedisVo(),
+                session.getLoginSysUserRedisVo(), Math.min(session.getExpireTime(), graceExpireTime), true));
+        if (oldSession != null) {
+            timingWheel.add(SESSION_KEY_PREFIX + oldTokenMd5, oldSession.getExpireTime());
+        }
+    }
+
+    @Override
+    public boolean renewLoginInfo(String token, LoginSysUserVo loginSysUserVo) {
+        if (StringUtils.isBlank(token)) {
+            throw new IllegalArgumentException("token不能为空");
+        }
+        String tokenMd5 = DigestUtils.md5Hex(token);
+        long now = System.currentTimeMillis();
+        long expireTime = now + TimeUnit.SECONDS.toMillis(jwtProperties.getExpireSecond());
+        // 已过期或已刷新的会话不续期
+        Session renewedSession = sessionMap.computeIfPresent(tokenMd5, (key, session) ->
+                session.isRotated() || session.getExpireTime() <= now ? session
+                        : new Session(session.getJwtTokenRedisVo(), session.getLoginSysUserRedisVo(), expireTime, false));
+        if (renewedSession == null || renewedSession.getExpireTime() != expireTime) {
+            return false;
+        }
+        timingWheel.add(SESSION_KEY_PREFIX + tokenMd5, expireTime);
+        return true;
+    }
+
+    @Override
+    public String putRefreshTokenIfAbsent(String oldToken, String newToken) {
+        if (StringUtils.isBlank(oldToken)) {
+            throw new IllegalArgumentException("oldToken不能为空");
+        }
+        String oldTokenMd5 = DigestUtils.md5Hex(oldToken);
+        long now = System.currentTimeMillis();
+        long expireTime = now + TimeUnit.SECONDS.toMillis(Math.max(jwtProperties.getRefreshGraceSecond(), 1));
+        RefreshRecord newRecord = new RefreshRecord(newToken, expireTime);
+        RefreshRecord record = refreshMap.compute(oldTokenMd5, (key, existRecord) ->
+                existRecord == null || existRecord.getExpireTime() <= now ? newRecord : existRecord);
+        if (record == newRecord) {
+            timingWheel.add(REFRESH_KEY_PREFIX + oldTokenMd5, expireTime);
+            return null;
+        }
+        return record.getNewToken();
+    }
+
+    @Override
+    public LoginSysUserRedisVo getLoginSysUserRedisVo(String token) {
+        if (StringUtils.isBlank(token)) {
+            throw new IllegalArgumentException("token不能为空");
+        }
+        Session session = sessionMap.get(DigestUtils.md5Hex(token));
+        // 时间轮在到期后一个tick内删除，读取时以过期时间为准
+        if (session == null || session.getExpireTime() <= System.currentTimeMillis()) {
+            return null;
+        }
+        return session.getLoginSysUserRedisVo();
+    }
+
+    @Override
+    public LoginSysUserVo getLoginSysUserVo(String token) {
+        LoginSysUserRedisVo loginSysUserRedisVo = getLoginSysUserRedisVo(token);
+        if (loginSysUserRedisVo == null) {
+            return null;
+        }
+        return SysUserConvert.INSTANCE.loginSysUserRedisVoToLoginSysUserVo(loginSysUserRedisVo);
+    }
+
+    @Override
+    public String getSalt(String token) {
+        LoginSysUserRedisVo loginSysUserRedisVo = getLoginSysUserRedisVo(token);
+        if (loginSysUserRedisVo == null) {
+            return null;
+        }
+        return loginSysUserRedisVo.getSalt();
+    }
+
+    @Override
+    public void deleteLoginInfo(String token, String username) {
+        if (token == null) {
+            throw new IllegalArgumentException("token不能为空");
+        }
+        if (username == null) {
+            throw new IllegalArgumentException("username不能为空");
+        }
+        // 删除本地已校验token缓存
+        verifiedTokenCache.invalidate(token);
+        Session session = removeSession(DigestUtils.md5Hex(token));
+        if (session != null) {
+            JwtUtil.removeVerifier(session.getLoginSysUserRedisVo().getSalt());
+        }
+    }
+
+    @Override
+    public boolean exists(String token) {
+        if (token == null) {
+            throw new IllegalArgumentException("token不能为空");
+        }
+        return getLoginSysUserRedisVo(token) != null;
+    }
+
+    @Override
+    public boolean hasLoginSession(String username) {
+        Set<String> tokenMd5Set = userSessionMap.get(username);
+        return tokenMd5Set != null && !tokenMd5Set.isEmpty();
+    }
+
+    @Override
+    public void deleteUserAllCache(String username) {
+        // 删除本地已校验token缓存
+        verifiedTokenCache.invalidateUser(username);
+        Set<String> tokenMd5Set = userSessionMap.remove(username);
+        if (tokenMd5Set == null) {
+            return;
+        }
+        for (String tokenMd5 : tokenMd5Set) {
+            Session session = sessionMap.remove(tokenMd5);
+            if (session != null) {
+                JwtUtil.removeVerifier(session.getLoginSysUserRedisVo().getSalt());
+            }
+        }
+    }
+
+    /**
+     * 进程内存储直接遍历会话，不需要单独维护角色和部门索引
+     */
+    @Override
+    public SessionBatchResult deleteRoleAllCache(Long roleId) {
+        if (roleId == null) {
+            throw new IllegalArgumentException("roleId不能为空");
+        }
+        return deleteSessions("role:" + roleId, loginSysUserRedisVo -> roleId.equals(loginSysUserRedisVo.getRoleId()));
+    }
+
+    @Override
+    public SessionBatchResult deleteDepartmentAllCache(Long departmentId) {
+        if (departmentId == null) {
+            throw new IllegalArgumentException("departmentId不能为空");
+        }
+        return deleteSessions("department:" + departmentId, loginSysUserRedisVo -> departmentId.equals(loginSysUserRedisVo.getDepartmentId()));
+    }
+
+    @Override
+    public SessionBatchResult refreshRoleLoginInfo(Long roleId, String roleName, String roleCode, Set<String> permissionCodes) {
+        if (roleId == null) {
+            throw new IllegalArgumentException("roleId不能为空");
+        }
+        return refreshSessions("role:" + roleId, loginSysUserRedisVo -> roleId.equals(loginSysUserRedisVo.getRoleId()),
+                loginSysUserRedisVo -> loginSysUserRedisVo.setRoleName(roleName)
+                        .setRoleCode(roleCode)
+                        .setPermissionCodes(permissionCodes));
+    }
+
+    @Override
+    public SessionBatchResult refreshDepartmentLoginInfo(Long departmentId, String departmentName) {
+        if (departmentId == null) {
+            throw new IllegalArgumentException("departmentId不能为空");
+        }
+        return refreshSessions("department:" + departmentId, loginSysUserRedisVo -> departmentId.equals(loginSysUserRedisVo.getDepartmentId()),
+                loginSysUserRedisVo -> loginSysUserRedisVo.setDepartmentName(departmentName));
+    }
+
+    /**
+     * 当前会话数量
+     *
+     * @return
+     */
+    public int size() {
+        return sessionMap.size();
+    }
+
+    /**
+     * 将未过期的会话写入快照文件，先写临时文件再替换，避免写入中断导致快照损坏
+     */
+    public synchronized void saveSnapshot() {
+        String snapshotFile = embeddedStoreConfig.getSnapshotFile();
+        if (StringUtils.isBlank(snapshotFile)) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        ArrayList<SessionSnapshot> snapshotList = new ArrayList<>(sessionMap.size());
+        for (Map.Entry<String, Session> entry : sessionMap.entrySet()) {
+            Session session = entry.getValue();
+            if (session.getExpireTime() > now) {
+                snapshotList.add(new SessionSnapshot(entry.getKey(), session.getJwtTokenRedisVo(), session.getLoginSysUserRedisVo(), session.getExpireTime()));
+            }
+        }
+        Path path = Paths.get(snapshotFile);
+        Path tempPath = Paths.get(snapshotFile + ".tmp");
+        try {
+            Path parent = path.toAbsolutePath().getParent();
+            if (parent != null) {
+                Files.createDirectories(parent);
+            }
+            try (ObjectOutputStream outputStream = new ObjectOutputStream(new BufferedOutputStream(Files.newOutputStream(tempPath)))) {
+                outputStream.writeObject(snapshotList);
+            }
+            Files.move(tempPath, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            log.debug("登陆会话快照已保存,数量:{},文件:{}", snapshotList.size(), path);
+        } catch (IOException e) {
+            log.error("保存登陆会话快照异常:" + path, e);
+        }
+    }
+
+    /**
+     * 从快照文件恢复未过期的会话
+     */
+    @SuppressWarnings("unchecked")
+    private void restoreSnapshot() {
+        String snapshotFile = embeddedStoreConfig.getSnapshotFile();
+        if (StringUtils.isBlank(snapshotFile) || !new File(snapshotFile).isFile()) {
+            return;
+        }
+        Path path = Paths.get(snapshotFile);
+        List<SessionSnapshot> snapshotList;
+        try (ObjectInputStream inputStream = new ObjectInputStream(new BufferedInputStream(Files.newInputStream(path)))) {
+            snapshotList = (List<SessionSnapshot>) inputStream.readObject();
+        } catch (IOException | ClassNotFoundException | ClassCastException e) {
+            log.error("读取登陆会话快照异常,忽略快照:" + path, e);
+            return;
+        }
+        long now = System.currentTimeMillis();
+        for (SessionSnapshot snapshot : snapshotList) {
+            if (snapshot.getExpireTime() > now) {
+                putSession(snapshot.getTokenMd5(), new Session(snapshot.getJwtTokenRedisVo(), snapshot.getLoginSysUserRedisVo(), snapshot.getExpireTime(), false));
+            }
+        }
+    }
+
+    private void writeLoginSession(JwtToken jwtToken, LoginSysUserVo loginSysUserVo) {
+        // Redis缓存JWT Token信息
+        JwtTokenRedisVo jwtTokenRedisVo = ShiroMapstructConvert.INSTANCE.jwtTokenToJwtTokenRedisVo(jwtToken);
+        // 用户客户端信息
+        ClientInfo clientInfo = ClientInfoUtil.get(HttpServletRequestUtil.getRequest());
+        // 将LoginSysUserVo对象复制到LoginSysUserRedisVo，使用mapstruct进行对象属性复制
+        LoginSysUserRedisVo loginSysUserRedisVo = SysUserConvert.INSTANCE.loginSysUserVoToLoginSysUserRedisVo(loginSysUserVo);
+        loginSysUserRedisVo.setSalt(jwtToken.getSalt());
+        loginSysUserRedisVo.setClientInfo(clientInfo);
+        long expireTime = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(jwtToken.getExpireSecond());
+        putSession(DigestUtils.md5Hex(jwtToken.getToken()), new Session(jwtTokenRedisVo, loginSysUserRedisVo, expireTime, false));
+    }
+
+    private void putSession(String tokenMd5, Session session) {
+        sessionMap.put(tokenMd5, session);
+        userSessionMap.computeIfAbsent(session.getLoginSysUserRedisVo().getUsername(), key -> ConcurrentHashMap.newKeySet()).add(tokenMd5);
+        timingWheel.add(SESSION_KEY_PREFIX + tokenMd5, session.getExpireTime());
+    }
+
+    private SessionBatchResult deleteSessions(String index, Predicate<LoginSysUserRedisVo> predicate) {
+        long startTime = System.currentTimeMillis();
+        SessionBatchResult result = new SessionBatchResult(index, 0);
+        for (Map.Entry<String, Session> entry : sessionMap.entrySet()) {
+            Session session = entry.getValue();
+            if (!predicate.test(session.getLoginSysUserRedisVo())) {
+                continue;
+            }
+            if (sessionMap.remove(entry.getKey(), session)) {
+                removeUserSession(session.getLoginSysUserRedisVo().getUsername(), entry.getKey());
+                verifiedTokenCache.invalidateTokenMd5(entry.getKey());
+                JwtUtil.removeVerifier(session.getLoginSysUserRedisVo().getSalt());
+                result.setAffected(result.getAffected() + 1);
+            }
+        }
+        return result.setTotal(result.getAffected())
+                .setProcessed(result.getAffected())
+                .setBatches(1)
+                .setElapsedMillis(System.currentTimeMillis() - startTime);
+    }
+
+    private SessionBatchResult refreshSessions(String index, Predicate<LoginSysUserRedisVo> predicate, Consumer<LoginSysUserRedisVo> updater) {
+        long startTime = System.currentTimeMillis();
+        SessionBatchResult result = new SessionBatchResult(index, 0);
+        for (Session session : sessionMap.values()) {
+            LoginSysUserRedisVo loginSysUserRedisVo = session.getLoginSysUserRedisVo();
+            if (predicate.test(loginSysUserRedisVo)) {
+                updater.accept(loginSysUserRedisVo);
+                result.setAffected(result.getAffected() + 1);
+            }
+        }
+        return result.setTotal(result.getAffected())
+                .setProcessed(result.getAffected())
+                .setBatches(1)
+                .setElapsedMillis(System.currentTimeMillis() - startTime);
+    }
+
+    private Session removeSession(String tokenMd5) {
+        Session session = sessionMap.remove(tokenMd5);
+        if (session != null) {
+            removeUserSession(session.getLoginSysUserRedisVo().getUsername(), tokenMd5);
+        }
+        return session;
+    }
+
+    private void removeUserSession(String username, String tokenMd5) {
+        userSessionMap.computeIfPresent(username, (key, tokenMd5Set) -> {
+            tokenMd5Set.remove(tokenMd5);
+            return tokenMd5Set.isEmpty() ? null : tokenMd5Set;
+        });
+    }
+
+    /**
+     * 时间轮到期回调，会话过期时间已被延长时忽略
+     *
+     * @param key
+     * @param expireTime
+     */
+    private void expire(String key, Long expireTime) {
+        if (key.startsWith(SESSION_KEY_PREFIX)) {
+            String tokenMd5 = key.substring(SESSION_KEY_PREFIX.length());
+            Session session = sessionMap.get(tokenMd5);
+            if (session != null && session.getExpireTime() <= expireTime && sessionMap.remove(tokenMd5, session)) {
+                removeUserSession(session.getLoginSysUserRedisVo().getUsername(), tokenMd5);
+            }
+        } else if (key.startsWith(REFRESH_KEY_PREFIX)) {
+            String oldTokenMd5 = key.substring(REFRESH_KEY_PREFIX.length());
+            refreshMap.computeIfPresent(oldTokenMd5, (k, record) -> record.getExpireTime() <= expireTime ? null : record);
+        }
+    }
+
+    @Getter
+    @AllArgsConstructor
+    private static class Session {
+
+        private final JwtTokenRedisVo jwtTokenRedisVo;
+
+        private final LoginSysUserRedisVo loginSysUserRedisVo;
+
+        private final long expireTime;
+
+        /**
+         * 是否已刷新，已刷新的旧会话只在宽限时间内有效，不再续期
+         */
+        private final boolean rotated;
+
+    }
+
+    @Getter
+    @AllArgsConstructor
+    private static class RefreshRecord {
+
+        private final String newToken;
+
+        private final long expireTime;
+
+    }
+
+    @Getter
+    @AllArgsConstructor
+    private static class SessionSnapshot implements Serializable {
+
+        private static final long serialVersionUID = 2478219316581920587L;
+
+        private final String tokenMd5;
+
+        private final JwtTokenRedisVo jwtTokenRedisVo;
+
+        private final LoginSysUserRedisVo loginSysUserRedisVo;
+
+        private final long expireTime;
+
+    }
+
+}
@@ -16,28 +16,53 @@
 
 package io.geekidea.springbootplus.framework.shiro.cache.impl;
 
+import com.google.common.collect.Iterables;
 import io.geekidea.springbootplus.framework.constant.CommonRedisKey;
 import io.geekidea.springbootplus.framework.shiro.cache.LoginRedisService;
+import io.geekidea.springbootplus.framework.shiro.cache.RolePermissionStore;
+import io.geekidea.springbootplus.framework.shiro.cache.VerifiedTokenCache;
 import io.geekidea.springbootplus.framework.shiro.convert.ShiroMapstructConvert;
 import io.geekidea.springbootplus.framework.shiro.jwt.JwtProperties;
 import io.geekidea.springbootplus.framework.shiro.jwt.JwtToken;
+import io.geekidea.springbootplus.framework.shiro.util.JwtUtil;
 import io.geekidea.springbootplus.framework.shiro.vo.ClientInfo;
 import io.geekidea.springbootplus.framework.shiro.vo.JwtTokenRedisVo;
 import io.geekidea.springbootplus.framework.shiro.vo.LoginSysUserRedisVo;
 import io.geekidea.springbootplus.framework.shiro.vo.LoginSysUserVo;
+import io.geekidea.springbootplus.framework.shiro.vo.SessionBatchResult;
 import io.geekidea.springbootplus.system.convert.SysUserConvert;
 import io.geekidea.springbootplus.framework.util.ClientInfoUtil;
 import io.geekidea.springbootplus.framework.util.HttpServletRequestUtil;
+import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.codec.digest.DigestUtils;
 import org.apache.commons.collections4.CollectionUtils;
+import org.apache.commons.collections4.MapUtils;
 import org.apache.commons.lang3.StringUtils;
+import org.apache.shiro.authc.AuthenticationException;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.redis.connection.ReturnType;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.RedisOperations;
 import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.SessionCallback;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.data.redis.serializer.RedisSerializer;
 import org.springframework.stereotype.Service;
 
+import java.nio.charset.StandardCharsets;
 import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
 
 /**
  * 登陆信息Redis缓存服务类
@@ -46,22 +71,94 @@ import java.util.Set;
  * @date 2019-09-30
  * @since 1.3.0.RELEASE
  **/
+@Slf4j
 @Service
+@ConditionalOnProperty(prefix = "spring-boot-plus.jwt", name = "session-store", havingValue = "redis", matchIfMissing = true)
 public class LoginRedisServiceImpl implements LoginRedisService {
 
+    /**
+     * 登陆会话hash字段：JwtTokenRedisVo
+     */
+    private static final String SESSION_FIELD_TOKEN = "token";
+
+    /**
+     * 登陆会话hash字段：LoginSysUserRedisVo
+     */
+    private static final String SESSION_FIELD_USER = "user";
+
+    /**
+     * 登陆会话hash字段：已刷新标记，已刷新的旧会话只在宽限时间内有效，不再续期
+     */
+    private static final String SESSION_FIELD_ROTATED = "rotated";
+
+    /**
+     * 续期登陆会话：会话存在并且未被刷新时，延长会话有效时间并更新用户、角色、部门会话索引，索引过期时间只延长不缩短
+     * KEYS[1]: 登陆会话key，KEYS[2..n]: 会话索引key
+     * ARGV[1]: 会话有效时间毫秒数，ARGV[2]: 会话过期时间戳，ARGV[3]: tokenMd5
+     */
+    private static final RedisScript<Long> RENEW_SESSION_SCRIPT = new DefaultRedisScript<>(
+            "if redis.call('HEXISTS', KEYS[1], '" + SESSION_FIELD_ROTATED + "') == 1 then return 0 end " +
+                    "if redis.call('PEXPIRE', KEYS[1], ARGV[1]) == 0 then return 0 end " +
+                    "local expireTime = tonumber(ARGV[2]) " +
+                    "local now = expireTime - tonumber(ARGV[1]) " +
+                    "for i = 2, #KEYS do " +
+                    "redis.call('ZADD', KEYS[i], ARGV[2], ARGV[3]) " +
+                    "local ttl = redis.call('PTTL', KEYS[i]) " +
+                    "if ttl == -1 or now + ttl < expireTime then redis.call('PEXPIREAT', KEYS[i], ARGV[2]) end " +
+                    "end " +
+                    "return 1", Long.class);
+
+    /**
+     * 延长会话索引过期时间：索引没有过期时间或过期时间早于新的过期时间时才设置，不缩短仍包含有效会话的索引
+     * KEYS[1]: 会话索引key
+     * ARGV[1]: 新的过期时间戳，ARGV[2]: 当前时间戳
+     */
+    private static final byte[] EXTEND_INDEX_EXPIRE_SCRIPT = (
+            "local ttl = redis.call('PTTL', KEYS[1]) " +
+                    "if ttl == -1 or (ttl >= 0 and tonumber(ARGV[2]) + ttl < tonumber(ARGV[1])) then " +
+                    "return redis.call('PEXPIREAT', KEYS[1], ARGV[1]) " +
+                    "end " +
+                    "return 0").getBytes(StandardCharsets.UTF_8);
+
+    /**
+     * 批量更新登陆会话中的登陆用户信息，会话已过期或已删除时跳过，避免写入没有过期时间的会话
+     * KEYS[i]: 登陆会话key，ARGV[i]: LoginSysUserRedisVo
+     */
+    private static final RedisScript<Long> UPDATE_SESSION_USER_SCRIPT = new DefaultRedisScript<>(
+            "local updated = 0 " +
+                    "for i = 1, #KEYS do " +
+                    "if redis.call('EXISTS', KEYS[i]) == 1 then " +
+                    "redis.call('HSET', KEYS[i], '" + SESSION_FIELD_USER + "', ARGV[i]) " +
+                    "updated = updated + 1 " +
+                    "end " +
+                    "end " +
+                    "return updated", Long.class);
+
     @Autowired
     private JwtProperties jwtProperties;
 
     @Autowired
     private RedisTemplate redisTemplate;
 
+    @Autowired
+    private VerifiedTokenCache verifiedTokenCache;
+
+    @Autowired
+    private RolePermissionStore rolePermissionStore;
+
     /**
-     * key-value: 有过期时间-->token过期时间
-     * 1. tokenMd5:jwtTokenRedisVo
-     * 2. username:loginSysUserRedisVo
-     * 3. username:salt
-     * hash: 没有过期时间，统计在线的用户信息
-     * username:num
+     * 每个登陆会话一个hash，有过期时间-->token过期时间
+     * login:session:tokenMd5
+     * 1. token:jwtTokenRedisVo
+     * 2. user:loginSysUserRedisVo，包含盐值，权限编码列表按角色保存，会话中只保存权限版本号
+     * login:role:permissions:roleId
+     * zset: 用户会话索引，member为tokenMd5，score为会话过期时间戳，用于删除用户所有会话
+     * login:user:sessions:username
+     * zset: 角色、部门会话索引，与用户会话索引一起维护，用于禁用角色、部门时批量删除会话
+     * login:role:sessions:roleId
+     * login:department:sessions:departmentId
+     * 在线用户统计见OnlineUserService
+     * login:online
      */
     @Override
     public void cacheLoginInfo(JwtToken jwtToken, LoginSysUserVo loginSysUserVo) {
@@ -71,81 +168,102 @@ public class LoginRedisServiceImpl implements LoginRedisService {
         if (loginSysUserVo == null) {
             throw new IllegalArgumentException("loginSysUserVo不能为空");
         }
-        // token
-        String token = jwtToken.getToken();
-        // 盐值
-        String salt = jwtToken.getSalt();
-        // 登陆用户名称
-        String username = loginSysUserVo.getUsername();
-        // token md5值
-        String tokenMd5 = DigestUtils.md5Hex(token);
-
-        // Redis缓存JWT Token信息
-        JwtTokenRedisVo jwtTokenRedisVo = ShiroMapstructConvert.INSTANCE.jwtTokenToJwtTokenRedisVo(jwtToken);
-
-        // 用户客户端信息
-        ClientInfo clientInfo = ClientInfoUtil.get(HttpServletRequestUtil.getRequest());
-
-        // Redis缓存登陆用户信息
-        // 将LoginSysUserVo对象复制到LoginSysUserRedisVo，使用mapstruct进行对象属性复制
-        LoginSysUserRedisVo loginSysUserRedisVo = SysUserConvert.INSTANCE.loginSysUserVoToLoginSysUserRedisVo(loginSysUserVo);
-        loginSysUserRedisVo.setSalt(salt);
-        loginSysUserRedisVo.setClientInfo(clientInfo);
-
-        // Redis过期时间与JwtToken过期时间一致
-        Duration expireDuration = Duration.ofSeconds(jwtToken.getExpireSecond());
-
         // 判断是否启用单个用户登陆，如果是，这每个用户只有一个有效token
         boolean singleLogin = jwtProperties.isSingleLogin();
         if (singleLogin) {
-            deleteUserAllCache(username);
+            deleteUserAllCache(loginSysUserVo.getUsername());
         }
-
-        // 1. tokenMd5:jwtTokenRedisVo
-        String loginTokenRedisKey = String.format(CommonRedisKey.LOGIN_TOKEN, tokenMd5);
-        redisTemplate.opsForValue().set(loginTokenRedisKey, jwtTokenRedisVo, expireDuration);
-        // 2. username:loginSysUserRedisVo
-        redisTemplate.opsForValue().set(String.format(CommonRedisKey.LOGIN_USER, username), loginSysUserRedisVo, expireDuration);
-        // 3. salt hash,方便获取盐值鉴权
-        redisTemplate.opsForValue().set(String.format(CommonRedisKey.LOGIN_SALT, username), salt, expireDuration);
-        // 4. login user token
-        redisTemplate.opsForValue().set(String.format(CommonRedisKey.LOGIN_USER_TOKEN, username, tokenMd5), loginTokenRedisKey, expireDuration);
+        writeLoginSession(null, jwtToken, loginSysUserVo);
     }
 
     @Override
     public void refreshLoginInfo(String oldToken, String username, JwtToken newJwtToken) {
         // 获取缓存的登陆用户信息
-        LoginSysUserRedisVo loginSysUserRedisVo = getLoginSysUserRedisVo(username);
-        // 删除之前的token信息
-        deleteLoginInfo(oldToken, username);
-        // 缓存登陆信息
-        cacheLoginInfo(newJwtToken, loginSysUserRedisVo);
+        LoginSysUserRedisVo loginSysUserRedisVo = getLoginSysUserRedisVo(oldToken);
+        if (loginSysUserRedisVo == null) {
+            // 删除已占用的刷新记录，避免宽限时间内旧token映射到没有会话的新token
+            redisTemplate.delete(String.format(CommonRedisKey.LOGIN_REFRESH, DigestUtils.md5Hex(oldToken)));
+            log.warn("刷新token时登陆会话不存在,username:{}", username);
+            throw new AuthenticationException("登陆会话不存在,username:" + username);
+        }
+        // 删除本地已校验token缓存
+        verifiedTokenCache.invalidate(oldToken);
+        // 删除之前的token信息，并缓存新的登陆信息
+        writeLoginSession(oldToken, newJwtToken, loginSysUserRedisVo);
     }
 
+    /**
+     * 一次脚本调用完成续期，不重写会话内容
+     * 用户会话索引的score为会话过期时间，减去会话有效时间即为最后访问时间
+     */
     @Override
-    public LoginSysUserRedisVo getLoginSysUserRedisVo(String username) {
-        if (StringUtils.isBlank(username)) {
-            throw new IllegalArgumentException("username不能为空");
+    public boolean renewLoginInfo(String token, LoginSysUserVo loginSysUserVo) {
+        if (StringUtils.isBlank(token)) {
+            throw new IllegalArgumentException("token不能为空");
         }
-        return (LoginSysUserRedisVo) redisTemplate.opsForValue().get(String.format(CommonRedisKey.LOGIN_USER, username));
+        if (loginSysUserVo == null) {
+            throw new IllegalArgumentException("loginSysUserVo不能为空");
+        }
+        String tokenMd5 = DigestUtils.md5Hex(token);
+        long expireMillis = TimeUnit.SECONDS.toMillis(jwtProperties.getExpireSecond());
+        long expireTime = System.currentTimeMillis() + expireMillis;
+        List<String> keys = new ArrayList<>(4);
+        keys.add(String.format(CommonRedisKey.LOGIN_SESSION, tokenMd5));
+        keys.add(String.format(CommonRedisKey.LOGIN_USER_SESSIONS, loginSysUserVo.getUsername()));
+        keys.addAll(getSessionIndexKeys(loginSysUserVo));
+        Long result = (Long) redisTemplate.execute(RENEW_SESSION_SCRIPT, keys, expireMillis, expireTime, tokenMd5);
+        return result != null && result == 1;
     }
 
     @Override
-    public LoginSysUserVo getLoginSysUserVo(String username) {
-        if (StringUtils.isBlank(username)) {
-            throw new IllegalArgumentException("username不能为空");
+    public LoginSysUserRedisVo getLoginSysUserRedisVo(String token) {
+        if (StringUtils.isBlank(token)) {
+            throw new IllegalArgumentException("token不能为空");
+        }
+        String tokenMd5 = DigestUtils.md5Hex(token);
+        // 一次HGETALL获取登陆会话
+        Map<String, Object> session = redisTemplate.opsForHash().entries(String.format(CommonRedisKey.LOGIN_SESSION, tokenMd5));
+        if (MapUtils.isNotEmpty(session)) {
+            return (LoginSysUserRedisVo) session.get(SESSION_FIELD_USER);
         }
-        LoginSysUserRedisVo userRedisVo = getLoginSysUserRedisVo(username);
-        return userRedisVo;
+        // 兼容旧版本key结构，迁移到登陆会话hash
+        if (jwtProperties.isLegacySessionMigrate()) {
+            return migrateLegacySession(tokenMd5);
+        }
+        return null;
     }
 
     @Override
-    public String getSalt(String username) {
-        if (StringUtils.isBlank(username)) {
-            throw new IllegalArgumentException("username不能为空");
+    public LoginSysUserVo getLoginSysUserVo(String token) {
+        return toLoginSysUserVo(getLoginSysUserRedisVo(token));
+    }
+
+    /**
+     * 登陆会话转换为登陆用户，权限编码从角色权限中获取
+     *
+     * @param loginSysUserRedisVo
+     * @return
+     */
+    LoginSysUserVo toLoginSysUserVo(LoginSysUserRedisVo loginSysUserRedisVo) {
+        if (loginSysUserRedisVo == null) {
+            return null;
         }
-        String salt = (String) redisTemplate.opsForValue().get(String.format(CommonRedisKey.LOGIN_SALT, username));
-        return salt;
+        LoginSysUserVo loginSysUserVo = SysUserConvert.INSTANCE.loginSysUserRedisVoToLoginSysUserVo(loginSysUserRedisVo);
+        try {
+            loginSysUserVo.setPermissionCodes(rolePermissionStore.getPermissionCodes(loginSysUserRedisVo));
+        } catch (Exception e) {
+            log.error("获取角色权限异常,roleId:{}", loginSysUserRedisVo.getRoleId(), e);
+        }
+        return loginSysUserVo;
+    }
+
+    @Override
+    public String getSalt(String token) {
+        LoginSysUserRedisVo loginSysUserRedisVo = getLoginSysUserRedisVo(token);
+        if (loginSysUserRedisVo == null) {
+            return null;
+        }
+        return loginSysUserRedisVo.getSalt();
     }
 
     @Override
@@ -156,15 +274,34 @@ public class LoginRedisServiceImpl implements LoginRedisService {
         if (username == null) {
             throw new IllegalArgumentException("username不能为空");
         }
+        // 删除本地已校验token缓存
+        verifiedTokenCache.invalidate(token);
         String tokenMd5 = DigestUtils.md5Hex(token);
-        // 1. delete tokenMd5
-        redisTemplate.delete(String.format(CommonRedisKey.LOGIN_TOKEN, tokenMd5));
-        // 2. delete username
-        redisTemplate.delete(String.format(CommonRedisKey.LOGIN_USER, username));
-        // 3. delete salt
-        redisTemplate.delete(String.format(CommonRedisKey.LOGIN_SALT, username));
-        // 4. delete user token
-        redisTemplate.delete(String.format(CommonRedisKey.LOGIN_USER_TOKEN, username, tokenMd5));
+        String sessionKey = String.format(CommonRedisKey.LOGIN_SESSION, tokenMd5);
+        // 删除会话盐值对应的签名算法和校验器
+        LoginSysUserRedisVo loginSysUserRedisVo = (LoginSysUserRedisVo) redisTemplate.opsForHash().get(sessionKey, SESSION_FIELD_USER);
+        if (loginSysUserRedisVo != null) {
+            JwtUtil.removeVerifier(loginSysUserRedisVo.getSalt());
+        }
+        String userSessionsKey = String.format(CommonRedisKey.LOGIN_USER_SESSIONS, username);
+        redisTemplate.execute(new SessionCallback<Object>() {
+            @Override
+            public Object execute(RedisOperations operations) throws DataAccessException {
+                operations.multi();
+                // 1. delete session and legacy token
+                operations.delete(Arrays.asList(
+                        sessionKey,
+                        String.format(CommonRedisKey.LOGIN_TOKEN, tokenMd5)
+                ));
+                // 2. remove from user session index
+                operations.opsForZSet().remove(userSessionsKey, tokenMd5);
+                // 3. remove from role and department session index
+                for (String indexKey : getSessionIndexKeys(loginSysUserRedisVo)) {
+                    operations.opsForZSet().remove(indexKey, tokenMd5);
+                }
+                return operations.exec();
+            }
+        });
     }
 
     @Override
@@ -172,28 +309,459 @@ public class LoginRedisServiceImpl implements LoginRedisService {
         if (token == null) {
             throw new IllegalArgumentException("token不能为空");
         }
-        String tokenMd5 = DigestUtils.md5Hex(token);
-        Object object = redisTemplate.opsForValue().get(String.format(CommonRedisKey.LOGIN_TOKEN, tokenMd5));
-        return object != null;
+        return getLoginSysUserRedisVo(token) != null;
+    }
+
+    @Override
+    public boolean hasLoginSession(String username) {
+        Long count = redisTemplate.opsForZSet().count(String.format(CommonRedisKey.LOGIN_USER_SESSIONS, username),
+                System.currentTimeMillis(), Double.POSITIVE_INFINITY);
+        return count != null && count > 0;
     }
 
     @Override
     public void deleteUserAllCache(String username) {
-        Set<String> userTokenMd5Set = redisTemplate.keys(String.format(CommonRedisKey.LOGIN_USER_TOKEN, username, "*"));
-        if (CollectionUtils.isEmpty(userTokenMd5Set)) {
+        // 删除本地已校验token缓存
+        verifiedTokenCache.invalidateUser(username);
+        // 从用户会话索引中获取所有tokenMd5，不扫描keyspace
+        String userSessionsKey = String.format(CommonRedisKey.LOGIN_USER_SESSIONS, username);
+        Set<Object> tokenMd5Set = redisTemplate.opsForZSet().range(userSessionsKey, 0, -1);
+        List<String> deleteKeyList = new ArrayList<>();
+        if (CollectionUtils.isNotEmpty(tokenMd5Set)) {
+            List<String> tokenMd5List = new ArrayList<>();
+            for (Object tokenMd5 : tokenMd5Set) {
+                // 1. 登陆用户的所有会话信息
+                tokenMd5List.add(tokenMd5.toString());
+                deleteKeyList.add(String.format(CommonRedisKey.LOGIN_SESSION, tokenMd5));
+            }
+            List<Object> sessionUserList = getSessionUsers(deleteKeyList);
+            removeSessionVerifiers(sessionUserList);
+            removeFromSessionIndex(tokenMd5List, sessionUserList);
+        }
+        // 2. 用户会话索引
+        deleteKeyList.add(userSessionsKey);
+        // 3. 旧版本登陆用户信息和盐值信息，删除后旧版本token无法再迁移
+        deleteKeyList.add(String.format(CommonRedisKey.LOGIN_USER, username));
+        deleteKeyList.add(String.format(CommonRedisKey.LOGIN_SALT, username));
+        redisTemplate.delete(deleteKeyList);
+    }
+
+    @Override
+    public String putRefreshTokenIfAbsent(String oldToken, String newToken) {
+        if (StringUtils.isBlank(oldToken)) {
+            throw new IllegalArgumentException("oldToken不能为空");
+        }
+        String refreshKey = String.format(CommonRedisKey.LOGIN_REFRESH, DigestUtils.md5Hex(oldToken));
+        // 宽限时间内，旧token映射到同一个新token
+        long graceSecond = Math.max(jwtProperties.getRefreshGraceSecond(), 1);
+        Boolean absent = redisTemplate.opsForValue().setIfAbsent(refreshKey, newToken, graceSecond, TimeUnit.SECONDS);
+        if (Boolean.TRUE.equals(absent)) {
+            return null;
+        }
+        Object refreshedToken = redisTemplate.opsForValue().get(refreshKey);
+        if (refreshedToken == null) {
+            // 在SETNX和GET之间过期，说明宽限时间已过，由当前线程刷新
+            return null;
+        }
+        return refreshedToken.toString();
+    }
+
+    @Override
+    public SessionBatchResult deleteRoleAllCache(Long roleId) {
+        if (roleId == null) {
+            throw new IllegalArgumentException("roleId不能为空");
+        }
+        return deleteIndexedSessions(String.format(CommonRedisKey.LOGIN_ROLE_SESSIONS, roleId));
+    }
+
+    @Override
+    public SessionBatchResult deleteDepartmentAllCache(Long departmentId) {
+        if (departmentId == null) {
+            throw new IllegalArgumentException("departmentId不能为空");
+        }
+        return deleteIndexedSessions(String.format(CommonRedisKey.LOGIN_DEPARTMENT_SESSIONS, departmentId));
+    }
+
+    @Override
+    public SessionBatchResult refreshRoleLoginInfo(Long roleId, String roleName, String roleCode, Set<String> permissionCodes) {
+        if (roleId == null) {
+            throw new IllegalArgumentException("roleId不能为空");
+        }
+        // 权限编码列表只更新角色权限，会话中只更新权限版本号
+        long permissionVersion = rolePermissionStore.replace(roleId, permissionCodes);
+        String indexKey = String.format(CommonRedisKey.LOGIN_ROLE_SESSIONS, roleId);
+        if (!jwtProperties.getSessionIndex().isEnable()) {
+            // 未启用会话索引时只更新角色权限，会话中的权限版本号落后时读取角色权限
+            return new SessionBatchResult(indexKey, 0);
+        }
+        return refreshIndexedSessions(indexKey, loginSysUserRedisVo -> {
+            loginSysUserRedisVo.setPermissionVersion(permissionVersion)
+                    .setRoleName(roleName)
+                    .setRoleCode(roleCode)
+                    .setPermissionCodes(null);
+        });
+    }
+
+    @Override
+    public SessionBatchResult refreshDepartmentLoginInfo(Long departmentId, String departmentName) {
+        if (departmentId == null) {
+            throw new IllegalArgumentException("departmentId不能为空");
+        }
+        return refreshIndexedSessions(String.format(CommonRedisKey.LOGIN_DEPARTMENT_SESSIONS, departmentId), loginSysUserRedisVo ->
+                loginSysUserRedisVo.setDepartmentName(departmentName));
+    }
+
+    /**
+     * 分批删除会话索引中的所有会话
+     * 每批：1次ZRANGE读取tokenMd5，1次管道读取会话用户，1次管道删除会话和各索引中的成员
+     * 已处理的成员从索引中删除，每批都从头读取，批次数按开始时的会话数量限制
+     *
+     * @param indexKey
+     * @return
+     */
+    private SessionBatchResult deleteIndexedSessions(String indexKey) {
+        long startTime = System.currentTimeMillis();
+        Long total = redisTemplate.opsForZSet().zCard(indexKey);
+        SessionBatchResult result = new SessionBatchResult(indexKey, total == null ? 0 : total);
+        int batchSize = getBatchSize();
+        long maxBatches = result.getTotal() / batchSize + 1;
+        while (result.getBatches() < maxBatches) {
+            Set<Object> members = redisTemplate.opsForZSet().range(indexKey, 0, batchSize - 1);
+            if (CollectionUtils.isEmpty(members)) {
+                break;
+            }
+            List<String> tokenMd5List = new ArrayList<>(members.size());
+            List<String> sessionKeyList = new ArrayList<>(members.size());
+            for (Object member : members) {
+                tokenMd5List.add(member.toString());
+                sessionKeyList.add(String.format(CommonRedisKey.LOGIN_SESSION, member));
+            }
+            List<Object> sessionUserList = getSessionUsers(sessionKeyList);
+            redisTemplate.executePipelined(new SessionCallback<Object>() {
+                @Override
+                public Object execute(RedisOperations operations) throws DataAccessException {
+                    operations.delete(sessionKeyList);
+                    for (int i = 0; i < tokenMd5List.size(); i++) {
+                        Object sessionUser = sessionUserList.get(i);
+                        if (sessionUser instanceof LoginSysUserRedisVo) {
+                            String username = ((LoginSysUserRedisVo) sessionUser).getUsername();
+                            operations.opsForZSet().remove(String.format(CommonRedisKey.LOGIN_USER_SESSIONS, username), tokenMd5List.get(i));
+                            for (String sessionIndexKey : getSessionIndexKeys((LoginSysUserRedisVo) sessionUser)) {
+                                operations.opsForZSet().remove(sessionIndexKey, tokenMd5List.get(i));
+                            }
+                        }
+                    }
+                    operations.opsForZSet().remove(indexKey, members.toArray());
+                    return null;
+                }
+            });
+            long affected = 0;
+            for (int i = 0; i < tokenMd5List.size(); i++) {
+                verifiedTokenCache.invalidateTokenMd5(tokenMd5List.get(i));
+                if (sessionUserList.get(i) instanceof LoginSysUserRedisVo) {
+                    affected++;
+                }
+            }
+            removeSessionVerifiers(sessionUserList);
+            result.setProcessed(result.getProcessed() + members.size())
+                    .setAffected(result.getAffected() + affected)
+                    .setBatches(result.getBatches() + 1);
+            log.info("批量删除登陆会话,index:{},progress:{}/{}", indexKey, result.getProcessed(), result.getTotal());
+        }
+        return result.setElapsedMillis(System.currentTimeMillis() - startTime);
+    }
+
+    /**
+     * 分批刷新会话索引中未过期会话的登陆用户信息
+     * 先读取未过期tokenMd5快照再分批处理，续期导致的索引顺序变化不会遗漏会话
+     * 每批：1次管道读取会话用户，1次脚本写回
+     *
+     * @param indexKey
+     * @param updater
+     * @return
+     */
+    private SessionBatchResult refreshIndexedSessions(String indexKey, Consumer<LoginSysUserRedisVo> updater) {
+        long startTime = System.currentTimeMillis();
+        Set<Object> members = redisTemplate.opsForZSet().rangeByScore(indexKey, startTime, Double.POSITIVE_INFINITY);
+        SessionBatchResult result = new SessionBatchResult(indexKey, members == null ? 0 : members.size());
+        if (CollectionUtils.isEmpty(members)) {
+            return result.setElapsedMillis(System.currentTimeMillis() - startTime);
+        }
+        for (List<Object> batch : Iterables.partition(members, getBatchSize())) {
+            List<String> sessionKeyList = new ArrayList<>(batch.size());
+            for (Object member : batch) {
+                sessionKeyList.add(String.format(CommonRedisKey.LOGIN_SESSION, member));
+            }
+            List<Object> sessionUserList = getSessionUsers(sessionKeyList);
+            List<String> updateKeyList = new ArrayList<>(batch.size());
+            List<Object> updateUserList = new ArrayList<>(batch.size());
+            for (int i = 0; i < sessionKeyList.size(); i++) {
+                Object sessionUser = sessionUserList.get(i);
+                if (sessionUser instanceof LoginSysUserRedisVo) {
+                    updater.accept((LoginSysUserRedisVo) sessionUser);
+                    updateKeyList.add(sessionKeyList.get(i));
+                    updateUserList.add(sessionUser);
+                }
+            }
+            long affected = 0;
+            if (!updateKeyList.isEmpty()) {
+                Long updated = (Long) redisTemplate.execute(UPDATE_SESSION_USER_SCRIPT, updateKeyList, updateUserList.toArray());
+                affected = updated == null ? 0 : updated;
+            }
+            result.setProcessed(result.getProcessed() + batch.size())
+                    .setAffected(result.getAffected() + affected)
+                    .setBatches(result.getBatches() + 1);
+            log.info("批量刷新登陆会话,index:{},progress:{}/{}", indexKey, result.getProcessed(), result.getTotal());
+        }
+        return result.setElapsedMillis(System.currentTimeMillis() - startTime);
+    }
+
+    /**
+     * 管道批量读取会话中的登陆用户，顺序与sessionKeyList一致，会话不存在时为null
+     *
+     * @param sessionKeyList
+     * @return
+     */
+    private List<Object> getSessionUsers(List<String> sessionKeyList) {
+        return redisTemplate.executePipelined(new SessionCallback<Object>() {
+            @Override
+            public Object execute(RedisOperations operations) throws DataAccessException {
+                for (String sessionKey : sessionKeyList) {
+                    operations.opsForHash().get(sessionKey, SESSION_FIELD_USER);
+                }
+                return null;
+            }
+        });
+    }
+
+    /**
+     * 删除会话盐值对应的签名算法和校验器
+     *
+     * @param sessionUserList
+     */
+    private void removeSessionVerifiers(List<Object> sessionUserList) {
+        for (Object sessionUser : sessionUserList) {
+            if (sessionUser instanceof LoginSysUserRedisVo) {
+                JwtUtil.removeVerifier(((LoginSysUserRedisVo) sessionUser).getSalt());
+            }
+        }
+    }
+
+    /**
+     * 从角色和部门会话索引中删除会话
+     *
+     * @param tokenMd5List
+     * @param sessionUserList
+     */
+    private void removeFromSessionIndex(List<String> tokenMd5List, List<Object> sessionUserList) {
+        if (!jwtProperties.getSessionIndex().isEnable()) {
             return;
         }
+        redisTemplate.executePipelined(new SessionCallback<Object>() {
+            @Override
+            public Object execute(RedisOperations operations) throws DataAccessException {
+                for (int i = 0; i < tokenMd5List.size(); i++) {
+                    Object sessionUser = sessionUserList.get(i);
+                    if (sessionUser instanceof LoginSysUserRedisVo) {
+                        for (String indexKey : getSessionIndexKeys((LoginSysUserRedisVo) sessionUser)) {
+                            operations.opsForZSet().remove(indexKey, tokenMd5List.get(i));
+                        }
+                    }
+                }
+                return null;
+            }
+        });
+    }
+
+    /**
+     * 获取登陆用户的角色和部门会话索引key，未启用会话索引时返回空列表
+     *
+     * @param loginSysUserVo
+     * @return
+     */
+    private List<String> getSessionIndexKeys(LoginSysUserVo loginSysUserVo) {
+        if (loginSysUserVo == null || !jwtProperties.getSessionIndex().isEnable()) {
+            return Collections.emptyList();
+        }
+        List<String> indexKeys = new ArrayList<>(2);
+        if (loginSysUserVo.getRoleId() != null) {
+            indexKeys.add(String.format(CommonRedisKey.LOGIN_ROLE_SESSIONS, loginSysUserVo.getRoleId()));
+        }
+        if (loginSysUserVo.getDepartmentId() != null) {
+            indexKeys.add(String.format(CommonRedisKey.LOGIN_DEPARTMENT_SESSIONS, loginSysUserVo.getDepartmentId()));
+        }
+        return indexKeys;
+    }
 
-        // 1. 删除登陆用户的所有token信息
-        List<String> tokenMd5List = redisTemplate.opsForValue().multiGet(userTokenMd5Set);
-        redisTemplate.delete(tokenMd5List);
-        // 2. 删除登陆用户的所有user:token信息
-        redisTemplate.delete(userTokenMd5Set);
-        // 3. 删除登陆用户信息
-        redisTemplate.delete(String.format(CommonRedisKey.LOGIN_USER, username));
-        // 4. 删除登陆用户盐值信息
-        redisTemplate.delete(String.format(CommonRedisKey.LOGIN_SALT, username));
+    private int getBatchSize() {
+        return Math.max(jwtProperties.getSessionIndex().getBatchSize(), 1);
     }
 
+    /**
+     * 权限编码列表按角色保存一份，会话中只保存权限版本号
+     * 刷新token时会话中已经没有权限编码列表，沿用原会话的权限版本号
+     *
+     * @param loginSysUserRedisVo
+     * @param loginSysUserVo
+     */
+    private void sharePermissionCodes(LoginSysUserRedisVo loginSysUserRedisVo, LoginSysUserVo loginSysUserVo) {
+        if (loginSysUserRedisVo.getRoleId() == null) {
+            return;
+        }
+        if (loginSysUserVo.getPermissionCodes() != null) {
+            loginSysUserRedisVo.setPermissionVersion(rolePermissionStore.put(loginSysUserRedisVo.getRoleId(), loginSysUserVo.getPermissionCodes()));
+        } else if (loginSysUserVo instanceof LoginSysUserRedisVo) {
+            loginSysUserRedisVo.setPermissionVersion(((LoginSysUserRedisVo) loginSysUserVo).getPermissionVersion());
+        }
+        loginSysUserRedisVo.setPermissionCodes(null);
+    }
+
+    /**
+     * 在一个事务中写入登陆会话，如果oldToken不为空，则同时删除旧会话
+     *
+     * @param oldToken
+     * @param jwtToken
+     * @param loginSysUserVo
+     */
+    private void writeLoginSession(String oldToken, JwtToken jwtToken, LoginSysUserVo loginSysUserVo) {
+        // token
+        String token = jwtToken.getToken();
+        // 登陆用户名称
+        String username = loginSysUserVo.getUsername();
+        // token md5值
+        String tokenMd5 = DigestUtils.md5Hex(token);
+
+        // Redis缓存JWT Token信息
+        JwtTokenRedisVo jwtTokenRedisVo = ShiroMapstructConvert.INSTANCE.jwtTokenToJwtTokenRedisVo(jwtToken);
+
+        // 用户客户端信息
+        ClientInfo clientInfo = ClientInfoUtil.get(HttpServletRequestUtil.getRequest());
+
+        // Redis缓存登陆用户信息
+        // 将LoginSysUserVo对象复制到LoginSysUserRedisVo，使用mapstruct进行对象属性复制
+        LoginSysUserRedisVo loginSysUserRedisVo = SysUserConvert.INSTANCE.loginSysUserVoToLoginSysUserRedisVo(loginSysUserVo);
+        loginSysUserRedisVo.setSalt(jwtToken.getSalt());
+        loginSysUserRedisVo.setClientInfo(clientInfo);
+        sharePermissionCodes(loginSysUserRedisVo, loginSysUserVo);
+
+        // Redis过期时间与JwtToken过期时间一致
+        Duration expireDuration = Duration.ofSeconds(jwtToken.getExpireSecond());
+
+        String sessionKey = String.format(CommonRedisKey.LOGIN_SESSION, tokenMd5);
+        Map<String, Object> session = new HashMap<>(4);
+        session.put(SESSION_FIELD_TOKEN, jwtTokenRedisVo);
+        session.put(SESSION_FIELD_USER, loginSysUserRedisVo);
+        String userSessionsKey = String.format(CommonRedisKey.LOGIN_USER_SESSIONS, username);
+        long now = System.currentTimeMillis();
+        long expireTime = now + expireDuration.toMillis();
+        // 刷新token时旧会话的宽限时间
+        long graceSecond = jwtProperties.getRefreshGraceSecond();
+        List<String> sessionIndexKeys = getSessionIndexKeys(loginSysUserVo);
+
+        redisTemplate.execute(new SessionCallback<Object>() {
+            @Override
+            public Object execute(RedisOperations operations) throws DataAccessException {
+                operations.multi();
+                if (StringUtils.isNotBlank(oldToken)) {
+                    String oldTokenMd5 = DigestUtils.md5Hex(oldToken);
+                    String oldSessionKey = String.format(CommonRedisKey.LOGIN_SESSION, oldTokenMd5);
+                    operations.delete(String.format(CommonRedisKey.LOGIN_TOKEN, oldTokenMd5));
+                    if (graceSecond > 0) {
+                        // 旧会话在宽限时间内继续有效，保证携带旧token的并发请求不失败，并且不再续期
+                        long graceExpireTime = now + TimeUnit.SECONDS.toMillis(graceSecond);
+                        operations.opsForHash().put(oldSessionKey, SESSION_FIELD_ROTATED, Boolean.TRUE);
+                        operations.expire(oldSessionKey, graceSecond, TimeUnit.SECONDS);
+                        operations.opsForZSet().add(userSessionsKey, oldTokenMd5, graceExpireTime);
+                        for (String indexKey : sessionIndexKeys) {
+                            operations.opsForZSet().add(indexKey, oldTokenMd5, graceExpireTime);
+                        }
+                    } else {
+                        operations.delete(oldSessionKey);
+                        operations.opsForZSet().remove(userSessionsKey, oldTokenMd5);
+                        for (String indexKey : sessionIndexKeys) {
+                            operations.opsForZSet().remove(indexKey, oldTokenMd5);
+                        }
+                    }
+                }
+                // 1. login:session:tokenMd5
+                operations.opsForHash().putAll(sessionKey, session);
+                operations.expire(sessionKey, expireDuration.getSeconds(), TimeUnit.SECONDS);
+                // 2. 用户会话索引，顺带清理已过期的会话
+                addUserSession(operations, userSessionsKey, tokenMd5, expireTime, now);
+                // 3. 角色和部门会话索引
+                for (String indexKey : sessionIndexKeys) {
+                    addUserSession(operations, indexKey, tokenMd5, expireTime, now);
+                }
+                return operations.exec();
+            }
+        });
+    }
+
+    /**
+     * 添加用户、角色、部门会话索引，并清理已过期的成员
+     * 索引key的过期时间不小于最后一个会话的过期时间，只延长不缩短
+     *
+     * @param operations
+     * @param userSessionsKey
+     * @param tokenMd5
+     * @param expireTime
+     * @param now
+     */
+    private void addUserSession(RedisOperations operations, String userSessionsKey, String tokenMd5, long expireTime, long now) {
+        operations.opsForZSet().removeRangeByScore(userSessionsKey, 0, now);
+        operations.opsForZSet().add(userSessionsKey, tokenMd5, expireTime);
+        // 使用EVAL而不是EVALSHA，在事务中执行时不会因脚本未缓存而失败
+        byte[] rawKey = ((RedisSerializer<String>) operations.getKeySerializer()).serialize(userSessionsKey);
+        byte[] rawExpireTime = String.valueOf(expireTime).getBytes(StandardCharsets.UTF_8);
+        byte[] rawNow = String.valueOf(now).getBytes(StandardCharsets.UTF_8);
+        operations.execute((RedisCallback<Object>) connection ->
+                connection.eval(EXTEND_INDEX_EXPIRE_SCRIPT, ReturnType.INTEGER, 1, rawKey, rawExpireTime, rawNow));
+    }
+
+    /**
+     * 将旧版本的login:token/login:user/login:salt缓存迁移到登陆会话hash
+     *
+     * @param tokenMd5
+     * @return
+     */
+    private LoginSysUserRedisVo migrateLegacySession(String tokenMd5) {
+        String legacyTokenKey = String.format(CommonRedisKey.LOGIN_TOKEN, tokenMd5);
+        JwtTokenRedisVo jwtTokenRedisVo = (JwtTokenRedisVo) redisTemplate.opsForValue().get(legacyTokenKey);
+        if (jwtTokenRedisVo == null) {
+            return null;
+        }
+        String username = jwtTokenRedisVo.getUsername();
+        LoginSysUserRedisVo loginSysUserRedisVo = (LoginSysUserRedisVo) redisTemplate.opsForValue().get(String.format(CommonRedisKey.LOGIN_USER, username));
+        Long expireSecond = redisTemplate.getExpire(legacyTokenKey, TimeUnit.SECONDS);
+        if (loginSysUserRedisVo == null || expireSecond == null || expireSecond <= 0) {
+            return null;
+        }
+        // 旧版本会话中的权限编码列表改为按角色保存
+        sharePermissionCodes(loginSysUserRedisVo, loginSysUserRedisVo);
+        String sessionKey = String.format(CommonRedisKey.LOGIN_SESSION, tokenMd5);
+        Map<String, Object> session = new HashMap<>(4);
+        session.put(SESSION_FIELD_TOKEN, jwtTokenRedisVo);
+        session.put(SESSION_FIELD_USER, loginSysUserRedisVo);
+        String userSessionsKey = String.format(CommonRedisKey.LOGIN_USER_SESSIONS, username);
+        long now = System.currentTimeMillis();
+        long expireTime = now + TimeUnit.SECONDS.toMillis(expireSecond);
+        redisTemplate.execute(new SessionCallback<Object>() {
+            @Override
+            public Object execute(RedisOperations operations) throws DataAccessException {
+                operations.multi();
+                operations.opsForHash().putAll(sessionKey, session);
+                operations.expire(sessionKey, expireSecond, TimeUnit.SECONDS);
+                addUserSession(operations, userSessionsKey, tokenMd5, expireTime, now);
+                for (String indexKey : getSessionIndexKeys(loginSysUserRedisVo)) {
+                    addUserSession(operations, indexKey, tokenMd5, expireTime, now);
+                }
+                operations.delete(String.format(CommonRedisKey.LOGIN_USER_TOKEN, username, tokenMd5));
+                operations.delete(legacyTokenKey);
+                return operations.exec();
+            }
+        });
+        log.debug("迁移旧版本登陆缓存,username:{},tokenMd5:{}", username, tokenMd5);
+        return loginSysUserRedisVo;
+    }
 
 }
@@ -0,0 +1,533 @@
+/*
+ * Copyright 2019-2029 geekidea(https://github.com/geekidea)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.geekidea.springbootplus.framework.shiro.cache.impl;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import io.geekidea.springbootplus.framework.constant.CommonRedisKey;
+import io.geekidea.springbootplus.framework.shiro.cache.LoginRedisService;
+import io.geekidea.springbootplus.framework.shiro.cache.VerifiedTokenCache;
+import io.geekidea.springbootplus.framework.shiro.jwt.JwtProperties;
+import io.geekidea.springbootplus.framework.shiro.jwt.JwtToken;
+import io.geekidea.springbootplus.framework.shiro.vo.LoginSysUserRedisVo;
+import io.geekidea.springbootplus.framework.shiro.vo.LoginSysUserVo;
+import io.geekidea.springbootplus.framework.shiro.vo.SessionBatchResult;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.codec.digest.DigestUtils;
+import org.apache.commons.lang3.StringUtils;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Primary;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PreDestroy;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 登陆会话两级缓存服务
+ * 本地近端缓存在前，Redis为数据源，
+ * 1. 新鲜时间内直接返回本地会话，不访问Redis
+ * 2. 超过新鲜时间后在等待时间内从Redis重新加载，Redis慢或不可用时，最大陈旧时间内返回本地会话
+ * 3. 登出、刷新token、删除用户会话时通过Redis发布订阅通知所有节点删除本地会话和本地已校验token缓存
+ *
+ * @author geekidea
+ * @date 2020-03-29
+ * @since 1.5.0.RELEASE
+ **/
+@Slf4j
+@Primary
+@Service
+@ConditionalOnProperty(prefix = "spring-boot-plus.jwt", name = "session-store", havingValue = "redis", matchIfMissing = true)
+public class NearCacheLoginRedisService implements LoginRedisService, MessageListener, MeterBinder {
+
+    /**
+     * 失效通知消息前缀：tokenMd5
+     */
+    static final String TOKEN_MESSAGE_PREFIX = "token:";
+
+    /**
+     * 失效通知消息前缀：username
+     */
+    static final String USER_MESSAGE_PREFIX = "user:";
+
+    /**
+     * 角色会话失效消息前缀
+     */
+    static final String ROLE_MESSAGE_PREFIX = "role:";
+
+    /**
+     * 部门会话失效消息前缀
+     */
+    static final String DEPARTMENT_MESSAGE_PREFIX = "department:";
+
+    /**
+     * 等待重新加载队列长度，队列已满时直接返回本地会话
+     */
+    private static final int RELOAD_QUEUE_SIZE = 1000;
+
+    private final LoginRedisServiceImpl loginRedisServiceImpl;
+
+    private final JwtProperties jwtProperties;
+
+    private final JwtProperties.NearCacheConfig nearCacheConfig;
+
+    private final RedisTemplate redisTemplate;
+
+    private final VerifiedTokenCache verifiedTokenCache;
+
+    private final Cache<String, SessionEntry> cache;
+
+    /**
+     * 正在重新加载的会话，tokenMd5 --> future，同一会话同时只有一个Redis读取
+     */
+    private final ConcurrentMap<String, CompletableFuture<SessionEntry>> reloadingMap = new ConcurrentHashMap<>();
+
+    private final ThreadPoolExecutor reloadExecutor;
+
+    /**
+     * 失效序号，未命中加载期间发生失效时不写入本地缓存
+     */
+    private final AtomicLong invalidateSequence = new AtomicLong();
+
+    private final LongAdder hitCount = new LongAdder();
+
+    private final LongAdder missCount = new LongAdder();
+
+    private final LongAdder reloadCount = new LongAdder();
+
+    private final LongAdder fallbackCount = new LongAdder();
+
+    private final LongAdder fallbackStaleMillis = new LongAdder();
+
+    private final AtomicLong maxFallbackStaleMillis = new AtomicLong();
+
+    public NearCacheLoginRedisService(LoginRedisServiceImpl loginRedisServiceImpl,
+                                      JwtProperties jwtProperties,
+                                      RedisTemplate redisTemplate,
+                                      VerifiedTokenCache verifiedTokenCache,
+                                      RedisMessageListenerContainer redisMessageListenerContainer) {
+        this.loginRedisServiceImpl = loginRedisServiceImpl;
+        this.jwtProperties = jwtProperties;
+        this.nearCacheConfig = jwtProperties.getNearCache();
+        this.redisTemplate = redisTemplate;
+        this.verifiedTokenCache = verifiedTokenCache;
+        // 超过最大陈旧时间的会话直接移除，下次请求同步读取Redis
+        this.cache = CacheBuilder.newBuilder()
+                .maximumSize(nearCacheConfig.getMaximumSize())
+                .expireAfterWrite(Math.max(nearCacheConfig.getMaxStaleSecond(), nearCacheConfig.getFreshSecond()), TimeUnit.SECONDS)
+                .build();
+        int reloadThreads = Math.max(nearCacheConfig.getReloadThreads(), 1);
+        this.reloadExecutor = new ThreadPoolExecutor(reloadThreads, reloadThreads, 60, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(RELOAD_QUEUE_SIZE),
+                new ThreadFactoryBuilder().setNameFormat("login-near-cache-%d").setDaemon(true).build());
+        this.reloadExecutor.allowCoreThreadTimeOut(true);
+        redisMessageListenerContainer.addMessageListener(this, new ChannelTopic(CommonRedisKey.LOGIN_SESSION_CHANNEL));
+    }
+
+    @Override
+    public void cacheLoginInfo(JwtToken jwtToken, LoginSysUserVo loginSysUserVo) {
+        loginRedisServiceImpl.cacheLoginInfo(jwtToken, loginSysUserVo);
+        // 单用户登陆时，其他会话已被删除
+        if (jwtProperties.isSingleLogin()) {
+            invalidateUser(loginSysUserVo.getUsername());
+            publish(USER_MESSAGE_PREFIX + loginSysUserVo.getUsername());
+        }
+    }
+
+    @Override
+    public void refreshLoginInfo(String oldToken, String username, JwtToken newJwtToken) {
+        loginRedisServiceImpl.refreshLoginInfo(oldToken, username, newJwtToken);
+        // 旧会话已进入宽限时间，删除本地会话，宽限时间内从Redis读取
+        String oldTokenMd5 = DigestUtils.md5Hex(oldToken);
+        invalidateToken(oldTokenMd5);
+        publish(TOKEN_MESSAGE_PREFIX + oldTokenMd5);
+    }
+
+    @Override
+    public boolean renewLoginInfo(String token, LoginSysUserVo loginSysUserVo) {
+        return loginRedisServiceImpl.renewLoginInfo(token, loginSysUserVo);
+    }
+
+    @Override
+    public String putRefreshTokenIfAbsent(String oldToken, String newToken) {
+        return loginRedisServiceImpl.putRefreshTokenIfAbsent(oldToken, newToken);
+    }
+
+    @Override
+    public LoginSysUserRedisVo getLoginSysUserRedisVo(String token) {
+        if (!nearCacheConfig.isEnable()) {
+            return loginRedisServiceImpl.getLoginSysUserRedisVo(token);
+        }
+        if (StringUtils.isBlank(token)) {
+            throw new IllegalArgumentException("token不能为空");
+        }
+        String tokenMd5 = DigestUtils.md5Hex(token);
+        SessionEntry sessionEntry = cache.getIfPresent(tokenMd5);
+        if (sessionEntry == null) {
+            missCount.increment();
+            return load(token, tokenMd5);
+        }
+        long staleMillis = System.currentTimeMillis() - sessionEntry.getLoadTime();
+        if (staleMillis <= TimeUnit.SECONDS.toMillis(nearCacheConfig.getFreshSecond())) {
+            hitCount.increment();
+            return sessionEntry.getLoginSysUserRedisVo();
+        }
+        // 超过新鲜时间，在等待时间内从Redis重新加载
+        reloadCount.increment();
+        CompletableFuture<SessionEntry> future = reload(token, tokenMd5, sessionEntry);
+        try {
+            SessionEntry reloadedEntry = future.get(nearCacheConfig.getRedisTimeoutMillis(), TimeUnit.MILLISECONDS);
+            return reloadedEntry == null ? null : reloadedEntry.getLoginSysUserRedisVo();
+        } catch (TimeoutException | ExecutionException e) {
+            log.warn("登陆会话重新加载超时或异常,使用本地会话,staleMillis:{},exception:{}", staleMillis, e.toString());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        // Redis慢或不可用，返回有界陈旧的本地会话，后台加载完成后更新本地缓存
+        fallbackCount.increment();
+        fallbackStaleMillis.add(staleMillis);
+        maxFallbackStaleMillis.accumulateAndGet(staleMillis, Math::max);
+        return sessionEntry.getLoginSysUserRedisVo();
+    }
+
+    @Override
+    public LoginSysUserVo getLoginSysUserVo(String token) {
+        return loginRedisServiceImpl.toLoginSysUserVo(getLoginSysUserRedisVo(token));
+    }
+
+    @Override
+    public String getSalt(String token) {
+        LoginSysUserRedisVo loginSysUserRedisVo = getLoginSysUserRedisVo(token);
+        if (loginSysUserRedisVo == null) {
+            return null;
+        }
+        return loginSysUserRedisVo.getSalt();
+    }
+
+    @Override
+    public void deleteLoginInfo(String token, String username) {
+        loginRedisServiceImpl.deleteLoginInfo(token, username);
+        String tokenMd5 = DigestUtils.md5Hex(token);
+        invalidateToken(tokenMd5);
+        publish(TOKEN_MESSAGE_PREFIX + tokenMd5);
+    }
+
+    @Override
+    public boolean exists(String token) {
+        if (token == null) {
+            throw new IllegalArgumentException("token不能为空");
+        }
+        return getLoginSysUserRedisVo(token) != null;
+    }
+
+    @Override
+    public boolean hasLoginSession(String username) {
+        return loginRedisServiceImpl.hasLoginSession(username);
+    }
+
+    @Override
+    public void deleteUserAllCache(String username) {
+        loginRedisServiceImpl.deleteUserAllCache(username);
+        invalidateUser(username);
+        publish(USER_MESSAGE_PREFIX + username);
+    }
+
+    @Override
+    public SessionBatchResult deleteRoleAllCache(Long roleId) {
+        SessionBatchResult result = loginRedisServiceImpl.deleteRoleAllCache(roleId);
+        invalidateRole(roleId);
+        publish(ROLE_MESSAGE_PREFIX + roleId);
+        return result;
+    }
+
+    @Override
+    public SessionBatchResult deleteDepartmentAllCache(Long departmentId) {
+        SessionBatchResult result = loginRedisServiceImpl.deleteDepartmentAllCache(departmentId);
+        invalidateDepartment(departmentId);
+        publish(DEPARTMENT_MESSAGE_PREFIX + departmentId);
+        return result;
+    }
+
+    @Override
+    public SessionBatchResult refreshRoleLoginInfo(Long roleId, String roleName, String roleCode, Set<String> permissionCodes) {
+        SessionBatchResult result = loginRedisServiceImpl.refreshRoleLoginInfo(roleId, roleName, roleCode, permissionCodes);
+        invalidateRole(roleId);
+        publish(ROLE_MESSAGE_PREFIX + roleId);
+        return result;
+    }
+
+    @Override
+    public SessionBatchResult refreshDepartmentLoginInfo(Long departmentId, String departmentName) {
+        SessionBatchResult result = loginRedisServiceImpl.refreshDepartmentLoginInfo(departmentId, departmentName);
+        invalidateDepartment(departmentId);
+        publish(DEPARTMENT_MESSAGE_PREFIX + departmentId);
+        return result;
+    }
+
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        Object body = redisTemplate.getValueSerializer().deserialize(message.getBody());
+        if (body == null) {
+            return;
+        }
+        String content = body.toString();
+        log.debug("收到登陆会话失效通知:{}", content);
+        // 已校验token缓存命中时不读取Redis会话，需要同时删除，否则被删除的会话在缓存有效时间内仍可使用
+        if (content.startsWith(TOKEN_MESSAGE_PREFIX)) {
+            String tokenMd5 = content.substring(TOKEN_MESSAGE_PREFIX.length());
+            invalidateToken(tokenMd5);
+            verifiedTokenCache.invalidateTokenMd5(tokenMd5);
+        } else if (content.startsWith(USER_MESSAGE_PREFIX)) {
+            String username = content.substring(USER_MESSAGE_PREFIX.length());
+            invalidateUser(username);
+            verifiedTokenCache.invalidateUser(username);
+        } else if (content.startsWith(ROLE_MESSAGE_PREFIX)) {
+            // 已校验token缓存中没有角色信息，全部删除
+            invalidateRole(Long.valueOf(content.substring(ROLE_MESSAGE_PREFIX.length())));
+            verifiedTokenCache.invalidateAll();
+        } else if (content.startsWith(DEPARTMENT_MESSAGE_PREFIX)) {
+            invalidateDepartment(Long.valueOf(content.substring(DEPARTMENT_MESSAGE_PREFIX.length())));
+            verifiedTokenCache.invalidateAll();
+        }
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        String name = "login.session.near.cache";
+        FunctionCounter.builder(name + ".requests", hitCount, LongAdder::sum).tag("result", "hit").register(registry);
+        FunctionCounter.builder(name + ".requests", missCount, LongAdder::sum).tag("result", "miss").register(registry);
+        FunctionCounter.builder(name + ".requests", reloadCount, LongAdder::sum).tag("result", "reload").register(registry);
+        FunctionCounter.builder(name + ".requests", fallbackCount, LongAdder::sum).tag("result", "fallback").register(registry);
+        Gauge.builder(name + ".hit.ratio", this, NearCacheLoginRedisService::getHitRatio).register(registry);
+        Gauge.builder(name + ".fallback.stale.avg", this, NearCacheLoginRedisService::getAverageFallbackStaleMillis)
+                .baseUnit("milliseconds").register(registry);
+        Gauge.builder(name + ".fallback.stale.max", maxFallbackStaleMillis, AtomicLong::get)
+                .baseUnit("milliseconds").register(registry);
+        Gauge.builder(name + ".size", cache, Cache::size).register(registry);
+    }
+
+    /**
+     * 删除本节点的会话缓存
+     *
+     * @param tokenMd5
+     */
+    public void invalidateToken(String tokenMd5) {
+        invalidateSequence.incrementAndGet();
+        cache.invalidate(tokenMd5);
+    }
+
+    /**
+     * 删除本节点用户所有会话缓存
+     *
+     * @param username
+     */
+    public void invalidateUser(String username) {
+        if (StringUtils.isBlank(username)) {
+            return;
+        }
+        invalidateSequence.incrementAndGet();
+        cache.asMap().values().removeIf(sessionEntry -> username.equals(sessionEntry.getLoginSysUserRedisVo().getUsername()));
+    }
+
+    /**
+     * 删除本节点角色所有会话缓存，一次遍历本地缓存，不需要逐个会话发布通知
+     *
+     * @param roleId
+     */
+    public void invalidateRole(Long roleId) {
+        if (roleId == null) {
+            return;
+        }
+        invalidateSequence.incrementAndGet();
+        cache.asMap().values().removeIf(sessionEntry -> roleId.equals(sessionEntry.getLoginSysUserRedisVo().getRoleId()));
+    }
+
+    /**
+     * 删除本节点部门所有会话缓存
+     *
+     * @param departmentId
+     */
+    public void invalidateDepartment(Long departmentId) {
+        if (departmentId == null) {
+            return;
+        }
+        invalidateSequence.incrementAndGet();
+        cache.asMap().values().removeIf(sessionEntry -> departmentId.equals(sessionEntry.getLoginSysUserRedisVo().getDepartmentId()));
+    }
+
+    public void invalidateAll() {
+        invalidateSequence.incrementAndGet();
+        cache.invalidateAll();
+    }
+
+    /**
+     * 不访问Redis直接返回本地会话的比例，包括新鲜命中和陈旧降级
+     *
+     * @return
+     */
+    public double getHitRatio() {
+        long total = hitCount.sum() + missCount.sum() + reloadCount.sum();
+        return total == 0 ? 0 : (double) (hitCount.sum() + fallbackCount.sum()) / total;
+    }
+
+    public double getAverageFallbackStaleMillis() {
+        long fallback = fallbackCount.sum();
+        return fallback == 0 ? 0 : (double) fallbackStaleMillis.sum() / fallback;
+    }
+
+    public long getHitCount() {
+        return hitCount.sum();
+    }
+
+    public long getMissCount() {
+        return missCount.sum();
+    }
+
+    public long getReloadCount() {
+        return reloadCount.sum();
+    }
+
+    public long getFallbackCount() {
+        return fallbackCount.sum();
+    }
+
+    public long getMaxFallbackStaleMillis() {
+        return maxFallbackStaleMillis.get();
+    }
+
+    public long size() {
+        return cache.size();
+    }
+
+    @PreDestroy
+    public void destroy() {
+        reloadExecutor.shutdownNow();
+    }
+
+    /**
+     * 本地未命中，同步读取Redis，加载期间没有失效通知时写入本地缓存
+     *
+     * @param token
+     * @param tokenMd5
+     * @return
+     */
+    private LoginSysUserRedisVo load(String token, String tokenMd5) {
+        long sequence = invalidateSequence.get();
+        long loadTime = System.currentTimeMillis();
+        LoginSysUserRedisVo loginSysUserRedisVo = loginRedisServiceImpl.getLoginSysUserRedisVo(token);
+        if (loginSysUserRedisVo != null && sequence == invalidateSequence.get()) {
+            cache.put(tokenMd5, new SessionEntry(loginSysUserRedisVo, loadTime));
+        }
+        return loginSysUserRedisVo;
+    }
+
+    /**
+     * 后台重新加载会话，只替换发起加载时的本地会话，期间已失效的会话不会被写回
+     *
+     * @param token
+     * @param tokenMd5
+     * @param sessionEntry
+     * @return
+     */
+    private CompletableFuture<SessionEntry> reload(String token, String tokenMd5, SessionEntry sessionEntry) {
+        CompletableFuture<SessionEntry> future = reloadingMap.get(tokenMd5);
+        if (future != null) {
+            return future;
+        }
+        CompletableFuture<SessionEntry> newFuture = new CompletableFuture<>();
+        future = reloadingMap.putIfAbsent(tokenMd5, newFuture);
+        if (future != null) {
+            return future;
+        }
+        try {
+            reloadExecutor.execute(() -> {
+                try {
+                    long loadTime = System.currentTimeMillis();
+                    LoginSysUserRedisVo loginSysUserRedisVo = loginRedisServiceImpl.getLoginSysUserRedisVo(token);
+                    if (loginSysUserRedisVo == null) {
+                        cache.asMap().remove(tokenMd5, sessionEntry);
+                        newFuture.complete(null);
+                        return;
+                    }
+                    SessionEntry reloadedEntry = new SessionEntry(loginSysUserRedisVo, loadTime);
+                    cache.asMap().replace(tokenMd5, sessionEntry, reloadedEntry);
+                    newFuture.complete(reloadedEntry);
+                } catch (Throwable e) {
+                    newFuture.completeExceptionally(e);
+                } finally {
+                    reloadingMap.remove(tokenMd5, newFuture);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            reloadingMap.remove(tokenMd5, newFuture);
+            newFuture.completeExceptionally(e);
+        }
+        return newFuture;
+    }
+
+    /**
+     * 发布会话失效通知，发布失败时其他节点在新鲜时间后感知
+     *
+     * @param content
+     */
+    private void publish(String content) {
+        if (!nearCacheConfig.isEnable() && !jwtProperties.getLocalCache().isEnable()) {
+            return;
+        }
+        try {
+            redisTemplate.convertAndSend(CommonRedisKey.LOGIN_SESSION_CHANNEL, content);
+        } catch (Exception e) {
+            log.error("发布登陆会话失效通知异常:" + content, e);
+        }
+    }
+
+    @Getter
+    @AllArgsConstructor
+    private static class SessionEntry {
+
+        private final LoginSysUserRedisVo loginSysUserRedisVo;
+
+        /**
+         * 从Redis加载的时间
+         */
+        private final long loadTime;
+
+    }
+
+}
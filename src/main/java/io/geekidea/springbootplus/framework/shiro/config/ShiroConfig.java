@@ -17,12 +17,19 @@
 package io.geekidea.springbootplus.framework.shiro.config;
 
 import com.alibaba.fastjson.JSON;
+import io.geekidea.springbootplus.framework.shiro.cache.AuthorizationInfoCache;
 import io.geekidea.springbootplus.framework.shiro.cache.LoginRedisService;
+import io.geekidea.springbootplus.framework.shiro.cache.RevokedTokenFilter;
+import io.geekidea.springbootplus.framework.shiro.cache.VerifiedTokenCache;
 import io.geekidea.springbootplus.framework.shiro.exception.ShiroConfigException;
+import io.geekidea.springbootplus.framework.shiro.filter.CompiledShiroFilterFactoryBean;
 import io.geekidea.springbootplus.framework.shiro.jwt.JwtCredentialsMatcher;
 import io.geekidea.springbootplus.framework.shiro.jwt.JwtFilter;
 import io.geekidea.springbootplus.framework.shiro.jwt.JwtProperties;
 import io.geekidea.springbootplus.framework.shiro.jwt.JwtRealm;
+import io.geekidea.springbootplus.framework.shiro.permission.IndexedPermissionAnnotationHandler;
+import io.geekidea.springbootplus.framework.shiro.permission.IndexedPermissionResolver;
+import io.geekidea.springbootplus.framework.shiro.permission.PermissionRegistry;
 import io.geekidea.springbootplus.framework.shiro.service.LoginService;
 import io.geekidea.springbootplus.framework.util.IniUtil;
 import lombok.extern.slf4j.Slf4j;
@@ -35,11 +42,14 @@ import org.apache.shiro.authc.Authenticator;
 import org.apache.shiro.authc.credential.CredentialsMatcher;
 import org.apache.shiro.authc.pam.FirstSuccessfulStrategy;
 import org.apache.shiro.authc.pam.ModularRealmAuthenticator;
+import org.apache.shiro.authz.aop.AuthorizingAnnotationMethodInterceptor;
+import org.apache.shiro.authz.aop.PermissionAnnotationMethodInterceptor;
 import org.apache.shiro.mgt.DefaultSessionStorageEvaluator;
 import org.apache.shiro.mgt.DefaultSubjectDAO;
 import org.apache.shiro.mgt.SecurityManager;
 import org.apache.shiro.mgt.SessionStorageEvaluator;
 import org.apache.shiro.spring.LifecycleBeanPostProcessor;
+import org.apache.shiro.spring.security.interceptor.AopAllianceAnnotationsAuthorizingMethodInterceptor;
 import org.apache.shiro.spring.security.interceptor.AuthorizationAttributeSourceAdvisor;
 import org.apache.shiro.spring.web.ShiroFilterFactoryBean;
 import org.apache.shiro.web.mgt.DefaultWebSecurityManager;
@@ -85,8 +95,8 @@ public class ShiroConfig {
 
 
     @Bean
-    public CredentialsMatcher credentialsMatcher() {
-        return new JwtCredentialsMatcher();
+    public CredentialsMatcher credentialsMatcher(VerifiedTokenCache verifiedTokenCache) {
+        return new JwtCredentialsMatcher(verifiedTokenCache);
     }
 
     /**
@@ -95,10 +105,12 @@ public class ShiroConfig {
      * @return
      */
     @Bean
-    public JwtRealm jwtRealm(LoginRedisService loginRedisService) {
-        JwtRealm jwtRealm = new JwtRealm(loginRedisService);
+    public JwtRealm jwtRealm(VerifiedTokenCache verifiedTokenCache, AuthorizationInfoCache authorizationInfoCache, PermissionRegistry permissionRegistry) {
+        JwtRealm jwtRealm = new JwtRealm(authorizationInfoCache);
+        jwtRealm.setPermissionResolver(new IndexedPermissionResolver(permissionRegistry));
+        // 授权信息使用AuthorizationInfoCache缓存，支持集群失效
         jwtRealm.setCachingEnabled(false);
-        jwtRealm.setCredentialsMatcher(credentialsMatcher());
+        jwtRealm.setCredentialsMatcher(credentialsMatcher(verifiedTokenCache));
         return jwtRealm;
     }
 
@@ -123,9 +135,9 @@ public class ShiroConfig {
      * @return
      */
     @Bean
-    public SecurityManager securityManager(LoginRedisService loginRedisService) {
+    public SecurityManager securityManager(VerifiedTokenCache verifiedTokenCache, AuthorizationInfoCache authorizationInfoCache, PermissionRegistry permissionRegistry) {
         DefaultWebSecurityManager securityManager = new DefaultWebSecurityManager();
-        securityManager.setRealm(jwtRealm(loginRedisService));
+        securityManager.setRealm(jwtRealm(verifiedTokenCache, authorizationInfoCache, permissionRegistry));
         securityManager.setSubjectDAO(subjectDAO());
         SecurityUtils.setSecurityManager(securityManager);
         return securityManager;
@@ -138,6 +150,8 @@ public class ShiroConfig {
      * @param loginRedisService
      * @param shiroProperties
      * @param jwtProperties
+     * @param verifiedTokenCache
+     * @param revokedTokenFilter
      * @return
      */
     @Bean(SHIRO_FILTER_NAME)
@@ -145,10 +159,15 @@ public class ShiroConfig {
                                                          LoginService loginService,
                                                          LoginRedisService loginRedisService,
                                                          ShiroProperties shiroProperties,
-                                                         JwtProperties jwtProperties) {
-        ShiroFilterFactoryBean shiroFilterFactoryBean = new ShiroFilterFactoryBean();
+                                                         JwtProperties jwtProperties,
+                                                         VerifiedTokenCache verifiedTokenCache,
+                                                         RevokedTokenFilter revokedTokenFilter) {
+        // 路径规则编译成匹配树，anon路径不再创建代理过滤器链
+        // 每个规则前都会添加path过滤器，判断anon规则时忽略
+        CompiledShiroFilterFactoryBean shiroFilterFactoryBean = new CompiledShiroFilterFactoryBean();
+        shiroFilterFactoryBean.setPassThroughFilterNames(Collections.singleton(REQUEST_PATH_FILTER_NAME));
         shiroFilterFactoryBean.setSecurityManager(securityManager);
-        Map<String, Filter> filterMap = getFilterMap(loginService, loginRedisService, jwtProperties);
+        Map<String, Filter> filterMap = getFilterMap(loginService, loginRedisService, jwtProperties, verifiedTokenCache, revokedTokenFilter);
         shiroFilterFactoryBean.setFilters(filterMap);
         Map<String, String> filterChainMap = getFilterChainDefinitionMap(shiroProperties);
         shiroFilterFactoryBean.setFilterChainDefinitionMap(filterChainMap);
@@ -163,9 +182,11 @@ public class ShiroConfig {
      */
     private Map<String, Filter> getFilterMap(LoginService loginService,
                                              LoginRedisService loginRedisService,
-                                             JwtProperties jwtProperties) {
+                                             JwtProperties jwtProperties,
+                                             VerifiedTokenCache verifiedTokenCache,
+                                             RevokedTokenFilter revokedTokenFilter) {
         Map<String, Filter> filterMap = new LinkedHashMap();
-        filterMap.put(JWT_FILTER_NAME, new JwtFilter(loginService, loginRedisService, jwtProperties));
+        filterMap.put(JWT_FILTER_NAME, new JwtFilter(loginService, loginRedisService, jwtProperties, verifiedTokenCache, revokedTokenFilter));
         return filterMap;
     }
 
@@ -276,9 +297,9 @@ public class ShiroConfig {
     }
 
     @Bean
-    public Authenticator authenticator(LoginRedisService loginRedisService) {
+    public Authenticator authenticator(VerifiedTokenCache verifiedTokenCache, AuthorizationInfoCache authorizationInfoCache, PermissionRegistry permissionRegistry) {
         ModularRealmAuthenticator authenticator = new ModularRealmAuthenticator();
-        authenticator.setRealms(Arrays.asList(jwtRealm(loginRedisService)));
+        authenticator.setRealms(Arrays.asList(jwtRealm(verifiedTokenCache, authorizationInfoCache, permissionRegistry)));
         authenticator.setAuthenticationStrategy(new FirstSuccessfulStrategy());
         return authenticator;
     }
@@ -295,9 +316,17 @@ public class ShiroConfig {
     }
 
     @Bean
-    public AuthorizationAttributeSourceAdvisor authorizationAttributeSourceAdvisor(SecurityManager securityManager) {
+    public AuthorizationAttributeSourceAdvisor authorizationAttributeSourceAdvisor(SecurityManager securityManager, PermissionRegistry permissionRegistry) {
         AuthorizationAttributeSourceAdvisor authorizationAttributeSourceAdvisor = new AuthorizationAttributeSourceAdvisor();
         authorizationAttributeSourceAdvisor.setSecurityManager(securityManager);
+        // RequiresPermissions注解的权限每个方法只解析一次
+        AopAllianceAnnotationsAuthorizingMethodInterceptor methodInterceptor = new AopAllianceAnnotationsAuthorizingMethodInterceptor();
+        for (AuthorizingAnnotationMethodInterceptor interceptor : methodInterceptor.getMethodInterceptors()) {
+            if (interceptor instanceof PermissionAnnotationMethodInterceptor) {
+                interceptor.setHandler(new IndexedPermissionAnnotationHandler(permissionRegistry));
+            }
+        }
+        authorizationAttributeSourceAdvisor.setAdvice(methodInterceptor);
         return authorizationAttributeSourceAdvisor;
     }
 
@@ -49,4 +49,31 @@ public class ShiroProperties {
     @NestedConfigurationProperty
     private List<ShiroPermissionProperties> permission;
 
+    /**
+     * 本地授权信息缓存配置
+     */
+    @NestedConfigurationProperty
+    private AuthorizationCacheConfig authorizationCache = new AuthorizationCacheConfig();
+
+    @Data
+    public static class AuthorizationCacheConfig {
+
+        /**
+         * 是否启用本地授权信息缓存，默认启用
+         */
+        private boolean enable = true;
+
+        /**
+         * 最大缓存用户数量，默认10000
+         */
+        private long maximumSize = 10000;
+
+        /**
+         * 缓存有效时间，默认30分钟，单位：秒
+         * 发布订阅消息丢失时，为授权信息变更的最大感知延迟
+         */
+        private long expireSecond = 1800;
+
+    }
+
 }
@@ -18,19 +18,21 @@ package io.geekidea.springbootplus.framework.shiro.controller;
 
 import com.alibaba.fastjson.JSON;
 import io.geekidea.springbootplus.framework.common.api.ApiResult;
+import io.geekidea.springbootplus.framework.shiro.cache.RolePermissionStore;
 import io.geekidea.springbootplus.framework.shiro.param.LoginParam;
 import io.geekidea.springbootplus.framework.shiro.service.LoginService;
 import io.geekidea.springbootplus.framework.shiro.util.JwtTokenUtil;
+import io.geekidea.springbootplus.framework.shiro.util.LoginUtil;
+import io.geekidea.springbootplus.framework.shiro.vo.LoginSysUserRedisVo;
 import io.geekidea.springbootplus.framework.shiro.vo.LoginSysUserVo;
+import io.geekidea.springbootplus.system.convert.SysUserConvert;
 import io.geekidea.springbootplus.system.service.SysUserService;
 import io.geekidea.springbootplus.system.vo.LoginSysUserTokenVo;
 import io.geekidea.springbootplus.system.vo.SysUserQueryVo;
 import io.swagger.annotations.Api;
 import io.swagger.annotations.ApiOperation;
 import lombok.extern.slf4j.Slf4j;
-import org.apache.commons.codec.digest.DigestUtils;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.data.redis.core.RedisTemplate;
 import org.springframework.validation.annotation.Validated;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PostMapping;
@@ -59,7 +61,7 @@ public class LoginController {
     private SysUserService sysUserService;
 
     @Autowired
-    private RedisTemplate redisTemplate;
+    private RolePermissionStore rolePermissionStore;
 
     @PostMapping("/login")
     @ApiOperation(value = "登陆", notes = "系统用户登陆", response = LoginSysUserTokenVo.class)
@@ -76,9 +78,13 @@ public class LoginController {
     @GetMapping("/getSysUserInfo")
     @ApiOperation(value = "根据token获取系统登陆用户信息", response = SysUserQueryVo.class)
     public ApiResult<SysUserQueryVo> getSysUser() throws Exception {
-        String token = JwtTokenUtil.getToken();
-        String tokenSha256 = DigestUtils.sha256Hex(token);
-        LoginSysUserVo loginSysUserVo = (LoginSysUserVo) redisTemplate.opsForValue().get(tokenSha256);
+        // 优先使用本次请求已读取的登陆会话
+        LoginSysUserRedisVo loginSysUserRedisVo = LoginUtil.getLoginSysUserRedisVo();
+        LoginSysUserVo loginSysUserVo = SysUserConvert.INSTANCE.loginSysUserRedisVoToLoginSysUserVo(loginSysUserRedisVo);
+        // 会话中只保存权限版本号，权限编码列表从本节点角色权限缓存获取
+        if (loginSysUserVo != null) {
+            loginSysUserVo.setPermissionCodes(rolePermissionStore.getPermissionCodes(loginSysUserRedisVo));
+        }
         return ApiResult.ok(loginSysUserVo);
     }
 
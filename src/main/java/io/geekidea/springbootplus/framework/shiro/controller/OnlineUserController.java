@@ -0,0 +1,78 @@
+/*
+ * Copyright 2019-2029 geekidea(https://github.com/geekidea)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.geekidea.springbootplus.framework.shiro.controller;
+
+import io.geekidea.springbootplus.framework.common.api.ApiResult;
+import io.geekidea.springbootplus.framework.common.controller.BaseController;
+import io.geekidea.springbootplus.framework.pagination.Paging;
+import io.geekidea.springbootplus.framework.shiro.param.OnlineUserPageParam;
+import io.geekidea.springbootplus.framework.shiro.service.OnlineUserService;
+import io.geekidea.springbootplus.framework.shiro.vo.OnlineUserStatisticsVo;
+import io.geekidea.springbootplus.framework.shiro.vo.OnlineUserVo;
+import io.swagger.annotations.Api;
+import io.swagger.annotations.ApiOperation;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.shiro.authz.annotation.RequiresPermissions;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.validation.annotation.Validated;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+/**
+ * <pre>
+ * 在线用户 前端控制器
+ * </pre>
+ *
+ * @author geekidea
+ * @date 2020-03-30
+ * @since 1.5.0.RELEASE
+ */
+@Slf4j
+@RestController
+@RequestMapping("/onlineUser")
+@Api("在线用户 API")
+public class OnlineUserController extends BaseController {
+
+    @Autowired
+    private OnlineUserService onlineUserService;
+
+    /**
+     * 在线用户分页列表
+     */
+    @PostMapping("/getPageList")
+    @RequiresPermissions("sys:user:page")
+    @ApiOperation(value = "获取在线用户分页列表", notes = "在线用户分页列表", response = OnlineUserVo.class)
+    public ApiResult<Paging<OnlineUserVo>> getOnlineUserPageList(@Validated @RequestBody OnlineUserPageParam onlineUserPageParam) throws Exception {
+        Paging<OnlineUserVo> paging = onlineUserService.getOnlineUserPageList(onlineUserPageParam);
+        return ApiResult.ok(paging);
+    }
+
+    /**
+     * 在线用户统计
+     */
+    @GetMapping("/statistics")
+    @RequiresPermissions("sys:user:page")
+    @ApiOperation(value = "获取在线用户统计", notes = "在线用户数和去重访问用户数", response = OnlineUserStatisticsVo.class)
+    public ApiResult<OnlineUserStatisticsVo> getStatistics() throws Exception {
+        OnlineUserStatisticsVo onlineUserStatisticsVo = onlineUserService.getStatistics();
+        return ApiResult.ok(onlineUserStatisticsVo);
+    }
+
+}
@@ -0,0 +1,49 @@
+/*
+ * Copyright 2019-2029 geekidea(https://github.com/geekidea)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.geekidea.springbootplus.framework.shiro.exception;
+
+import io.geekidea.springbootplus.framework.common.api.ApiCode;
+import io.geekidea.springbootplus.framework.common.exception.SpringBootPlusException;
+import lombok.Getter;
+
+/**
+ * 登陆尝试过于频繁异常
+ * 被限流或锁定的登陆请求不会查询数据库和计算密码摘要，异常不记录堆栈
+ *
+ * @author geekidea
+ * @date 2020-03-30
+ * @since 1.5.0.RELEASE
+ **/
+@Getter
+public class LoginThrottleException extends SpringBootPlusException {
+
+    /**
+     * 建议的重试等待时间，单位：秒
+     */
+    private final long retryAfterSecond;
+
+    public LoginThrottleException(long retryAfterSecond) {
+        super(ApiCode.LOGIN_THROTTLE_EXCEPTION.getCode(), "登陆尝试过于频繁，请" + retryAfterSecond + "秒后重试");
+        this.retryAfterSecond = retryAfterSecond;
+    }
+
+    @Override
+    public synchronized Throwable fillInStackTrace() {
+        return this;
+    }
+
+}
@@ -0,0 +1,122 @@
+/*
+ * Copyright 2019-2029 geekidea(https://github.com/geekidea)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.geekidea.springbootplus.framework.shiro.filter;
+
+import lombok.extern.slf4j.Slf4j;
+import org.apache.shiro.web.filter.authc.AnonymousFilter;
+import org.apache.shiro.web.filter.mgt.FilterChainManager;
+import org.apache.shiro.web.filter.mgt.NamedFilterList;
+import org.apache.shiro.web.filter.mgt.PathMatchingFilterChainResolver;
+
+import javax.servlet.Filter;
+import javax.servlet.FilterChain;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * 编译后的Shiro过滤器链解析器
+ * 启动时将所有路径规则编译成FilterChainPathTrie，请求时按路径段查找，不再逐个规则匹配，
+ * 第一个匹配的规则生效，与PathMatchingFilterChainResolver一致
+ * 只包含anon过滤器的规则直接返回原始过滤器链，不再创建代理过滤器链，
+ * 判断时忽略passThroughFilterNames中的过滤器，如ShiroConfig在每个规则前添加的path过滤器
+ *
+ * @author geekidea
+ * @date 2020-03-28
+ * @since 1.5.0.RELEASE
+ **/
+@Slf4j
+public class CompiledFilterChainResolver extends PathMatchingFilterChainResolver {
+
+    private final FilterChainPathTrie filterChainPathTrie;
+
+    /**
+     * 只包含anon过滤器的规则
+     */
+    private final Set<String> anonChainNames = new HashSet<>();
+
+    /**
+     * 判断anon规则时忽略的过滤器
+     */
+    private final Set<Filter> passThroughFilters = Collections.newSetFromMap(new IdentityHashMap<>());
+
+    public CompiledFilterChainResolver(FilterChainManager filterChainManager) {
+        this(filterChainManager, Collections.emptySet());
+    }
+
+    public CompiledFilterChainResolver(FilterChainManager filterChainManager, Set<String> passThroughFilterNames) {
+        setFilterChainManager(filterChainManager);
+        Map<String, Filter> filters = filterChainManager.getFilters();
+        for (String filterName : passThroughFilterNames) {
+            Filter filter = filters.get(filterName);
+            if (filter != null) {
+                passThroughFilters.add(filter);
+            }
+        }
+        this.filterChainPathTrie = new FilterChainPathTrie(this::pathMatches);
+        for (String chainName : filterChainManager.getChainNames()) {
+            filterChainPathTrie.add(chainName);
+            if (isAnonChain(filterChainManager.getChain(chainName))) {
+                anonChainNames.add(chainName);
+            }
+        }
+        log.info("过滤器链编译完成,size:{},anon:{}", filterChainPathTrie.size(), anonChainNames.size());
+    }
+
+    @Override
+    public FilterChain getChain(ServletRequest request, ServletResponse response, FilterChain originalChain) {
+        FilterChainManager filterChainManager = getFilterChainManager();
+        if (!filterChainManager.hasChains()) {
+            return null;
+        }
+        String requestURI = getPathWithinApplication(request);
+        String pathPattern = filterChainPathTrie.match(requestURI);
+        if (pathPattern == null) {
+            return null;
+        }
+        if (anonChainNames.contains(pathPattern)) {
+            return originalChain;
+        }
+        if (log.isTraceEnabled()) {
+            log.trace("Matched path pattern [" + pathPattern + "] for requestURI [" + requestURI + "].  " +
+                    "Utilizing corresponding filter chain...");
+        }
+        return filterChainManager.proxy(originalChain, pathPattern);
+    }
+
+    private boolean isAnonChain(NamedFilterList chain) {
+        if (chain == null || chain.isEmpty()) {
+            return false;
+        }
+        boolean anon = false;
+        for (Filter filter : chain) {
+            if (passThroughFilters.contains(filter)) {
+                continue;
+            }
+            if (!(filter instanceof AnonymousFilter)) {
+                return false;
+            }
+            anon = true;
+        }
+        return anon;
+    }
+
+}
@@ -0,0 +1,58 @@
+/*
+ * Copyright 2019-2029 geekidea(https://github.com/geekidea)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.geekidea.springbootplus.framework.shiro.filter;
+
+import org.apache.shiro.spring.web.ShiroFilterFactoryBean;
+import org.apache.shiro.web.filter.mgt.FilterChainResolver;
+import org.apache.shiro.web.filter.mgt.PathMatchingFilterChainResolver;
+import org.apache.shiro.web.servlet.AbstractShiroFilter;
+
+import java.util.Collections;
+import java.util.Set;
+
+/**
+ * 使用CompiledFilterChainResolver的ShiroFilterFactoryBean
+ * passThroughFilterNames中的过滤器不影响anon规则的判断
+ *
+ * @author geekidea
+ * @date 2020-03-28
+ * @since 1.5.0.RELEASE
+ **/
+public class CompiledShiroFilterFactoryBean extends ShiroFilterFactoryBean {
+
+    private Set<String> passThroughFilterNames = Collections.emptySet();
+
+    public Set<String> getPassThroughFilterNames() {
+        return passThroughFilterNames;
+    }
+
+    public void setPassThroughFilterNames(Set<String> passThroughFilterNames) {
+        this.passThroughFilterNames = passThroughFilterNames;
+    }
+
+    @Override
+    protected AbstractShiroFilter createInstance() throws Exception {
+        AbstractShiroFilter shiroFilter = super.createInstance();
+        FilterChainResolver filterChainResolver = shiroFilter.getFilterChainResolver();
+        if (filterChainResolver instanceof PathMatchingFilterChainResolver) {
+            PathMatchingFilterChainResolver pathMatchingFilterChainResolver = (PathMatchingFilterChainResolver) filterChainResolver;
+            shiroFilter.setFilterChainResolver(new CompiledFilterChainResolver(pathMatchingFilterChainResolver.getFilterChainManager(), passThroughFilterNames));
+        }
+        return shiroFilter;
+    }
+
+}
@@ -0,0 +1,165 @@
+/*
+ * Copyright 2019-2029 geekidea(https://github.com/geekidea)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.geekidea.springbootplus.framework.shiro.filter;
+
+import org.apache.shiro.util.AntPathMatcher;
+import org.apache.shiro.util.PatternMatcher;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 按路径段编译的Ant路径匹配树
+ * 每个路径段为一个节点，字面量段精确查找，*、?及**为通配节点，
+ * 一次遍历得到所有可能匹配的规则，按添加顺序使用AntPathMatcher确认，保持第一个匹配规则生效的语义
+ * 构建完成后只读，可以多线程共享
+ *
+ * @author geekidea
+ * @date 2020-03-28
+ * @since 1.5.0.RELEASE
+ **/
+public class FilterChainPathTrie {
+
+    private static final String PATH_SEPARATOR = "/";
+
+    private static final String DOUBLE_WILDCARD = "**";
+
+    private final PatternMatcher pathMatcher;
+
+    private final Node root = new Node();
+
+    /**
+     * 按添加顺序保存的规则
+     */
+    private final List<String> patterns = new ArrayList<>();
+
+    public FilterChainPathTrie() {
+        this(new AntPathMatcher());
+    }
+
+    public FilterChainPathTrie(PatternMatcher pathMatcher) {
+        this.pathMatcher = pathMatcher;
+    }
+
+    /**
+     * 添加规则，先添加的规则优先
+     *
+     * @param pattern
+     */
+    public void add(String pattern) {
+        int index = patterns.size();
+        patterns.add(pattern);
+        Node node = root;
+        for (String segment : tokenize(pattern)) {
+            node = node.child(segment);
+        }
+        node.patternIndexes.set(index);
+    }
+
+    /**
+     * 获取第一个匹配的规则
+     *
+     * @param path
+     * @return 没有匹配的规则返回null
+     */
+    public String match(String path) {
+        if (path == null) {
+            return null;
+        }
+        String[] segments = tokenize(path);
+        BitSet candidates = new BitSet(patterns.size());
+        collect(root, segments, 0, candidates);
+        for (int i = candidates.nextSetBit(0); i >= 0; i = candidates.nextSetBit(i + 1)) {
+            String pattern = patterns.get(i);
+            if (pathMatcher.matches(pattern, path)) {
+                return pattern;
+            }
+        }
+        return null;
+    }
+
+    public int size() {
+        return patterns.size();
+    }
+
+    /**
+     * 收集所有可能匹配的规则，**节点可以匹配0个或多个路径段
+     */
+    private void collect(Node node, String[] segments, int index, BitSet candidates) {
+        if (node.doubleWildcard != null) {
+            // **匹配剩余任意个路径段
+            for (int i = index; i <= segments.length; i++) {
+                collect(node.doubleWildcard, segments, i, candidates);
+            }
+        }
+        if (index == segments.length) {
+            candidates.or(node.patternIndexes);
+            return;
+        }
+        String segment = segments[index];
+        Node literal = node.literals.get(segment);
+        if (literal != null) {
+            collect(literal, segments, index + 1, candidates);
+        }
+        for (Map.Entry<String, Node> entry : node.wildcards.entrySet()) {
+            if (pathMatcher.matches(entry.getKey(), segment)) {
+                collect(entry.getValue(), segments, index + 1, candidates);
+            }
+        }
+    }
+
+    private static String[] tokenize(String path) {
+        List<String> segments = new ArrayList<>();
+        for (String segment : path.split(PATH_SEPARATOR)) {
+            segment = segment.trim();
+            if (!segment.isEmpty()) {
+                segments.add(segment);
+            }
+        }
+        return segments.toArray(new String[0]);
+    }
+
+    private static class Node {
+
+        private final Map<String, Node> literals = new HashMap<>();
+
+        private final Map<String, Node> wildcards = new HashMap<>();
+
+        private Node doubleWildcard;
+
+        private final BitSet patternIndexes = new BitSet();
+
+        private Node child(String segment) {
+            if (DOUBLE_WILDCARD.equals(segment)) {
+                if (doubleWildcard == null) {
+                    doubleWildcard = new Node();
+                }
+                return doubleWildcard;
+            }
+            Map<String, Node> children = isWildcard(segment) ? wildcards : literals;
+            return children.computeIfAbsent(segment, key -> new Node());
+        }
+
+        private static boolean isWildcard(String segment) {
+            return segment.indexOf('*') >= 0 || segment.indexOf('?') >= 0;
+        }
+
+    }
+}
@@ -0,0 +1,222 @@
+/*
+ * Copyright 2019-2029 geekidea(https://github.com/geekidea)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.geekidea.springbootplus.framework.shiro.jwt;
+
+import com.auth0.jwt.interfaces.Claim;
+import com.auth0.jwt.interfaces.DecodedJWT;
+import io.geekidea.springbootplus.framework.constant.CommonConstant;
+import io.geekidea.springbootplus.framework.shiro.cache.VerifiedTokenCache;
+import io.geekidea.springbootplus.framework.shiro.util.JwtUtil;
+import org.apache.commons.lang3.StringUtils;
+import org.springframework.web.context.request.RequestAttributes;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
+
+import javax.servlet.ServletRequest;
+import java.util.Date;
+import java.util.Map;
+
+/**
+ * 请求级JWT上下文
+ * 同一个请求中token只解析一次，JwtFilter、JwtRealm、LoginServiceImpl、LoginUtil及Controller共用解析结果和校验结果
+ *
+ * @author geekidea
+ * @date 2020-03-24
+ * @since 1.5.0.RELEASE
+ **/
+public class JwtContext {
+
+    /**
+     * 请求属性名称
+     */
+    public static final String REQUEST_ATTRIBUTE_NAME = JwtContext.class.getName();
+
+    /**
+     * 原始token
+     */
+    private final String token;
+
+    /**
+     * 解析后的JWT，首次使用时解析
+     */
+    private DecodedJWT decodedJwt;
+
+    private String username;
+
+    private Date issuedAt;
+
+    private Date expireDate;
+
+    /**
+     * 签名是否已校验通过
+     */
+    private boolean verified;
+
+    private JwtContext(String token) {
+        this.token = token;
+    }
+
+    /**
+     * 获取当前请求中的JWT上下文
+     *
+     * @return 当前请求没有JWT上下文则返回null
+     */
+    public static JwtContext get() {
+        RequestAttributes requestAttributes = RequestContextHolder.getRequestAttributes();
+        if (!(requestAttributes instanceof ServletRequestAttributes)) {
+            return null;
+        }
+        return get(((ServletRequestAttributes) requestAttributes).getRequest());
+    }
+
+    /**
+     * 获取请求中的JWT上下文
+     *
+     * @param request
+     * @return 请求中没有JWT上下文则返回null
+     */
+    public static JwtContext get(ServletRequest request) {
+        if (request == null) {
+            return null;
+        }
+        Object jwtContext = request.getAttribute(REQUEST_ATTRIBUTE_NAME);
+        if (jwtContext instanceof JwtContext) {
+            return (JwtContext) jwtContext;
+        }
+        return null;
+    }
+
+    /**
+     * 获取当前请求中指定token的JWT上下文
+     *
+     * @param token
+     * @return 上下文不存在或者token不一致则返回null
+     */
+    public static JwtContext get(String token) {
+        JwtContext jwtContext = get();
+        if (jwtContext != null && jwtContext.token.equals(token)) {
+            return jwtContext;
+        }
+        return null;
+    }
+
+    /**
+     * 获取或创建请求中指定token的JWT上下文
+     *
+     * @param request
+     * @param token
+     * @return
+     */
+    public static JwtContext getOrCreate(ServletRequest request, String token) {
+        if (StringUtils.isBlank(token)) {
+            throw new IllegalArgumentException("token不能为空");
+        }
+        JwtContext jwtContext = get(request);
+        if (jwtContext != null && jwtContext.token.equals(token)) {
+            return jwtContext;
+        }
+        jwtContext = new JwtContext(token);
+        if (request != null) {
+            request.setAttribute(REQUEST_ATTRIBUTE_NAME, jwtContext);
+        }
+        return jwtContext;
+    }
+
+    /**
+     * 使用本地已校验token缓存填充上下文，无需解析token
+     *
+     * @param verifiedToken
+     * @return
+     */
+    public JwtContext verified(VerifiedTokenCache.VerifiedToken verifiedToken) {
+        this.username = verifiedToken.getUsername();
+        this.issuedAt = verifiedToken.getCreateDate();
+        this.expireDate = verifiedToken.getExpireDate();
+        this.verified = true;
+        return this;
+    }
+
+    /**
+     * 标记签名已校验通过
+     */
+    public void setVerified() {
+        this.verified = true;
+    }
+
+    public boolean isVerified() {
+        return verified;
+    }
+
+    public String getToken() {
+        return token;
+    }
+
+    /**
+     * 获取解析后的JWT，同一个上下文只解析一次
+     *
+     * @return
+     */
+    public DecodedJWT getDecodedJwt() {
+        if (decodedJwt == null) {
+            decodedJwt = JwtUtil.getJwtInfo(token);
+        }
+        return decodedJwt;
+    }
+
+    public Map<String, Claim> getClaims() {
+        return getDecodedJwt().getClaims();
+    }
+
+    public String getUsername() {
+        if (username == null) {
+            username = getDecodedJwt().getClaim(CommonConstant.JWT_USERNAME).asString();
+        }
+        return username;
+    }
+
+    public Date getIssuedAt() {
+        if (issuedAt == null) {
+            issuedAt = getDecodedJwt().getIssuedAt();
+        }
+        return issuedAt;
+    }
+
+    public Date getExpireDate() {
+        if (expireDate == null) {
+            expireDate = getDecodedJwt().getExpiresAt();
+        }
+        return expireDate;
+    }
+
+    /**
+     * 判断token是否已过期
+     *
+     * @return
+     */
+    public boolean isExpired() {
+        Date expireDate = getExpireDate();
+        if (expireDate == null) {
+            return true;
+        }
+        return expireDate.before(new Date());
+    }
+
+    @Override
+    public String toString() {
+        return "JwtContext(username=" + username + ", expireDate=" + expireDate + ", verified=" + verified + ")";
+    }
+}
@@ -16,6 +16,7 @@
 
 package io.geekidea.springbootplus.framework.shiro.jwt;
 
+import io.geekidea.springbootplus.framework.shiro.cache.VerifiedTokenCache;
 import io.geekidea.springbootplus.framework.shiro.util.JwtUtil;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.shiro.authc.AuthenticationInfo;
@@ -32,12 +33,41 @@ import org.apache.shiro.authc.credential.CredentialsMatcher;
 @Slf4j
 public class JwtCredentialsMatcher implements CredentialsMatcher {
 
+    private VerifiedTokenCache verifiedTokenCache;
+
+    public JwtCredentialsMatcher(VerifiedTokenCache verifiedTokenCache) {
+        this.verifiedTokenCache = verifiedTokenCache;
+    }
+
     @Override
     public boolean doCredentialsMatch(AuthenticationToken authenticationToken, AuthenticationInfo authenticationInfo) {
         String token = authenticationToken.getCredentials().toString();
         String salt = authenticationInfo.getCredentials().toString();
         try {
-            return JwtUtil.verifyToken(token, salt);
+            // 本地缓存中已校验通过，不再进行HMAC校验
+            if (verifiedTokenCache.isVerified(token, salt)) {
+                return true;
+            }
+            // 优先使用本次请求已解析的JWT，避免重复解析
+            JwtContext jwtContext = JwtContext.get(token);
+            if (jwtContext != null && jwtContext.isVerified()) {
+                return true;
+            }
+            boolean verified;
+            if (jwtContext != null) {
+                verified = JwtUtil.verifyToken(jwtContext.getDecodedJwt(), salt);
+            } else {
+                verified = JwtUtil.verifyToken(token, salt);
+            }
+            if (verified) {
+                if (jwtContext != null) {
+                    jwtContext.setVerified();
+                }
+                if (authenticationToken instanceof JwtToken) {
+                    verifiedTokenCache.put((JwtToken) authenticationToken);
+                }
+            }
+            return verified;
         } catch (Exception e) {
             log.error("JWT Token CredentialsMatch Exception:" + e.getMessage(), e);
         }
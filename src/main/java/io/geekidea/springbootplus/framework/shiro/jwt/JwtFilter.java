@@ -16,12 +16,15 @@
 
 package io.geekidea.springbootplus.framework.shiro.jwt;
 
+import com.auth0.jwt.exceptions.JWTDecodeException;
 import io.geekidea.springbootplus.framework.common.api.ApiCode;
 import io.geekidea.springbootplus.framework.common.api.ApiResult;
 import io.geekidea.springbootplus.framework.shiro.cache.LoginRedisService;
+import io.geekidea.springbootplus.framework.shiro.cache.RevokedTokenFilter;
+import io.geekidea.springbootplus.framework.shiro.cache.VerifiedTokenCache;
 import io.geekidea.springbootplus.framework.shiro.service.LoginService;
-import io.geekidea.springbootplus.framework.shiro.util.JwtUtil;
 import io.geekidea.springbootplus.framework.shiro.util.JwtTokenUtil;
+import io.geekidea.springbootplus.framework.shiro.vo.LoginSysUserRedisVo;
 import io.geekidea.springbootplus.framework.util.HttpServletResponseUtil;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.lang3.StringUtils;
@@ -52,10 +55,17 @@ public class JwtFilter extends AuthenticatingFilter {
 
     private JwtProperties jwtProperties;
 
-    public JwtFilter(LoginService loginService, LoginRedisService loginRedisService, JwtProperties jwtProperties) {
+    private VerifiedTokenCache verifiedTokenCache;
+
+    private RevokedTokenFilter revokedTokenFilter;
+
+    public JwtFilter(LoginService loginService, LoginRedisService loginRedisService, JwtProperties jwtProperties,
+                     VerifiedTokenCache verifiedTokenCache, RevokedTokenFilter revokedTokenFilter) {
         this.loginService = loginService;
         this.loginRedisService = loginRedisService;
         this.jwtProperties = jwtProperties;
+        this.verifiedTokenCache = verifiedTokenCache;
+        this.revokedTokenFilter = revokedTokenFilter;
     }
 
     /**
@@ -68,30 +78,56 @@ public class JwtFilter extends AuthenticatingFilter {
      */
     @Override
     protected AuthenticationToken createToken(ServletRequest servletRequest, ServletResponse servletResponse) throws Exception {
-        String token = JwtTokenUtil.getToken();
+        String token = JwtTokenUtil.getToken(WebUtils.toHttp(servletRequest));
         if (StringUtils.isBlank(token)) {
             throw new AuthenticationException("token不能为空");
         }
-        if (JwtUtil.isExpired(token)) {
+        // 本次请求的JWT上下文，token只解析一次
+        JwtContext jwtContext = JwtContext.getOrCreate(servletRequest, token);
+
+        // 本地缓存中已校验通过的token，不再访问Redis
+        VerifiedTokenCache.VerifiedToken verifiedToken = verifiedTokenCache.get(token);
+        if (verifiedToken != null) {
+            // 注销通知丢失或晚于写入缓存时，缓存中仍可能有已注销的token
+            if (revokedTokenFilter.isRevoked(verifiedToken.getJti())) {
+                verifiedTokenCache.invalidate(token);
+                throw new AuthenticationException("JWT Token已注销,token:" + token);
+            }
+            jwtContext.verified(verifiedToken);
+            return JwtToken.build(token, verifiedToken, jwtProperties.getExpireSecond());
+        }
+
+        try {
+            jwtContext.getDecodedJwt();
+        } catch (JWTDecodeException e) {
+            throw new AuthenticationException("JWT Token解析失败,token:" + token, e);
+        }
+        if (jwtContext.isExpired()) {
             throw new AuthenticationException("JWT Token已过期,token:" + token);
         }
+        // 已登出的token，本地布隆过滤器命中时才访问Redis确认
+        if (revokedTokenFilter.isRevoked(jwtContext.getDecodedJwt().getId())) {
+            throw new AuthenticationException("JWT Token已注销,token:" + token);
+        }
 
-        // 如果开启redis二次校验，或者设置为单个用户token登陆，则先在redis中判断token是否存在
-        if (jwtProperties.isRedisCheck() || jwtProperties.isSingleLogin()) {
-            boolean redisExpired = loginRedisService.exists(token);
-            if (!redisExpired) {
+        // 如果开启redis二次校验，或者设置为单个用户token登陆，或者启用滑动会话续期，或者需要校验盐值，则一次读取redis中的登陆会话
+        boolean redisCheck = jwtProperties.isRedisCheck() || jwtProperties.isSingleLogin() || jwtProperties.getSessionRenewal().isEnable();
+        LoginSysUserRedisVo loginSysUserRedisVo = null;
+        if (redisCheck || jwtProperties.isSaltCheck()) {
+            loginSysUserRedisVo = loginRedisService.getLoginSysUserRedisVo(token);
+            if (redisCheck && loginSysUserRedisVo == null) {
                 throw new AuthenticationException("Redis Token不存在,token:" + token);
             }
         }
 
-        String username = JwtUtil.getUsername(token);
         String salt;
-        if (jwtProperties.isSaltCheck()){
-            salt = loginRedisService.getSalt(username);
-        }else{
+        if (jwtProperties.isSaltCheck()) {
+            salt = loginSysUserRedisVo == null ? null : loginSysUserRedisVo.getSalt();
+        } else {
             salt = jwtProperties.getSecret();
         }
-        return JwtToken.build(token, username, salt, jwtProperties.getExpireSecond());
+        return JwtToken.build(jwtContext, salt, jwtProperties.getExpireSecond())
+                .setLoginSysUserRedisVo(loginSysUserRedisVo);
     }
 
     /**
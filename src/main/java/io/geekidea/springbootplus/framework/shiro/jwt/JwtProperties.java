@@ -19,6 +19,7 @@ package io.geekidea.springbootplus.framework.shiro.jwt;
 import io.geekidea.springbootplus.framework.constant.CommonConstant;
 import lombok.Data;
 import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.NestedConfigurationProperty;
 import org.springframework.stereotype.Component;
 
 /**
@@ -72,6 +73,11 @@ public class JwtProperties {
      */
     private Integer refreshTokenCountdown;
 
+    /**
+     * 刷新token后旧token的宽限时间，宽限时间内旧token仍然有效，并且只会刷新出同一个新token，单位：秒
+     */
+    private long refreshGraceSecond = 30;
+
     /**
      * redis校验jwt token是否存在
      */
@@ -87,4 +93,379 @@ public class JwtProperties {
      */
     private boolean saltCheck;
 
+    /**
+     * 无状态授权模式，token中包含角色id、角色版本号和权限id位图，
+     * 角色版本号与本地部门角色目录一致时，直接使用token中的权限进行校验，默认false
+     */
+    private boolean statelessAuthorization;
+
+    /**
+     * 无状态授权模式下记录用户角色或状态变更时间的最大用户数量，默认100000
+     * 超出时淘汰的变更时间之前签发的token都不再使用token中的权限
+     */
+    private long statelessUserChangedMaximumSize = 100000;
+
+    /**
+     * 是否迁移旧版本login:token/login:user/login:salt缓存到登陆会话hash，默认true
+     * 所有旧版本token过期后可关闭
+     */
+    private boolean legacySessionMigrate = true;
+
+    /**
+     * 登陆会话存储方式，redis：Redis存储，embedded：进程内存储，仅用于单节点部署和压测，默认redis
+     */
+    private String sessionStore = "redis";
+
+    /**
+     * 本地已校验token缓存配置
+     */
+    @NestedConfigurationProperty
+    private LocalCacheConfig localCache = new LocalCacheConfig();
+
+    /**
+     * 盐值对应的签名算法和校验器缓存配置
+     */
+    @NestedConfigurationProperty
+    private VerifierCacheConfig verifierCache = new VerifierCacheConfig();
+
+    /**
+     * 登陆会话本地近端缓存配置
+     */
+    @NestedConfigurationProperty
+    private NearCacheConfig nearCache = new NearCacheConfig();
+
+    /**
+     * 滑动会话续期配置
+     */
+    @NestedConfigurationProperty
+    private SessionRenewalConfig sessionRenewal = new SessionRenewalConfig();
+
+    /**
+     * 已注销token过滤配置
+     */
+    @NestedConfigurationProperty
+    private RevocationConfig revocation = new RevocationConfig();
+
+    /**
+     * 进程内登陆会话存储配置
+     */
+    @NestedConfigurationProperty
+    private EmbeddedStoreConfig embeddedStore = new EmbeddedStoreConfig();
+
+    /**
+     * 登陆限流配置
+     */
+    @NestedConfigurationProperty
+    private LoginThrottleConfig loginThrottle = new LoginThrottleConfig();
+
+    /**
+     * 在线用户统计配置
+     */
+    @NestedConfigurationProperty
+    private OnlineConfig online = new OnlineConfig();
+
+    /**
+     * 角色和部门会话索引配置
+     */
+    @NestedConfigurationProperty
+    private SessionIndexConfig sessionIndex = new SessionIndexConfig();
+
+    /**
+     * 生成token的有效时间，启用滑动会话续期时为token最大有效时间，单位：秒
+     *
+     * @return
+     */
+    public long tokenExpireSecond() {
+        if (sessionRenewal.isEnable()) {
+            return sessionRenewal.getMaxTokenAgeSecond();
+        }
+        return expireSecond;
+    }
+
+    @Data
+    public static class LocalCacheConfig {
+
+        /**
+         * 是否启用本地已校验token缓存，默认启用
+         */
+        private boolean enable = true;
+
+        /**
+         * 最大缓存token数量，默认10000
+         */
+        private long maximumSize = 10000;
+
+        /**
+         * 本地缓存有效时间，默认30秒，单位：秒
+         * 多节点部署时，为其他节点登出后本节点的最大感知延迟
+         */
+        private long expireSecond = 30;
+
+    }
+
+    @Data
+    public static class VerifierCacheConfig {
+
+        /**
+         * 最大缓存盐值数量，默认10000
+         */
+        private long maximumSize = 10000;
+
+        /**
+         * 多长时间未使用则移除，默认1小时，单位：秒
+         */
+        private long expireSecond = 3600;
+
+        /**
+         * 每个盐值最多保留的空闲Mac实例数量，默认8
+         */
+        private int macPoolSize = 8;
+
+    }
+
+    @Data
+    public static class NearCacheConfig {
+
+        /**
+         * 是否启用登陆会话本地近端缓存，默认启用
+         */
+        private boolean enable = true;
+
+        /**
+         * 最大缓存会话数量，默认10000
+         */
+        private long maximumSize = 10000;
+
+        /**
+         * 新鲜时间，该时间内直接使用本地会话，不访问Redis，默认5秒，单位：秒
+         * 发布订阅消息丢失时为其他节点登出后本节点的最大感知延迟
+         */
+        private long freshSecond = 5;
+
+        /**
+         * 最大陈旧时间，超过新鲜时间后Redis读取超时或异常时，该时间内仍返回本地会话，默认60秒，单位：秒
+         */
+        private long maxStaleSecond = 60;
+
+        /**
+         * 超过新鲜时间后从Redis重新加载的等待时间，超时则返回本地会话，默认50毫秒，单位：毫秒
+         */
+        private long redisTimeoutMillis = 50;
+
+        /**
+         * 后台重新加载会话的线程数，默认4
+         */
+        private int reloadThreads = 4;
+
+    }
+
+    @Data
+    public static class SessionRenewalConfig {
+
+        /**
+         * 是否启用滑动会话续期，默认false
+         * 启用后token有效时间为maxTokenAgeSecond，登陆会话有效时间为expireSecond，
+         * 有请求时延长登陆会话有效时间，token只在接近最大有效时间时刷新，并强制进行redis校验
+         */
+        private boolean enable;
+
+        /**
+         * token最大有效时间，到期前refreshTokenCountdown秒内刷新token，默认7天，单位：秒
+         */
+        private long maxTokenAgeSecond = 7 * 24 * 3600;
+
+        /**
+         * 同一会话的最小续期间隔，默认1800秒，单位：秒
+         * 会话空闲超时时间在expireSecond - renewIntervalSecond到expireSecond之间
+         */
+        private long renewIntervalSecond = 1800;
+
+    }
+
+    @Data
+    public static class RevocationConfig {
+
+        /**
+         * 是否启用已注销token过滤，默认启用
+         */
+        private boolean enable = true;
+
+        /**
+         * token有效时间内预计注销的token数量，默认100000
+         */
+        private long expectedInsertions = 100000;
+
+        /**
+         * 布隆过滤器误判率，误判时访问Redis确认，默认0.001
+         */
+        private double fpp = 0.001;
+
+        /**
+         * token有效时间分成的段数，每段一个布隆过滤器，默认4
+         */
+        private int bucketCount = 4;
+
+        /**
+         * 布隆过滤器命中后确认结果的缓存数量，默认10000
+         */
+        private long confirmedCacheSize = 10000;
+
+        /**
+         * 布隆过滤器命中后确认结果的缓存时间，默认60秒，单位：秒
+         */
+        private long confirmedCacheSecond = 60;
+
+    }
+
+    @Data
+    public static class EmbeddedStoreConfig {
+
+        /**
+         * 时间轮每格时长，默认100毫秒，单位：毫秒
+         */
+        private long tickMillis = 100;
+
+        /**
+         * 时间轮每层格子数，默认512
+         */
+        private int wheelSize = 512;
+
+        /**
+         * 会话快照文件，为空则不保存快照，重启后会话丢失
+         */
+        private String snapshotFile;
+
+        /**
+         * 定时保存快照间隔，小于等于0时只在停止时保存，默认300秒，单位：秒
+         */
+        private long snapshotIntervalSecond = 300;
+
+    }
+
+    @Data
+    public static class LoginThrottleConfig {
+
+        /**
+         * 是否启用登陆限流，默认启用
+         */
+        private boolean enable = true;
+
+        /**
+         * 每个用户名的令牌桶容量，即允许的突发登陆次数，默认10
+         */
+        private long usernameBurst = 10;
+
+        /**
+         * 每个用户名每分钟补充的令牌数，默认10
+         */
+        private long usernamePerMinute = 10;
+
+        /**
+         * 每个IP的令牌桶容量，默认30
+         */
+        private long ipBurst = 30;
+
+        /**
+         * 每个IP每分钟补充的令牌数，默认60
+         */
+        private long ipPerMinute = 60;
+
+        /**
+         * 本地滑动窗口时长，默认1000毫秒，单位：毫秒
+         */
+        private long localWindowMillis = 1000;
+
+        /**
+         * 本地滑动窗口内每个用户名允许的登陆次数，小于等于0时不限制，默认5
+         */
+        private int localUsernameLimit = 5;
+
+        /**
+         * 本地滑动窗口内每个IP允许的登陆次数，小于等于0时不限制，默认20
+         */
+        private int localIpLimit = 20;
+
+        /**
+         * 本地滑动窗口和锁定状态的最大缓存数量，默认100000
+         */
+        private long localMaximumSize = 100000;
+
+        /**
+         * 是否启用密码错误锁定，锁定按用户名+IP区分，默认false
+         */
+        private boolean lockoutEnable;
+
+        /**
+         * 是否信任x-forwarded-for等代理请求头中的IP，只有部署在可信代理之后时才能开启，默认false
+         * 不信任时使用连接的远程地址，客户端无法通过伪造请求头绕过IP限制
+         */
+        private boolean trustForwardedFor;
+
+        /**
+         * 失败次数统计时间内允许的最大密码错误次数，达到后锁定用户名+IP，默认5
+         */
+        private int maxFailures = 5;
+
+        /**
+         * 失败次数统计时间，默认900秒，单位：秒
+         */
+        private long failureWindowSecond = 900;
+
+        /**
+         * 首次锁定时间，之后每次锁定时间翻倍，默认60秒，单位：秒
+         */
+        private long lockoutSecond = 60;
+
+        /**
+         * 最大锁定时间，默认3600秒，单位：秒
+         */
+        private long maxLockoutSecond = 3600;
+
+        /**
+         * 锁定次数保留时间，该时间内没有再次锁定则锁定时间恢复为lockoutSecond，默认86400秒，单位：秒
+         */
+        private long lockCountSecond = 86400;
+
+    }
+
+    @Data
+    public static class OnlineConfig {
+
+        /**
+         * 是否启用在线用户统计，默认启用
+         */
+        private boolean enable = true;
+
+        /**
+         * 在线时间，超过该时间未访问的用户视为离线，默认1800秒，单位：秒
+         */
+        private long onlineSecond = 1800;
+
+        /**
+         * 同一用户在该间隔内只记录一次访问，应能整除60，否则分钟统计会遗漏用户，默认60秒，单位：秒
+         */
+        private long touchIntervalSecond = 60;
+
+        /**
+         * 本节点已记录用户的最大缓存数量，默认100000
+         */
+        private long maximumSize = 100000;
+
+    }
+
+    @Data
+    public static class SessionIndexConfig {
+
+        /**
+         * 是否维护角色和部门会话索引，关闭后禁用角色、部门时不再批量删除会话，默认启用
+         */
+        private boolean enable = true;
+
+        /**
+         * 批量删除或刷新会话时每批处理的会话数量，每批一次管道或脚本调用，默认500
+         */
+        private int batchSize = 500;
+
+    }
+
 }
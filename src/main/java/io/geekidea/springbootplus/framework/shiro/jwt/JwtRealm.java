@@ -16,17 +16,19 @@
 
 package io.geekidea.springbootplus.framework.shiro.jwt;
 
-import io.geekidea.springbootplus.framework.shiro.cache.LoginRedisService;
-import io.geekidea.springbootplus.framework.shiro.vo.LoginSysUserRedisVo;
+import io.geekidea.springbootplus.framework.shiro.cache.AuthorizationInfoCache;
+import io.geekidea.springbootplus.framework.shiro.permission.BitSetAuthorizationInfo;
+import io.geekidea.springbootplus.framework.shiro.permission.IndexedPermission;
+import io.geekidea.springbootplus.framework.shiro.permission.TokenAuthorizationInfo;
 import lombok.extern.slf4j.Slf4j;
-import org.apache.commons.collections4.SetUtils;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.shiro.authc.AuthenticationException;
 import org.apache.shiro.authc.AuthenticationInfo;
 import org.apache.shiro.authc.AuthenticationToken;
 import org.apache.shiro.authc.SimpleAuthenticationInfo;
+import org.apache.shiro.authz.AuthorizationException;
 import org.apache.shiro.authz.AuthorizationInfo;
-import org.apache.shiro.authz.SimpleAuthorizationInfo;
+import org.apache.shiro.authz.Permission;
 import org.apache.shiro.realm.AuthorizingRealm;
 import org.apache.shiro.subject.PrincipalCollection;
 
@@ -40,10 +42,10 @@ import org.apache.shiro.subject.PrincipalCollection;
 @Slf4j
 public class JwtRealm extends AuthorizingRealm {
 
-    private LoginRedisService loginRedisService;
+    private AuthorizationInfoCache authorizationInfoCache;
 
-    public JwtRealm(LoginRedisService loginRedisService) {
-        this.loginRedisService = loginRedisService;
+    public JwtRealm(AuthorizationInfoCache authorizationInfoCache) {
+        this.authorizationInfoCache = authorizationInfoCache;
     }
 
     @Override
@@ -62,18 +64,42 @@ public class JwtRealm extends AuthorizingRealm {
         log.debug("doGetAuthorizationInfo principalCollection...");
         // 设置角色/权限信息
         JwtToken jwtToken = (JwtToken) principalCollection.getPrimaryPrincipal();
-        // 获取username
-        String username = jwtToken.getUsername();
-        // 获取登陆用户角色权限信息
-        LoginSysUserRedisVo loginSysUserRedisVo = loginRedisService.getLoginSysUserRedisVo(username);
-        SimpleAuthorizationInfo authorizationInfo = new SimpleAuthorizationInfo();
-        // 设置角色
-        authorizationInfo.setRoles(SetUtils.hashSet(loginSysUserRedisVo.getRoleCode()));
-        // 设置权限
-        authorizationInfo.setStringPermissions(loginSysUserRedisVo.getPermissionCodes());
+        // 无状态授权模式下使用token中的权限，否则从本地授权缓存中获取角色权限信息，角色或用户变更时通过Redis发布订阅失效
+        AuthorizationInfo authorizationInfo;
+        try {
+            authorizationInfo = authorizationInfoCache.get(jwtToken);
+        } catch (Exception e) {
+            throw new AuthorizationException("获取授权信息异常,username:" + jwtToken.getUsername(), e);
+        }
         return authorizationInfo;
     }
 
+    /**
+     * token中的权限按权限id位图校验
+     * 已编号的权限直接进行位图校验，位图已包含前缀权限，
+     * 包含通配符权限或权限在生成位图后才注册时，未命中再按通配符规则匹配
+     *
+     * @param permission
+     * @param info
+     * @return
+     */
+    @Override
+    protected boolean isPermitted(Permission permission, AuthorizationInfo info) {
+        if (permission instanceof IndexedPermission && info instanceof TokenAuthorizationInfo) {
+            return ((TokenAuthorizationInfo) info).isPermitted(((IndexedPermission) permission).getCode());
+        }
+        if (permission instanceof IndexedPermission && info instanceof BitSetAuthorizationInfo) {
+            BitSetAuthorizationInfo bitSetAuthorizationInfo = (BitSetAuthorizationInfo) info;
+            if (bitSetAuthorizationInfo.isPermitted(((IndexedPermission) permission).getId())) {
+                return true;
+            }
+            if (bitSetAuthorizationInfo.isDenied(((IndexedPermission) permission).getId())) {
+                return false;
+            }
+        }
+        return super.isPermitted(permission, info);
+    }
+
     /**
      * 登陆认证
      *
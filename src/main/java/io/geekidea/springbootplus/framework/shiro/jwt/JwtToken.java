@@ -17,9 +17,12 @@
 package io.geekidea.springbootplus.framework.shiro.jwt;
 
 import com.auth0.jwt.interfaces.DecodedJWT;
+import io.geekidea.springbootplus.framework.shiro.cache.VerifiedTokenCache;
 import io.geekidea.springbootplus.framework.shiro.util.JwtUtil;
+import io.geekidea.springbootplus.framework.shiro.vo.LoginSysUserRedisVo;
 import io.geekidea.springbootplus.framework.util.IpUtil;
 import lombok.Data;
+import lombok.ToString;
 import lombok.experimental.Accessors;
 import org.apache.shiro.authc.HostAuthenticationToken;
 
@@ -66,6 +69,12 @@ public class JwtToken implements HostAuthenticationToken {
 
     private String principal;
 
+    /**
+     * 本次请求已读取的登陆会话，避免同一请求重复读取Redis
+     */
+    @ToString.Exclude
+    private LoginSysUserRedisVo loginSysUserRedisVo;
+
     private String credentials;
 
     @Override
@@ -93,4 +102,26 @@ public class JwtToken implements HostAuthenticationToken {
 
     }
 
+    public static JwtToken build(JwtContext jwtContext, String salt, long expireSecond) {
+        return new JwtToken()
+                .setUsername(jwtContext.getUsername())
+                .setToken(jwtContext.getToken())
+                .setHost(IpUtil.getRequestIp())
+                .setSalt(salt)
+                .setCreateDate(jwtContext.getIssuedAt())
+                .setExpireSecond(expireSecond)
+                .setExpireDate(jwtContext.getExpireDate());
+    }
+
+    public static JwtToken build(String token, VerifiedTokenCache.VerifiedToken verifiedToken, long expireSecond) {
+        return new JwtToken()
+                .setUsername(verifiedToken.getUsername())
+                .setToken(token)
+                .setHost(IpUtil.getRequestIp())
+                .setSalt(verifiedToken.getSalt())
+                .setCreateDate(verifiedToken.getCreateDate())
+                .setExpireSecond(expireSecond)
+                .setExpireDate(verifiedToken.getExpireDate());
+    }
+
 }
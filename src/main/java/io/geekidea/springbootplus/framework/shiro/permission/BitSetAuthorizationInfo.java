@@ -0,0 +1,75 @@
+/*
+ * Copyright 2019-2029 geekidea(https://github.com/geekidea)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.geekidea.springbootplus.framework.shiro.permission;
+
+import org.apache.shiro.authz.SimpleAuthorizationInfo;
+
+import java.util.BitSet;
+import java.util.Set;
+
+/**
+ * 带权限位图的授权信息
+ * 构建完成后只读，可以多线程共享
+ *
+ * @author geekidea
+ * @date 2020-03-27
+ * @since 1.5.0.RELEASE
+ **/
+public class BitSetAuthorizationInfo extends SimpleAuthorizationInfo {
+
+    private static final long serialVersionUID = -6415938052297478036L;
+
+    private final BitSet permissionBitSet;
+
+    /**
+     * 是否包含通配符权限，包含时位图未命中需要再按通配符规则匹配
+     */
+    private final boolean wildcard;
+
+    /**
+     * 生成位图时已注册的权限id数量，之后注册的权限位图中没有包含关系，未命中需要再按通配符规则匹配
+     */
+    private final int registeredCount;
+
+    public BitSetAuthorizationInfo(Set<String> roles, Set<String> permissionCodes, PermissionRegistry permissionRegistry) {
+        super(roles);
+        setStringPermissions(permissionCodes);
+        // 先获取已注册数量，toBitSet与id分配互斥，数量以内的id都已设置包含关系
+        this.registeredCount = permissionRegistry.getRegisteredCount();
+        this.permissionBitSet = permissionRegistry.toBitSet(permissionCodes);
+        this.wildcard = permissionRegistry.containsWildcard(permissionCodes);
+    }
+
+    public boolean isPermitted(int permissionId) {
+        return permissionBitSet.get(permissionId);
+    }
+
+    public boolean isWildcard() {
+        return wildcard;
+    }
+
+    /**
+     * 位图未命中时是否可以直接拒绝：不包含通配符权限，并且权限id在生成位图时已注册
+     *
+     * @param permissionId
+     * @return
+     */
+    public boolean isDenied(int permissionId) {
+        return !wildcard && permissionId < registeredCount && !permissionBitSet.get(permissionId);
+    }
+
+}
@@ -0,0 +1,101 @@
+/*
+ * Copyright 2019-2029 geekidea(https://github.com/geekidea)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.geekidea.springbootplus.framework.shiro.permission;
+
+import org.apache.shiro.authz.Permission;
+import org.apache.shiro.authz.permission.WildcardPermission;
+
+import java.io.Serializable;
+
+/**
+ * 已编号的权限
+ * 精确匹配时比较id，包含通配符时使用WildcardPermission的匹配规则
+ *
+ * @author geekidea
+ * @date 2020-03-27
+ * @since 1.5.0.RELEASE
+ **/
+public class IndexedPermission implements Permission, Serializable {
+
+    private static final long serialVersionUID = 2907640627453513402L;
+
+    private final int id;
+
+    private final String code;
+
+    private final boolean wildcard;
+
+    private volatile WildcardPermission wildcardPermission;
+
+    public IndexedPermission(int id, String code, boolean wildcard) {
+        this.id = id;
+        this.code = code;
+        this.wildcard = wildcard;
+    }
+
+    public int getId() {
+        return id;
+    }
+
+    public String getCode() {
+        return code;
+    }
+
+    public boolean isWildcard() {
+        return wildcard;
+    }
+
+    @Override
+    public boolean implies(Permission permission) {
+        if (permission instanceof IndexedPermission) {
+            IndexedPermission indexedPermission = (IndexedPermission) permission;
+            if (indexedPermission.id == id) {
+                return true;
+            }
+            return getWildcardPermission().implies(indexedPermission.getWildcardPermission());
+        }
+        return getWildcardPermission().implies(permission);
+    }
+
+    private WildcardPermission getWildcardPermission() {
+        if (wildcardPermission == null) {
+            wildcardPermission = new WildcardPermission(code);
+        }
+        return wildcardPermission;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof IndexedPermission)) {
+            return false;
+        }
+        return id == ((IndexedPermission) o).id;
+    }
+
+    @Override
+    public int hashCode() {
+        return id;
+    }
+
+    @Override
+    public String toString() {
+        return code;
+    }
+}
@@ -0,0 +1,91 @@
+/*
+ * Copyright 2019-2029 geekidea(https://github.com/geekidea)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.geekidea.springbootplus.framework.shiro.permission;
+
+import org.apache.shiro.authz.AuthorizationException;
+import org.apache.shiro.authz.Permission;
+import org.apache.shiro.authz.UnauthorizedException;
+import org.apache.shiro.authz.annotation.Logical;
+import org.apache.shiro.authz.annotation.RequiresPermissions;
+import org.apache.shiro.authz.aop.PermissionAnnotationHandler;
+import org.apache.shiro.subject.Subject;
+
+import java.lang.annotation.Annotation;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * RequiresPermissions注解处理器
+ * 每个方法上的注解只解析一次，之后直接使用已编号的权限进行校验
+ *
+ * @author geekidea
+ * @date 2020-03-27
+ * @since 1.5.0.RELEASE
+ **/
+public class IndexedPermissionAnnotationHandler extends PermissionAnnotationHandler {
+
+    private final PermissionRegistry permissionRegistry;
+
+    /**
+     * 注解 --> 已编号的权限
+     */
+    private final ConcurrentMap<Annotation, List<Permission>> annotationPermissionMap = new ConcurrentHashMap<>();
+
+    public IndexedPermissionAnnotationHandler(PermissionRegistry permissionRegistry) {
+        this.permissionRegistry = permissionRegistry;
+    }
+
+    @Override
+    public void assertAuthorized(Annotation a) throws AuthorizationException {
+        if (!(a instanceof RequiresPermissions)) {
+            return;
+        }
+        RequiresPermissions requiresPermissions = (RequiresPermissions) a;
+        List<Permission> permissions = annotationPermissionMap.computeIfAbsent(a, this::resolvePermissions);
+        Subject subject = getSubject();
+
+        if (permissions.size() == 1) {
+            subject.checkPermission(permissions.get(0));
+            return;
+        }
+        if (Logical.AND.equals(requiresPermissions.logical())) {
+            subject.checkPermissions(permissions);
+            return;
+        }
+        if (Logical.OR.equals(requiresPermissions.logical())) {
+            // 有一个权限即可
+            for (Permission permission : permissions) {
+                if (subject.isPermitted(permission)) {
+                    return;
+                }
+            }
+            throw new UnauthorizedException("Subject does not have any of the permissions " + permissions);
+        }
+    }
+
+    private List<Permission> resolvePermissions(Annotation a) {
+        String[] perms = getAnnotationValue(a);
+        Permission[] permissions = new Permission[perms.length];
+        for (int i = 0; i < perms.length; i++) {
+            permissions[i] = permissionRegistry.getPermission(perms[i]);
+        }
+        return Arrays.asList(permissions);
+    }
+
+}
@@ -0,0 +1,42 @@
+/*
+ * Copyright 2019-2029 geekidea(https://github.com/geekidea)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.geekidea.springbootplus.framework.shiro.permission;
+
+import org.apache.shiro.authz.Permission;
+import org.apache.shiro.authz.permission.PermissionResolver;
+
+/**
+ * 权限解析器，从PermissionRegistry中获取已编号的权限，同一权限字符串只解析一次
+ *
+ * @author geekidea
+ * @date 2020-03-27
+ * @since 1.5.0.RELEASE
+ **/
+public class IndexedPermissionResolver implements PermissionResolver {
+
+    private final PermissionRegistry permissionRegistry;
+
+    public IndexedPermissionResolver(PermissionRegistry permissionRegistry) {
+        this.permissionRegistry = permissionRegistry;
+    }
+
+    @Override
+    public Permission resolvePermission(String permissionString) {
+        return permissionRegistry.getPermission(permissionString);
+    }
+
+}
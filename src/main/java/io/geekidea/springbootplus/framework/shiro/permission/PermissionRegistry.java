@@ -0,0 +1,233 @@
+/*
+ * Copyright 2019-2029 geekidea(https://github.com/geekidea)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.geekidea.springbootplus.framework.shiro.permission;
+
+import io.geekidea.springbootplus.system.entity.SysPermission;
+import io.geekidea.springbootplus.system.service.SysPermissionService;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.collections4.CollectionUtils;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.shiro.authz.permission.WildcardPermission;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 权限编码注册表
+ * 启动时加载sys_permission.code，将每个权限编码映射为连续的整数id，
+ * 角色权限使用BitSet表示，权限校验只需要一次位运算
+ * 生成BitSet时同时设置持有的权限编码所包含的已注册编码，与WildcardPermission的前缀规则一致
+ * 新增的权限编码在第一次使用时分配id
+ *
+ * @author geekidea
+ * @date 2020-03-27
+ * @since 1.5.0.RELEASE
+ **/
+@Slf4j
+@Component
+public class PermissionRegistry {
+
+    /**
+     * 通配符权限中使用的字符
+     */
+    private static final String WILDCARD_CHARS = "*,";
+
+    private static final char PART_DIVIDER = WildcardPermission.PART_DIVIDER_TOKEN.charAt(0);
+
+    @Lazy
+    @Autowired
+    private SysPermissionService sysPermissionService;
+
+    /**
+     * 权限编码 --> id
+     */
+    private final ConcurrentMap<String, Integer> codeIdMap = new ConcurrentHashMap<>();
+
+    /**
+     * 权限字符串 --> 已解析的权限对象
+     */
+    private final ConcurrentMap<String, IndexedPermission> permissionMap = new ConcurrentHashMap<>();
+
+    private final AtomicInteger nextId = new AtomicInteger();
+
+    /**
+     * 启动时加载所有权限编码
+     */
+    @PostConstruct
+    public void init() {
+        try {
+            List<SysPermission> sysPermissions = sysPermissionService.list();
+            if (CollectionUtils.isEmpty(sysPermissions)) {
+                return;
+            }
+            for (SysPermission sysPermission : sysPermissions) {
+                if (StringUtils.isNotBlank(sysPermission.getCode())) {
+                    getId(sysPermission.getCode());
+                }
+            }
+            log.info("权限编码注册完成,size:{}", codeIdMap.size());
+        } catch (Exception e) {
+            log.error("加载权限编码异常，权限编码将在使用时注册", e);
+        }
+    }
+
+    /**
+     * 获取权限编码对应的id，不存在则分配新id
+     *
+     * @param code
+     * @return
+     */
+    public int getId(String code) {
+        Integer id = codeIdMap.get(code);
+        if (id != null) {
+            return id;
+        }
+        return register(code);
+    }
+
+    /**
+     * 分配新id，与toBitSet互斥，保证toBitSet时小于已注册数量的id都已在注册表中
+     *
+     * @param code
+     * @return
+     */
+    private synchronized int register(String code) {
+        return codeIdMap.computeIfAbsent(code, key -> nextId.getAndIncrement());
+    }
+
+    /**
+     * 获取权限字符串对应的权限对象，同一字符串只解析一次
+     *
+     * @param permissionString
+     * @return
+     */
+    public IndexedPermission getPermission(String permissionString) {
+        IndexedPermission permission = permissionMap.get(permissionString);
+        if (permission != null) {
+            return permission;
+        }
+        return permissionMap.computeIfAbsent(permissionString,
+                key -> new IndexedPermission(getId(key), key, isWildcard(key)));
+    }
+
+    /**
+     * 将权限编码集合转换成BitSet，同时设置持有的编码所包含的已注册编码
+     * 调用前通过getRegisteredCount获取的数量以内的id都已按包含规则设置
+     *
+     * @param codes
+     * @return
+     */
+    public synchronized BitSet toBitSet(Collection<String> codes) {
+        BitSet bitSet = new BitSet(nextId.get());
+        if (codes == null) {
+            return bitSet;
+        }
+        for (String code : codes) {
+            bitSet.set(getId(code));
+        }
+        for (Map.Entry<String, Integer> entry : codeIdMap.entrySet()) {
+            if (!bitSet.get(entry.getValue()) && impliesAny(codes, entry.getKey())) {
+                bitSet.set(entry.getValue());
+            }
+        }
+        return bitSet;
+    }
+
+    /**
+     * 已分配的id数量，小于该值的id都已注册
+     *
+     * @return
+     */
+    public int getRegisteredCount() {
+        return nextId.get();
+    }
+
+    /**
+     * 持有的权限编码集合中是否有编码包含目标编码
+     *
+     * @param heldCodes
+     * @param code
+     * @return
+     */
+    public static boolean impliesAny(Collection<String> heldCodes, String code) {
+        if (heldCodes == null) {
+            return false;
+        }
+        for (String heldCode : heldCodes) {
+            if (implies(heldCode, code)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 不含通配符的持有编码是否包含目标编码
+     * 与WildcardPermission一致忽略大小写，编码相同或持有编码是目标编码按:分隔的前缀时包含
+     * 如sys:user:update包含sys:user:update:password
+     *
+     * @param heldCode
+     * @param code
+     * @return
+     */
+    public static boolean implies(String heldCode, String code) {
+        if (heldCode == null || code == null || isWildcard(heldCode)) {
+            return false;
+        }
+        int length = heldCode.length();
+        if (code.length() < length || !code.regionMatches(true, 0, heldCode, 0, length)) {
+            return false;
+        }
+        return code.length() == length || code.charAt(length) == PART_DIVIDER;
+    }
+
+    /**
+     * 是否包含通配符权限
+     *
+     * @param codes
+     * @return
+     */
+    public boolean containsWildcard(Collection<String> codes) {
+        if (codes == null) {
+            return false;
+        }
+        for (String code : codes) {
+            if (isWildcard(code)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public int size() {
+        return codeIdMap.size();
+    }
+
+    private static boolean isWildcard(String code) {
+        return StringUtils.containsAny(code, WILDCARD_CHARS);
+    }
+
+}
@@ -0,0 +1,312 @@
+/*
+ * Copyright 2019-2029 geekidea(https://github.com/geekidea)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.geekidea.springbootplus.framework.shiro.permission;
+
+import com.auth0.jwt.interfaces.Claim;
+import com.auth0.jwt.interfaces.DecodedJWT;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.RemovalCause;
+import com.google.common.cache.RemovalListener;
+import io.geekidea.springbootplus.framework.constant.CommonConstant;
+import io.geekidea.springbootplus.framework.constant.CommonRedisKey;
+import io.geekidea.springbootplus.framework.shiro.jwt.JwtContext;
+import io.geekidea.springbootplus.framework.shiro.jwt.JwtProperties;
+import io.geekidea.springbootplus.framework.shiro.jwt.JwtToken;
+import io.geekidea.springbootplus.framework.shiro.util.JwtUtil;
+import io.geekidea.springbootplus.system.cache.SysDirectory;
+import io.geekidea.springbootplus.system.entity.SysRole;
+import io.geekidea.springbootplus.system.enums.StateEnum;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.shiro.authz.AuthorizationInfo;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.ZSetOperations;
+import org.springframework.stereotype.Component;
+
+import java.util.Base64;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 无状态授权
+ * 生成token时写入角色id、角色版本号和权限id位图，
+ * 请求时角色版本号与本地部门角色目录中的版本号一致，并且用户在token签发后没有变更，则直接使用token中的权限，
+ * 否则返回null，由调用方从授权缓存或数据库中获取
+ * 部门角色目录通过Redis发布订阅更新，权限校验时不访问网络
+ * 用户变更时间同时记录到Redis，定时增量加载，防止变更通知丢失，节点启动前签发的token不使用token中的权限
+ *
+ * @author geekidea
+ * @date 2020-03-30
+ * @since 1.5.0.RELEASE
+ **/
+@Slf4j
+@Component
+public class TokenAuthorization {
+
+    /**
+     * 位图支持的最大权限id，超过时不写入token
+     */
+    static final long MAX_PERMISSION_ID = 65535;
+
+    /**
+     * 增量加载用户变更时间时向前重叠的时间，单位：毫秒，避免节点间时钟偏差遗漏记录
+     */
+    private static final long RECONCILE_OVERLAP_MILLIS = 10000;
+
+    @Lazy
+    @Autowired
+    private SysDirectory sysDirectory;
+
+    private final JwtProperties jwtProperties;
+
+    private final RedisTemplate redisTemplate;
+
+    /**
+     * 用户变更时间，username --> 变更时间戳，变更前签发的token不使用token中的权限
+     */
+    private final Cache<String, Long> userChangedCache;
+
+    /**
+     * 节点启动时间和超出最大数量被淘汰的最大变更时间，该时间之前签发的token都不使用token中的权限
+     * 节点启动前的用户变更时间不在本地缓存中，因此启动前签发的token都不信任
+     */
+    private final AtomicLong evictedChangedTime = new AtomicLong(System.currentTimeMillis());
+
+    /**
+     * 上次从Redis加载用户变更时间的时间，启动前的变更已由evictedChangedTime覆盖
+     */
+    private volatile long lastReconcileTime = evictedChangedTime.get();
+
+    private final LongAdder hitCount = new LongAdder();
+
+    private final LongAdder staleCount = new LongAdder();
+
+    public TokenAuthorization(JwtProperties jwtProperties, RedisTemplate redisTemplate) {
+        this.jwtProperties = jwtProperties;
+        this.redisTemplate = redisTemplate;
+        // 保留时间与生成token的有效时间一致，启用滑动会话续期时为token最大有效时间
+        this.userChangedCache = CacheBuilder.newBuilder()
+                .expireAfterWrite(jwtProperties.tokenExpireSecond(), TimeUnit.SECONDS)
+                .maximumSize(jwtProperties.getStatelessUserChangedMaximumSize())
+                .removalListener((RemovalListener<String, Long>) notification -> {
+                    if (notification.getCause() == RemovalCause.SIZE && notification.getValue() != null) {
+                        evictedChangedTime.accumulateAndGet(notification.getValue(), Math::max);
+                    }
+                })
+                .build();
+    }
+
+    public boolean isEnable() {
+        return jwtProperties.isStatelessAuthorization();
+    }
+
+    /**
+     * 生成角色授权声明，未启用、角色不在目录中、包含通配符权限或权限id超出范围时返回null
+     *
+     * @param roleId
+     * @return
+     */
+    public Map<String, Object> buildClaims(Long roleId) {
+        if (!isEnable() || roleId == null) {
+            return null;
+        }
+        Long roleVersion = sysDirectory.getRoleVersion(roleId);
+        if (roleVersion == null) {
+            return null;
+        }
+        Set<String> permissionCodes;
+        try {
+            permissionCodes = sysDirectory.getPermissionCodes(roleId);
+        } catch (Exception e) {
+            log.error("获取角色权限编码异常,roleId:" + roleId, e);
+            return null;
+        }
+        BitSet permissionBitSet = new BitSet();
+        if (permissionCodes != null) {
+            for (String code : permissionCodes) {
+                Long permissionId = sysDirectory.getPermissionId(code);
+                if (permissionId == null || permissionId < 0 || permissionId > MAX_PERMISSION_ID
+                        || StringUtils.containsAny(code, "*,")) {
+                    return null;
+                }
+                permissionBitSet.set(permissionId.intValue());
+            }
+            // 同时设置持有编码所包含的权限，与PermissionRegistry的前缀规则一致
+            for (Map.Entry<String, Long> entry : sysDirectory.getPermissionIds().entrySet()) {
+                Long permissionId = entry.getValue();
+                if (permissionId != null && permissionId >= 0 && permissionId <= MAX_PERMISSION_ID
+                        && !permissionBitSet.get(permissionId.intValue())
+                        && PermissionRegistry.impliesAny(permissionCodes, entry.getKey())) {
+                    permissionBitSet.set(permissionId.intValue());
+                }
+            }
+        }
+        Map<String, Object> claims = new HashMap<>(4);
+        claims.put(CommonConstant.JWT_ROLE_ID, roleId);
+        claims.put(CommonConstant.JWT_ROLE_VERSION, roleVersion);
+        claims.put(CommonConstant.JWT_PERMISSIONS, Base64.getUrlEncoder().withoutPadding().encodeToString(permissionBitSet.toByteArray()));
+        return claims;
+    }
+
+    /**
+     * 刷新token时，按原token中的角色重新生成授权声明
+     *
+     * @param token
+     * @return
+     */
+    public Map<String, Object> buildClaims(String token) {
+        if (!isEnable()) {
+            return null;
+        }
+        Claim roleIdClaim = getDecodedJwt(token).getClaim(CommonConstant.JWT_ROLE_ID);
+        return roleIdClaim.isNull() ? null : buildClaims(roleIdClaim.asLong());
+    }
+
+    /**
+     * 从token中解析授权信息，无法使用token中的权限时返回null
+     *
+     * @param jwtToken
+     * @return
+     */
+    public AuthorizationInfo resolve(JwtToken jwtToken) {
+        if (!isEnable()) {
+            return null;
+        }
+        DecodedJWT decodedJwt = getDecodedJwt(jwtToken.getToken());
+        Long roleId = decodedJwt.getClaim(CommonConstant.JWT_ROLE_ID).asLong();
+        Long roleVersion = decodedJwt.getClaim(CommonConstant.JWT_ROLE_VERSION).asLong();
+        String permissions = decodedJwt.getClaim(CommonConstant.JWT_PERMISSIONS).asString();
+        if (roleId == null || roleVersion == null || permissions == null) {
+            return null;
+        }
+        // 角色状态或权限已变更
+        if (!roleVersion.equals(sysDirectory.getRoleVersion(roleId))) {
+            staleCount.increment();
+            return null;
+        }
+        // token签发后用户角色或状态已变更，签发时间精确到秒
+        Long changedTime = userChangedCache.getIfPresent(jwtToken.getUsername());
+        if (changedTime == null || changedTime < evictedChangedTime.get()) {
+            changedTime = evictedChangedTime.get();
+        }
+        Date issuedAt = decodedJwt.getIssuedAt();
+        if (changedTime > 0 && (issuedAt == null || issuedAt.getTime() <= changedTime)) {
+            staleCount.increment();
+            return null;
+        }
+        SysRole sysRole = sysDirectory.getRole(roleId);
+        if (sysRole == null || !StateEnum.ENABLE.getCode().equals(sysRole.getState())) {
+            return null;
+        }
+        BitSet permissionBitSet;
+        try {
+            permissionBitSet = BitSet.valueOf(Base64.getUrlDecoder().decode(permissions));
+        } catch (IllegalArgumentException e) {
+            log.warn("token权限位图格式错误,username:{}", jwtToken.getUsername());
+            return null;
+        }
+        hitCount.increment();
+        return new TokenAuthorizationInfo(Collections.singleton(sysRole.getCode()), roleId, permissionBitSet, sysDirectory);
+    }
+
+    /**
+     * 用户角色或状态已变更，之前签发的token不再使用token中的权限
+     *
+     * @param username
+     */
+    public void userChanged(String username) {
+        if (StringUtils.isBlank(username)) {
+            return;
+        }
+        putUserChanged(username, System.currentTimeMillis());
+    }
+
+    /**
+     * 记录用户变更时间到Redis，变更通知丢失或节点重启时通过reconcile加载
+     * 应在发布用户变更通知之前调用
+     *
+     * @param username
+     */
+    public void saveUserChanged(String username) {
+        if (!isEnable() || StringUtils.isBlank(username)) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        redisTemplate.opsForZSet().add(CommonRedisKey.LOGIN_USER_CHANGED, username, now);
+        putUserChanged(username, now);
+    }
+
+    /**
+     * 删除过期的用户变更记录，并从Redis加载上次加载之后的用户变更时间
+     */
+    public void reconcile() {
+        if (!isEnable()) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        long lifetimeMillis = TimeUnit.SECONDS.toMillis(jwtProperties.tokenExpireSecond());
+        redisTemplate.opsForZSet().removeRangeByScore(CommonRedisKey.LOGIN_USER_CHANGED, 0, now - lifetimeMillis);
+        Set<ZSetOperations.TypedTuple<Object>> tuples = redisTemplate.opsForZSet().rangeByScoreWithScores(
+                CommonRedisKey.LOGIN_USER_CHANGED, lastReconcileTime - RECONCILE_OVERLAP_MILLIS, Double.MAX_VALUE);
+        if (tuples != null) {
+            for (ZSetOperations.TypedTuple<Object> tuple : tuples) {
+                if (tuple.getValue() != null && tuple.getScore() != null) {
+                    putUserChanged(tuple.getValue().toString(), tuple.getScore().longValue());
+                }
+            }
+        }
+        lastReconcileTime = now;
+        log.debug("用户变更时间加载完成,size:{}", tuples == null ? 0 : tuples.size());
+    }
+
+    /**
+     * 保留较大的变更时间，避免加载的旧记录覆盖通知中的变更时间
+     *
+     * @param username
+     * @param changedTime
+     */
+    private void putUserChanged(String username, long changedTime) {
+        userChangedCache.asMap().merge(username, changedTime, Math::max);
+    }
+
+    public long getHitCount() {
+        return hitCount.sum();
+    }
+
+    public long getStaleCount() {
+        return staleCount.sum();
+    }
+
+    private DecodedJWT getDecodedJwt(String token) {
+        JwtContext jwtContext = JwtContext.get(token);
+        if (jwtContext != null) {
+            return jwtContext.getDecodedJwt();
+        }
+        return JwtUtil.getJwtInfo(token);
+    }
+
+}
@@ -0,0 +1,68 @@
+/*
+ * Copyright 2019-2029 geekidea(https://github.com/geekidea)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.geekidea.springbootplus.framework.shiro.permission;
+
+import io.geekidea.springbootplus.system.cache.SysDirectory;
+import org.apache.shiro.authz.SimpleAuthorizationInfo;
+
+import java.util.BitSet;
+import java.util.Set;
+
+/**
+ * 从token中解析的授权信息
+ * 权限位图以权限表主键为下标，各节点含义一致，权限校验时通过部门角色目录将权限编码转换成权限id
+ * 位图中已包含持有编码的前缀权限，未命中时按角色权限编码的前缀规则校验，
+ * 覆盖大小写不同或token签发后新增的权限编码
+ *
+ * @author geekidea
+ * @date 2020-03-30
+ * @since 1.5.0.RELEASE
+ **/
+public class TokenAuthorizationInfo extends SimpleAuthorizationInfo {
+
+    private static final long serialVersionUID = 4120478432391815772L;
+
+    private final Long roleId;
+
+    private final BitSet permissionBitSet;
+
+    private final transient SysDirectory sysDirectory;
+
+    public TokenAuthorizationInfo(Set<String> roles, Long roleId, BitSet permissionBitSet, SysDirectory sysDirectory) {
+        super(roles);
+        this.roleId = roleId;
+        this.permissionBitSet = permissionBitSet;
+        this.sysDirectory = sysDirectory;
+    }
+
+    public boolean isPermitted(String permissionCode) {
+        Long permissionId = sysDirectory.getPermissionId(permissionCode);
+        if (permissionId != null
+                && permissionId >= 0
+                && permissionId <= TokenAuthorization.MAX_PERMISSION_ID
+                && permissionBitSet.get(permissionId.intValue())) {
+            return true;
+        }
+        // 角色版本号已校验一致，目录中的角色权限编码与token签发时相同
+        try {
+            return PermissionRegistry.impliesAny(sysDirectory.getPermissionCodes(roleId), permissionCode);
+        } catch (Exception e) {
+            return false;
+        }
+    }
+
+}
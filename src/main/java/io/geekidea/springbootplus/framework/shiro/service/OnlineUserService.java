@@ -0,0 +1,78 @@
+/*
+ * Copyright 2019-2029 geekidea(https://github.com/geekidea)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.geekidea.springbootplus.framework.shiro.service;
+
+import io.geekidea.springbootplus.framework.pagination.Paging;
+import io.geekidea.springbootplus.framework.shiro.param.OnlineUserPageParam;
+import io.geekidea.springbootplus.framework.shiro.vo.OnlineUserStatisticsVo;
+import io.geekidea.springbootplus.framework.shiro.vo.OnlineUserVo;
+
+/**
+ * <p>
+ * 在线用户服务接口
+ * </p>
+ *
+ * @author geekidea
+ * @date 2020-03-30
+ * @since 1.5.0.RELEASE
+ **/
+public interface OnlineUserService {
+
+    /**
+     * 记录用户访问，同一用户每个统计间隔内只记录一次，只放入本地队列，不访问Redis
+     *
+     * @param username
+     */
+    void touch(String username);
+
+    /**
+     * 将本地队列中的访问记录批量写入Redis
+     *
+     * @return 写入的用户数
+     */
+    int flush();
+
+    /**
+     * 用户登出，从在线用户中移除
+     *
+     * @param username
+     */
+    void offline(String username);
+
+    /**
+     * 在线用户分页列表，按最后访问时间倒序
+     *
+     * @param onlineUserPageParam
+     * @return
+     */
+    Paging<OnlineUserVo> getOnlineUserPageList(OnlineUserPageParam onlineUserPageParam);
+
+    /**
+     * 在线用户和去重访问用户统计
+     *
+     * @return
+     */
+    OnlineUserStatisticsVo getStatistics();
+
+    /**
+     * 删除超过在线时间未访问的用户
+     *
+     * @return 删除的用户数
+     */
+    long removeExpired();
+
+}
@@ -17,29 +17,36 @@
 package io.geekidea.springbootplus.framework.shiro.service.impl;
 
 import com.baomidou.mybatisplus.core.conditions.query.QueryWrapper;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 import io.geekidea.springbootplus.framework.constant.CommonConstant;
-import io.geekidea.springbootplus.framework.constant.CommonRedisKey;
 import io.geekidea.springbootplus.framework.core.properties.SpringBootPlusProperties;
 import io.geekidea.springbootplus.system.enums.StateEnum;
 import io.geekidea.springbootplus.framework.shiro.cache.LoginRedisService;
+import io.geekidea.springbootplus.framework.shiro.cache.RevokedTokenFilter;
+import io.geekidea.springbootplus.framework.shiro.jwt.JwtContext;
 import io.geekidea.springbootplus.framework.shiro.jwt.JwtProperties;
 import io.geekidea.springbootplus.framework.shiro.jwt.JwtToken;
 import io.geekidea.springbootplus.framework.shiro.param.LoginParam;
+import io.geekidea.springbootplus.framework.shiro.permission.TokenAuthorization;
 import io.geekidea.springbootplus.framework.shiro.service.LoginService;
+import io.geekidea.springbootplus.framework.shiro.service.OnlineUserService;
+import io.geekidea.springbootplus.framework.shiro.throttle.LoginThrottle;
 import io.geekidea.springbootplus.framework.shiro.util.JwtTokenUtil;
 import io.geekidea.springbootplus.framework.shiro.util.JwtUtil;
 import io.geekidea.springbootplus.framework.shiro.util.SaltUtil;
 import io.geekidea.springbootplus.framework.shiro.vo.LoginSysUserVo;
+import io.geekidea.springbootplus.system.cache.SysDirectory;
 import io.geekidea.springbootplus.system.convert.SysUserConvert;
 import io.geekidea.springbootplus.system.entity.SysDepartment;
 import io.geekidea.springbootplus.system.entity.SysRole;
 import io.geekidea.springbootplus.system.entity.SysUser;
 import io.geekidea.springbootplus.system.exception.VerificationCodeException;
 import io.geekidea.springbootplus.system.mapper.SysUserMapper;
-import io.geekidea.springbootplus.system.service.SysDepartmentService;
-import io.geekidea.springbootplus.system.service.SysRolePermissionService;
-import io.geekidea.springbootplus.system.service.SysRoleService;
+import io.geekidea.springbootplus.system.service.VerificationCodeService;
 import io.geekidea.springbootplus.system.vo.LoginSysUserTokenVo;
+import io.geekidea.springbootplus.framework.util.HttpServletRequestUtil;
+import io.geekidea.springbootplus.framework.util.IpUtil;
 import io.geekidea.springbootplus.framework.util.PasswordUtil;
 import io.swagger.annotations.Api;
 import lombok.extern.slf4j.Slf4j;
@@ -52,15 +59,19 @@ import org.apache.shiro.authc.AuthenticationException;
 import org.apache.shiro.subject.Subject;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.annotation.Lazy;
-import org.springframework.data.redis.core.RedisTemplate;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.web.context.request.RequestContextHolder;
 
+import javax.annotation.PostConstruct;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import java.time.Duration;
 import java.util.Date;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.TimeUnit;
 
 /**
@@ -90,15 +101,23 @@ public class LoginServiceImpl implements LoginService {
 
     @Lazy
     @Autowired
-    private SysDepartmentService sysDepartmentService;
+    private SysDirectory sysDirectory;
 
     @Lazy
     @Autowired
-    private SysRoleService sysRoleService;
+    private TokenAuthorization tokenAuthorization;
 
     @Lazy
     @Autowired
-    private SysRolePermissionService sysRolePermissionService;
+    private RevokedTokenFilter revokedTokenFilter;
+
+    @Lazy
+    @Autowired
+    private LoginThrottle loginThrottle;
+
+    @Lazy
+    @Autowired
+    private OnlineUserService onlineUserService;
 
     @Lazy
     @Autowired
@@ -106,19 +125,58 @@ public class LoginServiceImpl implements LoginService {
 
     @Lazy
     @Autowired
-    private RedisTemplate redisTemplate;
+    private VerificationCodeService verificationCodeService;
+
+    /**
+     * 等待其他线程刷新token的最长时间，单位：秒
+     */
+    private static final long REFRESH_WAIT_SECOND = 5;
+
+    /**
+     * 正在刷新的token，tokenMd5 --> 刷新结果
+     */
+    private final ConcurrentMap<String, CompletableFuture<String>> refreshingTokenMap = new ConcurrentHashMap<>();
+
+    /**
+     * 本节点已刷新的token，tokenMd5 --> 新token，宽限时间内有效
+     */
+    private volatile Cache<String, String> refreshedTokenCache;
+
+    /**
+     * 本节点续期间隔内已续期的会话，tokenMd5 --> true
+     */
+    private volatile Cache<String, Boolean> renewedSessionCache;
+
+    @PostConstruct
+    public void init() {
+        refreshedTokenCache = CacheBuilder.newBuilder()
+                .maximumSize(10000)
+                .expireAfterWrite(Math.max(jwtProperties.getRefreshGraceSecond(), 1), TimeUnit.SECONDS)
+                .build();
+        renewedSessionCache = CacheBuilder.newBuilder()
+                .maximumSize(100000)
+                .expireAfterWrite(Math.max(jwtProperties.getSessionRenewal().getRenewIntervalSecond(), 1), TimeUnit.SECONDS)
+                .build();
+    }
 
     @Transactional(rollbackFor = Exception.class)
     @Override
     public LoginSysUserTokenVo login(LoginParam loginParam) throws Exception {
+        String username = loginParam.getUsername();
+        String ip = getRequestIp();
+        // 登陆限流，被拒绝时不校验验证码、不查询数据库
+        loginThrottle.check(username, ip);
+
         // 校验验证码
         checkVerifyCode(loginParam.getVerifyToken(), loginParam.getCode());
+        // 验证码通过后才扣减用户名限制
+        loginThrottle.checkUsername(username, ip);
 
-        String username = loginParam.getUsername();
         // 从数据库中获取登陆用户信息
         SysUser sysUser = getSysUserByUsername(username);
         if (sysUser == null) {
             log.error("登陆失败,loginParam:{}", loginParam);
+            loginThrottle.onFailure(username, ip);
             throw new AuthenticationException("用户名或密码错误");
         }
         if (StateEnum.DISABLE.getCode().equals(sysUser.getState())) {
@@ -131,14 +189,16 @@ public class LoginServiceImpl implements LoginService {
         // 后台加密规则：sha256(sha256(123456) + salt)
         String encryptPassword = PasswordUtil.encrypt(loginParam.getPassword(), sysUser.getSalt());
         if (!encryptPassword.equals(sysUser.getPassword())) {
+            loginThrottle.onFailure(username, ip);
             throw new AuthenticationException("用户名或密码错误");
         }
+        loginThrottle.onSuccess(username, ip);
 
         // 将系统用户对象转换成登陆用户对象
         LoginSysUserVo loginSysUserVo = SysUserConvert.INSTANCE.sysUserToLoginSysUserVo(sysUser);
 
-        // 获取部门
-        SysDepartment sysDepartment = sysDepartmentService.getById(sysUser.getDepartmentId());
+        // 获取部门，部门、角色、角色权限从部门角色目录中获取，只有用户需要查询数据库
+        SysDepartment sysDepartment = sysDirectory.getDepartment(sysUser.getDepartmentId());
         if (sysDepartment == null) {
             throw new AuthenticationException("部门不存在");
         }
@@ -150,7 +210,7 @@ public class LoginServiceImpl implements LoginService {
 
         // 获取当前用户角色
         Long roleId = sysUser.getRoleId();
-        SysRole sysRole = sysRoleService.getById(roleId);
+        SysRole sysRole = sysDirectory.getRole(roleId);
         if (sysRole == null) {
             throw new AuthenticationException("角色不存在");
         }
@@ -162,7 +222,7 @@ public class LoginServiceImpl implements LoginService {
                 .setRoleCode(sysRole.getCode());
 
         // 获取当前用户权限
-        Set<String> permissionCodes = sysRolePermissionService.getPermissionCodesByRoleId(roleId);
+        Set<String> permissionCodes = sysDirectory.getPermissionCodes(roleId);
         if (CollectionUtils.isEmpty(permissionCodes)) {
             throw new AuthenticationException("权限列表不能为空");
         }
@@ -171,9 +231,9 @@ public class LoginServiceImpl implements LoginService {
         // 获取数据库中保存的盐值
         String newSalt = SaltUtil.getSalt(sysUser.getSalt(), jwtProperties);
 
-        // 生成token字符串并返回
+        // 生成token字符串并返回，会话有效时间为expireSecond
         Long expireSecond = jwtProperties.getExpireSecond();
-        String token = JwtUtil.generateToken(username, newSalt, Duration.ofSeconds(expireSecond));
+        String token = JwtUtil.generateToken(username, newSalt, Duration.ofSeconds(getTokenExpireSecond()), tokenAuthorization.buildClaims(roleId));
         log.debug("token:{}", token);
 
         // 创建AuthenticationToken
@@ -186,11 +246,8 @@ public class LoginServiceImpl implements LoginService {
         // 缓存登陆信息到Redis
         loginRedisService.cacheLoginInfo(jwtToken, loginSysUserVo);
         log.debug("登陆成功,username:{}", username);
-
-
-        // 缓存登陆信息到redis
-        String tokenSha256 = DigestUtils.sha256Hex(token);
-        redisTemplate.opsForValue().set(tokenSha256,loginSysUserVo,1, TimeUnit.DAYS);
+        // 记录在线用户
+        onlineUserService.touch(username);
 
         // 返回token和登陆用户信息对象
         LoginSysUserTokenVo loginSysUserTokenVo = new LoginSysUserTokenVo();
@@ -199,6 +256,22 @@ public class LoginServiceImpl implements LoginService {
         return loginSysUserTokenVo;
     }
 
+    /**
+     * 获取登陆请求IP，非HTTP请求时返回null
+     *
+     * @return
+     */
+    private String getRequestIp() {
+        if (RequestContextHolder.getRequestAttributes() == null) {
+            return null;
+        }
+        // 不信任代理请求头时使用连接的远程地址，避免伪造x-forwarded-for绕过IP限制
+        if (!jwtProperties.getLoginThrottle().isTrustForwardedFor()) {
+            return HttpServletRequestUtil.getRequest().getRemoteAddr();
+        }
+        return IpUtil.getRequestIp();
+    }
+
     @Override
     public void checkVerifyCode(String verifyToken, String code) throws Exception {
         // 如果没有启用验证码，则返回
@@ -209,18 +282,10 @@ public class LoginServiceImpl implements LoginService {
         if (StringUtils.isBlank(code)) {
             throw new VerificationCodeException("请输入验证码");
         }
-        // 从redis中获取
-        String redisKey = String.format(CommonRedisKey.VERIFY_CODE, verifyToken);
-        String generateCode = (String) redisTemplate.opsForValue().get(redisKey);
-        if (StringUtils.isBlank(generateCode)) {
+        if (StringUtils.isBlank(verifyToken)) {
             throw new VerificationCodeException("验证码已过期或不正确");
         }
-        // 不区分大小写
-        if (!generateCode.equalsIgnoreCase(code)) {
-            throw new VerificationCodeException("验证码错误");
-        }
-        // 验证码校验成功，删除Redis缓存
-        redisTemplate.delete(redisKey);
+        verificationCodeService.check(verifyToken, code);
     }
 
     @Override
@@ -232,13 +297,20 @@ public class LoginServiceImpl implements LoginService {
         if (StringUtils.isBlank(token)) {
             return;
         }
+        // 记录在线用户，同一用户每个统计间隔只写一次Redis
+        onlineUserService.touch(jwtToken.getUsername());
+        // 滑动会话续期
+        renewSession(jwtToken);
         // 判断是否刷新token
         boolean isRefreshToken = jwtProperties.isRefreshToken();
         if (!isRefreshToken) {
             return;
         }
-        // 获取过期时间
-        Date expireDate = JwtUtil.getExpireDate(token);
+        // 获取过期时间，JwtToken创建时已从本次请求的JWT上下文中获取，无需再次解析token
+        Date expireDate = jwtToken.getExpireDate();
+        if (expireDate == null) {
+            expireDate = JwtUtil.getExpireDate(token);
+        }
         // 获取倒计时
         Integer countdown = jwtProperties.getRefreshTokenCountdown();
         // 如果(当前时间+倒计时) > 过期时间，则刷新token
@@ -255,20 +327,104 @@ public class LoginServiceImpl implements LoginService {
             httpServletResponse.setStatus(CommonConstant.JWT_INVALID_TOKEN_CODE);
             throw new AuthenticationException("token已无效，请使用已刷新的token");
         }
+        // 同一个token只刷新一次，并发请求共用刷新后的新token
+        String newToken = singleFlightRefreshToken(jwtToken);
+        // 设置响应头
+        // 刷新token
+        httpServletResponse.setStatus(CommonConstant.JWT_REFRESH_TOKEN_CODE);
+        httpServletResponse.setHeader(JwtTokenUtil.getTokenName(), newToken);
+    }
+
+    /**
+     * 滑动会话续期，同一会话在续期间隔内只续期一次
+     *
+     * @param jwtToken
+     */
+    private void renewSession(JwtToken jwtToken) {
+        // 启用续期时JwtFilter已读取登陆会话
+        if (!jwtProperties.getSessionRenewal().isEnable() || jwtToken.getLoginSysUserRedisVo() == null) {
+            return;
+        }
+        String tokenMd5 = DigestUtils.md5Hex(jwtToken.getToken());
+        if (renewedSessionCache.asMap().putIfAbsent(tokenMd5, Boolean.TRUE) != null) {
+            return;
+        }
+        try {
+            loginRedisService.renewLoginInfo(jwtToken.getToken(), jwtToken.getLoginSysUserRedisVo());
+        } catch (Exception e) {
+            // 续期失败不影响本次请求，下次请求重新续期
+            renewedSessionCache.invalidate(tokenMd5);
+            log.warn("登陆会话续期异常,username:{},exception:{}", jwtToken.getUsername(), e.toString());
+        }
+    }
+
+    /**
+     * 生成token的有效时间，启用滑动会话续期时为token最大有效时间
+     *
+     * @return
+     */
+    private long getTokenExpireSecond() {
+        return jwtProperties.tokenExpireSecond();
+    }
+
+    /**
+     * 合并同一个token的并发刷新
+     * 本节点内通过refreshingTokenMap合并，节点之间通过Redis刷新记录合并
+     *
+     * @param jwtToken
+     * @return 新token
+     * @throws Exception
+     */
+    private String singleFlightRefreshToken(JwtToken jwtToken) throws Exception {
+        String tokenMd5 = DigestUtils.md5Hex(jwtToken.getToken());
+        // 本节点宽限时间内已刷新
+        String refreshedToken = refreshedTokenCache.getIfPresent(tokenMd5);
+        if (refreshedToken != null) {
+            return refreshedToken;
+        }
+        CompletableFuture<String> future = new CompletableFuture<>();
+        CompletableFuture<String> refreshingFuture = refreshingTokenMap.putIfAbsent(tokenMd5, future);
+        if (refreshingFuture != null) {
+            // 其他线程正在刷新，等待刷新结果
+            return refreshingFuture.get(REFRESH_WAIT_SECOND, TimeUnit.SECONDS);
+        }
+        try {
+            String newToken = doRefreshToken(jwtToken);
+            refreshedTokenCache.put(tokenMd5, newToken);
+            future.complete(newToken);
+            return newToken;
+        } catch (Exception e) {
+            future.completeExceptionally(e);
+            throw e;
+        } finally {
+            refreshingTokenMap.remove(tokenMd5, future);
+        }
+    }
+
+    /**
+     * 生成新token并更新登陆会话，其他节点已刷新时直接使用其新token
+     *
+     * @param jwtToken
+     * @return 新token
+     */
+    private String doRefreshToken(JwtToken jwtToken) {
+        String token = jwtToken.getToken();
         String username = jwtToken.getUsername();
         String salt = jwtToken.getSalt();
         Long expireSecond = jwtProperties.getExpireSecond();
         // 生成新token字符串
-        String newToken = JwtUtil.generateToken(username, salt, Duration.ofSeconds(expireSecond));
+        String newToken = JwtUtil.generateToken(username, salt, Duration.ofSeconds(getTokenExpireSecond()), tokenAuthorization.buildClaims(token));
+        String refreshedToken = loginRedisService.putRefreshTokenIfAbsent(token, newToken);
+        if (refreshedToken != null) {
+            log.debug("token已被刷新，原token:{}，新token:{}", token, refreshedToken);
+            return refreshedToken;
+        }
         // 生成新JwtToken对象
         JwtToken newJwtToken = JwtToken.build(newToken, username, salt, expireSecond);
-        // 更新redis缓存
+        // 更新redis缓存，旧会话保留宽限时间
         loginRedisService.refreshLoginInfo(token, username, newJwtToken);
         log.debug("刷新token成功，原token:{}，新token:{}", token, newToken);
-        // 设置响应头
-        // 刷新token
-        httpServletResponse.setStatus(CommonConstant.JWT_REFRESH_TOKEN_CODE);
-        httpServletResponse.setHeader(JwtTokenUtil.getTokenName(), newToken);
+        return newToken;
     }
 
     @Override
@@ -278,9 +434,16 @@ public class LoginServiceImpl implements LoginService {
         subject.logout();
         // 获取token
         String token = JwtTokenUtil.getToken(request);
-        String username = JwtUtil.getUsername(token);
+        JwtContext jwtContext = JwtContext.getOrCreate(request, token);
+        String username = jwtContext.getUsername();
         // 删除Redis缓存信息
         loginRedisService.deleteLoginInfo(token, username);
+        // 通知所有节点token已注销，未开启redis-check时同样生效
+        revokedTokenFilter.revoke(jwtContext.getDecodedJwt().getId(), token, jwtContext.getExpireDate());
+        // 用户没有其他登陆会话时才从在线用户中移除
+        if (!loginRedisService.hasLoginSession(username)) {
+            onlineUserService.offline(username);
+        }
         log.info("登出成功,username:{},token:{}", username, token);
     }
 
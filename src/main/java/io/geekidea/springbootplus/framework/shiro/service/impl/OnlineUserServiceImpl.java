@@ -0,0 +1,292 @@
+/*
+ * Copyright 2019-2029 geekidea(https://github.com/geekidea)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.geekidea.springbootplus.framework.shiro.service.impl;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import io.geekidea.springbootplus.framework.constant.CommonRedisKey;
+import io.geekidea.springbootplus.framework.pagination.Paging;
+import io.geekidea.springbootplus.framework.shiro.jwt.JwtProperties;
+import io.geekidea.springbootplus.framework.shiro.param.OnlineUserPageParam;
+import io.geekidea.springbootplus.framework.shiro.service.OnlineUserService;
+import io.geekidea.springbootplus.framework.shiro.vo.OnlineUserStatisticsVo;
+import io.geekidea.springbootplus.framework.shiro.vo.OnlineUserVo;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.collections4.CollectionUtils;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.commons.lang3.time.DateFormatUtils;
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.redis.core.RedisOperations;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.SessionCallback;
+import org.springframework.data.redis.core.ZSetOperations;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <p>
+ * 在线用户服务实现类
+ * zset login:online，member为username，score为最后访问时间戳，score在在线时间内的用户为在线用户，分页直接按score倒序读取
+ * HyperLogLog login:online:uv:m/h/d:时间，按分钟、小时、天统计去重访问用户数
+ * 同一用户在一个统计间隔内只记录一次，请求线程只放入本地队列，由定时任务批量写入Redis，不需要扫描key
+ * 进程内会话存储时不记录
+ * </p>
+ *
+ * @author geekidea
+ * @date 2020-03-30
+ * @since 1.5.0.RELEASE
+ **/
+@Slf4j
+@Service
+public class OnlineUserServiceImpl implements OnlineUserService {
+
+    private static final String MINUTE_PATTERN = "yyyyMMddHHmm";
+
+    private static final String HOUR_PATTERN = "yyyyMMddHH";
+
+    private static final String DAY_PATTERN = "yyyyMMdd";
+
+    /**
+     * 分钟、小时、天统计保留时间，单位：小时
+     */
+    private static final long MINUTE_KEEP_HOUR = 2;
+
+    private static final long HOUR_KEEP_HOUR = 48;
+
+    private static final long DAY_KEEP_HOUR = 32 * 24;
+
+    /**
+     * 每次管道写入的最大用户数
+     */
+    private static final int FLUSH_BATCH_SIZE = 500;
+
+    private static final String EMBEDDED_SESSION_STORE = "embedded";
+
+    private final JwtProperties.OnlineConfig onlineConfig;
+
+    private final RedisTemplate redisTemplate;
+
+    /**
+     * 本节点当前统计间隔内已记录的用户，username:间隔序号 --> true
+     */
+    private final Cache<String, Boolean> touchedCache;
+
+    /**
+     * 待写入Redis的访问记录，username --> 最后访问时间戳
+     */
+    private final ConcurrentMap<String, Long> pendingTouchMap = new ConcurrentHashMap<>();
+
+    /**
+     * 进程内会话存储时不访问Redis，不记录在线用户
+     */
+    private final boolean embedded;
+
+    public OnlineUserServiceImpl(JwtProperties jwtProperties, RedisTemplate redisTemplate) {
+        this.onlineConfig = jwtProperties.getOnline();
+        this.embedded = EMBEDDED_SESSION_STORE.equals(jwtProperties.getSessionStore());
+        this.redisTemplate = redisTemplate;
+        this.touchedCache = CacheBuilder.newBuilder()
+                .maximumSize(onlineConfig.getMaximumSize())
+                .expireAfterWrite(getTouchIntervalMillis(), TimeUnit.MILLISECONDS)
+                .build();
+    }
+
+    @Override
+    public void touch(String username) {
+        if (!isEnable() || StringUtils.isBlank(username)) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        // 按间隔序号去重，每个间隔至少记录一次，分钟统计不会遗漏持续访问的用户
+        String touchedKey = username + ":" + now / getTouchIntervalMillis();
+        if (touchedCache.asMap().putIfAbsent(touchedKey, Boolean.TRUE) != null) {
+            return;
+        }
+        // 只放入待写入队列，由定时任务批量写入Redis，Redis异常时不影响请求耗时
+        if (pendingTouchMap.size() >= onlineConfig.getMaximumSize()) {
+            return;
+        }
+        pendingTouchMap.merge(username, now, Math::max);
+    }
+
+    @Override
+    public int flush() {
+        if (!isEnable() || pendingTouchMap.isEmpty()) {
+            return 0;
+        }
+        int count = 0;
+        Iterator<String> iterator = pendingTouchMap.keySet().iterator();
+        while (iterator.hasNext()) {
+            Map<String, Long> batch = new HashMap<>(FLUSH_BATCH_SIZE * 2);
+            while (iterator.hasNext() && batch.size() < FLUSH_BATCH_SIZE) {
+                String username = iterator.next();
+                Long time = pendingTouchMap.remove(username);
+                if (time != null) {
+                    batch.put(username, time);
+                }
+            }
+            if (batch.isEmpty()) {
+                continue;
+            }
+            try {
+                flush(batch);
+                count += batch.size();
+            } catch (Exception e) {
+                // 记录失败的用户在下一个统计间隔重新记录，本次不再重试，避免Redis异常时堆积
+                log.warn("批量记录在线用户异常,size:{},exception:{}", batch.size(), e.toString());
+                return count;
+            }
+        }
+        return count;
+    }
+
+    private void flush(Map<String, Long> batch) {
+        redisTemplate.executePipelined(new SessionCallback<Object>() {
+            @Override
+            public Object execute(RedisOperations operations) throws DataAccessException {
+                Map<String, Long> uniqueKeys = new HashMap<>();
+                for (Map.Entry<String, Long> entry : batch.entrySet()) {
+                    String username = entry.getKey();
+                    long time = entry.getValue();
+                    Date date = new Date(time);
+                    operations.opsForZSet().add(CommonRedisKey.LOGIN_ONLINE, username, time);
+                    addUnique(operations, uniqueKeys, getUniqueKey("m", DateFormatUtils.format(date, MINUTE_PATTERN)), username, MINUTE_KEEP_HOUR);
+                    addUnique(operations, uniqueKeys, getUniqueKey("h", DateFormatUtils.format(date, HOUR_PATTERN)), username, HOUR_KEEP_HOUR);
+                    addUnique(operations, uniqueKeys, getUniqueKey("d", DateFormatUtils.format(date, DAY_PATTERN)), username, DAY_KEEP_HOUR);
+                }
+                for (Map.Entry<String, Long> entry : uniqueKeys.entrySet()) {
+                    operations.expire(entry.getKey(), entry.getValue(), TimeUnit.HOURS);
+                }
+                return null;
+            }
+        });
+    }
+
+    /**
+     * 写入去重统计，同一批次中的统计key只设置一次过期时间
+     */
+    private static void addUnique(RedisOperations operations, Map<String, Long> uniqueKeys, String key, String username, long keepHour) {
+        operations.opsForHyperLogLog().add(key, username);
+        uniqueKeys.put(key, keepHour);
+    }
+
+    @Override
+    public void offline(String username) {
+        if (!isEnable() || StringUtils.isBlank(username)) {
+            return;
+        }
+        pendingTouchMap.remove(username);
+        touchedCache.invalidate(username + ":" + System.currentTimeMillis() / getTouchIntervalMillis());
+        redisTemplate.opsForZSet().remove(CommonRedisKey.LOGIN_ONLINE, username);
+    }
+
+    @Override
+    public Paging<OnlineUserVo> getOnlineUserPageList(OnlineUserPageParam onlineUserPageParam) {
+        long min = getOnlineMinScore();
+        Paging<OnlineUserVo> paging = new Paging<>();
+        // 指定用户名时直接读取该用户
+        String keyword = onlineUserPageParam.getKeyword();
+        if (StringUtils.isNotBlank(keyword)) {
+            Double score = redisTemplate.opsForZSet().score(CommonRedisKey.LOGIN_ONLINE, keyword);
+            if (score != null && score >= min) {
+                paging.setTotal(1);
+                paging.setRecords(Collections.singletonList(toOnlineUserVo(keyword, score)));
+            }
+            return paging;
+        }
+        Long total = redisTemplate.opsForZSet().count(CommonRedisKey.LOGIN_ONLINE, min, Double.POSITIVE_INFINITY);
+        if (total == null || total == 0) {
+            return paging;
+        }
+        long pageSize = onlineUserPageParam.getPageSize();
+        long offset = (onlineUserPageParam.getPageIndex() - 1) * pageSize;
+        Set<ZSetOperations.TypedTuple<Object>> tuples = redisTemplate.opsForZSet()
+                .reverseRangeByScoreWithScores(CommonRedisKey.LOGIN_ONLINE, min, Double.POSITIVE_INFINITY, offset, pageSize);
+        List<OnlineUserVo> records = new ArrayList<>();
+        if (CollectionUtils.isNotEmpty(tuples)) {
+            for (ZSetOperations.TypedTuple<Object> tuple : tuples) {
+                records.add(toOnlineUserVo((String) tuple.getValue(), tuple.getScore()));
+            }
+        }
+        paging.setTotal(total);
+        paging.setRecords(records);
+        return paging;
+    }
+
+    @Override
+    public OnlineUserStatisticsVo getStatistics() {
+        long now = System.currentTimeMillis();
+        Date date = new Date(now);
+        Long onlineCount = redisTemplate.opsForZSet().count(CommonRedisKey.LOGIN_ONLINE, getOnlineMinScore(), Double.POSITIVE_INFINITY);
+        // 最近60分钟为60个分钟统计合并计数
+        String[] lastHourKeys = new String[60];
+        for (int i = 0; i < lastHourKeys.length; i++) {
+            lastHourKeys[i] = getUniqueKey("m", DateFormatUtils.format(now - TimeUnit.MINUTES.toMillis(i), MINUTE_PATTERN));
+        }
+        return new OnlineUserStatisticsVo()
+                .setOnlineCount(onlineCount)
+                .setMinuteCount(redisTemplate.opsForHyperLogLog().size(lastHourKeys[0]))
+                .setLastHourCount(redisTemplate.opsForHyperLogLog().size(lastHourKeys))
+                .setHourCount(redisTemplate.opsForHyperLogLog().size(getUniqueKey("h", DateFormatUtils.format(date, HOUR_PATTERN))))
+                .setDayCount(redisTemplate.opsForHyperLogLog().size(getUniqueKey("d", DateFormatUtils.format(date, DAY_PATTERN))));
+    }
+
+    @Override
+    public long removeExpired() {
+        Long count = redisTemplate.opsForZSet().removeRangeByScore(CommonRedisKey.LOGIN_ONLINE, Double.NEGATIVE_INFINITY, getOnlineMinScore() - 1);
+        return count == null ? 0 : count;
+    }
+
+    private OnlineUserVo toOnlineUserVo(String username, Double score) {
+        return new OnlineUserVo()
+                .setUsername(username)
+                .setLastAccessTime(new Date(score.longValue()));
+    }
+
+    /**
+     * 在线用户最小访问时间戳
+     *
+     * @return
+     */
+    private long getOnlineMinScore() {
+        return System.currentTimeMillis() - TimeUnit.SECONDS.toMillis(onlineConfig.getOnlineSecond());
+    }
+
+    private boolean isEnable() {
+        return onlineConfig.isEnable() && !embedded;
+    }
+
+    private long getTouchIntervalMillis() {
+        return TimeUnit.SECONDS.toMillis(Math.max(onlineConfig.getTouchIntervalSecond(), 1));
+    }
+
+    private static String getUniqueKey(String unit, String time) {
+        return String.format(CommonRedisKey.LOGIN_ONLINE_UNIQUE, unit + ":" + time);
+    }
+
+}
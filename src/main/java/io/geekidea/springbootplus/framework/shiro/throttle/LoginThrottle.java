@@ -0,0 +1,424 @@
+/*
+ * Copyright 2019-2029 geekidea(https://github.com/geekidea)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.geekidea.springbootplus.framework.shiro.throttle;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import io.geekidea.springbootplus.framework.constant.CommonRedisKey;
+import io.geekidea.springbootplus.framework.shiro.exception.LoginThrottleException;
+import io.geekidea.springbootplus.framework.shiro.jwt.JwtProperties;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.StringUtils;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 登陆限流
+ * 1.校验验证码前，按IP进行本地滑动窗口和Redis令牌桶限制，并检查用户名+IP的锁定状态，本地已知锁定在到期前直接拒绝，不访问Redis
+ * 2.验证码校验通过后，按用户名进行本地滑动窗口和Redis令牌桶限制，未通过验证码的请求不消耗用户名令牌
+ * 3.启用锁定时，同一IP密码错误达到次数后锁定该IP的用户名，锁定时间按锁定次数指数退避，默认不启用
+ * 被拒绝的登陆请求不查询数据库，也不计算密码摘要
+ *
+ * @author geekidea
+ * @date 2020-03-30
+ * @since 1.5.0.RELEASE
+ **/
+@Slf4j
+@Component
+public class LoginThrottle implements MeterBinder {
+
+    private static final String USERNAME_PREFIX = "u:";
+
+    private static final String IP_PREFIX = "i:";
+
+    private static final String LOCK_KEY_SEPARATOR = "@";
+
+    /**
+     * 检查锁定状态并扣减令牌桶
+     * KEYS[1]：用户名+IP锁定key，KEYS[2..n]：令牌桶key
+     * ARGV[1]：当前时间戳，ARGV[2i-2]、ARGV[2i-1]：KEYS[i]令牌桶容量和每毫秒补充令牌数
+     * 返回0：通过，大于0：锁定剩余毫秒数，小于0：令牌不足，负的等待毫秒数
+     * 所有令牌桶都有令牌时才扣减，避免被一个维度拒绝时消耗另一个维度的令牌
+     */
+    private static final RedisScript<Long> CHECK_SCRIPT = new DefaultRedisScript<>(
+            "local lockTtl = redis.call('PTTL', KEYS[1]) " +
+                    "if lockTtl > 0 then return lockTtl end " +
+                    "local now = tonumber(ARGV[1]) " +
+                    "local tokens = {} " +
+                    "local wait = 0 " +
+                    "for i = 2, #KEYS do " +
+                    "local capacity = tonumber(ARGV[i * 2 - 2]) " +
+                    "local rate = tonumber(ARGV[i * 2 - 1]) " +
+                    "local bucket = redis.call('HMGET', KEYS[i], 'tokens', 'time') " +
+                    "local t = tonumber(bucket[1]) " +
+                    "if t == nil then t = capacity " +
+                    "else t = math.min(capacity, t + math.max(0, now - tonumber(bucket[2])) * rate) end " +
+                    "tokens[i] = t " +
+                    "if t < 1 then wait = math.max(wait, math.ceil((1 - t) / rate)) end " +
+                    "end " +
+                    "if wait > 0 then return -wait end " +
+                    "for i = 2, #KEYS do " +
+                    "redis.call('HMSET', KEYS[i], 'tokens', tokens[i] - 1, 'time', now) " +
+                    "redis.call('PEXPIRE', KEYS[i], math.ceil(tonumber(ARGV[i * 2 - 2]) / tonumber(ARGV[i * 2 - 1]))) " +
+                    "end " +
+                    "return 0",
+            Long.class);
+
+    /**
+     * 记录密码错误，达到次数后锁定用户名+IP
+     * KEYS[1]：失败次数key，KEYS[2]：锁定key，KEYS[3]：锁定次数key
+     * ARGV[1]：最大失败次数，ARGV[2]：失败次数统计时间，ARGV[3]：锁定次数保留时间，
+     * ARGV[4..n]：第1..n次锁定的锁定时间，超过n次使用最后一个，单位：毫秒
+     * 返回0：未锁定，大于0：锁定毫秒数
+     */
+    private static final RedisScript<Long> FAILURE_SCRIPT = new DefaultRedisScript<>(
+            "local failures = redis.call('INCR', KEYS[1]) " +
+                    "if failures == 1 then redis.call('PEXPIRE', KEYS[1], ARGV[2]) end " +
+                    "if failures < tonumber(ARGV[1]) then return 0 end " +
+                    "redis.call('DEL', KEYS[1]) " +
+                    "local lockCount = redis.call('INCR', KEYS[3]) " +
+                    "redis.call('PEXPIRE', KEYS[3], ARGV[3]) " +
+                    "local lockMillis = tonumber(ARGV[math.min(lockCount, #ARGV - 3) + 3]) " +
+                    "redis.call('SET', KEYS[2], lockCount, 'PX', lockMillis) " +
+                    "return lockMillis",
+            Long.class);
+
+    /**
+     * 锁定时间表最大长度
+     */
+    private static final int MAX_LOCKOUT_STEPS = 31;
+
+    private final JwtProperties.LoginThrottleConfig throttleConfig;
+
+    private final RedisTemplate redisTemplate;
+
+    /**
+     * 本地滑动窗口，u:username/i:ip --> 计数器
+     */
+    private final Cache<String, SlidingWindowCounter> windowCache;
+
+    /**
+     * 本地已知的锁定截止时间，u:username@ip --> 截止时间戳
+     */
+    private final Cache<String, Long> blockedCache;
+
+    /**
+     * 第1..n次锁定的锁定时间，单位：毫秒
+     */
+    private final List<Long> lockoutSchedule;
+
+    private final LongAdder allowedCount = new LongAdder();
+
+    private final LongAdder localRejectedCount = new LongAdder();
+
+    private final LongAdder blockedRejectedCount = new LongAdder();
+
+    private final LongAdder lockedRejectedCount = new LongAdder();
+
+    private final LongAdder limitedRejectedCount = new LongAdder();
+
+    private final LongAdder failureCount = new LongAdder();
+
+    private final LongAdder lockoutCount = new LongAdder();
+
+    private final LongAdder errorCount = new LongAdder();
+
+    public LoginThrottle(JwtProperties jwtProperties, RedisTemplate redisTemplate) {
+        this.throttleConfig = jwtProperties.getLoginThrottle();
+        this.redisTemplate = redisTemplate;
+        this.windowCache = CacheBuilder.newBuilder()
+                .maximumSize(throttleConfig.getLocalMaximumSize())
+                .expireAfterAccess(Math.max(throttleConfig.getLocalWindowMillis(), 1) * 2, TimeUnit.MILLISECONDS)
+                .build();
+        this.blockedCache = CacheBuilder.newBuilder()
+                .maximumSize(throttleConfig.getLocalMaximumSize())
+                .expireAfterWrite(Math.max(throttleConfig.getMaxLockoutSecond(), 1), TimeUnit.SECONDS)
+                .build();
+        this.lockoutSchedule = getLockoutSchedule(TimeUnit.SECONDS.toMillis(throttleConfig.getLockoutSecond()),
+                TimeUnit.SECONDS.toMillis(throttleConfig.getMaxLockoutSecond()));
+    }
+
+    /**
+     * 检查是否允许本次登陆尝试，应在校验验证码之前调用
+     * 只检查用户名+IP的锁定状态和IP限制，不消耗用户名令牌，未通过验证码的请求不影响其他IP的同一用户名
+     *
+     * @param username
+     * @param ip       为空时锁定状态只按用户名区分
+     * @throws LoginThrottleException 被限流或已锁定
+     */
+    public void check(String username, String ip) {
+        if (!throttleConfig.isEnable()) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        String lockKey = getLockKey(username, ip);
+        String ipKey = StringUtils.isBlank(ip) ? null : IP_PREFIX + ip;
+
+        // 本地已知锁定，到期前不访问Redis
+        long blockedMillis = getBlockedMillis(lockKey, now);
+        if (blockedMillis > 0) {
+            blockedRejectedCount.increment();
+            throw new LoginThrottleException(toRetryAfterSecond(blockedMillis));
+        }
+
+        // 本地滑动窗口
+        if (!tryAcquireLocal(ipKey, throttleConfig.getLocalIpLimit(), now)) {
+            localRejectedCount.increment();
+            throw new LoginThrottleException(toRetryAfterSecond(throttleConfig.getLocalWindowMillis()));
+        }
+
+        // Redis锁定状态和IP令牌桶
+        acquire(lockKey, ipKey, throttleConfig.getIpBurst(), throttleConfig.getIpPerMinute(), username, now);
+    }
+
+    /**
+     * 扣减用户名限制，应在验证码校验通过之后、查询用户之前调用
+     *
+     * @param username
+     * @param ip
+     * @throws LoginThrottleException 被限流或已锁定
+     */
+    public void checkUsername(String username, String ip) {
+        if (!throttleConfig.isEnable()) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        String usernameKey = USERNAME_PREFIX + normalize(username);
+        if (!tryAcquireLocal(usernameKey, throttleConfig.getLocalUsernameLimit(), now)) {
+            localRejectedCount.increment();
+            throw new LoginThrottleException(toRetryAfterSecond(throttleConfig.getLocalWindowMillis()));
+        }
+        acquire(getLockKey(username, ip), usernameKey, throttleConfig.getUsernameBurst(),
+                throttleConfig.getUsernamePerMinute(), username, now);
+        allowedCount.increment();
+    }
+
+    /**
+     * Redis脚本检查锁定状态并扣减令牌桶，Redis不可用时放行，由本地滑动窗口兜底
+     *
+     * @param lockKey
+     * @param bucketKey  为空时只检查锁定状态
+     * @param burst
+     * @param perMinute
+     * @param username
+     * @param now
+     */
+    private void acquire(String lockKey, String bucketKey, long burst, long perMinute, String username, long now) {
+        Long result;
+        try {
+            List<String> keys = new ArrayList<>(2);
+            keys.add(String.format(CommonRedisKey.LOGIN_THROTTLE_LOCK, lockKey));
+            List<Object> args = new ArrayList<>(3);
+            args.add(now);
+            if (bucketKey != null) {
+                keys.add(String.format(CommonRedisKey.LOGIN_THROTTLE_BUCKET, bucketKey));
+                args.add(burst);
+                args.add(getRatePerMillis(perMinute));
+            }
+            result = (Long) redisTemplate.execute(CHECK_SCRIPT, keys, args.toArray());
+        } catch (Exception e) {
+            errorCount.increment();
+            log.warn("登陆限流检查异常,username:{},exception:{}", username, e.toString());
+            return;
+        }
+        if (result == null || result == 0) {
+            return;
+        }
+        if (result > 0) {
+            lockedRejectedCount.increment();
+            blockedCache.put(lockKey, now + result);
+            throw new LoginThrottleException(toRetryAfterSecond(result));
+        }
+        limitedRejectedCount.increment();
+        throw new LoginThrottleException(toRetryAfterSecond(-result));
+    }
+
+    /**
+     * 记录一次密码错误或用户不存在，启用锁定时达到次数后锁定该IP的用户名
+     *
+     * @param username
+     * @param ip
+     */
+    public void onFailure(String username, String ip) {
+        if (!isLockoutEnable()) {
+            return;
+        }
+        failureCount.increment();
+        String lockKey = getLockKey(username, ip);
+        try {
+            List<Object> args = new ArrayList<>(lockoutSchedule.size() + 3);
+            args.add(throttleConfig.getMaxFailures());
+            args.add(TimeUnit.SECONDS.toMillis(throttleConfig.getFailureWindowSecond()));
+            args.add(TimeUnit.SECONDS.toMillis(throttleConfig.getLockCountSecond()));
+            args.addAll(lockoutSchedule);
+            Long lockMillis = (Long) redisTemplate.execute(FAILURE_SCRIPT,
+                    Arrays.asList(String.format(CommonRedisKey.LOGIN_THROTTLE_FAILURE, lockKey),
+                            String.format(CommonRedisKey.LOGIN_THROTTLE_LOCK, lockKey),
+                            String.format(CommonRedisKey.LOGIN_THROTTLE_LOCK_COUNT, lockKey)),
+                    args.toArray());
+            if (lockMillis != null && lockMillis > 0) {
+                lockoutCount.increment();
+                blockedCache.put(lockKey, System.currentTimeMillis() + lockMillis);
+                log.warn("登陆失败次数过多，锁定用户名,username:{},ip:{},lockMillis:{}", username, ip, lockMillis);
+            }
+        } catch (Exception e) {
+            errorCount.increment();
+            log.warn("记录登陆失败异常,username:{},exception:{}", username, e.toString());
+        }
+    }
+
+    /**
+     * 登陆成功，清除失败次数，锁定次数保留用于下次锁定的退避
+     *
+     * @param username
+     * @param ip
+     */
+    public void onSuccess(String username, String ip) {
+        if (!isLockoutEnable()) {
+            return;
+        }
+        String lockKey = getLockKey(username, ip);
+        try {
+            redisTemplate.delete(String.format(CommonRedisKey.LOGIN_THROTTLE_FAILURE, lockKey));
+        } catch (Exception e) {
+            errorCount.increment();
+            log.warn("清除登陆失败次数异常,username:{},exception:{}", username, e.toString());
+        }
+    }
+
+    private boolean isLockoutEnable() {
+        return throttleConfig.isEnable() && throttleConfig.isLockoutEnable();
+    }
+
+    /**
+     * 锁定和失败次数按用户名+IP区分，其他IP无法通过输错密码锁定用户
+     *
+     * @param username
+     * @param ip
+     * @return
+     */
+    private static String getLockKey(String username, String ip) {
+        String usernameKey = USERNAME_PREFIX + normalize(username);
+        return StringUtils.isBlank(ip) ? usernameKey : usernameKey + LOCK_KEY_SEPARATOR + ip;
+    }
+
+    private long getBlockedMillis(String key, long now) {
+        Long deadline = blockedCache.getIfPresent(key);
+        if (deadline == null) {
+            return 0;
+        }
+        if (deadline <= now) {
+            blockedCache.invalidate(key);
+            return 0;
+        }
+        return deadline - now;
+    }
+
+    private boolean tryAcquireLocal(String key, int limit, long now) {
+        if (key == null || limit <= 0) {
+            return true;
+        }
+        SlidingWindowCounter counter = windowCache.getIfPresent(key);
+        if (counter == null) {
+            try {
+                counter = windowCache.get(key, () -> new SlidingWindowCounter(throttleConfig.getLocalWindowMillis(), limit, now));
+            } catch (ExecutionException e) {
+                return true;
+            }
+        }
+        return counter.tryAcquire(now);
+    }
+
+    /**
+     * 用户名不区分大小写，避免通过大小写变化绕过限制
+     *
+     * @param username
+     * @return
+     */
+    private static String normalize(String username) {
+        return StringUtils.defaultString(username).trim().toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * 锁定时间表：首次锁定lockoutMillis，之后每次翻倍，达到maxLockoutMillis后不再增加
+     *
+     * @param lockoutMillis
+     * @param maxLockoutMillis
+     * @return
+     */
+    public static List<Long> getLockoutSchedule(long lockoutMillis, long maxLockoutMillis) {
+        long max = Math.max(maxLockoutMillis, 1);
+        long lockMillis = Math.min(Math.max(lockoutMillis, 1), max);
+        List<Long> schedule = new ArrayList<>();
+        schedule.add(lockMillis);
+        while (lockMillis < max && schedule.size() < MAX_LOCKOUT_STEPS) {
+            lockMillis = Math.min(lockMillis * 2, max);
+            schedule.add(lockMillis);
+        }
+        return Collections.unmodifiableList(schedule);
+    }
+
+    private static double getRatePerMillis(long perMinute) {
+        return (double) Math.max(perMinute, 1) / TimeUnit.MINUTES.toMillis(1);
+    }
+
+    private static long toRetryAfterSecond(long millis) {
+        return Math.max(TimeUnit.MILLISECONDS.toSeconds(millis + 999), 1);
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        String name = "login.throttle.requests";
+        FunctionCounter.builder(name, allowedCount, LongAdder::sum).tag("result", "allowed").register(registry);
+        FunctionCounter.builder(name, localRejectedCount, LongAdder::sum).tag("result", "local").register(registry);
+        FunctionCounter.builder(name, blockedRejectedCount, LongAdder::sum).tag("result", "blocked").register(registry);
+        FunctionCounter.builder(name, lockedRejectedCount, LongAdder::sum).tag("result", "locked").register(registry);
+        FunctionCounter.builder(name, limitedRejectedCount, LongAdder::sum).tag("result", "limited").register(registry);
+        FunctionCounter.builder(name, errorCount, LongAdder::sum).tag("result", "error").register(registry);
+        FunctionCounter.builder("login.throttle.failures", failureCount, LongAdder::sum).register(registry);
+        FunctionCounter.builder("login.throttle.lockouts", lockoutCount, LongAdder::sum).register(registry);
+        Gauge.builder("login.throttle.blocked.size", blockedCache, Cache::size).register(registry);
+    }
+
+    public long getAllowedCount() {
+        return allowedCount.sum();
+    }
+
+    public long getRejectedCount() {
+        return localRejectedCount.sum() + blockedRejectedCount.sum() + lockedRejectedCount.sum() + limitedRejectedCount.sum();
+    }
+
+    public long getLockoutCount() {
+        return lockoutCount.sum();
+    }
+
+}
@@ -0,0 +1,109 @@
+/*
+ * Copyright 2019-2029 geekidea(https://github.com/geekidea)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.geekidea.springbootplus.framework.shiro.throttle;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * 无锁滑动窗口计数器
+ * 使用当前窗口计数和上一窗口计数按时间加权估算最近一个窗口内的请求数，
+ * 窗口切换和计数都通过CAS完成，不加锁
+ *
+ * @author geekidea
+ * @date 2020-03-30
+ * @since 1.5.0.RELEASE
+ **/
+public class SlidingWindowCounter {
+
+    /**
+     * 窗口时长，单位：毫秒
+     */
+    private final long windowMillis;
+
+    /**
+     * 窗口内允许的最大请求数
+     */
+    private final int limit;
+
+    private final AtomicReference<Window> window;
+
+    public SlidingWindowCounter(long windowMillis, int limit, long now) {
+        this.windowMillis = windowMillis;
+        this.limit = limit;
+        this.window = new AtomicReference<>(new Window(now - now % windowMillis, 0));
+    }
+
+    /**
+     * 尝试获取一次许可
+     *
+     * @param now 当前时间戳，单位：毫秒
+     * @return 未超过限制时返回true并计数
+     */
+    public boolean tryAcquire(long now) {
+        Window current = currentWindow(now);
+        // 上一窗口按剩余时间比例计入
+        double previousWeight = (double) (windowMillis - (now - current.start)) / windowMillis;
+        double previous = current.previousCount * Math.min(Math.max(previousWeight, 0), 1);
+        for (; ; ) {
+            int count = current.count.get();
+            if (previous + count >= limit) {
+                return false;
+            }
+            if (current.count.compareAndSet(count, count + 1)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * 获取当前窗口，过期时切换到新窗口
+     *
+     * @param now
+     * @return
+     */
+    private Window currentWindow(long now) {
+        for (; ; ) {
+            Window current = window.get();
+            if (now < current.start + windowMillis) {
+                return current;
+            }
+            long start = now - now % windowMillis;
+            // 只有紧邻的上一窗口计入，间隔超过一个窗口则丢弃
+            int previousCount = start == current.start + windowMillis ? current.count.get() : 0;
+            if (window.compareAndSet(current, new Window(start, previousCount))) {
+                return window.get();
+            }
+        }
+    }
+
+    private static final class Window {
+
+        private final long start;
+
+        private final int previousCount;
+
+        private final AtomicInteger count = new AtomicInteger();
+
+        private Window(long start, int previousCount) {
+            this.start = start;
+            this.previousCount = previousCount;
+        }
+
+    }
+
+}
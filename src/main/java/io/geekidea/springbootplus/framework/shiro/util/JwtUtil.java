@@ -18,12 +18,17 @@ package io.geekidea.springbootplus.framework.shiro.util;
 
 import com.alibaba.fastjson.JSON;
 import com.auth0.jwt.JWT;
+import com.auth0.jwt.JWTCreator;
 import com.auth0.jwt.JWTVerifier;
 import com.auth0.jwt.algorithms.Algorithm;
 import com.auth0.jwt.interfaces.DecodedJWT;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 import io.geekidea.springbootplus.framework.constant.CommonConstant;
 import io.geekidea.springbootplus.framework.shiro.jwt.JwtProperties;
 import io.geekidea.springbootplus.framework.util.UUIDUtil;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.commons.lang3.time.DateUtils;
@@ -31,6 +36,8 @@ import org.springframework.stereotype.Component;
 
 import java.time.Duration;
 import java.util.Date;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
 
 /**
  * JWT工具类
@@ -46,9 +53,19 @@ public class JwtUtil {
 
     private static JwtProperties jwtProperties;
 
+    /**
+     * 盐值对应的签名算法和校验器缓存
+     */
+    private static Cache<String, JwtVerifierHolder> verifierCache;
+
     public JwtUtil(JwtProperties jwtProperties) {
         JwtUtil.jwtProperties = jwtProperties;
         log.info(JSON.toJSONString(JwtUtil.jwtProperties));
+        JwtProperties.VerifierCacheConfig verifierCacheConfig = jwtProperties.getVerifierCache();
+        JwtUtil.verifierCache = CacheBuilder.newBuilder()
+                .maximumSize(verifierCacheConfig.getMaximumSize())
+                .expireAfterAccess(verifierCacheConfig.getExpireSecond(), TimeUnit.SECONDS)
+                .build();
     }
 
     /**
@@ -60,6 +77,19 @@ public class JwtUtil {
      * @return token
      */
     public static String generateToken(String username, String salt, Duration expireDuration) {
+        return generateToken(username, salt, expireDuration, null);
+    }
+
+    /**
+     * 生成包含自定义声明的JWT Token
+     *
+     * @param username       用户名
+     * @param salt           盐值
+     * @param expireDuration 过期时间和单位
+     * @param claims         自定义声明，支持String、Long、Integer类型
+     * @return token
+     */
+    public static String generateToken(String username, String salt, Duration expireDuration, Map<String, Object> claims) {
         try {
             if (StringUtils.isBlank(username)) {
                 log.error("username不能为空");
@@ -86,8 +116,21 @@ public class JwtUtil {
             log.debug("expireDate:{}", expireDate);
 
             // 生成token
-            Algorithm algorithm = Algorithm.HMAC256(salt);
-            String token = JWT.create()
+            Algorithm algorithm = getVerifierHolder(salt).getAlgorithm();
+            JWTCreator.Builder builder = JWT.create();
+            if (claims != null) {
+                for (Map.Entry<String, Object> claim : claims.entrySet()) {
+                    Object value = claim.getValue();
+                    if (value instanceof Long) {
+                        builder.withClaim(claim.getKey(), (Long) value);
+                    } else if (value instanceof Integer) {
+                        builder.withClaim(claim.getKey(), (Integer) value);
+                    } else if (value != null) {
+                        builder.withClaim(claim.getKey(), value.toString());
+                    }
+                }
+            }
+            String token = builder
                     .withClaim(CommonConstant.JWT_USERNAME, username)
                     // jwt唯一id
                     .withJWTId(UUIDUtil.getUuid())
@@ -112,16 +155,7 @@ public class JwtUtil {
 
     public static boolean verifyToken(String token, String salt) {
         try {
-            Algorithm algorithm = Algorithm.HMAC256(salt);
-            JWTVerifier verifier = JWT.require(algorithm)
-                    // 签发人
-                    .withIssuer(jwtProperties.getIssuer())
-                    // 主题
-                    .withSubject(jwtProperties.getSubject())
-                    // 签发的目标
-                    .withAudience(jwtProperties.getAudience())
-                    .build();
-            DecodedJWT jwt = verifier.verify(token);
+            DecodedJWT jwt = getVerifierHolder(salt).getVerifier().verify(token);
             if (jwt != null) {
                 return true;
             }
@@ -131,6 +165,85 @@ public class JwtUtil {
         return false;
     }
 
+    /**
+     * 校验已解析的token，不再重复解析
+     *
+     * @param decodedJwt
+     * @param salt
+     * @return
+     */
+    public static boolean verifyToken(DecodedJWT decodedJwt, String salt) {
+        try {
+            DecodedJWT jwt = getVerifierHolder(salt).getVerifier().verify(decodedJwt);
+            if (jwt != null) {
+                return true;
+            }
+        } catch (Exception e) {
+            log.error("Verify Token Exception", e);
+        }
+        return false;
+    }
+
+    /**
+     * 删除盐值对应的签名算法和校验器
+     * 用户盐值变更或者登陆会话结束时调用
+     * 未开启盐值校验时所有用户共用secret作为盐值，不删除共用的校验器
+     *
+     * @param salt
+     */
+    public static void removeVerifier(String salt) {
+        if (StringUtils.isBlank(salt) || verifierCache == null) {
+            return;
+        }
+        if (salt.equals(jwtProperties.getSecret())) {
+            return;
+        }
+        verifierCache.invalidate(salt);
+    }
+
+    /**
+     * 获取盐值对应的签名算法和校验器，不存在则创建
+     * JWTVerifier创建后不可变，可以多线程共享，Mac实例由PooledHmacAlgorithm池化复用
+     *
+     * @param salt
+     * @return
+     */
+    private static JwtVerifierHolder getVerifierHolder(String salt) {
+        if (verifierCache == null) {
+            return buildVerifierHolder(salt);
+        }
+        JwtVerifierHolder holder = verifierCache.getIfPresent(salt);
+        if (holder == null) {
+            holder = buildVerifierHolder(salt);
+            verifierCache.put(salt, holder);
+        }
+        return holder;
+    }
+
+    private static JwtVerifierHolder buildVerifierHolder(String salt) {
+        int macPoolSize = jwtProperties.getVerifierCache().getMacPoolSize();
+        Algorithm algorithm = new PooledHmacAlgorithm(salt, macPoolSize);
+        JWTVerifier verifier = JWT.require(algorithm)
+                // 签发人
+                .withIssuer(jwtProperties.getIssuer())
+                // 主题
+                .withSubject(jwtProperties.getSubject())
+                // 签发的目标
+                .withAudience(jwtProperties.getAudience())
+                .build();
+        return new JwtVerifierHolder(algorithm, verifier);
+    }
+
+    @Getter
+    @AllArgsConstructor
+    private static class JwtVerifierHolder {
+
+        private final Algorithm algorithm;
+
+        private final JWTVerifier verifier;
+
+    }
+
     /**
      * 解析token，获取token数据
      *
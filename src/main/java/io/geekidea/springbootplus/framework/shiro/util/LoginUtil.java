@@ -16,11 +16,15 @@
 
 package io.geekidea.springbootplus.framework.shiro.util;
 
-import io.geekidea.springbootplus.framework.constant.CommonRedisKey;
+import io.geekidea.springbootplus.framework.shiro.cache.LoginRedisService;
+import io.geekidea.springbootplus.framework.shiro.jwt.JwtContext;
+import io.geekidea.springbootplus.framework.shiro.jwt.JwtToken;
 import io.geekidea.springbootplus.framework.shiro.vo.LoginSysUserRedisVo;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.lang3.StringUtils;
-import org.springframework.data.redis.core.RedisTemplate;
+import org.apache.shiro.subject.Subject;
+import org.apache.shiro.util.ThreadContext;
+import org.springframework.context.annotation.Lazy;
 import org.springframework.stereotype.Component;
 
 
@@ -34,10 +38,10 @@ import org.springframework.stereotype.Component;
 @Component
 public class LoginUtil {
 
-    private static RedisTemplate redisTemplate;
+    private static LoginRedisService loginRedisService;
 
-    public LoginUtil(RedisTemplate redisTemplate) {
-        LoginUtil.redisTemplate = redisTemplate;
+    public LoginUtil(@Lazy LoginRedisService loginRedisService) {
+        LoginUtil.loginRedisService = loginRedisService;
     }
 
 
@@ -47,13 +51,21 @@ public class LoginUtil {
      * @return
      */
     public static LoginSysUserRedisVo getLoginSysUserRedisVo() {
-        // 获取当前登陆用户
-        String token = JwtTokenUtil.getToken();
-        String username = JwtUtil.getUsername(token);
-        if (StringUtils.isBlank(username)) {
+        // 优先使用本次请求JwtFilter已读取的登陆会话
+        Subject subject = ThreadContext.getSubject();
+        if (subject != null && subject.getPrincipal() instanceof JwtToken) {
+            LoginSysUserRedisVo loginSysUserRedisVo = ((JwtToken) subject.getPrincipal()).getLoginSysUserRedisVo();
+            if (loginSysUserRedisVo != null) {
+                return loginSysUserRedisVo;
+            }
+        }
+        // 获取当前登陆用户，优先使用本次请求JwtFilter已获取的token
+        JwtContext jwtContext = JwtContext.get();
+        String token = jwtContext != null ? jwtContext.getToken() : JwtTokenUtil.getToken();
+        if (StringUtils.isBlank(token)) {
             return null;
         }
-        return (LoginSysUserRedisVo) redisTemplate.opsForValue().get(String.format(CommonRedisKey.LOGIN_USER, username));
+        return loginRedisService.getLoginSysUserRedisVo(token);
     }
 
     /**
@@ -75,6 +87,11 @@ public class LoginUtil {
      * @return
      */
     public static String getUsername() {
+        // 本次请求的token已校验通过，直接使用token中的用户名，不读取Redis
+        JwtContext jwtContext = JwtContext.get();
+        if (jwtContext != null && jwtContext.isVerified()) {
+            return jwtContext.getUsername();
+        }
         LoginSysUserRedisVo loginSysUserRedisVo = getLoginSysUserRedisVo();
         if (loginSysUserRedisVo == null) {
             return null;
@@ -0,0 +1,163 @@
+/*
+ * Copyright 2019-2029 geekidea(https://github.com/geekidea)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.geekidea.springbootplus.framework.shiro.util;
+
+import com.auth0.jwt.algorithms.Algorithm;
+import com.auth0.jwt.exceptions.SignatureGenerationException;
+import com.auth0.jwt.exceptions.SignatureVerificationException;
+import com.auth0.jwt.interfaces.DecodedJWT;
+import org.apache.commons.codec.binary.Base64;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 复用Mac实例的HMAC256签名算法
+ * Algorithm.HMAC256每次签名/校验都会重新获取Mac并初始化密钥，此处每个盐值对应一个实例，
+ * 已初始化的Mac放入池中，线程取出使用后归还，Mac本身不是线程安全的，同一时刻只被一个线程持有
+ *
+ * @author geekidea
+ * @date 2020-03-25
+ * @since 1.5.0.RELEASE
+ **/
+public class PooledHmacAlgorithm extends Algorithm {
+
+    private static final String ALGORITHM_NAME = "HS256";
+
+    private static final String MAC_ALGORITHM = "HmacSHA256";
+
+    private static final byte JWT_PART_SEPARATOR = (byte) '.';
+
+    private final SecretKeySpec secretKey;
+
+    /**
+     * 空闲Mac实例池
+     */
+    private final Queue<Mac> macPool = new ConcurrentLinkedQueue<>();
+
+    /**
+     * 空闲Mac实例数量
+     */
+    private final AtomicInteger idleSize = new AtomicInteger();
+
+    /**
+     * 最大空闲Mac实例数量，超出部分直接丢弃
+     */
+    private final int maxIdle;
+
+    public PooledHmacAlgorithm(String secret, int maxIdle) {
+        super(ALGORITHM_NAME, MAC_ALGORITHM);
+        if (secret == null) {
+            throw new IllegalArgumentException("The Secret cannot be null");
+        }
+        this.secretKey = new SecretKeySpec(secret.getBytes(StandardCharsets.UTF_8), MAC_ALGORITHM);
+        this.maxIdle = maxIdle;
+    }
+
+    @Override
+    public void verify(DecodedJWT jwt) throws SignatureVerificationException {
+        byte[] signatureBytes = Base64.decodeBase64(jwt.getSignature());
+        byte[] headerBytes = jwt.getHeader().getBytes(StandardCharsets.UTF_8);
+        byte[] payloadBytes = jwt.getPayload().getBytes(StandardCharsets.UTF_8);
+        Mac mac;
+        try {
+            mac = borrow();
+        } catch (GeneralSecurityException e) {
+            throw new SignatureVerificationException(this, e);
+        }
+        boolean valid;
+        try {
+            valid = MessageDigest.isEqual(doSign(mac, headerBytes, payloadBytes), signatureBytes);
+        } finally {
+            giveBack(mac);
+        }
+        if (!valid) {
+            throw new SignatureVerificationException(this);
+        }
+    }
+
+    /**
+     * 签名 header.payload
+     *
+     * @param headerBytes
+     * @param payloadBytes
+     * @return
+     * @throws SignatureGenerationException
+     */
+    public byte[] sign(byte[] headerBytes, byte[] payloadBytes) throws SignatureGenerationException {
+        Mac mac;
+        try {
+            mac = borrow();
+        } catch (GeneralSecurityException e) {
+            throw new SignatureGenerationException(this, e);
+        }
+        try {
+            return doSign(mac, headerBytes, payloadBytes);
+        } finally {
+            giveBack(mac);
+        }
+    }
+
+    @Override
+    public byte[] sign(byte[] contentBytes) throws SignatureGenerationException {
+        Mac mac;
+        try {
+            mac = borrow();
+        } catch (GeneralSecurityException e) {
+            throw new SignatureGenerationException(this, e);
+        }
+        try {
+            return mac.doFinal(contentBytes);
+        } finally {
+            giveBack(mac);
+        }
+    }
+
+    private byte[] doSign(Mac mac, byte[] headerBytes, byte[] payloadBytes) {
+        mac.update(headerBytes);
+        mac.update(JWT_PART_SEPARATOR);
+        return mac.doFinal(payloadBytes);
+    }
+
+    private Mac borrow() throws GeneralSecurityException {
+        Mac mac = macPool.poll();
+        if (mac != null) {
+            idleSize.decrementAndGet();
+            return mac;
+        }
+        mac = Mac.getInstance(MAC_ALGORITHM);
+        mac.init(secretKey);
+        return mac;
+    }
+
+    private void giveBack(Mac mac) {
+        // doFinal后Mac已重置，异常情况下显式重置
+        mac.reset();
+        if (idleSize.incrementAndGet() <= maxIdle) {
+            macPool.offer(mac);
+        } else {
+            idleSize.decrementAndGet();
+        }
+    }
+
+}
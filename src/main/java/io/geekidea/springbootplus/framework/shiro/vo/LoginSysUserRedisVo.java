@@ -43,4 +43,9 @@ public class LoginSysUserRedisVo extends LoginSysUserVo {
      */
     private ClientInfo clientInfo;
 
+    /**
+     * 角色权限版本号，权限编码列表按角色保存在RolePermissionStore中，会话中不再保存
+     */
+    private Long permissionVersion;
+
 }
@@ -0,0 +1,56 @@
+/*
+ * Copyright 2019-2029 geekidea(https://github.com/geekidea)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.geekidea.springbootplus.framework.shiro.vo;
+
+import io.swagger.annotations.ApiModel;
+import io.swagger.annotations.ApiModelProperty;
+import lombok.Data;
+import lombok.experimental.Accessors;
+
+import java.io.Serializable;
+
+/**
+ * <p>
+ * 在线用户统计，去重用户数为HyperLogLog估算值，标准误差约0.81%
+ * </p>
+ *
+ * @author geekidea
+ * @date 2020-03-30
+ * @since 1.5.0.RELEASE
+ **/
+@Data
+@Accessors(chain = true)
+@ApiModel("在线用户统计")
+public class OnlineUserStatisticsVo implements Serializable {
+    private static final long serialVersionUID = -6021390834473518934L;
+
+    @ApiModelProperty("当前在线用户数")
+    private Long onlineCount;
+
+    @ApiModelProperty("当前分钟访问用户数")
+    private Long minuteCount;
+
+    @ApiModelProperty("最近60分钟访问用户数")
+    private Long lastHourCount;
+
+    @ApiModelProperty("当前小时访问用户数")
+    private Long hourCount;
+
+    @ApiModelProperty("当天访问用户数")
+    private Long dayCount;
+
+}
@@ -0,0 +1,53 @@
+/*
+ * Copyright 2019-2029 geekidea(https://github.com/geekidea)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.geekidea.springbootplus.framework.shiro.vo;
+
+import lombok.Data;
+import lombok.experimental.Accessors;
+
+import java.io.Serializable;
+import java.util.Set;
+
+/**
+ * 角色权限Redis缓存对象，每个角色保存一份，登陆会话中只保存角色id和权限版本号
+ *
+ * @author geekidea
+ * @date 2020-03-30
+ * @since 1.5.0.RELEASE
+ **/
+@Data
+@Accessors(chain = true)
+public class RolePermissionRedisVo implements Serializable {
+
+    private static final long serialVersionUID = 4093781457220613390L;
+
+    /**
+     * 角色id
+     */
+    private Long roleId;
+
+    /**
+     * 权限版本号，排序后权限编码的摘要
+     */
+    private long version;
+
+    /**
+     * 权限编码列表
+     */
+    private Set<String> permissionCodes;
+
+}
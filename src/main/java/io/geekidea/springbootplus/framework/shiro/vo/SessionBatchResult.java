@@ -0,0 +1,73 @@
+/*
+ * Copyright 2019-2029 geekidea(https://github.com/geekidea)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.geekidea.springbootplus.framework.shiro.vo;
+
+import lombok.Data;
+import lombok.experimental.Accessors;
+
+import java.io.Serializable;
+
+/**
+ * <p>
+ * 登陆会话批量删除或刷新结果
+ * </p>
+ *
+ * @author geekidea
+ * @date 2020-03-30
+ * @since 1.5.0.RELEASE
+ **/
+@Data
+@Accessors(chain = true)
+public class SessionBatchResult implements Serializable {
+    private static final long serialVersionUID = 7306481530263581529L;
+
+    /**
+     * 会话索引，如login:role:sessions:1
+     */
+    private String index;
+
+    /**
+     * 开始时索引中的会话数量
+     */
+    private long total;
+
+    /**
+     * 已处理的会话数量
+     */
+    private long processed;
+
+    /**
+     * 实际删除或刷新的会话数量，不包括已过期的会话
+     */
+    private long affected;
+
+    /**
+     * 批次数
+     */
+    private int batches;
+
+    /**
+     * 耗时，单位：毫秒
+     */
+    private long elapsedMillis;
+
+    public SessionBatchResult(String index, long total) {
+        this.index = index;
+        this.total = total;
+    }
+
+}
@@ -0,0 +1,48 @@
+/*
+ * Copyright 2019-2029 geekidea(https://github.com/geekidea)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.geekidea.springbootplus.scheduled;
+
+import io.geekidea.springbootplus.framework.redis.hotkey.HotKeyDetector;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+/**
+ * Redis热点key统计窗口任务调度
+ *
+ * @author geekidea
+ * @date 2020-03-30
+ **/
+@Slf4j
+@Component
+@ConditionalOnProperty(value = "spring-boot-plus.hot-key.enable", havingValue = "true")
+public class HotKeyScheduled {
+
+    @Autowired
+    private HotKeyDetector hotKeyDetector;
+
+    /**
+     * 每个统计窗口结束时重新计算热点key
+     */
+    @Scheduled(fixedRateString = "${spring-boot-plus.hot-key.window-millis:1000}")
+    public void rotate() {
+        hotKeyDetector.rotate();
+    }
+
+}
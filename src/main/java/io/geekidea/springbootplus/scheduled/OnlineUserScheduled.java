@@ -0,0 +1,66 @@
+/*
+ * Copyright 2019-2029 geekidea(https://github.com/geekidea)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.geekidea.springbootplus.scheduled;
+
+import io.geekidea.springbootplus.framework.shiro.service.OnlineUserService;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+/**
+ * 在线用户写入和清理任务调度
+ *
+ * @author geekidea
+ * @date 2020-03-30
+ **/
+@Slf4j
+@Component
+public class OnlineUserScheduled {
+
+    @Autowired
+    private OnlineUserService onlineUserService;
+
+    /**
+     * 每秒将本节点记录的用户访问批量写入Redis
+     */
+    @Scheduled(fixedDelay = 1000, initialDelay = 1000)
+    public void flush() {
+        try {
+            int count = onlineUserService.flush();
+            if (count > 0) {
+                log.debug("写入在线用户数:{}", count);
+            }
+        } catch (Exception e) {
+            log.error("写入在线用户异常", e);
+        }
+    }
+
+    /**
+     * 每分钟删除超过在线时间未访问的用户，在线用户zset大小保持为在线用户数
+     */
+    @Scheduled(fixedDelay = 60000, initialDelay = 60000)
+    public void removeExpired() {
+        try {
+            long count = onlineUserService.removeExpired();
+            log.debug("删除离线用户数:{}", count);
+        } catch (Exception e) {
+            log.error("删除离线用户异常", e);
+        }
+    }
+
+}
@@ -0,0 +1,50 @@
+/*
+ * Copyright 2019-2029 geekidea(https://github.com/geekidea)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.geekidea.springbootplus.scheduled;
+
+import io.geekidea.springbootplus.framework.shiro.cache.RevokedTokenFilter;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+/**
+ * 已注销token校验任务调度
+ *
+ * @author geekidea
+ * @date 2020-03-30
+ **/
+@Slf4j
+@Component
+public class RevokedTokenScheduled {
+
+    @Autowired
+    private RevokedTokenFilter revokedTokenFilter;
+
+    /**
+     * 每分钟轮换布隆过滤器并从Redis重新加载，防止注销通知丢失
+     */
+    @Scheduled(fixedDelay = 60000, initialDelay = 60000)
+    public void reconcile() {
+        try {
+            revokedTokenFilter.reconcile();
+        } catch (Exception e) {
+            log.error("已注销token校验异常", e);
+        }
+    }
+
+}
@@ -0,0 +1,46 @@
+/*
+ * Copyright 2019-2029 geekidea(https://github.com/geekidea)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.geekidea.springbootplus.scheduled;
+
+import io.geekidea.springbootplus.system.cache.SysDirectory;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+/**
+ * 部门角色目录校验任务调度
+ *
+ * @author geekidea
+ * @date 2020-03-29
+ **/
+@Slf4j
+@Component
+public class SysDirectoryScheduled {
+
+    @Autowired
+    private SysDirectory sysDirectory;
+
+    /**
+     * 每分钟校验一次，防止变更通知丢失
+     */
+    @Scheduled(fixedDelayString = "${spring-boot-plus.sys-directory.reconcile-interval:60000}", initialDelay = 60000)
+    public void reconcile() {
+        sysDirectory.reconcile();
+    }
+
+}
@@ -0,0 +1,50 @@
+/*
+ * Copyright 2019-2029 geekidea(https://github.com/geekidea)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.geekidea.springbootplus.scheduled;
+
+import io.geekidea.springbootplus.framework.shiro.permission.TokenAuthorization;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+/**
+ * 无状态授权用户变更时间加载任务调度
+ *
+ * @author geekidea
+ * @date 2020-03-30
+ **/
+@Slf4j
+@Component
+public class TokenAuthorizationScheduled {
+
+    @Autowired
+    private TokenAuthorization tokenAuthorization;
+
+    /**
+     * 每10秒从Redis加载用户变更时间，防止用户变更通知丢失
+     */
+    @Scheduled(fixedDelay = 10000, initialDelay = 10000)
+    public void reconcile() {
+        try {
+            tokenAuthorization.reconcile();
+        } catch (Exception e) {
+            log.error("加载用户变更时间异常", e);
+        }
+    }
+
+}
@@ -0,0 +1,413 @@
+/*
+ * Copyright 2019-2029 geekidea(https://github.com/geekidea)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.geekidea.springbootplus.system.cache;
+
+import com.baomidou.mybatisplus.core.conditions.query.QueryWrapper;
+import com.baomidou.mybatisplus.extension.service.IService;
+import com.google.common.hash.Hashing;
+import io.geekidea.springbootplus.framework.constant.CommonRedisKey;
+import io.geekidea.springbootplus.system.entity.SysDepartment;
+import io.geekidea.springbootplus.system.entity.SysPermission;
+import io.geekidea.springbootplus.system.entity.SysRole;
+import io.geekidea.springbootplus.system.enums.StateEnum;
+import io.geekidea.springbootplus.system.service.SysDepartmentService;
+import io.geekidea.springbootplus.system.service.SysPermissionService;
+import io.geekidea.springbootplus.system.service.SysRolePermissionService;
+import io.geekidea.springbootplus.system.service.SysRoleService;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.StringUtils;
+import org.springframework.beans.BeanUtils;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.annotation.PostConstruct;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * 部门、角色、权限及角色权限编码的本地目录
+ * 部门和角色数据量小且很少变更，登陆和用户新增修改时直接从内存中读取，不再查询数据库
+ * 部门、角色、权限变更后，在事务提交后重新加载并通过Redis发布订阅通知其他节点，
+ * 同时定时对比数据库中各表的记录数和最大修改时间，有变化时才重新加载，防止通知丢失
+ * 角色版本号由角色状态和权限编码计算得出，各节点相同数据的版本号一致
+ * 返回的部门和角色为副本，权限编码集合不可修改
+ *
+ * @author geekidea
+ * @date 2020-03-29
+ * @since 1.5.0.RELEASE
+ **/
+@Slf4j
+@Component
+public class SysDirectory implements MessageListener {
+
+    /**
+     * 各表最大修改时间，新增时修改时间为空，使用创建时间
+     */
+    private static final String MAX_UPDATE_TIME = "max(coalesce(update_time, create_time))";
+
+    @Lazy
+    @Autowired
+    private SysDepartmentService sysDepartmentService;
+
+    @Lazy
+    @Autowired
+    private SysRoleService sysRoleService;
+
+    @Lazy
+    @Autowired
+    private SysRolePermissionService sysRolePermissionService;
+
+    @Lazy
+    @Autowired
+    private SysPermissionService sysPermissionService;
+
+    private final RedisTemplate redisTemplate;
+
+    private final RedisMessageListenerContainer redisMessageListenerContainer;
+
+    /**
+     * 当前目录快照，整体替换
+     */
+    private volatile Snapshot snapshot;
+
+    public SysDirectory(RedisTemplate redisTemplate, RedisMessageListenerContainer redisMessageListenerContainer) {
+        this.redisTemplate = redisTemplate;
+        this.redisMessageListenerContainer = redisMessageListenerContainer;
+    }
+
+    @PostConstruct
+    public void init() {
+        redisMessageListenerContainer.addMessageListener(this, new ChannelTopic(CommonRedisKey.SYS_DIRECTORY_CHANNEL));
+        try {
+            reload(true);
+        } catch (Exception e) {
+            log.error("加载部门角色目录异常，将在下次校验时重新加载", e);
+        }
+    }
+
+    /**
+     * 获取部门副本，目录中不存在时查询数据库
+     *
+     * @param departmentId
+     * @return
+     */
+    public SysDepartment getDepartment(Long departmentId) {
+        if (departmentId == null) {
+            return null;
+        }
+        Snapshot current = snapshot;
+        SysDepartment sysDepartment = current == null ? null : current.departments.get(departmentId);
+        if (sysDepartment != null) {
+            return copy(sysDepartment, new SysDepartment());
+        }
+        return sysDepartmentService.getById(departmentId);
+    }
+
+    /**
+     * 获取角色副本，目录中不存在时查询数据库
+     *
+     * @param roleId
+     * @return
+     */
+    public SysRole getRole(Long roleId) {
+        if (roleId == null) {
+            return null;
+        }
+        Snapshot current = snapshot;
+        SysRole sysRole = current == null ? null : current.roles.get(roleId);
+        if (sysRole != null) {
+            return copy(sysRole, new SysRole());
+        }
+        return sysRoleService.getById(roleId);
+    }
+
+    /**
+     * 获取角色权限编码，目录中不存在时查询数据库
+     *
+     * @param roleId
+     * @return
+     * @throws Exception
+     */
+    public Set<String> getPermissionCodes(Long roleId) throws Exception {
+        Snapshot current = snapshot;
+        Set<String> permissionCodes = current == null ? null : current.rolePermissionCodes.get(roleId);
+        if (permissionCodes != null) {
+            return permissionCodes;
+        }
+        return sysRolePermissionService.getPermissionCodesByRoleId(roleId);
+    }
+
+    /**
+     * 获取角色版本号，角色状态或权限编码变更后版本号改变，目录中不存在时返回null
+     *
+     * @param roleId
+     * @return
+     */
+    public Long getRoleVersion(Long roleId) {
+        Snapshot current = snapshot;
+        if (current == null || roleId == null) {
+            return null;
+        }
+        return current.roleVersions.get(roleId);
+    }
+
+    /**
+     * 获取权限编码对应的权限id，目录中不存在时返回null
+     *
+     * @param code
+     * @return
+     */
+    public Long getPermissionId(String code) {
+        Snapshot current = snapshot;
+        if (current == null || code == null) {
+            return null;
+        }
+        return current.permissionIds.get(code);
+    }
+
+    /**
+     * 获取所有权限编码及对应的权限id，不可修改，目录未加载时为空
+     *
+     * @return
+     */
+    public Map<String, Long> getPermissionIds() {
+        Snapshot current = snapshot;
+        return current == null ? Collections.emptyMap() : current.permissionIds;
+    }
+
+    /**
+     * 部门是否存在并且可用
+     *
+     * @param departmentId
+     * @return
+     */
+    public boolean isEnableDepartment(Long departmentId) {
+        Snapshot current = snapshot;
+        SysDepartment sysDepartment = current == null || departmentId == null ? null : current.departments.get(departmentId);
+        if (sysDepartment == null) {
+            sysDepartment = getDepartment(departmentId);
+        }
+        return sysDepartment != null && StateEnum.ENABLE.getCode().equals(sysDepartment.getState());
+    }
+
+    /**
+     * 角色是否存在并且可用
+     *
+     * @param roleId
+     * @return
+     */
+    public boolean isEnableRole(Long roleId) {
+        Snapshot current = snapshot;
+        SysRole sysRole = current == null || roleId == null ? null : current.roles.get(roleId);
+        if (sysRole == null) {
+            sysRole = getRole(roleId);
+        }
+        return sysRole != null && StateEnum.ENABLE.getCode().equals(sysRole.getState());
+    }
+
+    /**
+     * 部门、角色或权限已变更，存在事务时在事务提交后重新加载，并通知其他节点
+     */
+    public void changed() {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+                @Override
+                public void afterCommit() {
+                    reloadAndPublish();
+                }
+            });
+            return;
+        }
+        reloadAndPublish();
+    }
+
+    /**
+     * 重新加载目录，先读取数据版本，加载期间数据变更时下次校验再次加载
+     *
+     * @param force 是否忽略数据版本强制加载，收到变更通知时强制加载，避免同一秒内的修改时间相同
+     * @return 目录是否重新加载
+     * @throws Exception
+     */
+    public synchronized boolean reload(boolean force) throws Exception {
+        String dataVersion = dataVersion();
+        Snapshot current = snapshot;
+        if (!force && current != null && current.dataVersion.equals(dataVersion)) {
+            return false;
+        }
+        Map<Long, SysDepartment> departments = new HashMap<>();
+        for (SysDepartment sysDepartment : sysDepartmentService.list()) {
+            departments.put(sysDepartment.getId(), sysDepartment);
+        }
+        Map<Long, SysRole> roles = new HashMap<>();
+        Map<Long, Set<String>> rolePermissionCodes = new HashMap<>();
+        Map<Long, Long> roleVersions = new HashMap<>();
+        // 一次查询加载所有角色的权限编码
+        Map<Long, Set<String>> allPermissionCodes = sysRolePermissionService.getAllPermissionCodes();
+        for (SysRole sysRole : sysRoleService.list()) {
+            roles.put(sysRole.getId(), sysRole);
+            Set<String> permissionCodes = allPermissionCodes.get(sysRole.getId());
+            rolePermissionCodes.put(sysRole.getId(), permissionCodes == null
+                    ? Collections.emptySet() : Collections.unmodifiableSet(permissionCodes));
+            roleVersions.put(sysRole.getId(), roleVersion(sysRole, permissionCodes));
+        }
+        Map<String, Long> permissionIds = new HashMap<>();
+        for (SysPermission sysPermission : sysPermissionService.list()) {
+            if (StringUtils.isNotBlank(sysPermission.getCode())) {
+                permissionIds.put(sysPermission.getCode(), sysPermission.getId());
+            }
+        }
+        long version = current == null ? 1 : current.version + 1;
+        snapshot = new Snapshot(version, dataVersion, departments, roles, rolePermissionCodes, roleVersions,
+                Collections.unmodifiableMap(permissionIds));
+        log.info("部门角色目录已更新,version:{},departments:{},roles:{}", version, departments.size(), roles.size());
+        return true;
+    }
+
+    /**
+     * 定时校验，数据版本有变化时重新加载，防止变更通知丢失
+     */
+    public void reconcile() {
+        try {
+            if (reload(false)) {
+                log.warn("部门角色目录数据版本不一致，已重新加载");
+            }
+        } catch (Exception e) {
+            log.error("部门角色目录校验异常", e);
+        }
+    }
+
+    /**
+     * 当前目录版本号，未加载时为0
+     *
+     * @return
+     */
+    public long getVersion() {
+        Snapshot current = snapshot;
+        return current == null ? 0 : current.version;
+    }
+
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        log.debug("收到部门角色目录变更通知");
+        forceReload();
+    }
+
+    private void reloadAndPublish() {
+        forceReload();
+        try {
+            redisTemplate.convertAndSend(CommonRedisKey.SYS_DIRECTORY_CHANNEL, String.valueOf(getVersion()));
+        } catch (Exception e) {
+            log.error("发布部门角色目录变更通知异常", e);
+        }
+    }
+
+    private void forceReload() {
+        try {
+            reload(true);
+        } catch (Exception e) {
+            log.error("部门角色目录加载异常", e);
+        }
+    }
+
+    /**
+     * 数据版本：部门、角色、权限、角色权限各表的记录数和最大修改时间
+     *
+     * @return
+     */
+    private String dataVersion() {
+        return new StringBuilder()
+                .append(tableVersion(sysDepartmentService)).append('|')
+                .append(tableVersion(sysRoleService)).append('|')
+                .append(tableVersion(sysPermissionService)).append('|')
+                .append(tableVersion(sysRolePermissionService))
+                .toString();
+    }
+
+    private static <T> String tableVersion(IService<T> service) {
+        Object maxUpdateTime = service.getObj(new QueryWrapper<T>().select(MAX_UPDATE_TIME), value -> value);
+        return service.count() + "," + maxUpdateTime;
+    }
+
+    private static <T> T copy(Object source, T target) {
+        BeanUtils.copyProperties(source, target);
+        return target;
+    }
+
+    /**
+     * 计算角色版本号：角色编码、状态和排序后的权限编码的摘要
+     *
+     * @param sysRole
+     * @param permissionCodes
+     * @return
+     */
+    private static long roleVersion(SysRole sysRole, Set<String> permissionCodes) {
+        StringBuilder content = new StringBuilder()
+                .append(sysRole.getCode()).append('|')
+                .append(sysRole.getState()).append('|');
+        if (permissionCodes != null) {
+            for (String code : new TreeSet<>(permissionCodes)) {
+                content.append(code).append(',');
+            }
+        }
+        return Hashing.murmur3_128().hashString(content, StandardCharsets.UTF_8).asLong();
+    }
+
+    private static class Snapshot {
+
+        private final long version;
+
+        /**
+         * 加载时的数据版本
+         */
+        private final String dataVersion;
+
+        private final Map<Long, SysDepartment> departments;
+
+        private final Map<Long, SysRole> roles;
+
+        private final Map<Long, Set<String>> rolePermissionCodes;
+
+        private final Map<Long, Long> roleVersions;
+
+        private final Map<String, Long> permissionIds;
+
+        private Snapshot(long version, String dataVersion, Map<Long, SysDepartment> departments,
+                         Map<Long, SysRole> roles, Map<Long, Set<String>> rolePermissionCodes,
+                         Map<Long, Long> roleVersions, Map<String, Long> permissionIds) {
+            this.version = version;
+            this.dataVersion = dataVersion;
+            this.departments = departments;
+            this.roles = roles;
+            this.rolePermissionCodes = rolePermissionCodes;
+            this.roleVersions = roleVersions;
+            this.permissionIds = permissionIds;
+        }
+    }
+
+}
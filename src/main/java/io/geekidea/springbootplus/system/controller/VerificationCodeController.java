@@ -18,14 +18,12 @@ package io.geekidea.springbootplus.system.controller;
 
 import io.geekidea.springbootplus.framework.common.api.ApiResult;
 import io.geekidea.springbootplus.framework.constant.CommonConstant;
-import io.geekidea.springbootplus.framework.constant.CommonRedisKey;
-import io.geekidea.springbootplus.framework.util.UUIDUtil;
 import io.geekidea.springbootplus.framework.util.VerificationCode;
+import io.geekidea.springbootplus.system.service.VerificationCodeService;
 import io.swagger.annotations.Api;
 import io.swagger.annotations.ApiOperation;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.data.redis.core.RedisTemplate;
 import org.springframework.http.MediaType;
 import org.springframework.stereotype.Controller;
 import org.springframework.web.bind.annotation.GetMapping;
@@ -40,7 +38,6 @@ import java.io.ByteArrayOutputStream;
 import java.util.Base64;
 import java.util.HashMap;
 import java.util.Map;
-import java.util.concurrent.TimeUnit;
 
 /**
  * @author geekidea
@@ -53,7 +50,7 @@ import java.util.concurrent.TimeUnit;
 public class VerificationCodeController {
 
     @Autowired
-    private RedisTemplate redisTemplate;
+    private VerificationCodeService verificationCodeService;
 
     /**
      * 获取验证码
@@ -64,9 +61,8 @@ public class VerificationCodeController {
         VerificationCode verificationCode = new VerificationCode();
         BufferedImage image = verificationCode.getImage();
         String code = verificationCode.getText();
-        String verifyToken = UUIDUtil.getUuid();
-        // 缓存到Redis
-        redisTemplate.opsForValue().set(String.format(CommonRedisKey.VERIFY_CODE, verifyToken), code, 5, TimeUnit.MINUTES);
+        // 保存验证码，生成当前验证码会话token
+        String verifyToken = verificationCodeService.generate(code);
         response.setHeader(CommonConstant.VERIFY_TOKEN, verifyToken);
         response.setContentType(MediaType.IMAGE_JPEG_VALUE);
         response.setHeader("Pragma", "No-cache");
@@ -90,13 +86,11 @@ public class VerificationCodeController {
         ImageIO.write(image, CommonConstant.JPEG, outputStream);
         // 将图片转换成base64字符串
         String base64 = Base64.getEncoder().encodeToString(outputStream.toByteArray());
-        // 生成当前验证码会话token
-        String verifyToken = UUIDUtil.getUuid();
+        // 保存验证码，生成当前验证码会话token
+        String verifyToken = verificationCodeService.generate(code);
         Map<String, Object> map = new HashMap<>(2);
         map.put(CommonConstant.IMAGE, CommonConstant.BASE64_PREFIX + base64);
         map.put(CommonConstant.VERIFY_TOKEN, verifyToken);
-        // 缓存到Redis
-        redisTemplate.opsForValue().set(String.format(CommonRedisKey.VERIFY_CODE, verifyToken), code, 5, TimeUnit.MINUTES);
         return ApiResult.ok(map);
     }
 
@@ -49,5 +49,13 @@ public interface SysUserConvert {
      */
     LoginSysUserRedisVo loginSysUserVoToLoginSysUserRedisVo(LoginSysUserVo loginSysUserVo);
 
+    /**
+     * LoginSysUserRedisVo对象转换成LoginSysUserVo，去掉盐值等后台信息
+     *
+     * @param loginSysUserRedisVo
+     * @return
+     */
+    LoginSysUserVo loginSysUserRedisVoToLoginSysUserVo(LoginSysUserRedisVo loginSysUserRedisVo);
+
 
 }
@@ -21,6 +21,7 @@ import com.baomidou.mybatisplus.core.metadata.IPage;
 import com.baomidou.mybatisplus.extension.plugins.pagination.Page;
 import io.geekidea.springbootplus.system.entity.SysRolePermission;
 import io.geekidea.springbootplus.system.param.sysrole.SysRolePermissionPageParam;
+import io.geekidea.springbootplus.system.vo.RolePermissionCodeVo;
 import io.geekidea.springbootplus.system.vo.SysRolePermissionQueryVo;
 import org.apache.ibatis.annotations.Param;
 import org.springframework.stereotype.Repository;
@@ -65,6 +66,13 @@ public interface SysRolePermissionMapper extends BaseMapper<SysRolePermission> {
      */
     Set<String> getPermissionCodesByRoleId(@Param("roleId") Long roleId);
 
+    /**
+     * 获取所有可用角色的可用权限编码，按角色id排序
+     *
+     * @return
+     */
+    List<RolePermissionCodeVo> getAllPermissionCodes();
+
     /**
      * 根据角色id获取该对应的所有三级权限ID
      * @param roleId
@@ -23,6 +23,7 @@ import io.geekidea.springbootplus.system.param.sysrole.UpdateSysRolePermissionPa
 import org.apache.commons.collections4.SetUtils;
 
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 /**
@@ -91,6 +92,14 @@ public interface SysRolePermissionService extends BaseService<SysRolePermission>
      */
     Set<String> getPermissionCodesByRoleId(Long roleId) throws Exception;
 
+    /**
+     * 一次查询获取所有可用角色的可用权限编码
+     *
+     * @return 角色id --> 权限编码，没有可用权限编码的角色不包含在内
+     * @throws Exception
+     */
+    Map<Long, Set<String>> getAllPermissionCodes() throws Exception;
+
     /**
      * 通过角色id判断在角色权限表中是否有数据存在
      *
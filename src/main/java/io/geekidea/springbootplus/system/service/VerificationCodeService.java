@@ -0,0 +1,45 @@
+/*
+ * Copyright 2019-2029 geekidea(https://github.com/geekidea)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.geekidea.springbootplus.system.service;
+
+/**
+ * 验证码服务
+ *
+ * @author geekidea
+ * @date 2020-03-30
+ * @since 1.5.0.RELEASE
+ **/
+public interface VerificationCodeService {
+
+    /**
+     * 保存验证码，生成当前验证码会话token
+     *
+     * @param code
+     * @return verifyToken
+     */
+    String generate(String code);
+
+    /**
+     * 校验验证码，校验通过后verifyToken失效
+     *
+     * @param verifyToken
+     * @param code
+     * @throws Exception
+     */
+    void check(String verifyToken, String code) throws Exception;
+
+}
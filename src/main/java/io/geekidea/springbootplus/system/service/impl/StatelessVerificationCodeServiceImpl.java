@@ -0,0 +1,146 @@
+/*
+ * Copyright 2019-2029 geekidea(https://github.com/geekidea)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.geekidea.springbootplus.system.service.impl;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import io.geekidea.springbootplus.framework.constant.CommonRedisKey;
+import io.geekidea.springbootplus.framework.core.properties.SpringBootPlusProperties;
+import io.geekidea.springbootplus.framework.core.properties.SpringBootPlusVerifyCodeProperties;
+import io.geekidea.springbootplus.framework.util.UUIDUtil;
+import io.geekidea.springbootplus.system.exception.VerificationCodeException;
+import io.geekidea.springbootplus.system.service.VerificationCodeService;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.codec.digest.HmacAlgorithms;
+import org.apache.commons.codec.digest.HmacUtils;
+import org.apache.commons.lang3.StringUtils;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.stereotype.Service;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.Base64;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 无状态验证码服务
+ * verifyToken格式：nonce.过期时间戳.签名，签名为HmacSHA256(nonce.过期时间戳.小写验证码)，
+ * token中不包含验证码，获取验证码时不访问Redis，
+ * 校验时先标记nonce已使用再比较签名，每个token只能校验一次，
+ * 已使用的nonce保存在本地防重放缓存中，多节点部署时同时写入Redis
+ *
+ * @author geekidea
+ * @date 2020-03-30
+ * @since 1.5.0.RELEASE
+ **/
+@Slf4j
+@Service
+@ConditionalOnProperty(prefix = "spring-boot-plus.verify-code", name = "store", havingValue = "stateless")
+public class StatelessVerificationCodeServiceImpl implements VerificationCodeService {
+
+    private static final String SEPARATOR = ".";
+
+    private final RedisTemplate redisTemplate;
+
+    private final SpringBootPlusVerifyCodeProperties verifyCodeConfig;
+
+    private final byte[] secret;
+
+    /**
+     * 本地已使用nonce缓存，过期时间与验证码有效时间一致
+     */
+    private final Cache<String, Boolean> usedCache;
+
+    public StatelessVerificationCodeServiceImpl(SpringBootPlusProperties springBootPlusProperties, RedisTemplate redisTemplate) {
+        this.redisTemplate = redisTemplate;
+        this.verifyCodeConfig = springBootPlusProperties.getVerifyCode();
+        if (StringUtils.isBlank(verifyCodeConfig.getSecret())) {
+            log.warn("未配置验证码签名密钥，使用随机密钥，多节点部署时需配置相同的密钥");
+            this.secret = new byte[32];
+            new SecureRandom().nextBytes(this.secret);
+        } else {
+            this.secret = verifyCodeConfig.getSecret().getBytes(StandardCharsets.UTF_8);
+        }
+        this.usedCache = CacheBuilder.newBuilder()
+                .maximumSize(verifyCodeConfig.getReplayCacheSize())
+                .expireAfterWrite(verifyCodeConfig.getExpireSecond(), TimeUnit.SECONDS)
+                .build();
+    }
+
+    @Override
+    public String generate(String code) {
+        String nonce = UUIDUtil.getUuid();
+        long expireTime = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(verifyCodeConfig.getExpireSecond());
+        return nonce + SEPARATOR + expireTime + SEPARATOR + sign(nonce, expireTime, code);
+    }
+
+    @Override
+    public void check(String verifyToken, String code) throws Exception {
+        String[] parts = StringUtils.split(verifyToken, SEPARATOR);
+        if (parts == null || parts.length != 3 || !StringUtils.isNumeric(parts[1])) {
+            throw new VerificationCodeException("验证码已过期或不正确");
+        }
+        String nonce = parts[0];
+        long expireTime = Long.parseLong(parts[1]);
+        long remainMillis = expireTime - System.currentTimeMillis();
+        if (remainMillis <= 0) {
+            throw new VerificationCodeException("验证码已过期或不正确");
+        }
+        // 先标记已使用，校验失败同样失效，避免同一个token多次猜测验证码
+        if (!markUsed(nonce, remainMillis)) {
+            throw new VerificationCodeException("验证码已过期或不正确");
+        }
+        byte[] expected = sign(nonce, expireTime, code).getBytes(StandardCharsets.UTF_8);
+        if (!MessageDigest.isEqual(expected, parts[2].getBytes(StandardCharsets.UTF_8))) {
+            throw new VerificationCodeException("验证码错误");
+        }
+    }
+
+    /**
+     * 标记nonce已使用，已被使用时返回false
+     * Redis异常时只使用本地防重放缓存
+     *
+     * @param nonce
+     * @param remainMillis
+     * @return
+     */
+    private boolean markUsed(String nonce, long remainMillis) {
+        if (usedCache.asMap().putIfAbsent(nonce, Boolean.TRUE) != null) {
+            return false;
+        }
+        if (!verifyCodeConfig.isReplayRedis()) {
+            return true;
+        }
+        try {
+            Boolean absent = redisTemplate.opsForValue().setIfAbsent(String.format(CommonRedisKey.VERIFY_CODE_USED, nonce),
+                    1, remainMillis, TimeUnit.MILLISECONDS);
+            return !Boolean.FALSE.equals(absent);
+        } catch (Exception e) {
+            log.warn("验证码Redis防重放异常，只使用本地防重放缓存:{}", e.getMessage());
+            return true;
+        }
+    }
+
+    private String sign(String nonce, long expireTime, String code) {
+        String content = nonce + SEPARATOR + expireTime + SEPARATOR + StringUtils.lowerCase(code);
+        byte[] signature = new HmacUtils(HmacAlgorithms.HMAC_SHA_256, secret).hmac(content);
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(signature);
+    }
+
+}
@@ -23,8 +23,10 @@ import com.baomidou.mybatisplus.extension.plugins.pagination.Page;
 import io.geekidea.springbootplus.framework.pagination.PageUtil;
 import io.geekidea.springbootplus.framework.pagination.Paging;
 import io.geekidea.springbootplus.framework.common.service.impl.BaseServiceImpl;
+import io.geekidea.springbootplus.framework.shiro.cache.LoginSessionFanout;
 import io.geekidea.springbootplus.system.enums.StateEnum;
 import io.geekidea.springbootplus.system.convert.SysDepartmentConvert;
+import io.geekidea.springbootplus.system.cache.SysDirectory;
 import io.geekidea.springbootplus.system.entity.SysDepartment;
 import io.geekidea.springbootplus.system.mapper.SysDepartmentMapper;
 import io.geekidea.springbootplus.system.param.SysDepartmentPageParam;
@@ -39,6 +41,7 @@ import org.springframework.transaction.annotation.Transactional;
 
 import java.io.Serializable;
 import java.util.ArrayList;
+import java.util.Date;
 import java.util.List;
 
 
@@ -57,23 +60,49 @@ public class SysDepartmentServiceImpl extends BaseServiceImpl<SysDepartmentMappe
     @Autowired
     private SysDepartmentMapper sysDepartmentMapper;
 
+    @Autowired
+    private SysDirectory sysDirectory;
+
+    @Autowired
+    private LoginSessionFanout loginSessionFanout;
+
     @Transactional(rollbackFor = Exception.class)
     @Override
     public boolean saveSysDepartment(SysDepartment sysDepartment) throws Exception {
         sysDepartment.setId(null);
-        return super.save(sysDepartment);
+        boolean result = super.save(sysDepartment);
+        if (result) {
+            sysDirectory.changed();
+        }
+        return result;
     }
 
     @Transactional(rollbackFor = Exception.class)
     @Override
     public boolean updateSysDepartment(SysDepartment sysDepartment) throws Exception {
-        return super.updateById(sysDepartment);
+        sysDepartment.setUpdateTime(new Date());
+        boolean result = super.updateById(sysDepartment);
+        if (result) {
+            // 部门禁用时删除该部门所有登陆会话，修改名称时刷新会话中的部门名称
+            if (StateEnum.DISABLE.getCode().equals(sysDepartment.getState())) {
+                loginSessionFanout.deleteDepartmentSessions(sysDepartment.getId());
+            } else if (sysDepartment.getName() != null) {
+                loginSessionFanout.refreshDepartmentSessions(sysDepartment.getId(), sysDepartment.getName());
+            }
+            sysDirectory.changed();
+        }
+        return result;
     }
 
     @Transactional(rollbackFor = Exception.class)
     @Override
     public boolean deleteSysDepartment(Long id) throws Exception {
-        return super.removeById(id);
+        boolean result = super.removeById(id);
+        if (result) {
+            loginSessionFanout.deleteDepartmentSessions(id);
+            sysDirectory.changed();
+        }
+        return result;
     }
 
     @Override
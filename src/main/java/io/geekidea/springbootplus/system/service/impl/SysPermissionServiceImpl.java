@@ -26,6 +26,7 @@ import io.geekidea.springbootplus.framework.common.service.impl.BaseServiceImpl;
 import io.geekidea.springbootplus.framework.pagination.PageUtil;
 import io.geekidea.springbootplus.framework.pagination.Paging;
 import io.geekidea.springbootplus.system.convert.SysPermissionConvert;
+import io.geekidea.springbootplus.system.cache.SysDirectory;
 import io.geekidea.springbootplus.system.entity.SysPermission;
 import io.geekidea.springbootplus.system.entity.SysRolePermission;
 import io.geekidea.springbootplus.system.enums.MenuLevelEnum;
@@ -65,11 +66,18 @@ public class SysPermissionServiceImpl extends BaseServiceImpl<SysPermissionMappe
     @Autowired
     private SysRolePermissionService sysRolePermissionService;
 
+    @Autowired
+    private SysDirectory sysDirectory;
+
     @Transactional(rollbackFor = Exception.class)
     @Override
     public boolean saveSysPermission(SysPermission sysPermission) throws Exception {
         sysPermission.setId(null);
-        return super.save(sysPermission);
+        boolean result = super.save(sysPermission);
+        if (result) {
+            sysDirectory.changed();
+        }
+        return result;
     }
 
     @Transactional(rollbackFor = Exception.class)
@@ -80,7 +88,12 @@ public class SysPermissionServiceImpl extends BaseServiceImpl<SysPermissionMappe
             throw new BusinessException("权限不存在");
         }
         sysPermission.setUpdateTime(new Date());
-        return super.updateById(sysPermission);
+        boolean result = super.updateById(sysPermission);
+        if (result) {
+            // 权限编码变更会影响角色权限编码
+            sysDirectory.changed();
+        }
+        return result;
     }
 
     @Transactional(rollbackFor = Exception.class)
@@ -90,7 +103,11 @@ public class SysPermissionServiceImpl extends BaseServiceImpl<SysPermissionMappe
         if (isExists) {
             throw new BusinessException("该权限存在角色关联关系，不能删除");
         }
-        return super.removeById(id);
+        boolean result = super.removeById(id);
+        if (result) {
+            sysDirectory.changed();
+        }
+        return result;
     }
 
     @Override
@@ -31,6 +31,7 @@ import io.geekidea.springbootplus.system.mapper.SysRoleMapper;
 import io.geekidea.springbootplus.system.mapper.SysRolePermissionMapper;
 import io.geekidea.springbootplus.system.param.sysrole.UpdateSysRolePermissionParam;
 import io.geekidea.springbootplus.system.service.SysRolePermissionService;
+import io.geekidea.springbootplus.system.vo.RolePermissionCodeVo;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.collections4.CollectionUtils;
 import org.apache.commons.collections4.SetUtils;
@@ -116,6 +117,20 @@ public class SysRolePermissionServiceImpl extends BaseServiceImpl<SysRolePermiss
         return sysRolePermissionMapper.getPermissionCodesByRoleId(roleId);
     }
 
+    @Override
+    public Map<Long, Set<String>> getAllPermissionCodes() throws Exception {
+        Map<Long, Set<String>> rolePermissionCodes = new HashMap<>();
+        List<RolePermissionCodeVo> rolePermissionCodeVos = sysRolePermissionMapper.getAllPermissionCodes();
+        if (CollectionUtils.isEmpty(rolePermissionCodeVos)) {
+            return rolePermissionCodes;
+        }
+        for (RolePermissionCodeVo rolePermissionCodeVo : rolePermissionCodeVos) {
+            rolePermissionCodes.computeIfAbsent(rolePermissionCodeVo.getRoleId(), key -> new HashSet<>())
+                    .add(rolePermissionCodeVo.getCode());
+        }
+        return rolePermissionCodes;
+    }
+
     @Override
     public boolean isExistsByPermissionId(Long permissionId) throws Exception {
         // 判断角色权限表是否有关联存在，如果存在，则不能删除
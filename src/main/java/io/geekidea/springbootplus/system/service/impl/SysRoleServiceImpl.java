@@ -29,6 +29,9 @@ import io.geekidea.springbootplus.framework.common.exception.SpringBootPlusExcep
 import io.geekidea.springbootplus.framework.common.service.impl.BaseServiceImpl;
 import io.geekidea.springbootplus.framework.pagination.PageUtil;
 import io.geekidea.springbootplus.framework.pagination.Paging;
+import io.geekidea.springbootplus.framework.shiro.cache.AuthorizationInvalidatePublisher;
+import io.geekidea.springbootplus.framework.shiro.cache.LoginSessionFanout;
+import io.geekidea.springbootplus.system.cache.SysDirectory;
 import io.geekidea.springbootplus.system.convert.SysRoleConvert;
 import io.geekidea.springbootplus.system.entity.SysRole;
 import io.geekidea.springbootplus.system.enums.StateEnum;
@@ -79,6 +82,15 @@ public class SysRoleServiceImpl extends BaseServiceImpl<SysRoleMapper, SysRole>
     @Autowired
     private SysUserService sysUserService;
 
+    @Autowired
+    private AuthorizationInvalidatePublisher authorizationInvalidatePublisher;
+
+    @Autowired
+    private SysDirectory sysDirectory;
+
+    @Autowired
+    private LoginSessionFanout loginSessionFanout;
+
     @Transactional(rollbackFor = Exception.class)
     @Override
     public boolean saveSysRole(SysRole sysRole) throws Exception {
@@ -92,6 +104,7 @@ public class SysRoleServiceImpl extends BaseServiceImpl<SysRoleMapper, SysRole>
         if (!saveRoleResult) {
             throw new DaoException("保存角色失败");
         }
+        sysDirectory.changed();
         return true;
     }
 
@@ -109,6 +122,15 @@ public class SysRoleServiceImpl extends BaseServiceImpl<SysRoleMapper, SysRole>
         if (!updateResult) {
             throw new DaoException("修改系统角色失败");
         }
+        // 角色禁用时删除该角色所有登陆会话，否则刷新会话中的角色信息
+        if (StateEnum.DISABLE.getCode().equals(sysRole.getState())) {
+            loginSessionFanout.deleteRoleSessions(roleId);
+        } else {
+            refreshRoleSessions(getById(roleId));
+        }
+        // 通知各节点角色授权信息已变更
+        authorizationInvalidatePublisher.publishRoleChanged(roleId);
+        sysDirectory.changed();
         return true;
     }
 
@@ -135,6 +157,9 @@ public class SysRoleServiceImpl extends BaseServiceImpl<SysRoleMapper, SysRole>
                 throw new DaoException("删除角色权限关系失败");
             }
         }
+        // 通知各节点角色授权信息已变更
+        authorizationInvalidatePublisher.publishRoleChanged(id);
+        sysDirectory.changed();
         return true;
     }
 
@@ -240,7 +265,26 @@ public class SysRoleServiceImpl extends BaseServiceImpl<SysRoleMapper, SysRole>
             }
         }
 
+        // 刷新该角色所有登陆会话中的权限编码
+        refreshRoleSessions(sysRole);
+        // 通知各节点角色授权信息已变更
+        authorizationInvalidatePublisher.publishRoleChanged(roleId);
+        sysDirectory.changed();
         return true;
     }
 
+    /**
+     * 事务提交后刷新角色所有登陆会话中的角色信息和权限编码
+     *
+     * @param sysRole
+     * @throws Exception
+     */
+    private void refreshRoleSessions(SysRole sysRole) throws Exception {
+        if (sysRole == null) {
+            return;
+        }
+        Set<String> permissionCodes = sysRolePermissionService.getPermissionCodesByRoleId(sysRole.getId());
+        loginSessionFanout.refreshRoleSessions(sysRole.getId(), sysRole.getName(), sysRole.getCode(), permissionCodes);
+    }
+
 }
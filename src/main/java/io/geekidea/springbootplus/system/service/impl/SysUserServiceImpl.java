@@ -24,16 +24,16 @@ import io.geekidea.springbootplus.framework.common.exception.BusinessException;
 import io.geekidea.springbootplus.framework.pagination.PageUtil;
 import io.geekidea.springbootplus.framework.common.service.impl.BaseServiceImpl;
 import io.geekidea.springbootplus.framework.pagination.Paging;
+import io.geekidea.springbootplus.framework.shiro.cache.AuthorizationInvalidatePublisher;
 import io.geekidea.springbootplus.system.enums.StateEnum;
 import io.geekidea.springbootplus.framework.shiro.util.SaltUtil;
 import io.geekidea.springbootplus.framework.util.PhoneUtil;
+import io.geekidea.springbootplus.system.cache.SysDirectory;
 import io.geekidea.springbootplus.system.entity.SysUser;
 import io.geekidea.springbootplus.system.mapper.SysUserMapper;
 import io.geekidea.springbootplus.system.param.sysuser.ResetPasswordParam;
 import io.geekidea.springbootplus.system.param.sysuser.SysUserPageParam;
 import io.geekidea.springbootplus.system.param.sysuser.UpdatePasswordParam;
-import io.geekidea.springbootplus.system.service.SysDepartmentService;
-import io.geekidea.springbootplus.system.service.SysRoleService;
 import io.geekidea.springbootplus.system.service.SysUserService;
 import io.geekidea.springbootplus.system.vo.SysUserQueryVo;
 import io.geekidea.springbootplus.framework.util.PasswordUtil;
@@ -41,12 +41,12 @@ import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.collections4.CollectionUtils;
 import org.apache.commons.lang3.StringUtils;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.context.annotation.Lazy;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
 import java.io.Serializable;
 import java.util.Date;
+import java.util.Objects;
 
 
 /**
@@ -65,11 +65,10 @@ public class SysUserServiceImpl extends BaseServiceImpl<SysUserMapper, SysUser>
     private SysUserMapper sysUserMapper;
 
     @Autowired
-    private SysDepartmentService sysDepartmentService;
+    private AuthorizationInvalidatePublisher authorizationInvalidatePublisher;
 
-    @Lazy
     @Autowired
-    private SysRoleService sysRoleService;
+    private SysDirectory sysDirectory;
 
     @Transactional(rollbackFor = Exception.class)
     @Override
@@ -116,6 +115,9 @@ public class SysUserServiceImpl extends BaseServiceImpl<SysUserMapper, SysUser>
         if (updateSysUser == null) {
             throw new BusinessException("修改的用户不存在");
         }
+        // 角色或状态变更时，通知各节点用户授权信息已变更
+        boolean authorizationChanged = !Objects.equals(updateSysUser.getRoleId(), sysUser.getRoleId())
+                || !Objects.equals(updateSysUser.getState(), sysUser.getState());
 
         // 修改系统用户
         updateSysUser.setNickname(sysUser.getNickname())
@@ -126,13 +128,23 @@ public class SysUserServiceImpl extends BaseServiceImpl<SysUserMapper, SysUser>
                 .setDepartmentId(sysUser.getDepartmentId())
                 .setRoleId(sysUser.getRoleId())
                 .setUpdateTime(new Date());
-        return super.updateById(updateSysUser);
+        boolean updateResult = super.updateById(updateSysUser);
+        if (updateResult && authorizationChanged) {
+            authorizationInvalidatePublisher.publishUserChanged(updateSysUser.getUsername());
+        }
+        return updateResult;
     }
 
     @Transactional(rollbackFor = Exception.class)
     @Override
     public boolean deleteSysUser(Long id) throws Exception {
-        return super.removeById(id);
+        SysUser sysUser = getById(id);
+        boolean deleteResult = super.removeById(id);
+        if (deleteResult && sysUser != null) {
+            // 通知各节点用户授权信息已变更
+            authorizationInvalidatePublisher.publishUserChanged(sysUser.getUsername());
+        }
+        return deleteResult;
     }
 
     @Override
@@ -163,13 +175,13 @@ public class SysUserServiceImpl extends BaseServiceImpl<SysUserMapper, SysUser>
 
     @Override
     public void checkDepartmentAndRole(Long departmentId, Long roleId) throws Exception {
-        // 校验部门是否存在并且可用
-        boolean isEnableDepartment = sysDepartmentService.isEnableSysDepartment(departmentId);
+        // 校验部门是否存在并且可用，从部门角色目录中获取
+        boolean isEnableDepartment = sysDirectory.isEnableDepartment(departmentId);
         if (!isEnableDepartment) {
             throw new BusinessException("该部门不存在或已禁用");
         }
         // 校验角色是否存在并且可用
-        boolean isEnableRole = sysRoleService.isEnableSysRole(roleId);
+        boolean isEnableRole = sysDirectory.isEnableRole(roleId);
         if (!isEnableRole) {
             throw new BusinessException("该角色不存在或已禁用");
         }
@@ -0,0 +1,74 @@
+/*
+ * Copyright 2019-2029 geekidea(https://github.com/geekidea)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.geekidea.springbootplus.system.service.impl;
+
+import io.geekidea.springbootplus.framework.constant.CommonRedisKey;
+import io.geekidea.springbootplus.framework.core.properties.SpringBootPlusProperties;
+import io.geekidea.springbootplus.framework.util.UUIDUtil;
+import io.geekidea.springbootplus.system.exception.VerificationCodeException;
+import io.geekidea.springbootplus.system.service.VerificationCodeService;
+import org.apache.commons.lang3.StringUtils;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.stereotype.Service;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 验证码服务，验证码缓存到Redis
+ *
+ * @author geekidea
+ * @date 2020-03-30
+ * @since 1.5.0.RELEASE
+ **/
+@Service
+@ConditionalOnProperty(prefix = "spring-boot-plus.verify-code", name = "store", havingValue = "redis", matchIfMissing = true)
+public class VerificationCodeServiceImpl implements VerificationCodeService {
+
+    @Autowired
+    private RedisTemplate redisTemplate;
+
+    @Autowired
+    private SpringBootPlusProperties springBootPlusProperties;
+
+    @Override
+    public String generate(String code) {
+        String verifyToken = UUIDUtil.getUuid();
+        // 缓存到Redis
+        long expireSecond = springBootPlusProperties.getVerifyCode().getExpireSecond();
+        redisTemplate.opsForValue().set(String.format(CommonRedisKey.VERIFY_CODE, verifyToken), code, expireSecond, TimeUnit.SECONDS);
+        return verifyToken;
+    }
+
+    @Override
+    public void check(String verifyToken, String code) throws Exception {
+        // 从redis中获取
+        String redisKey = String.format(CommonRedisKey.VERIFY_CODE, verifyToken);
+        String generateCode = (String) redisTemplate.opsForValue().get(redisKey);
+        if (StringUtils.isBlank(generateCode)) {
+            throw new VerificationCodeException("验证码已过期或不正确");
+        }
+        // 不区分大小写
+        if (!generateCode.equalsIgnoreCase(code)) {
+            throw new VerificationCodeException("验证码错误");
+        }
+        // 验证码校验成功，删除Redis缓存
+        redisTemplate.delete(redisKey);
+    }
+
+}
@@ -0,0 +1,106 @@
+/*
+ * Copyright 2019-2029 geekidea(https://github.com/geekidea)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.geekidea.springbootplus.test;
+
+import io.geekidea.springbootplus.framework.shiro.jwt.JwtRealm;
+import io.geekidea.springbootplus.framework.shiro.permission.BitSetAuthorizationInfo;
+import io.geekidea.springbootplus.framework.shiro.permission.IndexedPermissionResolver;
+import io.geekidea.springbootplus.framework.shiro.permission.PermissionRegistry;
+import org.apache.shiro.authz.AuthorizationInfo;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * 权限位图与WildcardPermission规则一致：持有的编码包含以其为前缀的编码，忽略大小写
+ *
+ * @author geekidea
+ * @date 2020-03-30
+ **/
+public class BitSetAuthorizationInfoTest {
+
+    private PermissionRegistry permissionRegistry;
+
+    private TestJwtRealm jwtRealm;
+
+    @Before
+    public void setUp() {
+        permissionRegistry = new PermissionRegistry();
+        for (String code : Arrays.asList("sys:user:update", "sys:user:update:password", "sys:user:update:head",
+                "sys:user:updates", "sys:user:add")) {
+            permissionRegistry.getId(code);
+        }
+        jwtRealm = new TestJwtRealm();
+        jwtRealm.setPermissionResolver(new IndexedPermissionResolver(permissionRegistry));
+    }
+
+    @Test
+    public void parentCodeGrantsChildCodes() {
+        BitSetAuthorizationInfo info = authorizationInfo("sys:user:update");
+        assertTrue(isPermitted(info, "sys:user:update"));
+        assertTrue(isPermitted(info, "sys:user:update:password"));
+        assertTrue(isPermitted(info, "sys:user:update:head"));
+        // 位图中已设置子权限
+        assertTrue(info.isPermitted(permissionRegistry.getId("sys:user:update:password")));
+        assertFalse(isPermitted(info, "sys:user:updates"));
+        assertFalse(isPermitted(info, "sys:user:add"));
+        assertFalse(isPermitted(info, "sys:user"));
+    }
+
+    @Test
+    public void ignoresCase() {
+        BitSetAuthorizationInfo info = authorizationInfo("SYS:User:Update");
+        assertTrue(isPermitted(info, "sys:user:update"));
+        assertTrue(isPermitted(info, "sys:user:update:head"));
+        assertFalse(isPermitted(info, "sys:user:add"));
+    }
+
+    @Test
+    public void codeRegisteredAfterBitSetFallsBackToWildcardRules() {
+        BitSetAuthorizationInfo info = authorizationInfo("sys:user:update");
+        assertTrue(isPermitted(info, "sys:user:update:avatar"));
+        assertTrue(isPermitted(info, "SYS:USER:UPDATE:NICKNAME"));
+        assertFalse(isPermitted(info, "sys:user:delete"));
+    }
+
+    private BitSetAuthorizationInfo authorizationInfo(String... codes) {
+        return new BitSetAuthorizationInfo(Collections.singleton("admin"), new HashSet<>(Arrays.asList(codes)),
+                permissionRegistry);
+    }
+
+    private boolean isPermitted(AuthorizationInfo info, String code) {
+        return jwtRealm.isPermitted(code, info);
+    }
+
+    private static class TestJwtRealm extends JwtRealm {
+
+        private TestJwtRealm() {
+            super(null);
+        }
+
+        private boolean isPermitted(String code, AuthorizationInfo info) {
+            return isPermitted(getPermissionResolver().resolvePermission(code), info);
+        }
+    }
+
+}
@@ -0,0 +1,233 @@
+/*
+ * Copyright 2019-2029 geekidea(https://github.com/geekidea)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.geekidea.springbootplus.test;
+
+import io.geekidea.springbootplus.framework.cache.TwoLevelCacheManager;
+import io.geekidea.springbootplus.framework.core.properties.SpringBootPlusCacheProperties;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.cache.Cache;
+import org.springframework.data.redis.cache.RedisCacheConfiguration;
+import org.springframework.data.redis.cache.RedisCacheManager;
+import org.springframework.data.redis.connection.RedisStandaloneConfiguration;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.data.redis.serializer.GenericJackson2JsonRedisSerializer;
+import org.springframework.data.redis.serializer.StringRedisSerializer;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 热点缓存过期时的数据库加载次数对比，需要可以访问的Redis，main方法参数：host port，默认localhost 6379
+ * 两个缓存管理器模拟两个节点，每个节点THREADS个线程在缓存过期后同时读取同一个key，加载耗时LOAD_MILLIS
+ * plain：@Cacheable未命中后各自加载并写入缓存
+ * sync：@Cacheable(sync = true)，节点内单线程加载，节点间加载锁
+ * stale：@Cacheable(sync = true)，陈旧值时间内返回旧值并后台刷新
+ * 每次调用为一次过期后的并发读取，耗时为最后一个线程返回的时间，loads为所有线程返回前开始的加载次数
+ *
+ * @author geekidea
+ * @date 2020-03-30
+ **/
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 1)
+@Measurement(iterations = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class CacheStampedeBenchmark {
+
+    private static final int THREADS = 50;
+
+    private static final long LOAD_MILLIS = 200;
+
+    private static final String KEY = "io.geekidea.springbootplus.system.service.impl.SysUserServiceImpl-getById-[1]";
+
+    private static final AtomicInteger LOAD_COUNT = new AtomicInteger();
+
+    @Param({"plain", "sync", "stale"})
+    private String mode;
+
+    @Param({"localhost"})
+    private String host;
+
+    @Param({"6379"})
+    private int port;
+
+    private LettuceConnectionFactory connectionFactory;
+
+    private RedisMessageListenerContainer container;
+
+    private TwoLevelCacheManager node1;
+
+    private TwoLevelCacheManager node2;
+
+    private Cache cache1;
+
+    private Cache cache2;
+
+    private ExecutorService executorService;
+
+    @Setup
+    public void setup() {
+        connectionFactory = new LettuceConnectionFactory(new RedisStandaloneConfiguration(host, port));
+        connectionFactory.afterPropertiesSet();
+
+        RedisTemplate<Object, Object> redisTemplate = new RedisTemplate<>();
+        redisTemplate.setConnectionFactory(connectionFactory);
+        redisTemplate.setKeySerializer(new StringRedisSerializer());
+        redisTemplate.setValueSerializer(new GenericJackson2JsonRedisSerializer());
+        redisTemplate.afterPropertiesSet();
+
+        container = new RedisMessageListenerContainer();
+        container.setConnectionFactory(connectionFactory);
+        container.afterPropertiesSet();
+        container.start();
+
+        // 逻辑有效时间1秒，stale模式陈旧值时间5秒
+        boolean stale = "stale".equals(mode);
+        SpringBootPlusCacheProperties cacheProperties = new SpringBootPlusCacheProperties();
+        cacheProperties.getDefaultConfig()
+                .setLocalEnable(false)
+                .setExpireSecond(1L)
+                .setStaleSecond(stale ? 5L : 0L);
+        long ttlSecond = stale ? 6 : 1;
+        node1 = new TwoLevelCacheManager(redisCacheManager(connectionFactory, ttlSecond), redisTemplate, container, cacheProperties);
+        node2 = new TwoLevelCacheManager(redisCacheManager(connectionFactory, ttlSecond), redisTemplate, container, cacheProperties);
+        cache1 = node1.getCache("stampede-" + mode);
+        cache2 = node2.getCache("stampede-" + mode);
+        executorService = Executors.newFixedThreadPool(THREADS * 2);
+    }
+
+    /**
+     * 写入缓存并等待逻辑过期
+     */
+    @Setup(Level.Iteration)
+    public void expire() throws Exception {
+        cache1.clear();
+        cache1.get(KEY, CacheStampedeBenchmark::load);
+        Thread.sleep(1100);
+        LOAD_COUNT.set(0);
+    }
+
+    /**
+     * 等待后台刷新完成
+     */
+    @TearDown(Level.Iteration)
+    public void awaitRefresh() throws Exception {
+        Thread.sleep(LOAD_MILLIS * 2);
+    }
+
+    @TearDown
+    public void tearDown() throws Exception {
+        cache1.clear();
+        executorService.shutdownNow();
+        container.stop();
+        node1.destroy();
+        node2.destroy();
+        connectionFactory.destroy();
+    }
+
+    @Benchmark
+    public void stampede(Loads loads) throws Exception {
+        boolean sync = !"plain".equals(mode);
+        CountDownLatch startLatch = new CountDownLatch(1);
+        List<Future<?>> futures = new ArrayList<>();
+        for (int i = 0; i < THREADS * 2; i++) {
+            Cache cache = i % 2 == 0 ? cache1 : cache2;
+            futures.add(executorService.submit(() -> {
+                startLatch.await();
+                if (sync) {
+                    cache.get(KEY, CacheStampedeBenchmark::load);
+                } else if (cache.get(KEY) == null) {
+                    cache.put(KEY, load());
+                }
+                return null;
+            }));
+        }
+        startLatch.countDown();
+        for (Future<?> future : futures) {
+            future.get();
+        }
+        loads.loads += LOAD_COUNT.get();
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        ChainedOptionsBuilder optionsBuilder = new OptionsBuilder().include(CacheStampedeBenchmark.class.getSimpleName());
+        if (args.length > 0) {
+            optionsBuilder.param("host", args[0]);
+        }
+        if (args.length > 1) {
+            optionsBuilder.param("port", args[1]);
+        }
+        new Runner(optionsBuilder.build()).run();
+    }
+
+    /**
+     * 加载次数
+     */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class Loads {
+
+        public long loads;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            loads = 0;
+        }
+
+    }
+
+    private static String load() throws InterruptedException {
+        LOAD_COUNT.incrementAndGet();
+        Thread.sleep(LOAD_MILLIS);
+        return "user1";
+    }
+
+    private static RedisCacheManager redisCacheManager(LettuceConnectionFactory connectionFactory, long ttlSecond) {
+        RedisCacheManager redisCacheManager = RedisCacheManager.builder(connectionFactory)
+                .cacheDefaults(RedisCacheConfiguration.defaultCacheConfig().entryTtl(Duration.ofSeconds(ttlSecond)))
+                .build();
+        redisCacheManager.afterPropertiesSet();
+        return redisCacheManager;
+    }
+}
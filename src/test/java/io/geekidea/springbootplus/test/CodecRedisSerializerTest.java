@@ -0,0 +1,149 @@
+/*
+ * Copyright 2019-2029 geekidea(https://github.com/geekidea)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.geekidea.springbootplus.test;
+
+import io.geekidea.springbootplus.framework.redis.codec.CodecRedisSerializer;
+import io.geekidea.springbootplus.framework.redis.codec.RedisClassRegistry;
+import io.geekidea.springbootplus.framework.redis.codec.RedisValueCodec;
+import io.geekidea.springbootplus.framework.redis.codec.SmileRedisValueCodec;
+import io.geekidea.springbootplus.framework.shiro.vo.JwtTokenRedisVo;
+import io.geekidea.springbootplus.framework.shiro.vo.LoginSysUserVo;
+import org.junit.Test;
+import org.springframework.cache.support.NullValue;
+import org.springframework.data.redis.serializer.GenericJackson2JsonRedisSerializer;
+import org.springframework.data.redis.serializer.JdkSerializationRedisSerializer;
+
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * CodecRedisSerializer的smile和json编码，及读取原格式写入的值
+ *
+ * @author geekidea
+ * @date 2020-03-30
+ **/
+public class CodecRedisSerializerTest {
+
+    private static final int COMPRESS_THRESHOLD = 256;
+
+    private final List<RedisValueCodec> codecs = Collections.singletonList(new SmileRedisValueCodec(RedisClassRegistry.defaults()));
+
+    private final CodecRedisSerializer smileSerializer = new CodecRedisSerializer(codecs, SmileRedisValueCodec.NAME, COMPRESS_THRESHOLD);
+
+    private final CodecRedisSerializer jsonSerializer = new CodecRedisSerializer(codecs, CodecRedisSerializer.JSON_CODEC_NAME, COMPRESS_THRESHOLD);
+
+    private final GenericJackson2JsonRedisSerializer legacySerializer = new GenericJackson2JsonRedisSerializer();
+
+    @Test
+    public void smileRoundTrip() {
+        JwtTokenRedisVo jwtTokenRedisVo = jwtToken();
+        byte[] bytes = smileSerializer.serialize(jwtTokenRedisVo);
+        assertEquals((byte) 0xFE, bytes[0]);
+        assertEquals(SmileRedisValueCodec.ID, bytes[1]);
+        assertEquals(jwtTokenRedisVo, smileSerializer.deserialize(bytes));
+        assertTrue(bytes.length < legacySerializer.serialize(jwtTokenRedisVo).length);
+    }
+
+    @Test
+    public void compressesLargeValues() {
+        LoginSysUserVo loginSysUserVo = loginSysUser(100);
+        byte[] bytes = smileSerializer.serialize(loginSysUserVo);
+        assertEquals(1, bytes[2]);
+        assertEquals(loginSysUserVo, smileSerializer.deserialize(bytes));
+        assertEquals(loginSysUserVo, jsonSerializer.deserialize(bytes));
+    }
+
+    @Test
+    public void jsonCodecWritesLegacyFormat() {
+        JwtTokenRedisVo jwtTokenRedisVo = jwtToken();
+        byte[] bytes = jsonSerializer.serialize(jwtTokenRedisVo);
+        assertArrayEquals(legacySerializer.serialize(jwtTokenRedisVo), bytes);
+        assertEquals(jwtTokenRedisVo, jsonSerializer.deserialize(bytes));
+        // 从json切换为smile，或从smile切回json，都能读取另一种格式
+        assertEquals(jwtTokenRedisVo, smileSerializer.deserialize(bytes));
+        assertEquals(jwtTokenRedisVo, jsonSerializer.deserialize(smileSerializer.serialize(jwtTokenRedisVo)));
+    }
+
+    @Test
+    public void readsLegacyJsonAndJdkValues() {
+        LoginSysUserVo loginSysUserVo = loginSysUser(3);
+        assertEquals(loginSysUserVo, smileSerializer.deserialize(legacySerializer.serialize(loginSysUserVo)));
+        byte[] jdkBytes = new JdkSerializationRedisSerializer().serialize(loginSysUserVo);
+        assertEquals(loginSysUserVo, smileSerializer.deserialize(jdkBytes));
+    }
+
+    @Test
+    public void scalarsStayJson() {
+        assertArrayEquals(legacySerializer.serialize("admin"), smileSerializer.serialize("admin"));
+        assertArrayEquals(legacySerializer.serialize(1L), smileSerializer.serialize(1L));
+        assertEquals("admin", smileSerializer.deserialize(smileSerializer.serialize("admin")));
+    }
+
+    @Test
+    public void handlesNull() {
+        assertEquals(0, smileSerializer.serialize(null).length);
+        assertNull(smileSerializer.deserialize(new byte[0]));
+        assertNull(smileSerializer.deserialize(null));
+        assertSame(NullValue.INSTANCE, smileSerializer.deserialize(smileSerializer.serialize(NullValue.INSTANCE)));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsUnknownCodec() {
+        new CodecRedisSerializer(codecs, "kryo", COMPRESS_THRESHOLD);
+    }
+
+    private static JwtTokenRedisVo jwtToken() {
+        Date now = new Date();
+        return new JwtTokenRedisVo()
+                .setHost("192.168.1.100")
+                .setUsername("admin")
+                .setSalt("b3b1b4c5a2e94f5d8f0e3c2a1d0b9e8f")
+                .setToken("eyJ0eXAiOiJKV1QiLCJhbGciOiJIUzI1NiJ9.eyJ1c2VybmFtZSI6ImFkbWluIn0.signature")
+                .setCreateDate(now)
+                .setExpireSecond(3600)
+                .setExpireDate(new Date(now.getTime() + 3600000));
+    }
+
+    private static LoginSysUserVo loginSysUser(int permissions) {
+        Set<String> permissionCodes = new HashSet<>();
+        for (int i = 0; i < permissions; i++) {
+            permissionCodes.add("sys:module" + i + ":page");
+        }
+        return new LoginSysUserVo()
+                .setId(1L)
+                .setUsername("admin")
+                .setNickname("管理员")
+                .setGender(1)
+                .setState(1)
+                .setDepartmentId(1L)
+                .setDepartmentName("管理部")
+                .setRoleId(1L)
+                .setRoleName("管理员")
+                .setRoleCode("admin")
+                .setPermissionCodes(permissionCodes);
+    }
+
+}
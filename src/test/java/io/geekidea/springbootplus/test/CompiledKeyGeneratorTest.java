@@ -0,0 +1,155 @@
+/*
+ * Copyright 2019-2029 geekidea(https://github.com/geekidea)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.geekidea.springbootplus.test;
+
+import io.geekidea.springbootplus.framework.cache.CompiledKeyGenerator;
+import org.junit.Test;
+
+import java.lang.reflect.Method;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * CompiledKeyGenerator key格式
+ *
+ * @author geekidea
+ * @date 2020-03-30
+ **/
+public class CompiledKeyGeneratorTest {
+
+    private static final String PREFIX = SampleService.class.getName();
+
+    private final CompiledKeyGenerator keyGenerator = new CompiledKeyGenerator(0);
+
+    private final SampleService target = new SampleService();
+
+    @Test
+    public void prefixUsesQualifiedClassNameAndSignature() throws Exception {
+        assertEquals(PREFIX + ".getById(java.lang.Long):1", generate("getById", new Class[]{Long.class}, 1L));
+        assertEquals(PREFIX + ".list()", generate("list", new Class[0]));
+        assertEquals(PREFIX + ".getByIds(long[]):[1,2]", generate("getByIds", new Class[]{long[].class}, (Object) new long[]{1, 2}));
+    }
+
+    @Test
+    public void overloadsHaveDistinctKeys() throws Exception {
+        String single = (String) generate("find", new Class[]{String.class}, "admin");
+        String pair = (String) generate("find", new Class[]{String.class, Integer.class}, "admin", null);
+        assertEquals(PREFIX + ".find(java.lang.String):admin", single);
+        assertEquals(PREFIX + ".find(java.lang.String,java.lang.Integer):admin,~", pair);
+        assertNotEquals(single, pair);
+    }
+
+    @Test
+    public void escapesSeparators() throws Exception {
+        assertEquals(PREFIX + ".find(java.lang.String,java.lang.Integer):a\\,b\\~\\(c\\)\\[d\\]\\{e\\}\\=\\\\,1",
+                generate("find", new Class[]{String.class, Integer.class}, "a,b~(c)[d]{e}=\\", 1));
+        // 字符串"~"转义后与null不会生成相同的key
+        assertNotEquals(generate("find", new Class[]{String.class, Integer.class}, "~", null),
+                generate("find", new Class[]{String.class, Integer.class}, null, null));
+    }
+
+    @Test
+    public void encodesNullAndRuntimeTypes() throws Exception {
+        Class[] types = {Object.class};
+        assertEquals(PREFIX + ".query(java.lang.Object):~", generate("query", types, (Object) null));
+        assertEquals(PREFIX + ".query(java.lang.Object):[a,~]", generate("query", types, Arrays.asList("a", null)));
+        assertEquals(PREFIX + ".query(java.lang.Object):{k=v}", generate("query", types, Collections.singletonMap("k", "v")));
+        assertEquals(PREFIX + ".query(java.lang.Object):SECONDS", generate("query", types, TimeUnit.SECONDS));
+        assertEquals(PREFIX + ".query(java.lang.Object):(1,~,x)", generate("query", types, new SampleParam(1, null, "x")));
+    }
+
+    @Test
+    public void hashesLongArguments() throws Exception {
+        CompiledKeyGenerator hashedKeyGenerator = new CompiledKeyGenerator(16);
+        Method method = SampleService.class.getMethod("find", String.class);
+        String key = (String) hashedKeyGenerator.generate(target, method, "a-very-long-username");
+        assertTrue(key, key.startsWith(PREFIX + ".find(java.lang.String):#"));
+        assertEquals(key, hashedKeyGenerator.generate(target, method, "a-very-long-username"));
+    }
+
+    @Test
+    public void rejectsNestingBeyondMaxDepth() throws Exception {
+        SampleNode node = new SampleNode();
+        node.next = node;
+        try {
+            generate("query", new Class[]{Object.class}, node);
+            fail();
+        } catch (IllegalArgumentException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains(SampleNode.class.getName()));
+        }
+    }
+
+    private Object generate(String name, Class[] types, Object... params) throws NoSuchMethodException {
+        return keyGenerator.generate(target, SampleService.class.getMethod(name, types), params);
+    }
+
+    public static class SampleService {
+
+        public Object getById(Long id) {
+            return null;
+        }
+
+        public Object getByIds(long[] ids) {
+            return null;
+        }
+
+        public Object list() {
+            return null;
+        }
+
+        public Object find(String username) {
+            return null;
+        }
+
+        public Object find(String username, Integer state) {
+            return null;
+        }
+
+        public Object query(Object param) {
+            return null;
+        }
+
+    }
+
+    public static class SampleParam {
+
+        private final int a;
+
+        private final String b;
+
+        private final String c;
+
+        public SampleParam(int a, String b, String c) {
+            this.a = a;
+            this.b = b;
+            this.c = c;
+        }
+    }
+
+    public static class SampleNode {
+
+        private SampleNode next;
+
+    }
+
+}
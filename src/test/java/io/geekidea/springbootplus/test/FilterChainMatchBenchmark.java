@@ -0,0 +1,121 @@
+/*
+ * Copyright 2019-2029 geekidea(https://github.com/geekidea)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.geekidea.springbootplus.test;
+
+import io.geekidea.springbootplus.framework.shiro.filter.FilterChainPathTrie;
+import org.apache.shiro.util.AntPathMatcher;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 过滤器链路径匹配对比
+ * 原流程：按顺序逐个使用AntPathMatcher匹配
+ * 新流程：FilterChainPathTrie按路径段查找候选规则，再确认第一个匹配的规则
+ * 只统计路径匹配，anon规则跳过代理过滤器链的收益不在此统计
+ *
+ * @author geekidea
+ * @date 2020-03-28
+ **/
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class FilterChainMatchBenchmark {
+
+    @Param({"/module30/entity30/info/12", "/module3/entity3/getPageList", "/static/js/app.js", "/upload/avatar", "/not/configured/path"})
+    private String path;
+
+    private List<String> patterns;
+
+    private AntPathMatcher pathMatcher;
+
+    private FilterChainPathTrie trie;
+
+    @Setup
+    public void setup() {
+        patterns = patterns();
+        pathMatcher = new AntPathMatcher();
+        trie = new FilterChainPathTrie();
+        for (String pattern : patterns) {
+            trie.add(pattern);
+        }
+    }
+
+    @Benchmark
+    public String ant() {
+        for (String pattern : patterns) {
+            if (pathMatcher.matches(pattern, path)) {
+                return pattern;
+            }
+        }
+        return null;
+    }
+
+    @Benchmark
+    public String compiled() {
+        return trie.match(path);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        System.out.println("patterns: " + patterns().size());
+        new Runner(new OptionsBuilder().include(FilterChainMatchBenchmark.class.getSimpleName()).build()).run();
+    }
+
+    private static List<String> patterns() {
+        List<String> patterns = new ArrayList<>();
+        // 静态资源及文档
+        patterns.add("/static/**");
+        patterns.add("/templates/**");
+        patterns.add("/swagger-resources/**");
+        patterns.add("/webjars/**");
+        patterns.add("/v2/api-docs");
+        patterns.add("/doc.html");
+        patterns.add("/actuator/**");
+        patterns.add("/login");
+        patterns.add("/logout");
+        patterns.add("/verificationCode/**");
+        // 业务模块接口
+        String[] actions = {"add", "update", "delete", "info/*", "getPageList", "getList", "export", "import"};
+        for (int i = 0; i < 36; i++) {
+            for (String action : actions) {
+                patterns.add("/module" + i + "/entity" + i + "/" + action);
+            }
+        }
+        patterns.add("/resource/**");
+        patterns.add("/upload/**");
+        patterns.add("/**");
+        return patterns;
+    }
+}
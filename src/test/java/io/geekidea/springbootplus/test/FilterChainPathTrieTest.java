@@ -0,0 +1,143 @@
+/*
+ * Copyright 2019-2029 geekidea(https://github.com/geekidea)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.geekidea.springbootplus.test;
+
+import io.geekidea.springbootplus.framework.shiro.filter.CompiledFilterChainResolver;
+import io.geekidea.springbootplus.framework.shiro.filter.FilterChainPathTrie;
+import org.apache.shiro.util.AntPathMatcher;
+import org.apache.shiro.web.filter.mgt.DefaultFilterChainManager;
+import org.junit.Test;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import javax.servlet.Filter;
+import javax.servlet.FilterChain;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.mockito.Mockito.mock;
+
+/**
+ * FilterChainPathTrie匹配结果与按顺序逐个使用AntPathMatcher匹配一致
+ *
+ * @author geekidea
+ * @date 2020-03-30
+ **/
+public class FilterChainPathTrieTest {
+
+    private static final List<String> PATTERNS = Arrays.asList(
+            "/static/**",
+            "/doc.html",
+            "/v2/api-docs",
+            "/login",
+            "/login/",
+            "/user/info/*",
+            "/user/*/detail",
+            "/user/**/export",
+            "/user/get?ist",
+            "/**/*.js",
+            "/api/v*/order/**",
+            "/api/**",
+            "/upload/**/*.png",
+            "/*/admin"
+    );
+
+    private static final List<String> PATHS = Arrays.asList(
+            "/static",
+            "/static/js/app.js",
+            "/doc.html",
+            "/doc.htm",
+            "/v2/api-docs",
+            "/login",
+            "/login/",
+            "/login/extra",
+            "/user/info/12",
+            "/user/info/12/13",
+            "/user/12/detail",
+            "/user/export",
+            "/user/a/b/c/export",
+            "/user/getList",
+            "/user/getPageList",
+            "/module/js/app.js",
+            "/app.js",
+            "/api/v1/order/1",
+            "/api/v1/pay/1",
+            "/api",
+            "/upload/a/b/avatar.png",
+            "/upload/avatar.png",
+            "/upload/avatar.jpg",
+            "/system/admin",
+            "/system/sub/admin",
+            "//login",
+            "/user//info/12",
+            "/",
+            ""
+    );
+
+    @Test
+    public void matchesLikeAntPathMatcher() {
+        AntPathMatcher pathMatcher = new AntPathMatcher();
+        FilterChainPathTrie trie = new FilterChainPathTrie(pathMatcher);
+        for (String pattern : PATTERNS) {
+            trie.add(pattern);
+        }
+        for (String path : PATHS) {
+            assertEquals(path, antMatch(pathMatcher, path), trie.match(path));
+        }
+    }
+
+    @Test
+    public void firstMatchingPatternWins() {
+        FilterChainPathTrie trie = new FilterChainPathTrie();
+        trie.add("/**");
+        trie.add("/login");
+        assertEquals("/**", trie.match("/login"));
+        assertNull(trie.match(null));
+    }
+
+    @Test
+    public void anonChainWithPathFilterReturnsOriginalChain() {
+        DefaultFilterChainManager filterChainManager = new DefaultFilterChainManager();
+        filterChainManager.addFilter("path", mock(Filter.class));
+        filterChainManager.createChain("/login", "path,anon");
+        filterChainManager.createChain("/**", "path,authc");
+        FilterChain originalChain = mock(FilterChain.class);
+        MockHttpServletResponse response = new MockHttpServletResponse();
+
+        CompiledFilterChainResolver resolver = new CompiledFilterChainResolver(filterChainManager, Collections.singleton("path"));
+        assertSame(originalChain, resolver.getChain(new MockHttpServletRequest("POST", "/login"), response, originalChain));
+        assertNotSame(originalChain, resolver.getChain(new MockHttpServletRequest("GET", "/user/info/1"), response, originalChain));
+
+        // 不忽略path过滤器时，path,anon规则仍然创建代理过滤器链
+        resolver = new CompiledFilterChainResolver(filterChainManager);
+        assertNotSame(originalChain, resolver.getChain(new MockHttpServletRequest("POST", "/login"), response, originalChain));
+    }
+
+    private static String antMatch(AntPathMatcher pathMatcher, String path) {
+        for (String pattern : PATTERNS) {
+            if (pathMatcher.matches(pattern, path)) {
+                return pattern;
+            }
+        }
+        return null;
+    }
+}
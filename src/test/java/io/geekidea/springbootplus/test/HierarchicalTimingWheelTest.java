@@ -0,0 +1,125 @@
+/*
+ * Copyright 2019-2029 geekidea(https://github.com/geekidea)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.geekidea.springbootplus.test;
+
+import io.geekidea.springbootplus.framework.shiro.cache.HierarchicalTimingWheel;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * HierarchicalTimingWheel到期时间及上层格子重新分配
+ * 任务在到期时间所在第0层格子结束时触发，即到期时间之后的一个tick内
+ *
+ * @author geekidea
+ * @date 2020-03-30
+ **/
+public class HierarchicalTimingWheelTest {
+
+    private static final long TICK = 10;
+
+    private static final int WHEEL_SIZE = 4;
+
+    @Test
+    public void firesAtEndOfTick() {
+        List<String> expired = new ArrayList<>();
+        HierarchicalTimingWheel<String> wheel = new HierarchicalTimingWheel<>(TICK, WHEEL_SIZE, 0, (key, expireTime) -> expired.add(key));
+        wheel.add("a", 25);
+        assertEquals(1, wheel.size());
+
+        wheel.advance(29);
+        assertTrue(expired.isEmpty());
+        wheel.advance(30);
+        assertEquals(1, expired.size());
+        assertEquals(0, wheel.size());
+    }
+
+    @Test
+    public void cascadesFromUpperLevels() {
+        // 第0层40ms，第1层160ms，第2层640ms，1000ms放入第3层，逐层分配后在1010ms触发
+        Map<String, Long> fired = new HashMap<>();
+        long[] now = new long[1];
+        HierarchicalTimingWheel<String> wheel = new HierarchicalTimingWheel<>(TICK, WHEEL_SIZE, 0, (key, expireTime) -> fired.put(key, now[0]));
+        wheel.add("a", 1000);
+        wheel.add("b", 159);
+        wheel.add("c", 160);
+        for (now[0] = 1; now[0] <= 2000; now[0]++) {
+            wheel.advance(now[0]);
+        }
+        assertEquals(Long.valueOf(1010), fired.get("a"));
+        assertEquals(Long.valueOf(160), fired.get("b"));
+        assertEquals(Long.valueOf(170), fired.get("c"));
+        assertEquals(0, wheel.size());
+    }
+
+    @Test
+    public void neverFiresEarlyOrLate() {
+        Random random = new Random(1);
+        long startTime = 12345;
+        Map<Integer, Long> expireTimes = new HashMap<>();
+        Map<Integer, long[]> fired = new HashMap<>();
+        long[] window = new long[2];
+        HierarchicalTimingWheel<Integer> wheel = new HierarchicalTimingWheel<>(TICK, WHEEL_SIZE, startTime,
+                (key, expireTime) -> fired.put(key, new long[]{window[0], window[1]}));
+        for (int i = 0; i < 2000; i++) {
+            long expireTime = startTime + random.nextInt(5000);
+            expireTimes.put(i, expireTime);
+            wheel.add(i, expireTime);
+        }
+        // 随机步长推进，记录每次推进的时间区间(上次推进时间, 本次推进时间]
+        long previous = startTime;
+        while (previous < startTime + 6000) {
+            long now = previous + 1 + random.nextInt(3 * (int) TICK);
+            window[0] = previous;
+            window[1] = now;
+            wheel.advance(now);
+            previous = now;
+        }
+        assertEquals(expireTimes.size(), fired.size());
+        for (Map.Entry<Integer, Long> entry : expireTimes.entrySet()) {
+            long deadline = entry.getValue() - entry.getValue() % TICK + TICK;
+            long[] firedWindow = fired.get(entry.getKey());
+            assertTrue(entry.getKey() + " fired early", firedWindow[1] >= deadline);
+            assertTrue(entry.getKey() + " fired late", firedWindow[0] < deadline);
+        }
+        assertEquals(0, wheel.size());
+    }
+
+    @Test
+    public void firesImmediatelyWhenAlreadyExpired() {
+        List<Long> expired = new ArrayList<>();
+        HierarchicalTimingWheel<String> wheel = new HierarchicalTimingWheel<>(TICK, WHEEL_SIZE, 100, (key, expireTime) -> expired.add(expireTime));
+        wheel.add("a", 99);
+        assertEquals(1, expired.size());
+        assertEquals(Long.valueOf(99), expired.get(0));
+        assertEquals(0, wheel.size());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsInvalidTick() {
+        new HierarchicalTimingWheel<String>(0, WHEEL_SIZE, 0, (key, expireTime) -> {
+        });
+    }
+
+}
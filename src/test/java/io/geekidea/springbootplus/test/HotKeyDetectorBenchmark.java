@@ -0,0 +1,169 @@
+/*
+ * Copyright 2019-2029 geekidea(https://github.com/geekidea)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.geekidea.springbootplus.test;
+
+import io.geekidea.springbootplus.framework.core.properties.SpringBootPlusHotKeyProperties;
+import io.geekidea.springbootplus.framework.redis.hotkey.HotKeyDetector;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.Collections;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 热点key检测效果，不需要Redis
+ * 10万个key按Zipf分布读取，main方法先统计Redis读取次数和热点key本地副本命中次数，
+ * 再运行JMH统计每次读取经过HotKeyDetector的额外耗时，读取Redis使用直接返回key代替
+ *
+ * @author geekidea
+ * @date 2020-03-30
+ **/
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class HotKeyDetectorBenchmark {
+
+    private static final String KEY_PREFIX = "sys:dictionary:";
+
+    private static final int KEYS = 100000;
+
+    private static final int READS_PER_WINDOW = 200000;
+
+    private static final int WINDOWS = 10;
+
+    private static final double ZIPF_EXPONENT = 1.1;
+
+    private HotKeyDetector hotKeyDetector;
+
+    private String[] keys;
+
+    private double[] cumulative;
+
+    private Random random;
+
+    @Setup
+    public void setup() {
+        hotKeyDetector = hotKeyDetector();
+        keys = new String[KEYS];
+        for (int i = 0; i < KEYS; i++) {
+            keys[i] = key(i);
+        }
+        cumulative = zipf();
+        random = new Random(1);
+    }
+
+    /**
+     * 每次迭代1秒，与默认统计窗口一致
+     */
+    @Setup(Level.Iteration)
+    public void rotate() {
+        hotKeyDetector.rotate();
+    }
+
+    @Benchmark
+    public Object direct() {
+        return keys[sample(cumulative, random.nextDouble())];
+    }
+
+    @Benchmark
+    public Object detector() {
+        String key = keys[sample(cumulative, random.nextDouble())];
+        return hotKeyDetector.get(key, () -> key);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        HotKeyDetector hotKeyDetector = hotKeyDetector();
+        double[] cumulative = zipf();
+        Random random = new Random(1);
+        LongAdder redisReads = new LongAdder();
+        for (int window = 0; window < WINDOWS; window++) {
+            for (int i = 0; i < READS_PER_WINDOW; i++) {
+                String key = key(sample(cumulative, random.nextDouble()));
+                hotKeyDetector.get(key, () -> {
+                    redisReads.increment();
+                    return key;
+                });
+            }
+            hotKeyDetector.rotate();
+        }
+
+        long reads = (long) READS_PER_WINDOW * WINDOWS;
+        System.out.println("reads:        " + reads);
+        System.out.println("redis reads:  " + redisReads.sum());
+        System.out.println("replica hits: " + hotKeyDetector.getReplicaHitCount()
+                + " (" + hotKeyDetector.getReplicaHitCount() * 100 / reads + "%)");
+        for (HotKeyDetector.HotKey hotKey : hotKeyDetector.getHotKeys()) {
+            System.out.println(hotKey.getKey() + " " + hotKey.getCount() + " " + hotKey.getReplicaHits());
+        }
+        new Runner(new OptionsBuilder().include(HotKeyDetectorBenchmark.class.getSimpleName()).build()).run();
+    }
+
+    private static HotKeyDetector hotKeyDetector() {
+        SpringBootPlusHotKeyProperties hotKeyProperties = new SpringBootPlusHotKeyProperties();
+        hotKeyProperties.setKeyPrefixes(Collections.singletonList(KEY_PREFIX));
+        return new HotKeyDetector(hotKeyProperties);
+    }
+
+    private static double[] zipf() {
+        double[] cumulative = new double[KEYS];
+        double sum = 0;
+        for (int i = 0; i < KEYS; i++) {
+            sum += 1 / Math.pow(i + 1, ZIPF_EXPONENT);
+            cumulative[i] = sum;
+        }
+        for (int i = 0; i < KEYS; i++) {
+            cumulative[i] /= sum;
+        }
+        return cumulative;
+    }
+
+    private static int sample(double[] cumulative, double value) {
+        int low = 0;
+        int high = cumulative.length - 1;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (cumulative[mid] < value) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    private static String key(int i) {
+        return KEY_PREFIX + i;
+    }
+
+}
@@ -0,0 +1,167 @@
+/*
+ * Copyright 2019-2029 geekidea(https://github.com/geekidea)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.geekidea.springbootplus.test;
+
+import io.geekidea.springbootplus.framework.core.properties.SpringBootPlusHotKeyProperties;
+import io.geekidea.springbootplus.framework.redis.hotkey.CountMinSketch;
+import io.geekidea.springbootplus.framework.redis.hotkey.HotKeyDetector;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * CountMinSketch计数及HotKeyDetector热点阈值、topK和本地副本
+ *
+ * @author geekidea
+ * @date 2020-03-30
+ **/
+public class HotKeyDetectorTest {
+
+    private static final String KEY_PREFIX = "sys:dictionary:";
+
+    @Test
+    public void sketchNeverUnderestimates() {
+        CountMinSketch sketch = new CountMinSketch(4, 64);
+        for (int i = 0; i < 1000; i++) {
+            sketch.add(KEY_PREFIX + i);
+        }
+        for (int i = 0; i < 500; i++) {
+            sketch.add("hot");
+        }
+        for (int i = 0; i < 1000; i++) {
+            assertTrue(sketch.estimate(KEY_PREFIX + i) >= 1);
+        }
+        assertTrue(sketch.estimate("hot") >= 500);
+        assertEquals(sketch.estimate("hot") + 1, sketch.add("hot"));
+
+        sketch.reset();
+        assertEquals(0, sketch.estimate("hot"));
+        assertEquals(1, sketch.add("hot"));
+    }
+
+    @Test
+    public void promotesAtThresholdAndServesReplica() {
+        HotKeyDetector hotKeyDetector = hotKeyDetector(3, 2);
+        AtomicInteger redisReads = new AtomicInteger();
+        String key = KEY_PREFIX + 1;
+
+        read(hotKeyDetector, key, redisReads);
+        read(hotKeyDetector, key, redisReads);
+        assertTrue(hotKeyDetector.getHotKeys().isEmpty());
+        // 第3次读取达到阈值，晋升后读取Redis并复制
+        read(hotKeyDetector, key, redisReads);
+        assertEquals(Collections.singletonList(key), hotKeys(hotKeyDetector));
+        assertEquals(3, redisReads.get());
+
+        read(hotKeyDetector, key, redisReads);
+        assertEquals(3, redisReads.get());
+        assertEquals(1, hotKeyDetector.getReplicaHitCount());
+
+        // 本节点写入后重新读取Redis
+        hotKeyDetector.invalidate(key);
+        read(hotKeyDetector, key, redisReads);
+        assertEquals(4, redisReads.get());
+    }
+
+    @Test
+    public void ignoresKeysOutsidePrefixes() {
+        HotKeyDetector hotKeyDetector = hotKeyDetector(3, 2);
+        AtomicInteger redisReads = new AtomicInteger();
+        for (int i = 0; i < 10; i++) {
+            read(hotKeyDetector, "login:refresh:1", redisReads);
+        }
+        assertTrue(hotKeyDetector.getHotKeys().isEmpty());
+        assertEquals(10, redisReads.get());
+    }
+
+    @Test
+    public void doesNotReplicateNull() {
+        HotKeyDetector hotKeyDetector = hotKeyDetector(1, 2);
+        AtomicInteger redisReads = new AtomicInteger();
+        for (int i = 0; i < 3; i++) {
+            hotKeyDetector.get(KEY_PREFIX + 1, () -> {
+                redisReads.incrementAndGet();
+                return null;
+            });
+        }
+        assertEquals(3, redisReads.get());
+        assertEquals(0, hotKeyDetector.getReplicaHitCount());
+    }
+
+    @Test
+    public void rotateKeepsTopK() {
+        HotKeyDetector hotKeyDetector = hotKeyDetector(2, 2);
+        AtomicInteger redisReads = new AtomicInteger();
+        String a = KEY_PREFIX + "a";
+        String b = KEY_PREFIX + "b";
+        String c = KEY_PREFIX + "c";
+        read(hotKeyDetector, a, redisReads, 5);
+        read(hotKeyDetector, b, redisReads, 3);
+        // 热点key已满，c等待窗口结束
+        read(hotKeyDetector, c, redisReads, 2);
+        assertEquals(2, hotKeyDetector.getHotKeys().size());
+        assertTrue(hotKeys(hotKeyDetector).containsAll(Arrays.asList(a, b)));
+
+        hotKeyDetector.rotate();
+        assertEquals(Arrays.asList(a, b), hotKeys(hotKeyDetector));
+
+        read(hotKeyDetector, c, redisReads, 4);
+        read(hotKeyDetector, a, redisReads, 2);
+        hotKeyDetector.rotate();
+        assertEquals(Arrays.asList(c, a), hotKeys(hotKeyDetector));
+
+        // 窗口内没有读取，全部降级
+        hotKeyDetector.rotate();
+        assertTrue(hotKeyDetector.getHotKeys().isEmpty());
+    }
+
+    private static HotKeyDetector hotKeyDetector(long threshold, int topK) {
+        SpringBootPlusHotKeyProperties hotKeyProperties = new SpringBootPlusHotKeyProperties();
+        hotKeyProperties.setEnable(true);
+        hotKeyProperties.setKeyPrefixes(Collections.singletonList(KEY_PREFIX));
+        hotKeyProperties.setThreshold(threshold);
+        hotKeyProperties.setTopK(topK);
+        hotKeyProperties.setReplicaExpireMillis(60000);
+        return new HotKeyDetector(hotKeyProperties);
+    }
+
+    private static void read(HotKeyDetector hotKeyDetector, String key, AtomicInteger redisReads, int times) {
+        for (int i = 0; i < times; i++) {
+            read(hotKeyDetector, key, redisReads);
+        }
+    }
+
+    private static void read(HotKeyDetector hotKeyDetector, String key, AtomicInteger redisReads) {
+        Object value = hotKeyDetector.get(key, () -> {
+            redisReads.incrementAndGet();
+            return key;
+        });
+        assertEquals(key, value);
+    }
+
+    private static List<String> hotKeys(HotKeyDetector hotKeyDetector) {
+        return hotKeyDetector.getHotKeys().stream().map(HotKeyDetector.HotKey::getKey).collect(Collectors.toList());
+    }
+
+}
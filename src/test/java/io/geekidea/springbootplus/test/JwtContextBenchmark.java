@@ -0,0 +1,101 @@
+/*
+ * Copyright 2019-2029 geekidea(https://github.com/geekidea)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.geekidea.springbootplus.test;
+
+import io.geekidea.springbootplus.framework.shiro.jwt.JwtContext;
+import io.geekidea.springbootplus.framework.shiro.jwt.JwtProperties;
+import io.geekidea.springbootplus.framework.shiro.util.JwtUtil;
+import io.geekidea.springbootplus.framework.shiro.util.SaltUtil;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.time.Duration;
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 单个请求中token解析次数对比
+ * 旧流程：isExpired、getUsername、JwtToken.build、verifyToken、refreshToken分别解析token
+ * 新流程：JwtContext解析一次，校验使用已解析的DecodedJWT
+ *
+ * @author geekidea
+ * @date 2020-03-24
+ **/
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class JwtContextBenchmark {
+
+    private String token;
+
+    private String salt;
+
+    @Setup
+    public void setup() {
+        JwtProperties jwtProperties = new JwtProperties();
+        jwtProperties.setIssuer("spring-boot-plus");
+        jwtProperties.setSubject("spring-boot-plus");
+        jwtProperties.setAudience("web");
+        new JwtUtil(jwtProperties);
+
+        salt = SaltUtil.generateSalt();
+        token = JwtUtil.generateToken("admin", salt, Duration.ofHours(1));
+    }
+
+    @Benchmark
+    public long decodeEachTime() {
+        boolean expired = JwtUtil.isExpired(token);
+        String username = JwtUtil.getUsername(token);
+        Date createDate = JwtUtil.getIssuedAt(token);
+        boolean verified = JwtUtil.verifyToken(token, salt);
+        Date expireDate = JwtUtil.getExpireDate(token);
+        return result(expired, username, createDate, verified, expireDate);
+    }
+
+    @Benchmark
+    public long decodeOnce() {
+        JwtContext jwtContext = JwtContext.getOrCreate(null, token);
+        boolean expired = jwtContext.isExpired();
+        String username = jwtContext.getUsername();
+        Date createDate = jwtContext.getIssuedAt();
+        boolean verified = JwtUtil.verifyToken(jwtContext.getDecodedJwt(), salt);
+        Date expireDate = jwtContext.getExpireDate();
+        return result(expired, username, createDate, verified, expireDate);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(JwtContextBenchmark.class.getSimpleName()).build()).run();
+    }
+
+    private static long result(boolean expired, String username, Date createDate, boolean verified, Date expireDate) {
+        return (expired ? 1 : 0) + username.length() + createDate.getTime() + (verified ? 1 : 0) + expireDate.getTime();
+    }
+}
@@ -0,0 +1,159 @@
+/*
+ * Copyright 2019-2029 geekidea(https://github.com/geekidea)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.geekidea.springbootplus.test;
+
+import io.geekidea.springbootplus.framework.cache.CompiledKeyGenerator;
+import io.geekidea.springbootplus.system.param.sysuser.SysUserPageParam;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.cache.interceptor.KeyGenerator;
+
+import java.lang.reflect.Method;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 缓存key生成对比
+ * 原流程：每次调用使用StringBuffer拼接全限定类名、方法名和Arrays.deepToString(params)
+ * 新流程：CompiledKeyGenerator，预先生成方法前缀和参数编码器
+ * 运行main方法，先输出各方法生成的key，再运行JMH统计耗时
+ *
+ * @author geekidea
+ * @date 2020-03-30
+ **/
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class KeyGeneratorBenchmark {
+
+    /**
+     * 原RedisCacheConfig.keyGenerator
+     */
+    private static final KeyGenerator LEGACY_KEY_GENERATOR = (target, method, params) -> {
+        StringBuffer redisKey = new StringBuffer();
+        redisKey.append(target.getClass().getName()).append("-");
+        redisKey.append(method.getName());
+        if (params.length > 0) {
+            redisKey.append("-").append(Arrays.deepToString(params));
+        }
+        return redisKey.toString();
+    };
+
+    @Param({"id", "username", "pageParam"})
+    private String method;
+
+    private KeyGenerator compiledKeyGenerator;
+
+    private SampleService target;
+
+    private Method targetMethod;
+
+    private Object[] params;
+
+    @Setup
+    public void setup() throws NoSuchMethodException {
+        compiledKeyGenerator = new CompiledKeyGenerator(0);
+        target = new SampleService();
+        targetMethod = method(method);
+        params = params(method);
+    }
+
+    @Benchmark
+    public Object legacy() {
+        return LEGACY_KEY_GENERATOR.generate(target, targetMethod, params);
+    }
+
+    @Benchmark
+    public Object compiled() {
+        return compiledKeyGenerator.generate(target, targetMethod, params);
+    }
+
+    public static void main(String[] args) throws NoSuchMethodException, RunnerException {
+        KeyGenerator compiledKeyGenerator = new CompiledKeyGenerator(0);
+        KeyGenerator hashedKeyGenerator = new CompiledKeyGenerator(64);
+        SampleService target = new SampleService();
+        for (String method : Arrays.asList("id", "username", "pageParam")) {
+            Method targetMethod = method(method);
+            Object[] params = params(method);
+            System.out.println(method);
+            System.out.println("  legacy:   " + LEGACY_KEY_GENERATOR.generate(target, targetMethod, params));
+            System.out.println("  compiled: " + compiledKeyGenerator.generate(target, targetMethod, params));
+            System.out.println("  hashed:   " + hashedKeyGenerator.generate(target, targetMethod, params));
+        }
+        new Runner(new OptionsBuilder().include(KeyGeneratorBenchmark.class.getSimpleName()).build()).run();
+    }
+
+    private static Method method(String method) throws NoSuchMethodException {
+        switch (method) {
+            case "id":
+                return SampleService.class.getMethod("getSysUserById", Long.class);
+            case "username":
+                return SampleService.class.getMethod("getSysUserByUsername", String.class, boolean.class);
+            default:
+                return SampleService.class.getMethod("getSysUserPageList", SysUserPageParam.class);
+        }
+    }
+
+    private static Object[] params(String method) {
+        switch (method) {
+            case "id":
+                return new Object[]{1L};
+            case "username":
+                return new Object[]{"admin", true};
+            default:
+                SysUserPageParam sysUserPageParam = new SysUserPageParam()
+                        .setDepartmentId(1L)
+                        .setState(1)
+                        .setUsername("admin");
+                sysUserPageParam.setPageIndex(1L);
+                sysUserPageParam.setPageSize(10L);
+                return new Object[]{sysUserPageParam};
+        }
+    }
+
+    public static class SampleService {
+
+        public Object getSysUserById(Long id) {
+            return null;
+        }
+
+        public Object getSysUserByUsername(String username, boolean enabled) {
+            return null;
+        }
+
+        public Object getSysUserPageList(SysUserPageParam sysUserPageParam) {
+            return null;
+        }
+
+    }
+
+}
@@ -0,0 +1,246 @@
+/*
+ * Copyright 2019-2029 geekidea(https://github.com/geekidea)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.geekidea.springbootplus.test;
+
+import io.geekidea.springbootplus.framework.shiro.exception.LoginThrottleException;
+import io.geekidea.springbootplus.framework.shiro.jwt.JwtProperties;
+import io.geekidea.springbootplus.framework.shiro.throttle.LoginThrottle;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.data.redis.RedisConnectionFailureException;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.script.RedisScript;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+/**
+ * LoginThrottle锁定key、本地拦截及锁定时间指数退避
+ * Redis脚本结果通过mock返回
+ *
+ * @author geekidea
+ * @date 2020-03-30
+ **/
+public class LoginThrottleTest {
+
+    private static final String IP = "1.2.3.4";
+
+    private static final String OTHER_IP = "5.6.7.8";
+
+    private JwtProperties.LoginThrottleConfig throttleConfig;
+
+    private RedisTemplate redisTemplate;
+
+    private JwtProperties jwtProperties;
+
+    @Before
+    public void setUp() {
+        jwtProperties = new JwtProperties();
+        throttleConfig = jwtProperties.getLoginThrottle();
+        // 避免测试期间本地窗口切换
+        throttleConfig.setLocalWindowMillis(3600000);
+        redisTemplate = mock(RedisTemplate.class);
+        doReturn(0L).when(redisTemplate).execute(any(RedisScript.class), anyList(), any());
+    }
+
+    @Test
+    public void disabledSkipsRedis() {
+        throttleConfig.setEnable(false);
+        LoginThrottle loginThrottle = newLoginThrottle();
+        loginThrottle.check("alice", IP);
+        loginThrottle.checkUsername("alice", IP);
+        loginThrottle.onFailure("alice", IP);
+        verify(redisTemplate, never()).execute(any(RedisScript.class), anyList(), any());
+    }
+
+    @Test
+    public void checkUsesUsernameIpLockAndIpBucket() {
+        newLoginThrottle().check("Alice", IP);
+        ArgumentCaptor<List> keysCaptor = ArgumentCaptor.forClass(List.class);
+        ArgumentCaptor<Object> argsCaptor = ArgumentCaptor.forClass(Object.class);
+        verify(redisTemplate).execute(any(RedisScript.class), keysCaptor.capture(), argsCaptor.capture());
+        assertEquals(Arrays.asList("login:throttle:lock:u:alice@" + IP, "login:throttle:bucket:i:" + IP),
+                keysCaptor.getValue());
+        List<Object> args = argsCaptor.getAllValues();
+        assertEquals(3, args.size());
+        assertEquals(throttleConfig.getIpBurst(), args.get(1));
+        assertEquals(throttleConfig.getIpPerMinute() / 60000.0, (Double) args.get(2), 1e-12);
+    }
+
+    @Test
+    public void checkUsernameUsesUsernameBucket() {
+        LoginThrottle loginThrottle = newLoginThrottle();
+        loginThrottle.checkUsername(" ALICE ", IP);
+        ArgumentCaptor<List> keysCaptor = ArgumentCaptor.forClass(List.class);
+        verify(redisTemplate).execute(any(RedisScript.class), keysCaptor.capture(), any());
+        assertEquals(Arrays.asList("login:throttle:lock:u:alice@" + IP, "login:throttle:bucket:u:alice"),
+                keysCaptor.getValue());
+        assertEquals(1, loginThrottle.getAllowedCount());
+    }
+
+    @Test
+    public void lockedResultIsCachedLocally() {
+        doReturn(90500L).when(redisTemplate).execute(any(RedisScript.class), anyList(), any());
+        LoginThrottle loginThrottle = newLoginThrottle();
+        assertEquals(91, checkRejected(loginThrottle, "alice", IP));
+        // 锁定期间本地直接拒绝，不访问Redis
+        long retryAfterSecond = checkRejected(loginThrottle, "alice", IP);
+        assertTrue(retryAfterSecond >= 90 && retryAfterSecond <= 91);
+        verify(redisTemplate, times(1)).execute(any(RedisScript.class), anyList(), any());
+
+        // 其他IP的同一用户名不受本地锁定影响
+        doReturn(0L).when(redisTemplate).execute(any(RedisScript.class), anyList(), any());
+        loginThrottle.check("alice", OTHER_IP);
+        verify(redisTemplate, times(2)).execute(any(RedisScript.class), anyList(), any());
+    }
+
+    @Test
+    public void limitedResultIsNotCachedLocally() {
+        doReturn(-1500L).when(redisTemplate).execute(any(RedisScript.class), anyList(), any());
+        LoginThrottle loginThrottle = newLoginThrottle();
+        assertEquals(2, checkRejected(loginThrottle, "alice", IP));
+        assertEquals(2, checkRejected(loginThrottle, "alice", IP));
+        verify(redisTemplate, times(2)).execute(any(RedisScript.class), anyList(), any());
+        assertEquals(2, loginThrottle.getRejectedCount());
+    }
+
+    @Test
+    public void redisErrorAllowsRequest() {
+        doThrow(new RedisConnectionFailureException("down"))
+                .when(redisTemplate).execute(any(RedisScript.class), anyList(), any());
+        LoginThrottle loginThrottle = newLoginThrottle();
+        loginThrottle.check("alice", IP);
+        loginThrottle.checkUsername("alice", IP);
+        assertEquals(0, loginThrottle.getRejectedCount());
+    }
+
+    @Test
+    public void localUsernameLimitRejectsWithoutRedis() {
+        LoginThrottle loginThrottle = newLoginThrottle();
+        int limit = throttleConfig.getLocalUsernameLimit();
+        for (int i = 0; i < limit; i++) {
+            loginThrottle.checkUsername("alice", i % 2 == 0 ? IP : OTHER_IP);
+        }
+        try {
+            loginThrottle.checkUsername("ALICE", IP);
+            fail();
+        } catch (LoginThrottleException e) {
+            assertEquals(3600, e.getRetryAfterSecond());
+        }
+        verify(redisTemplate, times(limit)).execute(any(RedisScript.class), anyList(), any());
+    }
+
+    @Test
+    public void lockoutDisabledByDefault() {
+        LoginThrottle loginThrottle = newLoginThrottle();
+        loginThrottle.onFailure("alice", IP);
+        loginThrottle.onSuccess("alice", IP);
+        verify(redisTemplate, never()).execute(any(RedisScript.class), anyList(), any());
+        verify(redisTemplate, never()).delete(anyString());
+    }
+
+    @Test
+    public void failurePassesLockoutSchedule() {
+        throttleConfig.setLockoutEnable(true);
+        LoginThrottle loginThrottle = newLoginThrottle();
+        loginThrottle.onFailure("Alice", IP);
+        ArgumentCaptor<List> keysCaptor = ArgumentCaptor.forClass(List.class);
+        ArgumentCaptor<Object> argsCaptor = ArgumentCaptor.forClass(Object.class);
+        verify(redisTemplate).execute(any(RedisScript.class), keysCaptor.capture(), argsCaptor.capture());
+        String lockKey = "u:alice@" + IP;
+        assertEquals(Arrays.asList("login:throttle:failure:" + lockKey, "login:throttle:lock:" + lockKey,
+                "login:throttle:lock:count:" + lockKey), keysCaptor.getValue());
+        assertEquals(Arrays.asList(5, 900000L, 86400000L, 60000L, 120000L, 240000L, 480000L, 960000L, 1920000L,
+                3600000L), argsCaptor.getAllValues());
+        assertEquals(0, loginThrottle.getLockoutCount());
+        // 未锁定时继续访问Redis
+        loginThrottle.check("alice", IP);
+        verify(redisTemplate, times(2)).execute(any(RedisScript.class), anyList(), any());
+    }
+
+    @Test
+    public void lockoutBlocksUsernameIpLocally() {
+        throttleConfig.setLockoutEnable(true);
+        LoginThrottle loginThrottle = newLoginThrottle();
+        doReturn(120000L).when(redisTemplate).execute(any(RedisScript.class), anyList(), any());
+        loginThrottle.onFailure("alice", IP);
+        assertEquals(1, loginThrottle.getLockoutCount());
+
+        long retryAfterSecond = checkRejected(loginThrottle, "alice", IP);
+        assertTrue(retryAfterSecond >= 119 && retryAfterSecond <= 120);
+        verify(redisTemplate, times(1)).execute(any(RedisScript.class), anyList(), any());
+
+        // 其他IP不受影响
+        doReturn(0L).when(redisTemplate).execute(any(RedisScript.class), anyList(), any());
+        loginThrottle.check("alice", OTHER_IP);
+        verify(redisTemplate, times(2)).execute(any(RedisScript.class), anyList(), any());
+    }
+
+    @Test
+    public void successClearsFailures() {
+        throttleConfig.setLockoutEnable(true);
+        newLoginThrottle().onSuccess("Alice", IP);
+        verify(redisTemplate).delete("login:throttle:failure:u:alice@" + IP);
+    }
+
+    @Test
+    public void lockoutScheduleDoublesUpToMax() {
+        assertEquals(Arrays.asList(60000L, 120000L, 240000L, 480000L, 960000L, 1920000L, 3600000L),
+                LoginThrottle.getLockoutSchedule(60000, 3600000));
+        assertEquals(Arrays.asList(1000L, 2000L, 4000L), LoginThrottle.getLockoutSchedule(1000, 4000));
+    }
+
+    @Test
+    public void lockoutScheduleEdgeCases() {
+        assertEquals(Collections.singletonList(60000L), LoginThrottle.getLockoutSchedule(60000, 60000));
+        assertEquals(Collections.singletonList(30000L), LoginThrottle.getLockoutSchedule(60000, 30000));
+        assertEquals(Arrays.asList(1L, 2L), LoginThrottle.getLockoutSchedule(0, 2));
+        // 最多31次，之后使用最后一个锁定时间
+        List<Long> schedule = LoginThrottle.getLockoutSchedule(1, Long.MAX_VALUE);
+        assertEquals(31, schedule.size());
+        assertEquals(Long.valueOf(1L << 30), schedule.get(30));
+    }
+
+    private LoginThrottle newLoginThrottle() {
+        return new LoginThrottle(jwtProperties, redisTemplate);
+    }
+
+    private long checkRejected(LoginThrottle loginThrottle, String username, String ip) {
+        try {
+            loginThrottle.check(username, ip);
+        } catch (LoginThrottleException e) {
+            return e.getRetryAfterSecond();
+        }
+        fail();
+        return 0;
+    }
+
+}
@@ -0,0 +1,110 @@
+/*
+ * Copyright 2019-2029 geekidea(https://github.com/geekidea)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.geekidea.springbootplus.test;
+
+import io.geekidea.springbootplus.framework.shiro.permission.BitSetAuthorizationInfo;
+import io.geekidea.springbootplus.framework.shiro.permission.IndexedPermission;
+import io.geekidea.springbootplus.framework.shiro.permission.PermissionRegistry;
+import org.apache.shiro.authz.Permission;
+import org.apache.shiro.authz.permission.WildcardPermission;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 权限校验对比
+ * 原流程：权限字符串解析成WildcardPermission，与用户所有权限逐个匹配
+ * 新流程：权限字符串解析一次得到id，位图校验
+ *
+ * @author geekidea
+ * @date 2020-03-27
+ **/
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class PermissionCheckBenchmark {
+
+    private PermissionRegistry permissionRegistry;
+
+    private Set<String> userCodes;
+
+    private String checkCode;
+
+    private BitSetAuthorizationInfo authorizationInfo;
+
+    @Setup
+    public void setup() {
+        permissionRegistry = new PermissionRegistry();
+        String[] modules = {"sys:user", "sys:role", "sys:permission", "sys:department", "sys:log", "foo:bar"};
+        String[] actions = {"add", "update", "delete", "info", "page", "list", "export", "import"};
+        List<String> allCodes = new ArrayList<>();
+        for (String module : modules) {
+            for (String action : actions) {
+                allCodes.add(module + ":" + action);
+                permissionRegistry.getId(module + ":" + action);
+            }
+        }
+        // 用户拥有一半的权限，校验最后一个权限
+        userCodes = new HashSet<>(allCodes.subList(0, allCodes.size() / 2));
+        checkCode = allCodes.get(allCodes.size() / 2 - 1);
+        authorizationInfo = new BitSetAuthorizationInfo(Collections.singleton("admin"), userCodes, permissionRegistry);
+    }
+
+    /**
+     * 与AuthorizingRealm默认流程一致：解析所有用户权限和待校验权限，逐个匹配
+     */
+    @Benchmark
+    public boolean wildcard() {
+        Permission permission = new WildcardPermission(checkCode);
+        for (String userCode : userCodes) {
+            if (new WildcardPermission(userCode).implies(permission)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Benchmark
+    public boolean bitSet() {
+        IndexedPermission permission = permissionRegistry.getPermission(checkCode);
+        return authorizationInfo.isPermitted(permission.getId());
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(PermissionCheckBenchmark.class.getSimpleName()).build()).run();
+    }
+}
@@ -0,0 +1,157 @@
+/*
+ * Copyright 2019-2029 geekidea(https://github.com/geekidea)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.geekidea.springbootplus.test;
+
+import io.geekidea.springbootplus.framework.constant.CommonRedisKey;
+import io.geekidea.springbootplus.framework.shiro.cache.RevokedTokenFilter;
+import io.geekidea.springbootplus.framework.shiro.cache.VerifiedTokenCache;
+import io.geekidea.springbootplus.framework.shiro.jwt.JwtProperties;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.data.redis.RedisConnectionFailureException;
+import org.springframework.data.redis.connection.DefaultMessage;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.ZSetOperations;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.data.redis.serializer.StringRedisSerializer;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.anyDouble;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * RevokedTokenFilter布隆过滤器分段轮换，及Redis异常时按已注销处理
+ * token有效时间4秒，分为4段，每段1秒
+ *
+ * @author geekidea
+ * @date 2020-03-30
+ **/
+public class RevokedTokenFilterTest {
+
+    private static final long LIFETIME_MILLIS = 4000;
+
+    private static final long BUCKET_MILLIS = 1000;
+
+    private RedisTemplate redisTemplate;
+
+    private ZSetOperations zSetOperations;
+
+    private RevokedTokenFilter revokedTokenFilter;
+
+    private long startTime;
+
+    @Before
+    public void setUp() {
+        JwtProperties jwtProperties = new JwtProperties();
+        jwtProperties.setExpireSecond(LIFETIME_MILLIS / 1000);
+        jwtProperties.getRevocation().setBucketCount(4);
+        redisTemplate = mock(RedisTemplate.class);
+        zSetOperations = mock(ZSetOperations.class);
+        when(redisTemplate.opsForZSet()).thenReturn(zSetOperations);
+        when(redisTemplate.getValueSerializer()).thenReturn(new StringRedisSerializer());
+        startTime = System.currentTimeMillis();
+        revokedTokenFilter = new RevokedTokenFilter(jwtProperties, redisTemplate, new VerifiedTokenCache(jwtProperties),
+                mock(RedisMessageListenerContainer.class));
+    }
+
+    @Test
+    public void unknownJtiSkipsRedis() {
+        assertFalse(revokedTokenFilter.isRevoked("unknown"));
+        assertEquals(1, revokedTokenFilter.getBloomNegativeCount());
+        verify(zSetOperations, never()).score(CommonRedisKey.LOGIN_REVOKED, "unknown");
+    }
+
+    @Test
+    public void notifiedJtiIsRevoked() {
+        notifyRevoked("jti1");
+        assertTrue(revokedTokenFilter.isRevoked("jti1"));
+        // 通知中的jti直接确认，不访问Redis
+        verify(zSetOperations, never()).score(CommonRedisKey.LOGIN_REVOKED, "jti1");
+    }
+
+    @Test
+    public void reconciledJtiIsConfirmedByRedis() {
+        when(zSetOperations.rangeByScore(eq(CommonRedisKey.LOGIN_REVOKED), anyDouble(), anyDouble()))
+                .thenReturn(Collections.singleton("jti2"));
+        when(zSetOperations.score(CommonRedisKey.LOGIN_REVOKED, "jti2")).thenReturn(1.0);
+        revokedTokenFilter.reconcile(startTime);
+
+        assertTrue(revokedTokenFilter.isRevoked("jti2"));
+        assertTrue(revokedTokenFilter.isRevoked("jti2"));
+        // 确认结果缓存，只访问一次Redis
+        verify(zSetOperations, times(1)).score(CommonRedisKey.LOGIN_REVOKED, "jti2");
+    }
+
+    @Test
+    public void reconcileAfterFirstLoadOnlyReadsNewRevocations() {
+        when(zSetOperations.rangeByScore(eq(CommonRedisKey.LOGIN_REVOKED_TIME), anyDouble(), anyDouble()))
+                .thenReturn(Collections.singleton("jti4"));
+        when(zSetOperations.score(CommonRedisKey.LOGIN_REVOKED, "jti4")).thenReturn(1.0);
+        revokedTokenFilter.reconcile(startTime);
+        revokedTokenFilter.reconcile(startTime + BUCKET_MILLIS);
+
+        // 只在首次全量加载，之后按注销时间增量加载
+        verify(zSetOperations, times(1)).rangeByScore(eq(CommonRedisKey.LOGIN_REVOKED), anyDouble(), anyDouble());
+        verify(zSetOperations, times(1)).rangeByScore(eq(CommonRedisKey.LOGIN_REVOKED_TIME), anyDouble(), anyDouble());
+        assertTrue(revokedTokenFilter.isRevoked("jti4"));
+    }
+
+    @Test
+    public void redisErrorFailsClosed() {
+        when(zSetOperations.rangeByScore(eq(CommonRedisKey.LOGIN_REVOKED), anyDouble(), anyDouble()))
+                .thenReturn(Collections.singleton("jti3"));
+        revokedTokenFilter.reconcile(startTime);
+        when(zSetOperations.score(CommonRedisKey.LOGIN_REVOKED, "jti3")).thenThrow(new RedisConnectionFailureException("down"));
+        assertTrue(revokedTokenFilter.isRevoked("jti3"));
+
+        // 异常结果不缓存，Redis恢复后重新确认，布隆过滤器误判时放行
+        doReturn(null).when(zSetOperations).score(CommonRedisKey.LOGIN_REVOKED, "jti3");
+        assertFalse(revokedTokenFilter.isRevoked("jti3"));
+        assertEquals(1, revokedTokenFilter.getFalsePositiveCount());
+    }
+
+    @Test
+    public void bucketsRotateOutAfterTokenLifetime() {
+        notifyRevoked("jti1");
+
+        // 分段结束后仍在token有效时间内，保留
+        revokedTokenFilter.reconcile(startTime + BUCKET_MILLIS + LIFETIME_MILLIS / 2);
+        assertTrue(revokedTokenFilter.isRevoked("jti1"));
+
+        // 分段结束时间加token有效时间之后，其中的token都已过期，丢弃
+        revokedTokenFilter.reconcile(startTime + BUCKET_MILLIS + LIFETIME_MILLIS + BUCKET_MILLIS);
+        assertFalse(revokedTokenFilter.isRevoked("jti1"));
+        verify(zSetOperations, never()).score(CommonRedisKey.LOGIN_REVOKED, "jti1");
+    }
+
+    private void notifyRevoked(String jti) {
+        revokedTokenFilter.onMessage(new DefaultMessage(CommonRedisKey.LOGIN_REVOKED_CHANNEL.getBytes(StandardCharsets.UTF_8),
+                (jti + ",").getBytes(StandardCharsets.UTF_8)), null);
+    }
+
+}
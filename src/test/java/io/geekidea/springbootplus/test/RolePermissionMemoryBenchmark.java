@@ -0,0 +1,115 @@
+/*
+ * Copyright 2019-2029 geekidea(https://github.com/geekidea)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.geekidea.springbootplus.test;
+
+import io.geekidea.springbootplus.framework.shiro.cache.RolePermissionStore;
+import io.geekidea.springbootplus.framework.shiro.vo.ClientInfo;
+import io.geekidea.springbootplus.framework.shiro.vo.LoginSysUserRedisVo;
+import io.geekidea.springbootplus.framework.shiro.vo.RolePermissionRedisVo;
+import org.springframework.data.redis.serializer.GenericJackson2JsonRedisSerializer;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * 登陆会话内存对比
+ * 原流程：每个会话保存一份权限编码列表
+ * 新流程：权限编码列表按角色保存一份，会话中只保存角色id和权限版本号
+ * 使用与RedisTemplateConfig一致的序列化器，统计Redis中保存的字节数
+ *
+ * @author geekidea
+ * @date 2020-03-30
+ **/
+public class RolePermissionMemoryBenchmark {
+
+    private static final int SESSIONS = 50000;
+
+    private static final int ROLES = 5;
+
+    public static void main(String[] args) {
+        GenericJackson2JsonRedisSerializer serializer = new GenericJackson2JsonRedisSerializer();
+        String[] modules = {"sys:user", "sys:role", "sys:permission", "sys:department", "sys:log",
+                "sys:config", "sys:dict", "sys:notice", "sys:job", "sys:file", "foo:bar", "ip"};
+        String[] actions = {"add", "update", "delete", "info", "page", "list", "export", "import", "reset"};
+        List<Set<String>> rolePermissionCodes = new ArrayList<>();
+        for (int roleId = 1; roleId <= ROLES; roleId++) {
+            // 角色权限数量依次递减
+            Set<String> permissionCodes = new HashSet<>();
+            for (int i = 0; i < modules.length * roleId / ROLES; i++) {
+                for (String action : actions) {
+                    permissionCodes.add(modules[i] + ":" + action);
+                }
+            }
+            rolePermissionCodes.add(permissionCodes);
+        }
+
+        long sessionBytes = 0;
+        long sharedSessionBytes = 0;
+        for (int i = 0; i < SESSIONS; i++) {
+            Long roleId = (long) (i % ROLES + 1);
+            Set<String> permissionCodes = rolePermissionCodes.get(i % ROLES);
+            LoginSysUserRedisVo loginSysUserRedisVo = session(i, roleId);
+            loginSysUserRedisVo.setPermissionCodes(permissionCodes);
+            sessionBytes += serializer.serialize(loginSysUserRedisVo).length;
+            loginSysUserRedisVo.setPermissionVersion(RolePermissionStore.version(permissionCodes));
+            loginSysUserRedisVo.setPermissionCodes(null);
+            sharedSessionBytes += serializer.serialize(loginSysUserRedisVo).length;
+        }
+        long roleBytes = 0;
+        for (int i = 0; i < ROLES; i++) {
+            Set<String> permissionCodes = rolePermissionCodes.get(i);
+            roleBytes += serializer.serialize(new RolePermissionRedisVo()
+                    .setRoleId((long) (i + 1))
+                    .setVersion(RolePermissionStore.version(permissionCodes))
+                    .setPermissionCodes(permissionCodes)).length;
+        }
+        long sharedBytes = sharedSessionBytes + roleBytes;
+
+        System.out.println("sessions: " + SESSIONS + ", roles: " + ROLES);
+        System.out.println("per session permission codes: " + sessionBytes / 1024 + " KB, " + sessionBytes / SESSIONS + " bytes/session");
+        System.out.println("shared role permissions:      " + sharedBytes / 1024 + " KB, " + sharedSessionBytes / SESSIONS + " bytes/session, " + roleBytes + " bytes/roles");
+        System.out.println("reduction: " + (sessionBytes - sharedBytes) * 100 / sessionBytes + "%");
+    }
+
+    private static LoginSysUserRedisVo session(int i, Long roleId) {
+        ClientInfo clientInfo = new ClientInfo();
+        clientInfo.setIp("192.168." + (i / 256 % 256) + "." + (i % 256));
+        clientInfo.setAddree("内网IP");
+        clientInfo.setBrowserName("Chrome");
+        clientInfo.setBrowserversion("80.0.3987.149");
+        clientInfo.setEngineName("Webkit");
+        clientInfo.setEngineVersion("537.36");
+        clientInfo.setOsName("Windows 10 or Windows Server 2016");
+        clientInfo.setPlatformName("Windows");
+        LoginSysUserRedisVo loginSysUserRedisVo = new LoginSysUserRedisVo();
+        loginSysUserRedisVo.setSalt("b3b1b4c5a2e94f5d8f0e3c2a1d0b9e8f" + i)
+                .setClientInfo(clientInfo);
+        loginSysUserRedisVo.setId((long) i)
+                .setUsername("user" + i)
+                .setNickname("用户" + i)
+                .setGender(1)
+                .setState(1)
+                .setDepartmentId(1L)
+                .setDepartmentName("管理部")
+                .setRoleId(roleId)
+                .setRoleName("角色" + roleId)
+                .setRoleCode("role" + roleId);
+        return loginSysUserRedisVo;
+    }
+}
@@ -0,0 +1,100 @@
+/*
+ * Copyright 2019-2029 geekidea(https://github.com/geekidea)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.geekidea.springbootplus.test;
+
+import io.geekidea.springbootplus.framework.shiro.throttle.SlidingWindowCounter;
+import org.junit.Test;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * SlidingWindowCounter窗口切换及上一窗口按剩余时间加权
+ * 窗口1秒，每个窗口最多3次
+ *
+ * @author geekidea
+ * @date 2020-03-30
+ **/
+public class SlidingWindowCounterTest {
+
+    private static final long WINDOW = 1000;
+
+    private static final int LIMIT = 3;
+
+    private static final long START = 10000;
+
+    @Test
+    public void rejectsAtLimitWithinWindow() {
+        SlidingWindowCounter counter = new SlidingWindowCounter(WINDOW, LIMIT, START);
+        assertTrue(counter.tryAcquire(START));
+        assertTrue(counter.tryAcquire(START + 100));
+        assertTrue(counter.tryAcquire(START + 999));
+        assertFalse(counter.tryAcquire(START + 999));
+    }
+
+    @Test
+    public void previousWindowIsWeightedByRemainingTime() {
+        SlidingWindowCounter counter = fullCounter();
+        // 新窗口开始时上一窗口全部计入
+        assertFalse(counter.tryAcquire(START + WINDOW));
+        // 新窗口过半时上一窗口计入1.5次，还可以再获取2次
+        assertTrue(counter.tryAcquire(START + WINDOW + 500));
+        assertTrue(counter.tryAcquire(START + WINDOW + 500));
+        assertFalse(counter.tryAcquire(START + WINDOW + 500));
+    }
+
+    @Test
+    public void previousWindowFadesOut() {
+        SlidingWindowCounter counter = fullCounter();
+        // 新窗口结束前上一窗口计入0.03次
+        assertTrue(counter.tryAcquire(START + WINDOW + 990));
+        assertTrue(counter.tryAcquire(START + WINDOW + 990));
+        assertTrue(counter.tryAcquire(START + WINDOW + 990));
+        assertFalse(counter.tryAcquire(START + WINDOW + 990));
+    }
+
+    @Test
+    public void gapLongerThanWindowDropsPreviousCount() {
+        SlidingWindowCounter counter = fullCounter();
+        // 间隔超过一个窗口，上一窗口计数丢弃
+        long start = START + WINDOW * 2;
+        assertTrue(counter.tryAcquire(start));
+        assertTrue(counter.tryAcquire(start));
+        assertTrue(counter.tryAcquire(start));
+        assertFalse(counter.tryAcquire(start));
+    }
+
+    @Test
+    public void unalignedStartUsesAlignedWindow() {
+        SlidingWindowCounter counter = new SlidingWindowCounter(WINDOW, LIMIT, START + 700);
+        for (int i = 0; i < LIMIT; i++) {
+            assertTrue(counter.tryAcquire(START + 700));
+        }
+        assertFalse(counter.tryAcquire(START + 999));
+        // 窗口按整数倍对齐，START + 1000开始新窗口
+        assertTrue(counter.tryAcquire(START + WINDOW + 500));
+    }
+
+    private SlidingWindowCounter fullCounter() {
+        SlidingWindowCounter counter = new SlidingWindowCounter(WINDOW, LIMIT, START);
+        for (int i = 0; i < LIMIT; i++) {
+            assertTrue(counter.tryAcquire(START));
+        }
+        assertFalse(counter.tryAcquire(START));
+        return counter;
+    }
+
+}
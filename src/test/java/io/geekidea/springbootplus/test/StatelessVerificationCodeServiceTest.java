@@ -0,0 +1,193 @@
+/*
+ * Copyright 2019-2029 geekidea(https://github.com/geekidea)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.geekidea.springbootplus.test;
+
+import io.geekidea.springbootplus.framework.core.properties.SpringBootPlusProperties;
+import io.geekidea.springbootplus.system.exception.VerificationCodeException;
+import io.geekidea.springbootplus.system.service.impl.StatelessVerificationCodeServiceImpl;
+import org.apache.commons.codec.digest.HmacAlgorithms;
+import org.apache.commons.codec.digest.HmacUtils;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.data.redis.RedisConnectionFailureException;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.ValueOperations;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * 无状态验证码签名校验、过期及nonce防重放
+ * Redis防重放通过mock返回
+ *
+ * @author geekidea
+ * @date 2020-03-30
+ **/
+public class StatelessVerificationCodeServiceTest {
+
+    private static final String SECRET = "verify-code-test-secret";
+
+    private static final String CODE = "AbC1";
+
+    private SpringBootPlusProperties springBootPlusProperties;
+
+    private RedisTemplate redisTemplate;
+
+    private ValueOperations valueOperations;
+
+    private StatelessVerificationCodeServiceImpl verificationCodeService;
+
+    @Before
+    public void setUp() {
+        springBootPlusProperties = new SpringBootPlusProperties();
+        springBootPlusProperties.getVerifyCode().setStore("stateless");
+        springBootPlusProperties.getVerifyCode().setSecret(SECRET);
+        redisTemplate = mock(RedisTemplate.class);
+        valueOperations = mock(ValueOperations.class);
+        when(redisTemplate.opsForValue()).thenReturn(valueOperations);
+        when(valueOperations.setIfAbsent(anyString(), any(), anyLong(), any(TimeUnit.class))).thenReturn(true);
+        verificationCodeService = new StatelessVerificationCodeServiceImpl(springBootPlusProperties, redisTemplate);
+    }
+
+    @Test
+    public void roundTrip() throws Exception {
+        String verifyToken = verificationCodeService.generate(CODE);
+        String[] parts = verifyToken.split("\\.");
+        assertEquals(3, parts.length);
+        assertTrue(Long.parseLong(parts[1]) > System.currentTimeMillis());
+        // 验证码不区分大小写
+        verificationCodeService.check(verifyToken, "abc1");
+        verify(valueOperations).setIfAbsent(eq("verify.code.used:" + parts[0]), eq(1), anyLong(), eq(TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    public void otherNodeWithSameSecretAcceptsToken() throws Exception {
+        String verifyToken = verificationCodeService.generate(CODE);
+        new StatelessVerificationCodeServiceImpl(springBootPlusProperties, redisTemplate).check(verifyToken, CODE);
+    }
+
+    @Test
+    public void expiredTokenRejected() {
+        long expireTime = System.currentTimeMillis() - 1000;
+        String verifyToken = token("nonce1", expireTime, CODE);
+        assertRejected(verifyToken, CODE);
+        // 已过期的token不标记nonce
+        verify(valueOperations, never()).setIfAbsent(anyString(), any(), anyLong(), any(TimeUnit.class));
+    }
+
+    @Test
+    public void tamperedSignatureRejected() throws Exception {
+        String verifyToken = verificationCodeService.generate(CODE);
+        int last = verifyToken.length() - 1;
+        String tampered = verifyToken.substring(0, last) + (verifyToken.charAt(last) == 'A' ? 'B' : 'A');
+        assertRejected(tampered, CODE);
+    }
+
+    @Test
+    public void extendedExpireTimeRejected() {
+        long expireTime = System.currentTimeMillis() + 60000;
+        String verifyToken = token("nonce2", expireTime, CODE);
+        String[] parts = verifyToken.split("\\.");
+        assertRejected(parts[0] + "." + (expireTime + 3600000) + "." + parts[2], CODE);
+    }
+
+    @Test
+    public void tokenSignedWithOtherSecretRejected() {
+        String verifyToken = token("nonce3", System.currentTimeMillis() + 60000, CODE, "other-secret");
+        assertRejected(verifyToken, CODE);
+    }
+
+    @Test
+    public void malformedTokenRejected() {
+        assertRejected("nonce.abc.signature", CODE);
+        assertRejected("nonce.signature", CODE);
+        assertRejected(null, CODE);
+    }
+
+    @Test
+    public void secondUseRejected() throws Exception {
+        String verifyToken = verificationCodeService.generate(CODE);
+        verificationCodeService.check(verifyToken, CODE);
+        assertRejected(verifyToken, CODE);
+    }
+
+    @Test
+    public void secondUseOnOtherNodeRejected() throws Exception {
+        String verifyToken = verificationCodeService.generate(CODE);
+        verificationCodeService.check(verifyToken, CODE);
+        // 其他节点本地缓存中没有该nonce，Redis中已标记
+        when(valueOperations.setIfAbsent(anyString(), any(), anyLong(), any(TimeUnit.class))).thenReturn(false);
+        StatelessVerificationCodeServiceImpl otherNode = new StatelessVerificationCodeServiceImpl(springBootPlusProperties, redisTemplate);
+        assertRejected(otherNode, verifyToken, CODE);
+    }
+
+    @Test
+    public void wrongCodeBurnsNonce() {
+        String verifyToken = verificationCodeService.generate(CODE);
+        assertRejected(verifyToken, "XXXX");
+        assertRejected(verifyToken, CODE);
+    }
+
+    @Test
+    public void redisErrorFallsBackToLocalReplayCache() throws Exception {
+        when(valueOperations.setIfAbsent(anyString(), any(), anyLong(), any(TimeUnit.class)))
+                .thenThrow(new RedisConnectionFailureException("down"));
+        String verifyToken = verificationCodeService.generate(CODE);
+        verificationCodeService.check(verifyToken, CODE);
+        assertRejected(verifyToken, CODE);
+    }
+
+    private void assertRejected(String verifyToken, String code) {
+        assertRejected(verificationCodeService, verifyToken, code);
+    }
+
+    private static void assertRejected(StatelessVerificationCodeServiceImpl service, String verifyToken, String code) {
+        try {
+            service.check(verifyToken, code);
+            fail();
+        } catch (VerificationCodeException e) {
+            // expected
+        } catch (Exception e) {
+            fail(e.toString());
+        }
+    }
+
+    private static String token(String nonce, long expireTime, String code) {
+        return token(nonce, expireTime, code, SECRET);
+    }
+
+    private static String token(String nonce, long expireTime, String code, String secret) {
+        String content = nonce + "." + expireTime + "." + code.toLowerCase();
+        byte[] signature = new HmacUtils(HmacAlgorithms.HMAC_SHA_256, secret.getBytes(StandardCharsets.UTF_8)).hmac(content);
+        return content.substring(0, content.lastIndexOf('.') + 1)
+                + Base64.getUrlEncoder().withoutPadding().encodeToString(signature);
+    }
+
+}
@@ -0,0 +1,173 @@
+/*
+ * Copyright 2019-2029 geekidea(https://github.com/geekidea)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.geekidea.springbootplus.test;
+
+import io.geekidea.springbootplus.framework.cache.TwoLevelCacheManager;
+import io.geekidea.springbootplus.framework.core.properties.SpringBootPlusCacheProperties;
+import io.geekidea.springbootplus.framework.shiro.vo.LoginSysUserVo;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.cache.Cache;
+import org.springframework.data.redis.cache.RedisCacheConfiguration;
+import org.springframework.data.redis.cache.RedisCacheManager;
+import org.springframework.data.redis.connection.RedisStandaloneConfiguration;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.data.redis.serializer.GenericJackson2JsonRedisSerializer;
+import org.springframework.data.redis.serializer.StringRedisSerializer;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 缓存读取延迟对比，需要可以访问的Redis，main方法参数：host port，默认localhost 6379
+ * 原流程：RedisCacheManager，每次读取一次网络往返和反序列化
+ * 新流程：TwoLevelCacheManager，本地缓存命中时只访问内存
+ * 结果主要取决于到Redis的网络往返时间，需要在与部署环境相近的网络中运行
+ *
+ * @author geekidea
+ * @date 2020-03-30
+ **/
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class TwoLevelCacheBenchmark {
+
+    private static final int KEYS = 1000;
+
+    @Param({"localhost"})
+    private String host;
+
+    @Param({"6379"})
+    private int port;
+
+    private LettuceConnectionFactory connectionFactory;
+
+    private RedisMessageListenerContainer container;
+
+    private TwoLevelCacheManager twoLevelCacheManager;
+
+    private Cache redisCache;
+
+    private Cache twoLevelCache;
+
+    private int index;
+
+    @Setup
+    public void setup() {
+        connectionFactory = new LettuceConnectionFactory(new RedisStandaloneConfiguration(host, port));
+        connectionFactory.afterPropertiesSet();
+
+        RedisTemplate<Object, Object> redisTemplate = new RedisTemplate<>();
+        redisTemplate.setConnectionFactory(connectionFactory);
+        redisTemplate.setKeySerializer(new StringRedisSerializer());
+        redisTemplate.setValueSerializer(new GenericJackson2JsonRedisSerializer());
+        redisTemplate.afterPropertiesSet();
+
+        container = new RedisMessageListenerContainer();
+        container.setConnectionFactory(connectionFactory);
+        container.afterPropertiesSet();
+        container.start();
+
+        RedisCacheManager redisCacheManager = RedisCacheManager.builder(connectionFactory)
+                .cacheDefaults(RedisCacheConfiguration.defaultCacheConfig().entryTtl(Duration.ofMinutes(5)))
+                .build();
+        redisCacheManager.afterPropertiesSet();
+        twoLevelCacheManager = new TwoLevelCacheManager(redisCacheManager, redisTemplate, container, new SpringBootPlusCacheProperties());
+
+        redisCache = redisCacheManager.getCache("benchmark-redis");
+        twoLevelCache = twoLevelCacheManager.getCache("benchmark-two-level");
+        for (int i = 0; i < KEYS; i++) {
+            redisCache.put(key(i), value(i));
+            twoLevelCache.put(key(i), value(i));
+        }
+    }
+
+    @TearDown
+    public void tearDown() throws Exception {
+        redisCache.clear();
+        twoLevelCache.clear();
+        twoLevelCacheManager.destroy();
+        container.stop();
+        connectionFactory.destroy();
+    }
+
+    @Benchmark
+    public Object redis() {
+        return redisCache.get(nextKey(), LoginSysUserVo.class);
+    }
+
+    @Benchmark
+    public Object twoLevel() {
+        return twoLevelCache.get(nextKey(), LoginSysUserVo.class);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        ChainedOptionsBuilder optionsBuilder = new OptionsBuilder().include(TwoLevelCacheBenchmark.class.getSimpleName());
+        if (args.length > 0) {
+            optionsBuilder.param("host", args[0]);
+        }
+        if (args.length > 1) {
+            optionsBuilder.param("port", args[1]);
+        }
+        new Runner(optionsBuilder.build()).run();
+    }
+
+    private String nextKey() {
+        index = (index + 1) % KEYS;
+        return key(index);
+    }
+
+    private static String key(int i) {
+        return "io.geekidea.springbootplus.system.service.impl.SysUserServiceImpl-getById-[" + i + "]";
+    }
+
+    private static LoginSysUserVo value(int i) {
+        return new LoginSysUserVo()
+                .setId((long) i)
+                .setUsername("user" + i)
+                .setNickname("用户" + i)
+                .setGender(1)
+                .setState(1)
+                .setDepartmentId(1L)
+                .setDepartmentName("管理部")
+                .setRoleId(1L)
+                .setRoleName("管理员")
+                .setRoleCode("admin")
+                .setPermissionCodes(new HashSet<>(Arrays.asList("sys:user:add", "sys:user:update", "sys:user:page")));
+    }
+}
@@ -0,0 +1,200 @@
+/*
+ * Copyright 2019-2029 geekidea(https://github.com/geekidea)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.geekidea.springbootplus.test;
+
+import io.geekidea.springbootplus.framework.constant.CommonRedisKey;
+import io.geekidea.springbootplus.framework.shiro.cache.RevokedTokenFilter;
+import io.geekidea.springbootplus.framework.shiro.cache.VerifiedTokenCache;
+import io.geekidea.springbootplus.framework.shiro.cache.impl.LoginRedisServiceImpl;
+import io.geekidea.springbootplus.framework.shiro.cache.impl.NearCacheLoginRedisService;
+import io.geekidea.springbootplus.framework.shiro.jwt.JwtFilter;
+import io.geekidea.springbootplus.framework.shiro.jwt.JwtProperties;
+import io.geekidea.springbootplus.framework.shiro.jwt.JwtToken;
+import io.geekidea.springbootplus.framework.shiro.service.LoginService;
+import io.geekidea.springbootplus.framework.shiro.util.JwtTokenUtil;
+import io.geekidea.springbootplus.framework.shiro.util.JwtUtil;
+import io.geekidea.springbootplus.framework.shiro.vo.LoginSysUserRedisVo;
+import org.apache.shiro.authc.AuthenticationException;
+import org.apache.shiro.authc.AuthenticationToken;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.data.redis.connection.DefaultMessage;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.data.redis.serializer.StringRedisSerializer;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
+
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * 删除用户会话后，其他节点的已校验token缓存同时失效
+ * 两个NearCacheLoginRedisService模拟两个节点，节点1发布的失效通知投递给节点2
+ *
+ * @author geekidea
+ * @date 2020-03-30
+ **/
+public class VerifiedTokenCacheInvalidationTest {
+
+    private static final String USERNAME = "admin";
+
+    private JwtProperties jwtProperties;
+
+    private StringRedisSerializer serializer = new StringRedisSerializer();
+
+    private RedisTemplate node1RedisTemplate;
+
+    private NearCacheLoginRedisService node1;
+
+    private NearCacheLoginRedisService node2;
+
+    private VerifiedTokenCache node2VerifiedTokenCache;
+
+    private LoginRedisServiceImpl node2LoginRedisServiceImpl;
+
+    private TestJwtFilter node2JwtFilter;
+
+    private String token;
+
+    @Before
+    public void setUp() {
+        jwtProperties = new JwtProperties();
+        jwtProperties.setIssuer("spring-boot-plus");
+        jwtProperties.setSubject("spring-boot-plus");
+        jwtProperties.setAudience("web");
+        jwtProperties.setRedisCheck(true);
+        new JwtUtil(jwtProperties);
+        new JwtTokenUtil(jwtProperties);
+
+        MockHttpServletRequest request = new MockHttpServletRequest();
+        RequestContextHolder.setRequestAttributes(new ServletRequestAttributes(request));
+        token = JwtUtil.generateToken(USERNAME, null, Duration.ofHours(1));
+
+        node1RedisTemplate = redisTemplate();
+        node1 = new NearCacheLoginRedisService(mock(LoginRedisServiceImpl.class), jwtProperties, node1RedisTemplate,
+                new VerifiedTokenCache(jwtProperties), mock(RedisMessageListenerContainer.class));
+
+        node2LoginRedisServiceImpl = mock(LoginRedisServiceImpl.class);
+        node2VerifiedTokenCache = new VerifiedTokenCache(jwtProperties);
+        node2 = new NearCacheLoginRedisService(node2LoginRedisServiceImpl, jwtProperties, redisTemplate(),
+                node2VerifiedTokenCache, mock(RedisMessageListenerContainer.class));
+        node2JwtFilter = new TestJwtFilter(node2, jwtProperties, node2VerifiedTokenCache);
+
+        // 节点2已校验过该token
+        LoginSysUserRedisVo loginSysUserRedisVo = new LoginSysUserRedisVo();
+        loginSysUserRedisVo.setUsername(USERNAME);
+        when(node2LoginRedisServiceImpl.getLoginSysUserRedisVo(token)).thenReturn(loginSysUserRedisVo);
+        node2VerifiedTokenCache.put(JwtToken.build(token, USERNAME, jwtProperties.getSecret(), jwtProperties.getExpireSecond()));
+    }
+
+    @After
+    public void tearDown() {
+        RequestContextHolder.resetRequestAttributes();
+        node1.destroy();
+        node2.destroy();
+    }
+
+    @Test
+    public void tokenRejectedOnOtherNodeAfterDeleteUserAllCache() throws Exception {
+        assertEquals(USERNAME, ((JwtToken) node2JwtFilter.createToken(token)).getUsername());
+
+        // 节点1删除用户所有会话，Redis会话已删除
+        node1.deleteUserAllCache(USERNAME);
+        when(node2LoginRedisServiceImpl.getLoginSysUserRedisVo(token)).thenReturn(null);
+        deliverToNode2();
+
+        assertNull(node2VerifiedTokenCache.get(token));
+        try {
+            node2JwtFilter.createToken(token);
+            fail("已删除会话的token应被拒绝");
+        } catch (AuthenticationException e) {
+            assertNotNull(e.getMessage());
+        }
+    }
+
+    @Test
+    public void roleMessageClearsVerifiedTokens() {
+        node1.deleteRoleAllCache(1L);
+        deliverToNode2();
+        assertNull(node2VerifiedTokenCache.get(token));
+    }
+
+    @Test
+    public void verifiedTokensInvalidatedWhenNearCacheDisabled() {
+        jwtProperties.getNearCache().setEnable(false);
+        node1.deleteUserAllCache(USERNAME);
+        deliverToNode2();
+        assertNull(node2VerifiedTokenCache.get(token));
+    }
+
+    @SuppressWarnings("unchecked")
+    private RedisTemplate redisTemplate() {
+        RedisTemplate redisTemplate = mock(RedisTemplate.class);
+        when(redisTemplate.getValueSerializer()).thenReturn(serializer);
+        return redisTemplate;
+    }
+
+    @SuppressWarnings("unchecked")
+    private void deliverToNode2() {
+        ArgumentCaptor<Object> captor = ArgumentCaptor.forClass(Object.class);
+        verify(node1RedisTemplate).convertAndSend(eq(CommonRedisKey.LOGIN_SESSION_CHANNEL), captor.capture());
+        byte[] channel = CommonRedisKey.LOGIN_SESSION_CHANNEL.getBytes(StandardCharsets.UTF_8);
+        node2.onMessage(new DefaultMessage(channel, serializer.serialize(captor.getValue().toString())), null);
+    }
+
+    /**
+     * 公开createToken，使用请求头传递token
+     */
+    private static class TestJwtFilter extends JwtFilter {
+
+        private TestJwtFilter(NearCacheLoginRedisService loginRedisService, JwtProperties jwtProperties,
+                              VerifiedTokenCache verifiedTokenCache) {
+            super(mock(LoginService.class), loginRedisService, jwtProperties, verifiedTokenCache, revokedTokenFilter());
+        }
+
+        private static RevokedTokenFilter revokedTokenFilter() {
+            RevokedTokenFilter revokedTokenFilter = mock(RevokedTokenFilter.class);
+            when(revokedTokenFilter.isRevoked(anyString())).thenReturn(false);
+            return revokedTokenFilter;
+        }
+
+        private AuthenticationToken createToken(String token) throws Exception {
+            MockHttpServletRequest request = new MockHttpServletRequest();
+            request.addHeader(JwtTokenUtil.getTokenName(), token);
+            return createToken((ServletRequest) request, (ServletResponse) new MockHttpServletResponse());
+        }
+
+    }
+
+}